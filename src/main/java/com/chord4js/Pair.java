@@ -4,4 +4,7 @@ public class Pair<A, B> {
   public A fst;
   public B snd;
   public Pair(A a, B b) { fst = a; snd = b; } 
+  
+  /** For deserializing {@link PairS}. */
+  protected Pair() {}
 }
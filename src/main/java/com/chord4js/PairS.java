@@ -1,5 +1,8 @@
 package com.chord4js;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 public class PairS<A extends Serializable, B extends Serializable>
@@ -9,4 +12,17 @@ public class PairS<A extends Serializable, B extends Serializable>
   
   public PairS(A a, B b) { super(a, b); }
   public PairS(Pair<A, B> p) { super(p.fst, p.snd); }
+  
+  // fst and snd are fields of Pair, which is not serializable itself
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.writeObject(fst);
+    out.writeObject(snd);
+  }
+  
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in)
+      throws IOException, ClassNotFoundException {
+    fst = (A) in.readObject();
+    snd = (B) in.readObject();
+  }
 }
@@ -1,5 +1,7 @@
 package com.chord4js;
 
+import de.uniba.wiai.lspi.chord.data.ID;
+
 public class ProviderId extends ServiceId {
 	/**
    * 
@@ -17,6 +19,26 @@ public class ProviderId extends ServiceId {
       assert(parts[i] != null);
 	}
 
+	/**
+	 * Ring ID of this provider, computed on first use. Not serialized; see
+	 * {@link ServiceId#getIdSpan()}.
+	 */
+	private transient ID id;
+	
+	/**
+	 * The ring ID this provider is stored under. Hashed once per instance.
+	 * 
+	 * @return
+	 */
+	public ID getId() {
+	  ID x = id;
+	  if (x == null) {
+	    x  = new ID(this);
+	    id = x;
+	  }
+	  return x;
+	}
+
 	@Override
 	public String toString() { return "providerId: " + partsDisplay(); }
 	
@@ -1,6 +1,9 @@
 package com.chord4js;
 
 import java.io.Serializable;
+import java.util.Arrays;
+
+import de.uniba.wiai.lspi.chord.data.ID;
 
 /**
  * Implementation simplification:
@@ -30,6 +33,21 @@ public class ServiceId implements Serializable, Comparable<ServiceId> {
 	 * service identifier (semantic + provider)
 	 */
 	public final String[] parts = new String[kPartsAll];
+	
+	/**
+	 * Ring span of this identifier, computed on first use. Not serialized; a
+	 * deserialized copy recomputes it. Racy caching is fine, ID.IdSpan is
+	 * immutable. Assumes {@link #parts} is not modified after construction.
+	 */
+	private transient ID.IdSpan span;
+
+	/**
+	 * Returns the ID of the services with the given semantic name, e.g. to
+	 * read one sent over the wire.
+	 */
+	public static ServiceId of(final String[] semanticName) {
+		return new ServiceId(semanticName);
+	}
 
 	ServiceId(final String[] semanticName) {
 		// verify input
@@ -62,8 +80,33 @@ public class ServiceId implements Serializable, Comparable<ServiceId> {
     return sb.toString();
   }
   
+  /**
+   * The span of ring IDs covered by this (possibly wild-carded) identifier.
+   * Hashed once per instance.
+   * 
+   * @return
+   */
+  public ID.IdSpan getIdSpan() {
+    ID.IdSpan s = span;
+    if (s == null) {
+      s    = ID.ServiceId(this);
+      span = s;
+    }
+    return s;
+  }
+  
   @Override
   public String toString() { return "serviceId: " + partsDisplay(); }
+  
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || o.getClass() != getClass()) return false;
+    return Arrays.equals(parts, ((ServiceId)o).parts);
+  }
+  
+  @Override
+  public int hashCode() { return Arrays.hashCode(parts); }
 	
 	public int partsGivenCount() {
 	  assert(parts.length == kPartsAll);
@@ -77,7 +120,7 @@ public class ServiceId implements Serializable, Comparable<ServiceId> {
   public int compareTo(ServiceId o) {
     for (int i = 0; i < parts.length; ++i) {
       final boolean aNull = parts[i] == null;
-      final boolean bNull = parts[i] == null;
+      final boolean bNull = o.parts[i] == null;
       if (aNull && bNull) continue;
       if (aNull) return -1;
       if (bNull) return  1;
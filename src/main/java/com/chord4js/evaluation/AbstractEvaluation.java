@@ -4,6 +4,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import com.chord4js.Service;
 import com.chord4js.ServiceFactory;
@@ -11,6 +14,7 @@ import com.chord4js.ServiceGenerator;
 
 import de.uniba.wiai.lspi.chord.service.PropertiesLoader;
 import de.uniba.wiai.lspi.chord.service.ServiceException;
+import de.uniba.wiai.lspi.chord.service.impl.ChordImpl;
 import de.uniba.wiai.lspi.util.logging.Logger;
 
 public abstract class AbstractEvaluation {
@@ -22,6 +26,42 @@ public abstract class AbstractEvaluation {
 	public static final int NODES_2_9 = 1 << 9;
 	public static final int NODES_2_11 = 1 << 11;
 	
+	/**
+	 * Number of threads running the maintenance tasks of the nodes in a round.
+	 * Defaults to the number of processors.
+	 */
+	private static final String MAINTENANCE_THREADS_PROPERTY = AbstractEvaluation.class
+			.getName() + ".maintenanceThreads";
+	
+	/**
+	 * Whether networks are built at once with their final routing state (see
+	 * {@link EvaluationController#createStableChord4SNetwork(int)}) rather than
+	 * by joining the nodes one by one.
+	 */
+	private static final String BULK_BOOTSTRAP_PROPERTY = AbstractEvaluation.class
+			.getName() + ".bulkBootstrap";
+	
+	/**
+	 * Share of correct successors, predecessors and fingers, between 0 and 1,
+	 * at which maintenance rounds stop early. Defaults to 1, i.e. the ideal
+	 * ring; above 1, all rounds are run.
+	 */
+	private static final String CONVERGENCE_THRESHOLD_PROPERTY = AbstractEvaluation.class
+			.getName() + ".convergenceThreshold";
+	
+	/**
+	 * How the asynchronous requests of the nodes are run. The evaluation runs
+	 * thousands of nodes in one JVM, so they share one pool, unless configured
+	 * otherwise.
+	 */
+	private static final String ASYNC_EXECUTION_PROPERTY = ChordImpl.class
+			.getName() + ".AsyncThread.execution";
+	
+	/**
+	 * Number of nodes a maintenance thread handles without splitting further.
+	 */
+	private static final int NODES_PER_TASK = 16;
+	
 	/**
 	 * Number of services to generate for inserting into the network
 	 */
@@ -43,6 +83,11 @@ public abstract class AbstractEvaluation {
 	protected List<Service> services;
 	private Set<Chord4SDriver> nodes;
 	
+	/**
+	 * Convergence of the network during the last maintenance rounds run
+	 */
+	private List<ConvergenceDetector.Metrics> convergence;
+	
 	public AbstractEvaluation() throws ServiceException {
 		initServices();
 	}
@@ -62,6 +107,9 @@ public abstract class AbstractEvaluation {
 		// System.setProperty("log4j.properties.file",
 		// "config/log4j.properties");
 		PropertiesLoader.loadPropertyFile();
+		if (System.getProperty(ASYNC_EXECUTION_PROPERTY) == null) {
+			System.setProperty(ASYNC_EXECUTION_PROPERTY, "shared");
+		}
 	}
 	
 	/**
@@ -126,7 +174,11 @@ public abstract class AbstractEvaluation {
 	protected Set<Chord4SDriver> createNetwork(int numberOfNodes, EvaluationController controller,
 			int rounds) {
 		try {
-			setNodes(controller.createChord4SNetwork(numberOfNodes));
+			if (Boolean.getBoolean(BULK_BOOTSTRAP_PROPERTY)) {
+				setNodes(controller.createStableChord4SNetwork(numberOfNodes));
+			} else {
+				setNodes(controller.createChord4SNetwork(numberOfNodes));
+			}
 		} catch (ServiceException e) {
 			log.fatal("unable to create the network", e);
 			return null;
@@ -138,19 +190,93 @@ public abstract class AbstractEvaluation {
 	}
 	
 	/**
-	 * Run the maintenance task a few times for the given nodes
+	 * Run the maintenance task for the given nodes until their routing state
+	 * has converged to the ideal ring (see {@link ConvergenceDetector}), but at
+	 * most <code>rounds</code> times. The nodes of a round are split across a
+	 * {@link ForkJoinPool}; a round starts when the previous one has finished
+	 * on all nodes. The seeded {@link #random} is not used here, so it yields
+	 * the same numbers afterwards as with serial rounds.
 	 */
 	protected void runMaintenanceTasks(Set<Chord4SDriver> nodes, int rounds) {
-		log.info("running maintenance tasks");
-		// run the maintenance tasks a few times
-		for (int i = 0; i < rounds; i++) {
-			log.debug("running maintenance tasks " + i);
-			for (Chord4SDriver driver : nodes) {
-				driver.runTasks();
+		int threads = Integer.getInteger(MAINTENANCE_THREADS_PROPERTY, Runtime
+				.getRuntime().availableProcessors());
+		String threshold = System.getProperty(CONVERGENCE_THRESHOLD_PROPERTY);
+		double convergenceThreshold = threshold == null ? 1 : Double
+				.parseDouble(threshold);
+		log.info("running maintenance tasks on " + threads + " threads");
+		List<Chord4SDriver> nodesList = new ArrayList<Chord4SDriver>(nodes);
+		ConvergenceDetector detector = new ConvergenceDetector(nodesList);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		int round = 0;
+		try {
+			// run the maintenance tasks until converged
+			while (round < rounds) {
+				log.debug("running maintenance tasks " + round);
+				pool.invoke(new MaintenanceRound(nodesList, 0, nodesList.size()));
+				round++;
+				log.debug(detector.measure(round));
+				if (detector.isConverged(convergenceThreshold)) {
+					break;
+				}
 			}
+		} finally {
+			pool.shutdown();
 		}
+		convergence = detector.getHistory();
 		
-		log.info("finished maintenance tasks");
+		double seconds = (System.nanoTime() - start)
+				/ (double) TimeUnit.SECONDS.toNanos(1);
+		log.info("finished maintenance tasks: " + round + " rounds in "
+				+ String.format("%.1f", seconds) + " s, "
+				+ String.format("%.1f", round / seconds) + " rounds/s");
+		if (!convergence.isEmpty()) {
+			log.info((detector.isConverged(convergenceThreshold) ? "converged, "
+					: "not converged, ")
+					+ convergence.get(convergence.size() - 1));
+		}
+	}
+	
+	/**
+	 * @return the share of correct routing entries after each round of the
+	 *         last {@link #runMaintenanceTasks(Set, int)}
+	 */
+	public List<ConvergenceDetector.Metrics> getConvergence() {
+		return convergence;
+	}
+	
+	/**
+	 * Runs the maintenance tasks of a range of nodes, splitting it in halves
+	 * down to {@link #NODES_PER_TASK} nodes.
+	 */
+	private static final class MaintenanceRound extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final List<Chord4SDriver> nodes;
+		
+		private final int from;
+		
+		private final int to;
+		
+		MaintenanceRound(List<Chord4SDriver> nodes, int from, int to) {
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= NODES_PER_TASK) {
+				for (int i = from; i < to; i++) {
+					nodes.get(i).runTasks();
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new MaintenanceRound(nodes, from, middle),
+					new MaintenanceRound(nodes, middle, to));
+		}
 	}
 	
 	public Set<Chord4SDriver> getNodes() {
@@ -1,10 +1,12 @@
 package com.chord4js.evaluation;
 
+import java.util.List;
 import java.util.Set;
 
 import com.chord4js.Service;
 import com.chord4js.ServiceId;
 
+import de.uniba.wiai.lspi.chord.data.ID;
 import de.uniba.wiai.lspi.chord.data.URL;
 import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
 import de.uniba.wiai.lspi.chord.service.ServiceException;
@@ -84,4 +86,25 @@ public interface Chord4SDriver {
 	 */
 	void runTasks();
 	
+	/**
+	 * @return the ID of this node
+	 */
+	ID getID();
+	
+	/**
+	 * @return the ID of the predecessor this node knows, or <code>null</code>
+	 */
+	ID getPredecessorID();
+	
+	/**
+	 * @return the IDs of the successors this node knows, closest first
+	 */
+	List<ID> getSuccessorIDs();
+	
+	/**
+	 * @return the IDs of the nodes in the finger table by entry, with
+	 *         <code>null</code> for empty entries
+	 */
+	ID[] getFingerTableIDs();
+	
 }
@@ -0,0 +1,153 @@
+package com.chord4js.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import de.uniba.wiai.lspi.chord.data.ID;
+
+/**
+ * Compares the routing state of a set of nodes with the ideal ring computed
+ * from their sorted IDs: the successor and predecessor of a node are its
+ * neighbours on the ring, and finger table entry i holds the first node at or
+ * after the node's ID + 2^i, or is empty if that is the node itself.
+ */
+public class ConvergenceDetector {
+
+	/**
+	 * Share of correct routing entries over all nodes after one maintenance
+	 * round, each between 0 and 1.
+	 */
+	public static class Metrics {
+
+		public final int round;
+
+		public final double successors;
+
+		public final double predecessors;
+
+		public final double fingers;
+
+		Metrics(int round, double successors, double predecessors, double fingers) {
+			this.round = round;
+			this.successors = successors;
+			this.predecessors = predecessors;
+			this.fingers = fingers;
+		}
+
+		/**
+		 * @return the lowest of the three shares
+		 */
+		public double min() {
+			return Math.min(successors, Math.min(predecessors, fingers));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("round %d: successors %.1f%%, predecessors %.1f%%, fingers %.1f%%",
+					round, 100 * successors, 100 * predecessors, 100 * fingers);
+		}
+	}
+
+	private final List<Chord4SDriver> nodes;
+
+	/**
+	 * IDs of the nodes in ring order.
+	 */
+	private final ID[] ring;
+
+	private final List<Metrics> history = new ArrayList<Metrics>();
+
+	/**
+	 * @param nodes
+	 *            the nodes forming the ring; must not change while measuring
+	 */
+	public ConvergenceDetector(Collection<Chord4SDriver> nodes) {
+		this.nodes = new ArrayList<Chord4SDriver>(nodes);
+		ring = new ID[this.nodes.size()];
+		for (int i = 0; i < ring.length; i++) {
+			ring[i] = this.nodes.get(i).getID();
+		}
+		Arrays.sort(ring);
+	}
+
+	/**
+	 * Measure the routing state of all nodes and add it to the history.
+	 *
+	 * @param round
+	 *            the number of maintenance rounds run so far
+	 * @return the metrics of this round
+	 */
+	public Metrics measure(int round) {
+		int successors = 0;
+		int predecessors = 0;
+		int fingers = 0;
+		int fingerEntries = 0;
+
+		for (Chord4SDriver node : nodes) {
+			ID id = node.getID();
+			int index = Arrays.binarySearch(ring, id);
+
+			// a single node has neither successor nor predecessor
+			ID successor = ring.length == 1 ? null : ring[(index + 1) % ring.length];
+			ID predecessor = ring.length == 1 ? null : ring[(index + ring.length - 1)
+					% ring.length];
+			List<ID> successorIDs = node.getSuccessorIDs();
+			if (equal(successor, successorIDs.isEmpty() ? null : successorIDs.get(0))) {
+				successors++;
+			}
+			if (equal(predecessor, node.getPredecessorID())) {
+				predecessors++;
+			}
+
+			ID[] fingerIDs = node.getFingerTableIDs();
+			for (int i = 0; i < fingerIDs.length; i++) {
+				ID ideal = successorOf(id.addPowerOfTwo(i));
+				if (equal(ideal.equals(id) ? null : ideal, fingerIDs[i])) {
+					fingers++;
+				}
+			}
+			fingerEntries += fingerIDs.length;
+		}
+
+		int n = Math.max(nodes.size(), 1);
+		Metrics metrics = new Metrics(round, successors / (double) n, predecessors / (double) n,
+				fingerEntries == 0 ? 1 : fingers / (double) fingerEntries);
+		history.add(metrics);
+		return metrics;
+	}
+
+	/**
+	 * @param threshold
+	 *            required share of correct entries, between 0 and 1
+	 * @return whether successors, predecessors and fingers were all at least
+	 *         <code>threshold</code> correct when last measured
+	 */
+	public boolean isConverged(double threshold) {
+		return !history.isEmpty() && history.get(history.size() - 1).min() >= threshold;
+	}
+
+	/**
+	 * @return the metrics of all measured rounds, oldest first
+	 */
+	public List<Metrics> getHistory() {
+		return Collections.unmodifiableList(history);
+	}
+
+	/**
+	 * @return the first node ID at or after <code>id</code> on the ring
+	 */
+	private ID successorOf(ID id) {
+		int index = Arrays.binarySearch(ring, id);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return ring[index % ring.length];
+	}
+
+	private static boolean equal(ID a, ID b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -1,5 +1,6 @@
 package com.chord4js.evaluation;
 
+import java.util.Arrays;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -100,7 +101,9 @@ public class DataAvailabilityEvaluation extends AbstractEvaluation {
 			// int requiredResults = 1 +
 			// random.nextInt(expectedServicesInterval);
 			int requiredResults = expectedServicesInterval;
+			long start = System.nanoTime();
 			Set<Service> result = driver.lookup(serviceId, requiredResults);
+			queryResults.latency(System.nanoTime() - start);
 			
 			// mark query as a success if we receive enough results, fail
 			// otherwise
@@ -128,6 +131,8 @@ public class DataAvailabilityEvaluation extends AbstractEvaluation {
 		private AtomicInteger successfulQuery = new AtomicInteger();
 		private AtomicInteger failedQuery = new AtomicInteger();
 		private long startTime = System.currentTimeMillis();
+		private long[] latencies = new long[64];
+		private int queries;
 		
 		/**
 		 * Mark that a query successfully completed.
@@ -147,6 +152,33 @@ public class DataAvailabilityEvaluation extends AbstractEvaluation {
 			}
 		}
 		
+		/**
+		 * Record how long a query took.
+		 * 
+		 * @param nanos
+		 */
+		public synchronized void latency(long nanos) {
+			if (queries == latencies.length) {
+				latencies = Arrays.copyOf(latencies, queries * 2);
+			}
+			latencies[queries++] = nanos;
+		}
+		
+		/**
+		 * @param percentile
+		 *            between 0 and 100
+		 * @return the given percentile of the recorded query latencies in
+		 *         milliseconds, 0 if none were recorded
+		 */
+		public synchronized double getLatency(int percentile) {
+			if (queries == 0) {
+				return 0;
+			}
+			long[] sorted = Arrays.copyOf(latencies, queries);
+			Arrays.sort(sorted);
+			return sorted[(queries - 1) * percentile / 100] / 1e6;
+		}
+		
 		public int getSuccessfulQueries() {
 			return successfulQuery.intValue();
 		}
@@ -158,7 +190,9 @@ public class DataAvailabilityEvaluation extends AbstractEvaluation {
 		@Override
 		public String toString() {
 			return "results: " + " successful: " + successfulQuery + " failed: " + failedQuery
-					+ " time taken: " + (System.currentTimeMillis() - startTime);
+					+ " time taken: " + (System.currentTimeMillis() - startTime)
+					+ " latency p50: " + getLatency(50) + " p99: " + getLatency(99)
+					+ " max: " + getLatency(100);
 		}
 	}
 }
@@ -1,11 +1,13 @@
 package com.chord4js.evaluation;
 
+import java.util.List;
 import java.util.Set;
 
 import com.chord4js.QoSConstraints;
 import com.chord4js.Service;
 import com.chord4js.ServiceId;
 
+import de.uniba.wiai.lspi.chord.data.ID;
 import de.uniba.wiai.lspi.chord.data.URL;
 import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
 import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
@@ -69,4 +71,24 @@ public class DriverAdapter implements Chord4SDriver {
 		chordImpl.runTasks();
 	}
 	
+	@Override
+	public ID getID() {
+		return chordImpl.getID();
+	}
+	
+	@Override
+	public ID getPredecessorID() {
+		return chordImpl.getPredecessorID();
+	}
+	
+	@Override
+	public List<ID> getSuccessorIDs() {
+		return chordImpl.getSuccessorIDs();
+	}
+	
+	@Override
+	public ID[] getFingerTableIDs() {
+		return chordImpl.getFingerTableIDs();
+	}
+	
 }
@@ -24,6 +24,16 @@ public interface EvaluationController {
 	 */
 	Set<Chord4SDriver> createChord4SNetwork(int numberOfNodes) throws ServiceException;
 	
+	/**
+	 * Create a network of Chord4S instances containing
+	 * <code>numberOfNodes</code> nodes, built at once with routing state as
+	 * after full stabilization instead of joining the nodes one by one.
+	 * 
+	 * @param numberOfNodes
+	 * @throws ServiceException
+	 */
+	Set<Chord4SDriver> createStableChord4SNetwork(int numberOfNodes) throws ServiceException;
+	
 	/**
 	 * Immediately crash a number of nodes, randomly from the set.
 	 * 
@@ -3,12 +3,15 @@ package com.chord4js.evaluation;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
 import de.uniba.wiai.lspi.chord.data.URL;
 import de.uniba.wiai.lspi.chord.service.ServiceException;
 import de.uniba.wiai.lspi.chord.service.impl.ChordImpl;
+import de.uniba.wiai.lspi.chord.service.impl.NodeGroup;
+import de.uniba.wiai.lspi.chord.service.impl.RingBootstrap;
 import de.uniba.wiai.lspi.util.logging.Logger;
 
 public class EvaluationControllerImpl implements EvaluationController {
@@ -21,8 +24,19 @@ public class EvaluationControllerImpl implements EvaluationController {
 	
 	private Random random;
 	
+	/**
+	 * Group of the nodes created, which execute their asynchronous requests
+	 * together
+	 */
+	private NodeGroup group;
+	
 	public EvaluationControllerImpl(Random random) {
+		this(random, NodeGroup.getDefault());
+	}
+	
+	public EvaluationControllerImpl(Random random, NodeGroup group) {
 		this.random = random;
+		this.group = group;
 	}
 	
 	@Override
@@ -31,7 +45,7 @@ public class EvaluationControllerImpl implements EvaluationController {
 		HashSet<Chord4SDriver> nodes = new HashSet<>(numberOfNodes);
 		
 		// create first node for other nodes to bootstrap to
-		ChordImpl chord = new ChordImpl();
+		ChordImpl chord = new ChordImpl(group);
 		bootstrapURL = getNextURL();
 		
 		// encapsulate chord with a DriverAdapter and add it to the nodes set
@@ -52,6 +66,26 @@ public class EvaluationControllerImpl implements EvaluationController {
 		return nodes;
 	}
 	
+	@Override
+	public Set<Chord4SDriver> createStableChord4SNetwork(int numberOfNodes) throws ServiceException {
+		
+		log.info("creating " + numberOfNodes + " nodes at once");
+		List<URL> urls = new ArrayList<>(numberOfNodes);
+		for (int i = 0; i < numberOfNodes; i++) {
+			urls.add(getNextURL());
+		}
+		
+		HashSet<Chord4SDriver> nodes = new HashSet<>(numberOfNodes);
+		for (ChordImpl chord : RingBootstrap.createRing(urls, group)) {
+			nodes.add(new DriverAdapter(chord));
+		}
+		
+		// later nodes join through the last one created
+		bootstrapURL = urls.get(urls.size() - 1);
+		
+		return nodes;
+	}
+	
 	/**
 	 * Add a new node to the network of the {@link #bootstrapURL}. Updates
 	 * {@link #bootstrapURL} with the node that was just created.
@@ -62,7 +96,7 @@ public class EvaluationControllerImpl implements EvaluationController {
 	 */
 	private Chord4SDriver addNewNode() throws ServiceException {
 		
-		ChordImpl chord = new ChordImpl();
+		ChordImpl chord = new ChordImpl(group);
 		URL nextURL = getNextURL();
 		log.debug("new node joining network - bootstrap: " + bootstrapURL + " node URL: " + nextURL);
 		chord.join(nextURL, bootstrapURL);
@@ -34,23 +34,45 @@ public class RoutingPerformanceEvaluation extends AbstractEvaluation {
 		
 		// iterate over all expected results sizes, querying the nodes
 		for (int expected : expectedResults) {
-			double averageHops = queryNodesAndComputeAverage(getNodes(), expected);
+			Hops hops = queryNodes(getNodes(), expected);
 			log.info("number of nodes: " + numberOfNodes + " services to get: "
-					+ expected + " average hops: " + averageHops);
+					+ expected + " average hops: " + hops.average()
+					+ " cache hit rate: " + hops.hitRate()
+					+ " average hops saved: " + hops.averageSaved());
 //			log.info(numberOfNodes + "	" + expected + "	" + averageHops);
 		}
 	}
 	
 	/**
-	 * Run random queries, counting the number of hops and returning the
-	 * average.
+	 * Hops taken by a number of queries, and those saved by taking the
+	 * responsible node from the location cache of the querying node.
+	 */
+	private static final class Hops {
+		int queries;
+		int total;
+		int cacheHits;
+		int saved;
+		
+		double average() {
+			return total / (double) queries;
+		}
+		
+		double hitRate() {
+			return cacheHits / (double) queries;
+		}
+		
+		double averageSaved() {
+			return saved / (double) queries;
+		}
+	}
+	
+	/**
+	 * Run random queries, counting the number of hops.
 	 * 
-	 * @return the average number of hops for getting the specified number of
-	 *         results
+	 * @return the hops for getting the specified number of results
 	 */
-	private double queryNodesAndComputeAverage(Set<Chord4SDriver> nodes, int requiredResults) {
-		int totalHops = 0;
-		int queries = 0;
+	private Hops queryNodes(Set<Chord4SDriver> nodes, int requiredResults) {
+		Hops hops = new Hops();
 		
 		for (Chord4SDriver driver : nodes) {
 			
@@ -62,12 +84,15 @@ public class RoutingPerformanceEvaluation extends AbstractEvaluation {
 			// update the totalHops and queries with hop information from the
 			// C4SRetrieveResponse object
 			C4SRetrieveResponse result = driver.lookupR(serviceId, requiredResults);
-			totalHops += result.getNumberOfHops();
-			queries++;
+			hops.total += result.getNumberOfHops();
+			hops.queries++;
+			if (result.isCached()) {
+				hops.cacheHits++;
+				hops.saved += result.getHopsSaved();
+			}
 		}
 		
-		// calculate average
-		return totalHops / (double) queries;
+		return hops;
 	}
 	
 	public static void main(String[] args) throws ServiceException {
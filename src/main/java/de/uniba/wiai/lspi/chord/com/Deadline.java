@@ -0,0 +1,112 @@
+package de.uniba.wiai.lspi.chord.com;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time by which an operation must have completed. A deadline
+ * made current for a thread limits the time each {@link Proxy} invocation of
+ * the thread waits for its response, and is carried to the remote node,
+ * where it is current for the invocations made to answer the request in
+ * turn. Once it has passed, invocations fail with a
+ * {@link DeadlineExceededException} without being sent.
+ *
+ * <pre>
+ * Deadline previous = Deadline.set(Deadline.after(500));
+ * try {
+ * 	chord.retrieve(msg);
+ * } finally {
+ * 	Deadline.set(previous);
+ * }
+ * </pre>
+ */
+public final class Deadline {
+
+	private static final ThreadLocal<Deadline> current = new ThreadLocal<Deadline>();
+
+	/**
+	 * Value of {@link System#nanoTime()} at which this deadline passes.
+	 */
+	private final long expiry;
+
+	private Deadline(long expiry) {
+		this.expiry = expiry;
+	}
+
+	/**
+	 * @param millis
+	 *            Milliseconds from now.
+	 * @return A deadline passing the given time from now.
+	 */
+	public static Deadline after(long millis) {
+		return new Deadline(System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	/**
+	 * @return The deadline of the current thread, <code>null</code> if it has
+	 *         none.
+	 */
+	public static Deadline current() {
+		return current.get();
+	}
+
+	/**
+	 * Makes a deadline current for the current thread.
+	 *
+	 * @param deadline
+	 *            The deadline, <code>null</code> for none.
+	 * @return The deadline current before, to be set again when the
+	 *         operation is done.
+	 */
+	public static Deadline set(Deadline deadline) {
+		Deadline previous = current.get();
+		if (deadline == null) {
+			current.remove();
+		} else {
+			current.set(deadline);
+		}
+		return previous;
+	}
+
+	/**
+	 * @param millis
+	 *            Milliseconds from now, 0 or less for no limit.
+	 * @return The deadline of the current thread, or the one passing the
+	 *         given time from now if it is earlier; <code>null</code> if there
+	 *         is neither.
+	 */
+	public static Deadline within(long millis) {
+		Deadline deadline = current.get();
+		if (millis <= 0) {
+			return deadline;
+		}
+		Deadline limit = after(millis);
+		if (deadline == null || limit.expiry - deadline.expiry < 0) {
+			return limit;
+		}
+		return deadline;
+	}
+
+	/**
+	 * @return Milliseconds left until this deadline passes, rounded up; 0 if
+	 *         it has passed.
+	 */
+	public long remaining() {
+		long nanos = this.expiry - System.nanoTime();
+		if (nanos <= 0) {
+			return 0;
+		}
+		return (nanos + 999999) / 1000000;
+	}
+
+	/**
+	 * @return <code>true</code> if this deadline has passed.
+	 */
+	public boolean isExpired() {
+		return this.expiry - System.nanoTime() <= 0;
+	}
+
+	public String toString() {
+		return "Deadline in " + this.remaining() + " ms";
+	}
+}
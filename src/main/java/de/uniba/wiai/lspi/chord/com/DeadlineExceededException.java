@@ -0,0 +1,20 @@
+package de.uniba.wiai.lspi.chord.com;
+
+/**
+ * Thrown instead of making an invocation on a remote node when the
+ * {@link Deadline} of the current thread has passed. It is unchecked, so that
+ * the operation gives up rather than retrying with other nodes as it does on
+ * a {@link CommunicationException}.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 4925416617048215573L;
+
+	/**
+	 * @param message
+	 *            A message describing this exception.
+	 */
+	public DeadlineExceededException(String message) {
+		super(message);
+	}
+}
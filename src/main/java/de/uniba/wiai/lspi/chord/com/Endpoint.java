@@ -40,6 +40,7 @@ import org.apache.commons.lang3.NotImplementedException;
 
 import de.uniba.wiai.lspi.chord.com.local.ThreadEndpoint;
 import de.uniba.wiai.lspi.chord.com.rmi.RMIEndpoint;
+import de.uniba.wiai.lspi.chord.com.socket.NioEndpoint;
 import de.uniba.wiai.lspi.chord.com.socket.SocketEndpoint;
 import de.uniba.wiai.lspi.chord.data.URL;
 import de.uniba.wiai.lspi.util.logging.Logger;
@@ -355,6 +356,10 @@ public abstract class Endpoint {
 					URL.KNOWN_PROTOCOLS.get(URL.RMI_PROTOCOL))) {
 
 				endpoint = new RMIEndpoint(node, url);
+			} else if (url.getProtocol().equals(
+					URL.KNOWN_PROTOCOLS.get(URL.NIO_PROTOCOL))) {
+
+				endpoint = new NioEndpoint(node, url);
 			} else {
 				// does not happen ??
 				throw new IllegalArgumentException("Url does not contain a "
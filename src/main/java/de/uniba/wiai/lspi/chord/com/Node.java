@@ -29,6 +29,7 @@ package de.uniba.wiai.lspi.chord.com;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import com.chord4js.Pair;
 import com.chord4js.ProviderId;
@@ -123,6 +124,23 @@ public abstract class Node {
 	 */
 	public abstract Pair<Node, Integer> findSuccessor(ID key) throws CommunicationException;
 
+	/**
+	 * Returns the next node to ask for the successor of the given key, for
+	 * lookups driven by the node which started them. This node does not
+	 * contact other nodes to answer.
+	 * 
+	 * @param key
+	 *            Key for which the successor is searched for.
+	 * @return The successor of <code>key</code> and <code>true</code> if
+	 *         <code>key</code> lies between this node and its successor, or
+	 *         this node has no successor; otherwise the closest node
+	 *         preceding <code>key</code> known to this node and
+	 *         <code>false</code>.
+	 * @throws CommunicationException
+	 *             Thrown if an unresolvable communication failure occurs.
+	 */
+	public abstract Pair<Node, Boolean> findNextHop(ID key) throws CommunicationException;
+
 	/**
 	 * Requests this node's predecessor in result[0] and successor list in
 	 * result[1..length-1]. This method is invoked by another node which thinks
@@ -219,6 +237,93 @@ public abstract class Node {
 	public abstract C4SRetrieveResponse retrieveEntries(C4SMsgRetrieve x)
 			throws CommunicationException;
 
+	/**
+	 * Asynchronous variant of {@link #findSuccessor(ID)}. Implementations
+	 * that talk to a remote node should not block the calling thread until
+	 * the answer arrives; this default invokes {@link #findSuccessor(ID)}
+	 * directly, which is what local nodes do anyway.
+	 * 
+	 * @param key
+	 *            Key for which the successor is searched for.
+	 * @return Responsible node and the number of hops taken, or a
+	 *         {@link CommunicationException} on failure.
+	 */
+	public CompletableFuture<Pair<Node, Integer>> findSuccessorAsync(ID key) {
+		try {
+			return CompletableFuture.completedFuture(this.findSuccessor(key));
+		} catch (CommunicationException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Asynchronous variant of {@link #findNextHop(ID)}, see
+	 * {@link #findSuccessorAsync(ID)}.
+	 * 
+	 * @param key
+	 *            Key for which the successor is searched for.
+	 * @return See {@link #findNextHop(ID)}, or a
+	 *         {@link CommunicationException} on failure.
+	 */
+	public CompletableFuture<Pair<Node, Boolean>> findNextHopAsync(ID key) {
+		try {
+			return CompletableFuture.completedFuture(this.findNextHop(key));
+		} catch (CommunicationException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Asynchronous variant of {@link #insertEntry(Service)}, see
+	 * {@link #findSuccessorAsync(ID)}.
+	 * 
+	 * @param svc
+	 * @return Completed on success, or a {@link CommunicationException} on
+	 *         failure.
+	 */
+	public CompletableFuture<Void> insertEntryAsync(Service svc) {
+		try {
+			this.insertEntry(svc);
+			return CompletableFuture.completedFuture(null);
+		} catch (CommunicationException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Asynchronous variant of {@link #removeEntry(ProviderId)}, see
+	 * {@link #findSuccessorAsync(ID)}.
+	 * 
+	 * @param x
+	 * @return Completed on success, or a {@link CommunicationException} on
+	 *         failure.
+	 */
+	public CompletableFuture<Void> removeEntryAsync(ProviderId x) {
+		try {
+			this.removeEntry(x);
+			return CompletableFuture.completedFuture(null);
+		} catch (CommunicationException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Asynchronous variant of {@link #retrieveEntries(C4SMsgRetrieve)}, see
+	 * {@link #findSuccessorAsync(ID)}.
+	 * 
+	 * @param x
+	 * @return The entries found, or a {@link CommunicationException} on
+	 *         failure.
+	 */
+	public CompletableFuture<C4SRetrieveResponse> retrieveEntriesAsync(
+			C4SMsgRetrieve x) {
+		try {
+			return CompletableFuture.completedFuture(this.retrieveEntries(x));
+		} catch (CommunicationException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
 	/**
 	 * Inform a node that its predecessor leaves the network.
 	 * 
@@ -36,6 +36,7 @@ package de.uniba.wiai.lspi.chord.com;
 import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.DEBUG;
 import de.uniba.wiai.lspi.chord.com.local.ThreadProxy;
 import de.uniba.wiai.lspi.chord.com.rmi.RMIProxy;
+import de.uniba.wiai.lspi.chord.com.socket.NioProxy;
 import de.uniba.wiai.lspi.chord.com.socket.SocketProxy;
 import de.uniba.wiai.lspi.chord.data.URL;
 import de.uniba.wiai.lspi.util.logging.Logger;
@@ -123,6 +124,11 @@ public abstract class Proxy extends Node {
 			if (debug) {
 				logger.debug("RMIProxy " + node + " created.");
 			}
+		} else if (protocol.equals(URL.KNOWN_PROTOCOLS.get(URL.NIO_PROTOCOL))) {
+			node = NioProxy.create(sourceUrl, destinationUrl);
+			if (debug) {
+				logger.debug("NioProxy " + node + " created.");
+			}
 		} else {
 			// does not happen - if it does, abort
 			throw new RuntimeException(
@@ -87,6 +87,11 @@ public interface InvocationListener {
      */
     public final static int RETRIEVE_ENTRIES = 9;
     
+    /**
+     * 
+     */
+    public final static int FIND_NEXT_HOP = 10;
+    
 //    public final static String[] METHOD_NAMES = new String[] {
 //                "findSuccessor", 
 //                "insertEntry", 
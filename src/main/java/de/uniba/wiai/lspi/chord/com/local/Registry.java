@@ -28,10 +28,12 @@
  
 package de.uniba.wiai.lspi.chord.com.local;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.uniba.wiai.lspi.chord.data.URL;
 import de.uniba.wiai.lspi.util.logging.Logger;
@@ -62,16 +64,12 @@ public final class Registry {
 	/**
 	 * Stores the references to the registered   {@ThreadEndpoint   endpoints}  .
 	 */
-	private Map<URL, ThreadEndpoint> registeredEndpoints = new HashMap<URL, ThreadEndpoint>();
-
-	// TODO Hashtable for synchronization?
+	private Map<URL, ThreadEndpoint> registeredEndpoints = new ConcurrentHashMap<URL, ThreadEndpoint>();
 
 	/**
 	 * Stores references to the proxies in use by nodes. Key:   {@link String}  (name of node), Value:   {@link List}  of   {@link ThreadProxy   proxies}.
 	 */
-	private Map<URL, List<ThreadProxy>> proxiesInUse = new HashMap<URL, List<ThreadProxy>>();
-
-	// TODO Hashtable for synchronization?
+	private Map<URL, List<ThreadProxy>> proxiesInUse = new ConcurrentHashMap<URL, List<ThreadProxy>>();
 
 	/**
 	 * Create an instance of Reqistry.
@@ -92,12 +90,10 @@ public final class Registry {
 		if (!this.registeredEndpoints.containsKey(url)) {
 			return;
 		}
-		List<ThreadProxy> pList = this.proxiesInUse.get(url);
-		if (pList == null) {
-			pList = new LinkedList<ThreadProxy>();
-		}
-		pList.add(proxy);
-		this.proxiesInUse.put(url, pList);
+		// proxies are created by all threads of a node
+		this.proxiesInUse.computeIfAbsent(url,
+				u -> Collections.synchronizedList(new LinkedList<ThreadProxy>()))
+				.add(proxy);
 	}
 
 	/**
@@ -106,13 +102,19 @@ public final class Registry {
 	 * 
 	 * @param url
 	 *            The url of the node.
-	 * @return {@link List}of {@link ThreadProxy proxies}that are used by the
-	 *         node with <code>nodeName</code>. May return <code>null</code>
-	 *         if there are no proxies in use by the node.
+	 * @return Copy of the {@link List}of {@link ThreadProxy proxies}that are
+	 *         used by the node with <code>nodeName</code>. May return
+	 *         <code>null</code> if there are no proxies in use by the node.
 	 */
 	public List<ThreadProxy> getProxiesInUseBy(URL nodeName) {
 		logger.debug("getProxiesInUseBy(" + nodeName + ")");
-		return this.proxiesInUse.get(nodeName);
+		List<ThreadProxy> pList = this.proxiesInUse.get(nodeName);
+		if (pList == null) {
+			return null;
+		}
+		synchronized (pList) {
+			return new ArrayList<ThreadProxy>(pList);
+		}
 	}
 
 	/**
@@ -142,10 +144,8 @@ public final class Registry {
 			logger.debug("Binding endpoint: " + endpoint + "with name " + name);
 		}
 		/* if there is not already an endpoint for that name */
-		Object temp = this.registeredEndpoints.get(name);
+		Object temp = this.registeredEndpoints.putIfAbsent(name, endpoint);
 		if (temp == null) {
-			/* bind given endpoint to name */
-			this.registeredEndpoints.put(name, endpoint);
 			if (debug) {
 				logger.debug("Endpoint " + endpoint + " bound.");
 			}
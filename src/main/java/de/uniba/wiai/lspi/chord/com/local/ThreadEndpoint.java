@@ -141,6 +141,26 @@ public final class ThreadEndpoint extends Endpoint {
 		}
 	}
 
+	/**
+	 * @param key
+	 * @return See {@link Node#findNextHop(ID)}.
+	 * @throws CommunicationException
+	 */
+	public Pair<Node, Boolean> findNextHop(ID key) throws CommunicationException {
+		this.checkIfCrashed();
+		this.waitFor(Endpoint.LISTENING);
+		/* delegate invocation to node. */
+		this.notifyInvocationListeners(InvocationListener.FIND_NEXT_HOP);
+		Pair<Node, Boolean> n = this.node.findNextHop(key);
+		if (n.fst == this.node) {
+			ThreadProxy t = new ThreadProxy(this.url, this.url);
+			t.reSetNodeID(n.fst.getNodeID());
+			n = new Pair<>(t, n.snd);
+		}
+		this.notifyInvocationListenersFinished(InvocationListener.FIND_NEXT_HOP);
+		return n;
+	}
+
 	/**
 	 * @param key
 	 * @return The successor of <code>key</code>.
@@ -246,6 +246,18 @@ public final class ThreadProxy extends Proxy {
 		}
 	}
 
+	public Pair<Node, Boolean> findNextHop(ID key) throws CommunicationException {
+		this.checkValidity();
+		Pair<Node, Boolean> hop = this.endpoint.findNextHop(key);
+		try {
+			ThreadProxy temp = (ThreadProxy) hop.fst;
+			return new Pair<>(temp.cloneMeAt(this.creatorURL), hop.snd);
+		} catch (Throwable t) {
+			logger.debug("Exception during clone of proxy.", t);
+			throw new CommunicationException(t);
+		}
+	}
+
 	public void insertEntry(Service entry) throws CommunicationException {
 		this.checkValidity();
 		logger.debug("Trying to execute insert().");
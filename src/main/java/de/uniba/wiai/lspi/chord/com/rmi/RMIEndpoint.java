@@ -130,6 +130,17 @@ public final class RMIEndpoint extends Endpoint implements RemoteNode {
 		}
 	}
 
+	public PairS<RemoteNodeInfo, Boolean> findNextHop(ID key) throws CommunicationException,
+			RemoteException {
+		try {
+			Pair<Node, Boolean> node = this.node.findNextHop(key);
+			return new PairS<>(createInfo(node.fst), node.snd);
+		} catch (ClassCastException e) {
+			throw new RemoteException(
+					"Remote node uses unsuitable communication protocol!", e);
+		}
+	}
+
 	public ID getNodeID() throws RemoteException {
 		return this.node.getNodeID();
 	}
@@ -154,6 +154,18 @@ public final class RMIProxy extends Proxy {
 		}
 	}
 
+	@Override
+	public Pair<Node, Boolean> findNextHop(ID key) throws CommunicationException {
+		this.testConnection();
+		try {
+			PairS<RemoteNodeInfo, Boolean> info = this.remoteNode.findNextHop(key);
+			return new Pair<>(new RMIProxy(info.fst, this.localURL), info.snd);
+		} catch (RemoteException e) {
+			throw new CommunicationException("Could not connect to "
+					+ this.nodeURL + "!", e);
+		}
+	}
+
 	@Override
 	public void insertEntry(Service entryToInsert) throws CommunicationException {
 		this.testConnection();
@@ -57,6 +57,16 @@ public interface RemoteNode extends Remote {
 	public PairS<RemoteNodeInfo, Integer> findSuccessor(ID key) throws CommunicationException,
 			RemoteException;
 
+	/**
+	 * 
+	 * @param key
+	 * @return
+	 * @throws CommunicationException
+	 * @throws RemoteException
+	 */
+	public PairS<RemoteNodeInfo, Boolean> findNextHop(ID key) throws CommunicationException,
+			RemoteException;
+
 	/**
 	 * 
 	 * @return
@@ -0,0 +1,340 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.DEBUG;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import com.chord4js.Pair;
+import com.chord4js.PairS;
+import com.chord4js.ProviderId;
+import com.chord4js.Service;
+
+import de.uniba.wiai.lspi.chord.com.CommunicationException;
+import de.uniba.wiai.lspi.chord.com.Endpoint;
+import de.uniba.wiai.lspi.chord.com.EndpointStateListener;
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.com.RefsAndEntries;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * Handles the {@link Request requests} received over a single incoming
+ * connection from another node. Each request is invoked on the local node by
+ * an {@link InvocationThread}, once the state of the endpoint permits it.
+ * Subclasses receive the requests and send the {@link Response responses}
+ * over their kind of connection.
+ */
+abstract class AbstractRequestHandler implements EndpointStateListener {
+
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger logger = Logger
+			.getLogger(AbstractRequestHandler.class);
+
+	/**
+	 * The node this handler invokes methods on.
+	 */
+	private Node node;
+
+	/**
+	 * Indicates if this handler is connected.
+	 */
+	volatile boolean connected = true;
+
+	/**
+	 * The state that the endpoint, that started this request handler, is
+	 * currently in. See constants of class
+	 * {@link de.uniba.wiai.lspi.chord.com.Endpoint}.
+	 */
+	private int state;
+
+	/**
+	 * Threads waiting for a state of the endpoint that permits the execution
+	 * of the methods the threads are about to execute. This is also used as
+	 * synchronization variable for these threads.
+	 */
+	private final Set<Thread> waitingThreads = new HashSet<Thread>();
+
+	/**
+	 * @param node
+	 *            The {@link Node node} to delegate requested methods to.
+	 */
+	AbstractRequestHandler(Node node) {
+		this.node = node;
+	}
+
+	/**
+	 * Starts following the state of the endpoint.
+	 */
+	final void register(Endpoint endpoint) {
+		this.state = endpoint.getState();
+		endpoint.register(this);
+	}
+
+	/**
+	 * Schedules the execution of an invocation requested over this
+	 * connection.
+	 */
+	abstract void scheduleInvocation(InvocationThread invocation);
+
+	/**
+	 * Sends a response to a request received over this connection.
+	 *
+	 * @throws IOException
+	 *             If the connection is broken.
+	 */
+	abstract void send(Response response) throws IOException;
+
+	/**
+	 * @return A proxy of the node described by <code>nodeInfo</code> for the
+	 *         local node, of the protocol of this connection.
+	 */
+	abstract Node createProxy(RemoteNodeInfo nodeInfo);
+
+	/**
+	 * Closes the connection of this handler.
+	 */
+	abstract void disconnect();
+
+	/**
+	 * Marks this handler as disconnected and wakes up the threads waiting for
+	 * the permission to invoke a method.
+	 *
+	 * @return <code>true</code> if this handler was connected before.
+	 */
+	final boolean markDisconnected() {
+		synchronized (this.waitingThreads) {
+			if (!this.connected) {
+				return false;
+			}
+			this.connected = false;
+			this.waitingThreads.notifyAll();
+		}
+		/* release reference to node. */
+		this.node = null;
+		return true;
+	}
+
+	/**
+	 * Test if this handler is disconnected
+	 *
+	 * @return <code>true</code> if this is still connected to its remote end.
+	 */
+	public boolean isConnected() {
+		return this.connected;
+	}
+
+	/**
+	 * Method to create failure responses and send them to the requestor.
+	 *
+	 * @param t
+	 * @param failure
+	 * @param request
+	 */
+	void sendFailureResponse(Throwable t, String failure, Request request) {
+		if (!this.connected) {
+			return;
+		}
+		logger.debug("Trying to send failure response. Failure reason "
+				+ failure);
+		Response failureResponse = new Response(Response.REQUEST_FAILED,
+				request.getRequestType(), request.getReplyWith());
+		failureResponse.setFailureReason(failure);
+		failureResponse.setThrowable(t);
+		try {
+			this.send(failureResponse);
+			logger.debug("Response send.");
+		} catch (IOException e) {
+			if (this.connected) {
+				logger.debug("Connection seems to be broken down. Could not "
+						+ "send failure response. Connection is closed. ", e);
+				this.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Invokes methods on {@link #node}.
+	 *
+	 * @param methodType
+	 *            The type of the method to invoke. See {@link MethodConstants}.
+	 * @param parameters
+	 *            The parameters to pass to the method.
+	 * @return The result of the invoked method. May be <code>null</code> if
+	 *         method is void.
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	Serializable invokeMethod(int methodType, Serializable[] parameters)
+			throws Exception {
+
+		String method = MethodConstants.getMethodName(methodType);
+		this.waitForMethod(method);
+		final Node node = this.node;
+		/* If we got disconnected while waiting */
+		if (!this.connected || node == null) {
+			/* throw an Exception */
+			throw new CommunicationException("Connection closed.");
+		}
+		Serializable result = null;
+		if (logger.isEnabledFor(DEBUG)) {
+			logger.debug("Trying to invoke method " + methodType
+					+ " with parameters: ");
+			for (Serializable parameter : parameters) {
+				logger.debug(parameter);
+			}
+		}
+		switch (methodType) {
+		case MethodConstants.FIND_SUCCESSOR: {
+			Pair<Node, Integer> pair = node.findSuccessor((ID) parameters[0]);
+			Node chordNode = pair.fst;
+			result = new PairS<RemoteNodeInfo, Integer>
+			              (new RemoteNodeInfo(chordNode.getNodeURL(), chordNode.getNodeID())
+			              ,pair.snd);
+			break;
+		}
+		case MethodConstants.FIND_NEXT_HOP: {
+			Pair<Node, Boolean> hop = node.findNextHop((ID) parameters[0]);
+			Node chordNode = hop.fst;
+			result = new PairS<RemoteNodeInfo, Boolean>
+			              (new RemoteNodeInfo(chordNode.getNodeURL(), chordNode.getNodeID())
+			              ,hop.snd);
+			break;
+		}
+		case MethodConstants.GET_NODE_ID: {
+			result = node.getNodeID();
+			break;
+		}
+		case MethodConstants.INSERT_ENTRY: {
+			node.insertEntry((Service) parameters[0]);
+			break;
+		}
+		case MethodConstants.INSERT_REPLICAS: {
+			node.insertReplicas((Set<Service>) parameters[0]);
+			break;
+		}
+		case MethodConstants.LEAVES_NETWORK: {
+			RemoteNodeInfo nodeInfo = (RemoteNodeInfo) parameters[0];
+			node.leavesNetwork(this.createProxy(nodeInfo));
+			break;
+		}
+		case MethodConstants.NOTIFY: {
+			RemoteNodeInfo nodeInfo = (RemoteNodeInfo) parameters[0];
+			List<Node> l = node.notify(this.createProxy(nodeInfo));
+			List<RemoteNodeInfo> nodeInfos = new LinkedList<RemoteNodeInfo>();
+			for (Node current : l) {
+				nodeInfos.add(new RemoteNodeInfo(current.getNodeURL(),
+						current.getNodeID()));
+			}
+			result = (Serializable) nodeInfos;
+			break;
+		}
+		case MethodConstants.NOTIFY_AND_COPY: {
+			RemoteNodeInfo nodeInfo = (RemoteNodeInfo) parameters[0];
+			RefsAndEntries refs = node.notifyAndCopyEntries(this
+					.createProxy(nodeInfo));
+			List<Node> l = refs.getRefs();
+			List<RemoteNodeInfo> nodeInfos = new LinkedList<RemoteNodeInfo>();
+			for (Node current : l) {
+				nodeInfos.add(new RemoteNodeInfo(current.getNodeURL(),
+						current.getNodeID()));
+			}
+			RemoteRefsAndEntries rRefs = new RemoteRefsAndEntries(refs
+					.getEntries(), nodeInfos);
+			result = rRefs;
+			break;
+		}
+		case MethodConstants.PING: {
+			logger.debug("Invoking ping()");
+			node.ping();
+			logger.debug("ping() invoked.");
+			break;
+		}
+		case MethodConstants.REMOVE_ENTRY: {
+			node.removeEntry((ProviderId) parameters[0]);
+			break;
+		}
+		case MethodConstants.REMOVE_REPLICAS: {
+			node.removeReplicas((ID) parameters[0],
+					(Set<ProviderId>) parameters[1]);
+			break;
+		}
+		case MethodConstants.RETRIEVE_ENTRIES: {
+			result = (Serializable) node
+					.retrieveEntries((C4SMsgRetrieve) parameters[0]);
+			break;
+		}
+		default: {
+			logger.warn("Unknown method requested " + method);
+			throw new Exception("Unknown method requested " + method);
+		}
+		}
+		logger.debug("Returning result.");
+		return result;
+	}
+
+	/**
+	 * This method is used to block threads that want to make a method call
+	 * until the method invocation is permitted by the endpoint. Invocation of a
+	 * method depends on the state of the endpoint.
+	 *
+	 * @param method
+	 *            The name of the method to invoke. TODO: change this to another
+	 *            type.
+	 */
+	private void waitForMethod(String method) {
+
+		logger
+				.debug(method
+						+ " allowed? "
+						+ !(Collections.binarySearch(
+								Endpoint.METHODS_ALLOWED_IN_ACCEPT_ENTRIES,
+								method) >= 0));
+		synchronized (this.waitingThreads) {
+			while ((!(this.state == Endpoint.ACCEPT_ENTRIES))
+					&& (this.connected)
+					&& ((Collections.binarySearch(
+							Endpoint.METHODS_ALLOWED_IN_ACCEPT_ENTRIES, method) >= 0))) {
+
+				Thread currentThread = Thread.currentThread();
+				boolean debug = logger.isEnabledFor(DEBUG);
+				if (debug) {
+					logger.debug("HERE!!!" + currentThread
+							+ " waiting for permission to " + "execute "
+							+ method);
+				}
+				this.waitingThreads.add(currentThread);
+				try {
+					this.waitingThreads.wait();
+				} catch (InterruptedException e) {
+					// do nothing
+				}
+				if (debug) {
+					logger.debug("HERE!!!" + currentThread
+							+ " has been notified.");
+				}
+				this.waitingThreads.remove(currentThread);
+			}
+		}
+		logger.debug("waitForMethod(" + method + ") returns!");
+	}
+
+	public void notify(int newState) {
+		logger.debug("notify(" + newState + ") called.");
+		this.state = newState;
+		/* notify all threads waiting for a state change */
+		synchronized (this.waitingThreads) {
+			logger.debug("HERE!!! Notifying waiting threads. "
+					+ this.waitingThreads);
+			this.waitingThreads.notifyAll();
+		}
+	}
+}
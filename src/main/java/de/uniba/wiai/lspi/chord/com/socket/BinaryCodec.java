@@ -0,0 +1,669 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.chord4js.PairS;
+import com.chord4js.ProviderId;
+import com.chord4js.QoSConstraints;
+import com.chord4js.Service;
+import com.chord4js.ServiceId;
+
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
+import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
+
+/**
+ * Compact codec for the requests and responses of all methods of
+ * {@link MethodConstants}. Each frame starts with the {@link #VERSION} of the
+ * format. IDs are written as their raw bits, lengths and numbers as varints,
+ * and the strings of URLs and semantic names only the first time they are
+ * sent over the connection; afterwards, by their index in a dictionary both
+ * ends build alike. Values of other types, e.g. the throwables of failure
+ * responses, are Java-serialized.
+ */
+final class BinaryCodec extends MessageCodec {
+
+	/**
+	 * Version of the format, the first byte of every frame.
+	 */
+	static final int VERSION = 3;
+
+	/**
+	 * Most strings remembered by each end of a connection.
+	 */
+	private static final int MAX_STRINGS = 4096;
+
+	/**
+	 * Number of bytes of an ID.
+	 */
+	private static final int ID_BYTES = (ID.kTotalBitLen + 7) / 8;
+
+	private static final int REQUEST = 0;
+
+	private static final int RESPONSE = 1;
+
+	/*
+	 * Tags of the values.
+	 */
+	private static final int TAG_NULL = 0;
+
+	private static final int TAG_ID = 1;
+
+	private static final int TAG_INT = 2;
+
+	private static final int TAG_TRUE = 3;
+
+	private static final int TAG_FALSE = 4;
+
+	private static final int TAG_STRING = 5;
+
+	private static final int TAG_NODE_INFO = 6;
+
+	private static final int TAG_PAIR = 7;
+
+	private static final int TAG_LIST = 8;
+
+	private static final int TAG_SET = 9;
+
+	private static final int TAG_SERVICE_ID = 10;
+
+	private static final int TAG_PROVIDER_ID = 11;
+
+	private static final int TAG_SERVICE = 12;
+
+	private static final int TAG_REFS_AND_ENTRIES = 13;
+
+	private static final int TAG_RETRIEVE = 14;
+
+	private static final int TAG_RETRIEVE_RESPONSE = 15;
+
+	private static final int TAG_QOS = 16;
+
+	private static final int TAG_SERIALIZED = 127;
+
+	/**
+	 * Frame being encoded.
+	 */
+	private byte[] out = new byte[256];
+
+	private int position;
+
+	/**
+	 * Indices of the strings sent so far.
+	 */
+	private final Map<String, Integer> sentStrings = new HashMap<String, Integer>();
+
+	/**
+	 * The strings added to {@link #sentStrings} by the message being encoded,
+	 * to be forgotten if it cannot be encoded.
+	 */
+	private final List<String> addedStrings = new ArrayList<String>();
+
+	/**
+	 * The strings received so far, by index.
+	 */
+	private final List<String> receivedStrings = new ArrayList<String>();
+
+	/**
+	 * The URLs of the received strings.
+	 */
+	private final Map<String, URL> receivedURLs = new HashMap<String, URL>();
+
+	@Override
+	String getName() {
+		return BINARY;
+	}
+
+	@Override
+	ByteBuffer encode(Message message) throws IOException {
+		this.addedStrings.clear();
+		try {
+			return this.encodeFrame(message);
+		} catch (IOException | RuntimeException e) {
+			/* the peer will not see the message, nor its strings */
+			for (String string : this.addedStrings) {
+				this.sentStrings.remove(string);
+			}
+			if (e instanceof IOException) {
+				throw (IOException) e;
+			}
+			throw new IOException("Could not encode " + message, e);
+		}
+	}
+
+	private ByteBuffer encodeFrame(Message message) throws IOException {
+		// room for the length
+		this.position = 4;
+		this.writeByte(VERSION);
+		if (message instanceof Request) {
+			Request request = (Request) message;
+			this.writeByte(REQUEST);
+			this.writeVarint(request.getRequestType());
+			this.writeVarlong(request.getReplyWith());
+			this.writeVarlong(request.getBudget());
+			Serializable[] parameters = request.getParameters();
+			if (parameters == null) {
+				this.writeVarint(0);
+			} else {
+				this.writeVarint(parameters.length + 1);
+				for (Serializable parameter : parameters) {
+					this.writeValue(parameter);
+				}
+			}
+		} else if (message instanceof Response) {
+			Response response = (Response) message;
+			this.writeByte(RESPONSE);
+			this.writeVarint(response.getStatus());
+			this.writeVarint(zigzag(response.getMethodIdentifier()));
+			this.writeVarlong(response.getInReplyTo());
+			this.writeLiteral(response.getFailureReason());
+			this.writeValue(response.getResult());
+			this.writeValue(response.getThrowable());
+		} else {
+			throw new IOException("Unknown message " + message);
+		}
+		ByteBuffer frame = ByteBuffer.wrap(Arrays.copyOf(this.out,
+				this.position));
+		frame.putInt(0, this.position - 4);
+		return frame;
+	}
+
+	@Override
+	Message decode(ByteBuffer in) throws IOException {
+		try {
+			int version = in.get() & 0xFF;
+			if (version != VERSION) {
+				throw new IOException("Unsupported version " + version);
+			}
+			int kind = in.get();
+			if (kind == REQUEST) {
+				Request request = new Request(readVarint(in),
+						readVarlong(in));
+				request.setBudget(readVarlong(in));
+				int count = readVarint(in);
+				if (count < 0 || count - 1 > in.remaining()) {
+					throw new IOException("Invalid count " + count);
+				}
+				if (count > 0) {
+					Serializable[] parameters = new Serializable[count - 1];
+					for (int i = 0; i < parameters.length; i++) {
+						parameters[i] = this.readValue(in);
+					}
+					request.setParameters(parameters);
+				}
+				return request;
+			} else if (kind == RESPONSE) {
+				int status = readVarint(in);
+				int method = unzigzag(readVarint(in));
+				Response response = new Response(status, method,
+						readVarlong(in));
+				String failureReason = readLiteral(in);
+				if (failureReason != null) {
+					response.setFailureReason(failureReason);
+				}
+				response.setResult(this.readValue(in));
+				response.setThrowable((Throwable) this.readValue(in));
+				return response;
+			}
+			throw new IOException("Unknown message kind " + kind);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated message", e);
+		} catch (RuntimeException e) {
+			throw new IOException("Malformed message", e);
+		}
+	}
+
+	/*
+	 * Encoding.
+	 */
+
+	private void ensure(int bytes) {
+		if (this.position + bytes > this.out.length) {
+			this.out = Arrays.copyOf(this.out, Math.max(this.out.length * 2,
+					this.position + bytes));
+		}
+	}
+
+	private void writeByte(int b) {
+		this.ensure(1);
+		this.out[this.position++] = (byte) b;
+	}
+
+	private void writeBytes(byte[] bytes) {
+		this.ensure(bytes.length);
+		System.arraycopy(bytes, 0, this.out, this.position, bytes.length);
+		this.position += bytes.length;
+	}
+
+	private void writeVarint(int value) {
+		this.ensure(5);
+		while ((value & ~0x7F) != 0) {
+			this.out[this.position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.out[this.position++] = (byte) value;
+	}
+
+	private void writeVarlong(long value) {
+		this.ensure(10);
+		while ((value & ~0x7FL) != 0) {
+			this.out[this.position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.out[this.position++] = (byte) value;
+	}
+
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	/**
+	 * Writes a string sent once, e.g. the provider part of an ID.
+	 */
+	private void writeLiteral(String string) {
+		if (string == null) {
+			this.writeVarint(0);
+			return;
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		this.writeVarint(bytes.length + 1);
+		this.writeBytes(bytes);
+	}
+
+	/**
+	 * Writes a string likely to be sent again, by its index if it has been
+	 * sent before.
+	 */
+	private void writeString(String string) {
+		if (string == null) {
+			this.writeVarint(0);
+			return;
+		}
+		Integer index = this.sentStrings.get(string);
+		if (index != null) {
+			this.writeVarint(index + 2);
+			return;
+		}
+		this.writeVarint(1);
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		this.writeVarint(bytes.length);
+		this.writeBytes(bytes);
+		if (this.sentStrings.size() < MAX_STRINGS) {
+			this.sentStrings.put(string, this.sentStrings.size());
+			this.addedStrings.add(string);
+		}
+	}
+
+	private void writeId(ID id) {
+		long hi = id.highBits();
+		long lo = id.lowBits();
+		this.ensure(ID_BYTES);
+		for (int i = ID_BYTES - 1; i >= 0; i--) {
+			this.out[this.position++] = (byte) (i >= 8 ? hi >>> ((i - 8) * 8)
+					: lo >>> (i * 8));
+		}
+	}
+
+	private void writeNodeInfo(RemoteNodeInfo nodeInfo) {
+		this.writeString(nodeInfo.getNodeURL().toString());
+		this.writeId(nodeInfo.getNodeID());
+	}
+
+	private void writeServiceId(ServiceId serviceId) {
+		for (int i = 0; i < ServiceId.kPartsSemantic; i++) {
+			this.writeString(serviceId.parts[i]);
+		}
+	}
+
+	private void writeService(Service service) throws IOException {
+		this.writeValue(service.getProviderId());
+		List<String> qos = service.getQos();
+		if (qos == null) {
+			this.writeVarint(0);
+		} else {
+			this.writeVarint(qos.size() + 1);
+			for (String q : qos) {
+				this.writeString(q);
+			}
+		}
+	}
+
+	private void writeServices(Collection<Service> services)
+			throws IOException {
+		this.writeVarint(services.size());
+		for (Service service : services) {
+			this.writeService(service);
+		}
+	}
+
+	private void writeValue(Object value) throws IOException {
+		if (value == null) {
+			this.writeByte(TAG_NULL);
+		} else if (value instanceof ID) {
+			this.writeByte(TAG_ID);
+			this.writeId((ID) value);
+		} else if (value instanceof Integer) {
+			this.writeByte(TAG_INT);
+			this.writeVarint(zigzag((Integer) value));
+		} else if (value instanceof Boolean) {
+			this.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+		} else if (value instanceof String) {
+			this.writeByte(TAG_STRING);
+			this.writeString((String) value);
+		} else if (value instanceof RemoteNodeInfo) {
+			this.writeByte(TAG_NODE_INFO);
+			this.writeNodeInfo((RemoteNodeInfo) value);
+		} else if (value instanceof PairS) {
+			PairS<?, ?> pair = (PairS<?, ?>) value;
+			this.writeByte(TAG_PAIR);
+			this.writeValue(pair.fst);
+			this.writeValue(pair.snd);
+		} else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			this.writeByte(TAG_LIST);
+			this.writeVarint(list.size());
+			for (Object element : list) {
+				this.writeValue(element);
+			}
+		} else if (value instanceof Set) {
+			Set<?> set = (Set<?>) value;
+			this.writeByte(TAG_SET);
+			this.writeVarint(set.size());
+			for (Object element : set) {
+				this.writeValue(element);
+			}
+		} else if (value.getClass() == ProviderId.class) {
+			this.writeByte(TAG_PROVIDER_ID);
+			this.writeServiceId((ServiceId) value);
+			this.writeLiteral(((ProviderId) value).getProviderPart());
+		} else if (value.getClass() == ServiceId.class) {
+			this.writeByte(TAG_SERVICE_ID);
+			this.writeServiceId((ServiceId) value);
+		} else if (value.getClass() == Service.class) {
+			this.writeByte(TAG_SERVICE);
+			this.writeService((Service) value);
+		} else if (value instanceof RemoteRefsAndEntries) {
+			RemoteRefsAndEntries refs = (RemoteRefsAndEntries) value;
+			this.writeByte(TAG_REFS_AND_ENTRIES);
+			this.writeServices(refs.getEntries());
+			this.writeVarint(refs.getNodeInfos().size());
+			for (RemoteNodeInfo nodeInfo : refs.getNodeInfos()) {
+				this.writeNodeInfo(nodeInfo);
+			}
+		} else if (value.getClass() == C4SMsgRetrieve.class) {
+			C4SMsgRetrieve msg = (C4SMsgRetrieve) value;
+			this.writeByte(TAG_RETRIEVE);
+			this.writeValue(msg.svcId);
+			this.writeValue(msg.constraints);
+			this.writeVarint(zigzag(msg.amount));
+			if (msg.span.empty()) {
+				this.writeByte(0);
+			} else {
+				this.writeByte(1);
+				this.writeId(msg.span.bgn());
+				this.writeId(msg.span.end());
+			}
+		} else if (value.getClass() == C4SRetrieveResponse.class) {
+			C4SRetrieveResponse response = (C4SRetrieveResponse) value;
+			this.writeByte(TAG_RETRIEVE_RESPONSE);
+			this.writeServices(response.services);
+			this.writeVarint(response.getNumberOfHops());
+			this.writeByte(response.isRedirected() ? 1 : 0);
+			this.writeVarint(zigzag(response.isCached() ? response
+					.getHopsSaved() : -1));
+		} else if (value.getClass() == QoSConstraints.class) {
+			this.writeByte(TAG_QOS);
+		} else {
+			byte[] bytes = SerializedCodec.writeObject(value);
+			this.writeByte(TAG_SERIALIZED);
+			this.writeVarint(bytes.length);
+			this.writeBytes(bytes);
+		}
+	}
+
+	/*
+	 * Decoding.
+	 */
+
+	private static int readVarint(ByteBuffer in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private static long readVarlong(ByteBuffer in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static byte[] readBytes(ByteBuffer in, int length)
+			throws IOException {
+		if (length < 0 || length > in.remaining()) {
+			throw new IOException("Invalid length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * @return A number of elements to come, at most one per remaining byte.
+	 */
+	private static int readCount(ByteBuffer in) throws IOException {
+		int count = readVarint(in);
+		if (count < 0 || count > in.remaining()) {
+			throw new IOException("Invalid count " + count);
+		}
+		return count;
+	}
+
+	private static String readLiteral(ByteBuffer in) throws IOException {
+		int length = readVarint(in);
+		if (length == 0) {
+			return null;
+		}
+		return new String(readBytes(in, length - 1), StandardCharsets.UTF_8);
+	}
+
+	private String readString(ByteBuffer in) throws IOException {
+		int index = readVarint(in);
+		if (index == 0) {
+			return null;
+		} else if (index == 1) {
+			String string = new String(readBytes(in, readVarint(in)),
+					StandardCharsets.UTF_8);
+			if (this.receivedStrings.size() < MAX_STRINGS) {
+				this.receivedStrings.add(string);
+			}
+			return string;
+		} else if (index - 2 < this.receivedStrings.size()) {
+			return this.receivedStrings.get(index - 2);
+		}
+		throw new IOException("Unknown string " + index);
+	}
+
+	private static ID readId(ByteBuffer in) {
+		long hi = 0;
+		long lo = 0;
+		for (int i = ID_BYTES - 1; i >= 0; i--) {
+			long b = in.get() & 0xFF;
+			if (i >= 8) {
+				hi |= b << ((i - 8) * 8);
+			} else {
+				lo |= b << (i * 8);
+			}
+		}
+		return ID.fromBits(hi, lo);
+	}
+
+	private RemoteNodeInfo readNodeInfo(ByteBuffer in) throws IOException {
+		String string = this.readString(in);
+		URL url = this.receivedURLs.get(string);
+		if (url == null) {
+			url = new URL(string);
+			if (this.receivedURLs.size() < MAX_STRINGS) {
+				this.receivedURLs.put(string, url);
+			}
+		}
+		return new RemoteNodeInfo(url, readId(in));
+	}
+
+	/**
+	 * @return The semantic name of a service ID, without trailing
+	 *         <code>null</code>s.
+	 */
+	private String[] readSemanticName(ByteBuffer in) throws IOException {
+		String[] parts = new String[ServiceId.kPartsSemantic];
+		int length = 0;
+		for (int i = 0; i < parts.length; i++) {
+			parts[i] = this.readString(in);
+			if (parts[i] != null) {
+				length = i + 1;
+			}
+		}
+		return Arrays.copyOf(parts, length);
+	}
+
+	private Service readService(ByteBuffer in) throws IOException {
+		ProviderId providerId = (ProviderId) this.readValue(in);
+		// one more than the number of qos strings
+		int count = readVarint(in);
+		if (count < 0 || count - 1 > in.remaining()) {
+			throw new IOException("Invalid count " + count);
+		}
+		List<String> qos = null;
+		if (count > 0) {
+			qos = new ArrayList<String>(count - 1);
+			for (int i = 1; i < count; i++) {
+				qos.add(this.readString(in));
+			}
+		}
+		return new Service(providerId, qos);
+	}
+
+	private Set<Service> readServices(ByteBuffer in) throws IOException {
+		int count = readCount(in);
+		Set<Service> services = new HashSet<Service>();
+		for (int i = 0; i < count; i++) {
+			services.add(this.readService(in));
+		}
+		return services;
+	}
+
+	private Serializable readValue(ByteBuffer in) throws IOException {
+		int tag = in.get() & 0xFF;
+		switch (tag) {
+		case TAG_NULL:
+			return null;
+		case TAG_ID:
+			return readId(in);
+		case TAG_INT:
+			return unzigzag(readVarint(in));
+		case TAG_TRUE:
+			return Boolean.TRUE;
+		case TAG_FALSE:
+			return Boolean.FALSE;
+		case TAG_STRING:
+			return this.readString(in);
+		case TAG_NODE_INFO:
+			return this.readNodeInfo(in);
+		case TAG_PAIR:
+			return new PairS<Serializable, Serializable>(this.readValue(in),
+					this.readValue(in));
+		case TAG_LIST: {
+			int count = readCount(in);
+			ArrayList<Serializable> list = new ArrayList<Serializable>(count);
+			for (int i = 0; i < count; i++) {
+				list.add(this.readValue(in));
+			}
+			return list;
+		}
+		case TAG_SET: {
+			int count = readCount(in);
+			HashSet<Serializable> set = new HashSet<Serializable>();
+			for (int i = 0; i < count; i++) {
+				set.add(this.readValue(in));
+			}
+			return set;
+		}
+		case TAG_PROVIDER_ID: {
+			String[] semanticName = this.readSemanticName(in);
+			return new ProviderId(semanticName, readLiteral(in));
+		}
+		case TAG_SERVICE_ID:
+			return ServiceId.of(this.readSemanticName(in));
+		case TAG_SERVICE:
+			return this.readService(in);
+		case TAG_REFS_AND_ENTRIES: {
+			Set<Service> entries = this.readServices(in);
+			int count = readCount(in);
+			List<RemoteNodeInfo> nodeInfos = new ArrayList<RemoteNodeInfo>(
+					count);
+			for (int i = 0; i < count; i++) {
+				nodeInfos.add(this.readNodeInfo(in));
+			}
+			return new RemoteRefsAndEntries(entries, nodeInfos);
+		}
+		case TAG_RETRIEVE: {
+			ServiceId serviceId = (ServiceId) this.readValue(in);
+			QoSConstraints constraints = (QoSConstraints) this.readValue(in);
+			int amount = unzigzag(readVarint(in));
+			ID.IdSpan span = ID.IdSpan.kEmpty;
+			if (in.get() != 0) {
+				span = ID.IdSpan.Inclusive(readId(in), readId(in));
+			}
+			return new C4SMsgRetrieve(serviceId, constraints, amount, span);
+		}
+		case TAG_RETRIEVE_RESPONSE: {
+			C4SRetrieveResponse response = new C4SRetrieveResponse(this
+					.readServices(in));
+			response.incrementHop(readVarint(in) - 1);
+			if (in.get() != 0) {
+				response.markRedirected();
+			}
+			int hopsSaved = unzigzag(readVarint(in));
+			if (hopsSaved >= 0) {
+				response.markCached(hopsSaved);
+			}
+			return response;
+		}
+		case TAG_QOS:
+			return new QoSConstraints();
+		case TAG_SERIALIZED:
+			return (Serializable) SerializedCodec.readObject(readBytes(in,
+					readVarint(in)));
+		default:
+			throw new IOException("Unknown tag " + tag);
+		}
+	}
+}
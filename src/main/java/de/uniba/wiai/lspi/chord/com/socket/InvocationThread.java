@@ -28,19 +28,21 @@
 package de.uniba.wiai.lspi.chord.com.socket;
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import de.uniba.wiai.lspi.chord.com.Deadline;
+import de.uniba.wiai.lspi.chord.com.DeadlineExceededException;
 import de.uniba.wiai.lspi.util.logging.Logger;
 import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.*;
 
 /**
  * This <code>Thread</code> is used to make a method invocation on a node that
- * is accessible through sockets over its {@link SocketEndpoint}.
+ * is accessible through sockets over its {@link SocketEndpoint} or
+ * {@link NioEndpoint}.
  * 
  * @author sven
  * @version 1.0.5
@@ -109,31 +111,31 @@ class InvocationThread implements Runnable {
 	private Request request;
 
 	/**
-	 * The {@link RequestHandler} that started this thread.
+	 * The handler that started this thread, which sends the result of the
+	 * invocation.
 	 */
-	private RequestHandler handler;
+	private AbstractRequestHandler handler;
 
 	/**
-	 * The {@link ObjectOutputStream} to write the results of the invocation to.
+	 * The deadline of the invocation, from the time left to answer the
+	 * request when it was received; <code>null</code> for none.
 	 */
-	private ObjectOutputStream out;
+	private final Deadline deadline;
 
 	/**
 	 * 
 	 * @param handler1
-	 *            Reference to {@link RequestHandler} that started this.
+	 *            Reference to the handler that started this.
 	 * @param request1
 	 *            The {@link Request} that caused this invocation to be started.
-	 * @param out1
-	 *            The stream to which to write the result of the invocation.
 	 */
-	InvocationThread(RequestHandler handler1, Request request1,
-			ObjectOutputStream out1) {
+	InvocationThread(AbstractRequestHandler handler1, Request request1) {
 		this.handler = handler1;
 		this.request = request1;
-		this.out = out1;
+		this.deadline = request1.getBudget() > 0 ? Deadline.after(request1
+				.getBudget()) : null;
 		// schedule this for execution
-		this.handler.getEndpoint().scheduleInvocation(this);
+		this.handler.scheduleInvocation(this);
 		if (debug) {
 			logger.debug("InvocationThread scheduled for request " + request1);
 		}
@@ -151,7 +153,9 @@ class InvocationThread implements Runnable {
 	/**
 	 * This <code>run</code>-method invokes the Method that is assigned to it
 	 * by {@link Request} provided in its
-	 * {@link #InvocationThread(RequestHandler, Request, ObjectOutputStream) constructor}.
+	 * {@link #InvocationThread(AbstractRequestHandler, Request) constructor}.
+	 * The deadline of the request is current meanwhile, so that the requests
+	 * made to answer it must be answered by then, too.
 	 */
 	public void run() {
 		if (debug) {
@@ -163,7 +167,13 @@ class InvocationThread implements Runnable {
 			logger.debug("Request received. Requested method: " + methodName);
 		}
 		/* and try to execute the requested method */
+		Deadline previous = Deadline.set(this.deadline);
 		try {
+			if (this.deadline != null && this.deadline.isExpired()) {
+				/* the requestor does not wait any longer */
+				throw new DeadlineExceededException("Deadline passed before "
+						+ methodName + " was invoked");
+			}
 			if (debug) {
 				logger.debug("Trying to invoke method " + methodName);
 			}
@@ -173,11 +183,7 @@ class InvocationThread implements Runnable {
 			Response response = new Response(Response.REQUEST_SUCCESSFUL,
 					requestType, this.request.getReplyWith());
 			response.setResult(result);
-			synchronized (this.out) {
-				this.out.writeObject(response);
-				this.out.flush();
-				this.out.reset();
-			}
+			this.handler.send(response);
 			logger.debug("Method invoked and result has been sent.");
 		} catch (IOException e) {
 			if (this.handler.connected) {
@@ -193,21 +199,22 @@ class InvocationThread implements Runnable {
 			this.handler.sendFailureResponse(t, "Could not execute request! "
 					+ "Reason unknown! Maybe this helps: " + t.getMessage(),
 					this.request);
+		} finally {
+			Deadline.set(previous);
 		}
 //		this.request = null;
 		this.handler = null;
-		this.out = null;
 		if (debug) {
 			logger.debug(this + " finished");
 		}
 	}
 
 	/**
-	 * Creates a ThreadPool that is used by the {@link SocketEndpoint} to
-	 * execute instances of this class.
+	 * Creates a ThreadPool that is used by the {@link SocketEndpoint} or
+	 * {@link NioEndpoint} to execute instances of this class.
 	 * 
-	 * @return A ThreadPool that is used by the {@link SocketEndpoint} to
-	 *         execute instances of this class.
+	 * @return A ThreadPool that is used by the {@link SocketEndpoint} or
+	 *         {@link NioEndpoint} to execute instances of this class.
 	 */
 	static ThreadPoolExecutor createInvocationThreadPool() {
 		return new ThreadPoolExecutor(CORE_POOL_SIZE, MAX_POOL_SIZE,
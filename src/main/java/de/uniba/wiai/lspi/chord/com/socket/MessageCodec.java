@@ -0,0 +1,59 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Turns {@link Message messages} into frames for a {@link NioConnection} and
+ * back. A codec may keep state about the messages it has seen, so every
+ * connection has an instance of its own, which encodes the outgoing and
+ * decodes the incoming messages in the order they are sent.
+ */
+abstract class MessageCodec {
+
+	/**
+	 * Name of the codec using Java serialization.
+	 */
+	static final String SERIALIZED = "serialized";
+
+	/**
+	 * Name of the codec using {@link BinaryCodec}.
+	 */
+	static final String BINARY = "binary";
+
+	/**
+	 * @return A new codec of the given name.
+	 * @throws IllegalArgumentException
+	 *             If there is no codec of this name.
+	 */
+	static MessageCodec create(String name) {
+		if (SERIALIZED.equals(name)) {
+			return new SerializedCodec();
+		} else if (BINARY.equals(name)) {
+			return new BinaryCodec();
+		}
+		throw new IllegalArgumentException("Unknown codec " + name);
+	}
+
+	/**
+	 * @return The name of this codec, for {@link #create(String)}.
+	 */
+	abstract String getName();
+
+	/**
+	 * @return The frame of the message: the length of the encoded message as
+	 *         four bytes, followed by the encoded message.
+	 * @throws IOException
+	 *             If the message cannot be encoded.
+	 */
+	abstract ByteBuffer encode(Message message) throws IOException;
+
+	/**
+	 * @param body
+	 *            The encoded message of a frame, without its length.
+	 * @return The message.
+	 * @throws IOException
+	 *             If the frame does not hold a message of this codec.
+	 */
+	abstract Message decode(ByteBuffer body) throws IOException;
+}
@@ -0,0 +1,116 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the messages of a connection of the socket protocol to one
+ * {@link ObjectOutputStream}. Concurrent senders queue their messages, and
+ * the one that gets to write takes all queued so far and writes them with a
+ * single flush, while the others wait for their messages to be written with
+ * it. So a message is written when {@link #send(Message)} returns, but
+ * senders at the same time share one write to the socket. The stream is
+ * reset after each batch of messages, so within a batch, class descriptions
+ * and objects sent in several messages are written once.
+ */
+final class MessageWriter {
+
+	/**
+	 * Bytes buffered before they are written to the socket, unless the batch
+	 * is complete before.
+	 */
+	private static final int BUFFER_SIZE = 64 << 10;
+
+	private final ObjectOutputStream out;
+
+	/**
+	 * Messages queued but not yet taken by a writing sender.
+	 */
+	private final List<Message> queue = new ArrayList<Message>();
+
+	/**
+	 * Number of messages queued so far. Guarded by {@link #queue}.
+	 */
+	private long queued;
+
+	/**
+	 * Number of messages written so far. Guarded by this.
+	 */
+	private long written;
+
+	/**
+	 * Why the stream cannot be written to anymore, <code>null</code> as long
+	 * as it can. Guarded by this.
+	 */
+	private IOException failure;
+
+	/**
+	 * Writes the header of the stream.
+	 *
+	 * @throws IOException
+	 *             If the header could not be written.
+	 */
+	MessageWriter(OutputStream stream) throws IOException {
+		this.out = new ObjectOutputStream(new BufferedOutputStream(stream,
+				BUFFER_SIZE));
+		this.out.flush();
+	}
+
+	/**
+	 * Writes a message, together with the ones queued by other senders
+	 * meanwhile.
+	 *
+	 * @throws IOException
+	 *             If the message could not be written. The stream cannot be
+	 *             used anymore then.
+	 */
+	void send(Message message) throws IOException {
+		long ticket;
+		synchronized (this.queue) {
+			this.queue.add(message);
+			ticket = ++this.queued;
+		}
+		synchronized (this) {
+			if (this.written >= ticket) {
+				return;
+			}
+			if (this.failure != null) {
+				throw new IOException("Connection broken.", this.failure);
+			}
+			Message[] batch;
+			synchronized (this.queue) {
+				batch = this.queue.toArray(new Message[this.queue.size()]);
+				this.queue.clear();
+			}
+			try {
+				for (Message queuedMessage : batch) {
+					this.out.writeObject(queuedMessage);
+				}
+				this.out.reset();
+				this.out.flush();
+			} catch (IOException e) {
+				this.failure = e;
+				throw e;
+			} catch (RuntimeException e) {
+				/* the stream holds part of a message now */
+				this.failure = new IOException("Could not write message.", e);
+				throw this.failure;
+			}
+			this.written += batch.length;
+		}
+	}
+
+	/**
+	 * Closes the stream. Messages sent afterwards fail.
+	 */
+	synchronized void close() throws IOException {
+		if (this.failure == null) {
+			this.failure = new IOException("Connection closed.");
+		}
+		this.out.close();
+	}
+}
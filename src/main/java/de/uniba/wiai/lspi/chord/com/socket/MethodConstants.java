@@ -113,6 +113,11 @@ final class MethodConstants {
 	 */
 	static final int SHUTDOWN = 11;
 
+	/**
+	 * Integer constant used to identify method <code>findNextHop</code>.
+	 */
+	static final int FIND_NEXT_HOP = 12;
+
 	/**
 	 * Array containing names of methods of
 	 * {@link de.uniba.wiai.lspi.chord.com.Node}. A name of a method
@@ -122,7 +127,7 @@ final class MethodConstants {
 	static final String[] METHOD_NAMES = new String[] { "findSuccessor",
 			"getNodeID", "insertEntry", "insertReplicas", "leavesNetwork",
 			"notify", "notifyAndCopyEntries", "ping", "removeEntry",
-			"removeReplicas", "retrieveEntries", "shutdown" };
+			"removeReplicas", "retrieveEntries", "shutdown", "findNextHop" };
 
 	/**
 	 * Used to get the name of a method for a method identifier.
@@ -135,4 +140,49 @@ final class MethodConstants {
 		return METHOD_NAMES[methodIdentifier];
 	}
 
+	/**
+	 * Name of the property giving the time in milliseconds to wait for the
+	 * response to a request, 0 for no limit. Followed by a dot and the name of
+	 * a method, it gives the time for the requests of that method.
+	 */
+	static final String TIMEOUT_PROPERTY_NAME = MethodConstants.class
+			.getName()
+			+ ".timeout";
+
+	/**
+	 * Time in milliseconds to wait for the response to a request, indexed by
+	 * the identifier of its method.
+	 */
+	private static volatile long[] timeouts;
+
+	static {
+		loadTimeouts();
+	}
+
+	/**
+	 * Reads the timeouts of all methods from the system properties. They are
+	 * read once, as looking them up on every request costs more than the
+	 * request itself; call this again after changing the properties.
+	 */
+	static void loadTimeouts() {
+		final long defaultTimeout = Long.getLong(TIMEOUT_PROPERTY_NAME, 0);
+		final long[] loaded = new long[METHOD_NAMES.length];
+		for (int i = 0; i < loaded.length; i++) {
+			loaded[i] = Long.getLong(TIMEOUT_PROPERTY_NAME + "."
+					+ METHOD_NAMES[i], defaultTimeout);
+		}
+		timeouts = loaded;
+	}
+
+	/**
+	 * Used to get the time to wait for the response to a request.
+	 * 
+	 * @param methodIdentifier
+	 *            The identifier of the method.
+	 * @return The time in milliseconds, 0 for no limit.
+	 */
+	static long getTimeout(int methodIdentifier) {
+		return timeouts[methodIdentifier];
+	}
+
 }
@@ -0,0 +1,291 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * Non-blocking connection carrying {@link Message messages} as frames: the
+ * length of the encoded message as four bytes, followed by the message. Each
+ * connection starts with the {@link SerializedCodec}, and may switch to
+ * another codec once both ends have agreed on it.
+ * Messages may be sent from any thread; they are queued and written by the
+ * {@link NioSelector I/O thread} of the connection, as many at once as the
+ * socket takes. Received messages are passed to the listener on the I/O
+ * thread, which therefore must not block.
+ */
+final class NioConnection implements NioSelector.Handler {
+
+	/**
+	 * Receives the messages of a connection.
+	 */
+	interface Listener {
+
+		/**
+		 * Invoked on the I/O thread for every message received.
+		 */
+		void received(Message message);
+
+		/**
+		 * Invoked once the connection has been closed, by either end.
+		 */
+		void closed();
+	}
+
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger logger = Logger.getLogger(NioConnection.class);
+
+	/**
+	 * Largest frame accepted; a larger length means a corrupt stream.
+	 */
+	private static final int MAX_FRAME = 64 << 20;
+
+	private final SocketChannel channel;
+
+	private final NioSelector selector;
+
+	private final Listener listener;
+
+	/**
+	 * Key of the channel, set on the I/O thread.
+	 */
+	private SelectionKey key;
+
+	/**
+	 * Bytes read but not yet received as messages. Used by the I/O thread
+	 * only.
+	 */
+	private ByteBuffer in = ByteBuffer.allocate(16 << 10);
+
+	/**
+	 * Frames queued by the senders.
+	 */
+	private final ConcurrentLinkedQueue<ByteBuffer> out = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	/**
+	 * Frames taken from {@link #out} but not yet written completely. Used by
+	 * the I/O thread only.
+	 */
+	private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<ByteBuffer>();
+
+	/**
+	 * Whether the I/O thread has been asked to write the queued frames.
+	 */
+	private final AtomicBoolean flushing = new AtomicBoolean();
+
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/**
+	 * Codec of the messages. Used by the senders while holding the lock on
+	 * {@link #out}, so that frames are queued in the order they are encoded,
+	 * and by the I/O thread.
+	 */
+	private volatile MessageCodec codec = new SerializedCodec();
+
+	/**
+	 * @param channel
+	 *            Connected channel, switched to non-blocking mode.
+	 * @throws IOException
+	 *             If the channel could not be configured.
+	 */
+	NioConnection(SocketChannel channel, NioSelector selector, Listener listener)
+			throws IOException {
+		this.channel = channel;
+		this.selector = selector;
+		this.listener = listener;
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+	}
+
+	/**
+	 * Starts reading messages. Must be invoked before the first message is
+	 * sent.
+	 */
+	void start() {
+		this.selector.execute(() -> {
+			try {
+				this.key = this.selector.register(this.channel,
+						SelectionKey.OP_READ, this);
+			} catch (ClosedChannelException e) {
+				this.close();
+			}
+		});
+	}
+
+	/**
+	 * Queues a message to be written by the I/O thread.
+	 *
+	 * @throws IOException
+	 *             If the message cannot be serialized, or the connection has
+	 *             been closed.
+	 */
+	void send(Message message) throws IOException {
+		if (this.closed.get()) {
+			throw new IOException("Connection closed.");
+		}
+		synchronized (this.out) {
+			this.out.add(this.codec.encode(message));
+		}
+		if (this.flushing.compareAndSet(false, true)) {
+			this.selector.execute(this::flush);
+		}
+	}
+
+	/**
+	 * Switches to another codec. The messages sent afterwards are encoded
+	 * with it; the ones received afterwards must be, so this has to be
+	 * invoked by the {@link Listener listener} while it receives the last
+	 * message of the former codec.
+	 */
+	void setCodec(MessageCodec codec) {
+		synchronized (this.out) {
+			this.codec = codec;
+		}
+	}
+
+	/**
+	 * Closes the connection, after the I/O thread has written the frames
+	 * queued so far if the socket takes them at once.
+	 */
+	void closeLater() {
+		this.selector.execute(this::close);
+	}
+
+	/**
+	 * Closes the connection at once.
+	 */
+	void close() {
+		if (!this.closed.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			logger.debug("Exception while closing channel " + this.channel, e);
+		}
+		this.listener.closed();
+	}
+
+	boolean isClosed() {
+		return this.closed.get();
+	}
+
+	public void ready(SelectionKey key) {
+		if (key.isValid() && key.isWritable()) {
+			this.flush();
+		}
+		if (key.isValid() && key.isReadable()) {
+			this.read();
+		}
+	}
+
+	/**
+	 * Writes the queued frames, gathering as many as the socket takes into
+	 * one write. Runs on the I/O thread.
+	 */
+	private void flush() {
+		if (this.closed.get() || this.key == null) {
+			return;
+		}
+		try {
+			for (;;) {
+				ByteBuffer frame;
+				while ((frame = this.out.poll()) != null) {
+					this.writing.add(frame);
+				}
+				if (this.writing.isEmpty()) {
+					this.flushing.set(false);
+					// a sender may have queued a frame after the last poll
+					if (this.out.isEmpty()
+							|| !this.flushing.compareAndSet(false, true)) {
+						this.key.interestOps(SelectionKey.OP_READ);
+						return;
+					}
+					continue;
+				}
+				this.channel.write(this.writing
+						.toArray(new ByteBuffer[this.writing.size()]));
+				while (!this.writing.isEmpty()
+						&& !this.writing.peek().hasRemaining()) {
+					this.writing.poll();
+				}
+				if (!this.writing.isEmpty()) {
+					// socket buffer full, go on when it can take more
+					this.key.interestOps(SelectionKey.OP_READ
+							| SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+		} catch (IOException e) {
+			logger.debug("Could not write to " + this.channel, e);
+			this.close();
+		}
+	}
+
+	/**
+	 * Reads what is available and passes the complete messages to the
+	 * listener. Runs on the I/O thread.
+	 */
+	private void read() {
+		try {
+			if (this.channel.read(this.in) < 0) {
+				this.close();
+				return;
+			}
+			this.in.flip();
+			int needed = 0;
+			while (this.in.remaining() >= 4) {
+				int length = this.in.getInt(this.in.position());
+				if (length < 0 || length > MAX_FRAME) {
+					throw new IOException("Invalid frame length " + length);
+				}
+				if (this.in.remaining() < 4 + length) {
+					needed = 4 + length;
+					break;
+				}
+				this.in.getInt();
+				int end = this.in.position() + length;
+				ByteBuffer body = this.in.duplicate();
+				body.limit(end);
+				this.in.position(end);
+				this.receive(this.codec.decode(body));
+				if (this.closed.get()) {
+					return;
+				}
+			}
+			this.in.compact();
+			if (needed > this.in.capacity()) {
+				ByteBuffer larger = ByteBuffer.allocate(needed);
+				this.in.flip();
+				larger.put(this.in);
+				this.in = larger;
+			}
+		} catch (IOException e) {
+			logger.debug("Could not read from " + this.channel, e);
+			this.close();
+		}
+	}
+
+	private void receive(Message message) {
+		try {
+			this.listener.received(message);
+		} catch (RuntimeException e) {
+			logger.error("Unexpected exception while receiving message "
+					+ message, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "NioConnection " + this.channel;
+	}
+}
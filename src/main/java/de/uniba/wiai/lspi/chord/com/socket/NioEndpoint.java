@@ -0,0 +1,192 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import de.uniba.wiai.lspi.chord.com.Endpoint;
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * Endpoint for the protocol indexed by <code>{@link URL#NIO_PROTOCOL}</code>.
+ * It speaks the same requests as {@link SocketEndpoint}, but serves its
+ * connections with the few I/O threads of {@link NioSelector} instead of a
+ * thread per connection. Only the invocations on the local node run on a
+ * thread pool of the endpoint, as with {@link SocketEndpoint}.
+ */
+public final class NioEndpoint extends Endpoint implements NioSelector.Handler {
+
+	/**
+	 * Logger for this endpoint.
+	 */
+	private static final Logger logger = Logger.getLogger(NioEndpoint.class);
+
+	/**
+	 * The handlers of the accepted connections.
+	 */
+	private final Set<NioRequestHandler> handlers = ConcurrentHashMap
+			.newKeySet();
+
+	/**
+	 * Name of the {@link MessageCodec codec} of the connections accepted by
+	 * this endpoint, by default given by the property
+	 * <code>de.uniba.wiai.lspi.chord.com.socket.NioEndpoint.codec</code>.
+	 */
+	private volatile String codec = System.getProperty(
+			"de.uniba.wiai.lspi.chord.com.socket.NioEndpoint.codec",
+			MessageCodec.BINARY);
+
+	/**
+	 * The channel this endpoint accepts connections on.
+	 */
+	private ServerSocketChannel serverChannel;
+
+	/**
+	 * The {@link java.util.concurrent.Executor} carrying out the invocations
+	 * of methods on the local node.
+	 */
+	private final ThreadPoolExecutor invocationExecutor = InvocationThread
+			.createInvocationThreadPool();
+
+	/**
+	 * Creates a new <code>NioEndpoint</code> for the given {@link Node} with
+	 * {@link URL url}. <code>url</code> must have the protocol indexed by
+	 * <code>{@link URL#NIO_PROTOCOL}</code> in the
+	 * <code>{@link URL#KNOWN_PROTOCOLS}</code> array.
+	 *
+	 * @param node
+	 *            The {@link Node} node this endpoint provides connections to.
+	 * @param url
+	 *            The {@link URL} of this endpoint.
+	 */
+	public NioEndpoint(Node node, URL url) {
+		super(node, url);
+		logger.info("Initialisation finished.");
+	}
+
+	protected void openConnections() {
+		try {
+			final ServerSocketChannel channel = ServerSocketChannel.open();
+			channel.socket().setReuseAddress(true);
+			channel.bind(new InetSocketAddress(this.url.getPort()));
+			channel.configureBlocking(false);
+			this.serverChannel = channel;
+			final NioSelector selector = NioSelector.next();
+			selector.execute(() -> {
+				try {
+					selector.register(channel, SelectionKey.OP_ACCEPT, this);
+				} catch (ClosedChannelException e) {
+					// closed before it was served
+				}
+			});
+			this.setState(LISTENING);
+			logger.debug("Listening on port " + this.url.getPort());
+		} catch (IOException e) {
+			/* TODO: change type of exception */
+			throw new RuntimeException("NioEndpoint could not listen on port "
+					+ this.url.getPort() + " " + e.getMessage());
+		}
+	}
+
+	protected void entriesAcceptable() {
+		logger.debug("entriesAcceptable() called");
+		this.setState(ACCEPT_ENTRIES);
+	}
+
+	protected void closeConnections() {
+		this.setState(STARTED);
+		try {
+			this.serverChannel.close();
+		} catch (IOException e) {
+			logger.debug("Could not close channel " + this.serverChannel, e);
+		}
+		for (NioRequestHandler handler : new ArrayList<NioRequestHandler>(
+				this.handlers)) {
+			handler.disconnect();
+		}
+		this.invocationExecutor.shutdownNow();
+		/*
+		 * Close outgoing connections of this node.
+		 */
+		NioProxy.shutDownAll(this.url);
+	}
+
+	/**
+	 * To other nodes, a crashed node looks like one whose connections have
+	 * been closed.
+	 */
+	@Override
+	public void crash() {
+		this.closeConnections();
+		synchronized (endpoints) {
+			endpoints.remove(this.url);
+		}
+	}
+
+	/**
+	 * Accepts the pending connections. Runs on the I/O thread.
+	 */
+	public void ready(SelectionKey key) {
+		SocketChannel channel;
+		try {
+			while ((channel = this.serverChannel.accept()) != null) {
+				logger.debug("Incoming connection " + channel);
+				try {
+					NioRequestHandler handler = new NioRequestHandler(
+							this.node, channel, this);
+					this.handlers.add(handler);
+					handler.start();
+				} catch (IOException e) {
+					logger.debug("Could not accept connection from other node!",
+							e);
+					channel.close();
+				}
+			}
+		} catch (IOException e) {
+			if (this.getState() > STARTED) {
+				logger.warn("Could not accept connections", e);
+			}
+		}
+	}
+
+	/**
+	 * Sets the codec of the connections accepted from now on: either
+	 * <code>binary</code>, compact and the default, or <code>serialized</code>
+	 * for Java serialization. The proxies of other nodes learn it when they
+	 * connect.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If there is no codec of this name.
+	 */
+	public void setCodec(String name) {
+		MessageCodec.create(name);
+		this.codec = name;
+	}
+
+	/**
+	 * @return The name of the codec of the connections accepted from now on.
+	 */
+	public String getCodec() {
+		return this.codec;
+	}
+
+	void removeHandler(NioRequestHandler handler) {
+		this.handlers.remove(handler);
+	}
+
+	/**
+	 * Schedule an invocation of a local method to be executed.
+	 */
+	void scheduleInvocation(InvocationThread invocationThread) {
+		this.invocationExecutor.execute(invocationThread);
+	}
+}
@@ -0,0 +1,600 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.chord4js.Pair;
+import com.chord4js.PairS;
+import com.chord4js.ProviderId;
+import com.chord4js.Service;
+
+import de.uniba.wiai.lspi.chord.com.CommunicationException;
+import de.uniba.wiai.lspi.chord.com.Deadline;
+import de.uniba.wiai.lspi.chord.com.DeadlineExceededException;
+import de.uniba.wiai.lspi.chord.com.Endpoint;
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.com.Proxy;
+import de.uniba.wiai.lspi.chord.com.RefsAndEntries;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
+import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * Proxy for the protocol indexed by <code>{@link URL#NIO_PROTOCOL}</code>.
+ * All requests of a proxy share one {@link NioConnection}; each request waits
+ * for its response in a future, which is completed by the I/O thread of the
+ * connection. Continuations of the asynchronous methods that may block must
+ * therefore run on an executor of their own.
+ */
+public final class NioProxy extends Proxy implements NioConnection.Listener {
+
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger logger = Logger.getLogger(NioProxy.class);
+
+	/**
+	 * How long to wait for the remote endpoint to accept a connection, in
+	 * milliseconds.
+	 */
+	private static final int CONNECT_TIMEOUT = 5000;
+
+	/**
+	 * The proxies in use, by local and remote URL.
+	 */
+	private static final Map<String, NioProxy> proxies = new HashMap<String, NioProxy>();
+
+	private final URL urlOfLocalNode;
+
+	private final AtomicLong requestCounter = new AtomicLong();
+
+	/**
+	 * Futures of the requests waiting for their responses, by request
+	 * identifier.
+	 */
+	private final Map<Long, CompletableFuture<Response>> pending = new ConcurrentHashMap<Long, CompletableFuture<Response>>();
+
+	/**
+	 * The connection, established by the first request.
+	 */
+	private volatile NioConnection connection;
+
+	private volatile boolean disconnected = false;
+
+	/**
+	 * Creates a proxy for the node at <code>url</code>, asking it for its ID,
+	 * or returns the one in use.
+	 *
+	 * @param urlOfLocalNode
+	 *            The url of the local node.
+	 * @param url
+	 *            The url of the remote node.
+	 * @throws CommunicationException
+	 *             If the remote node could not be reached.
+	 */
+	public static NioProxy create(URL urlOfLocalNode, URL url)
+			throws CommunicationException {
+		String proxyKey = createProxyKey(urlOfLocalNode, url);
+		synchronized (proxies) {
+			NioProxy proxy = proxies.get(proxyKey);
+			if (proxy != null) {
+				return proxy;
+			}
+		}
+		/*
+		 * Not holding the lock while waiting for the ID, as the I/O threads
+		 * need it to create the proxies of the nodes they receive.
+		 */
+		NioProxy proxy = new NioProxy(url, urlOfLocalNode, null);
+		proxy.initializeNodeID();
+		NioProxy existing;
+		synchronized (proxies) {
+			existing = proxies.putIfAbsent(proxyKey, proxy);
+		}
+		if (existing != null) {
+			proxy.disconnect();
+			return existing;
+		}
+		return proxy;
+	}
+
+	/**
+	 * Creates a proxy for the node with the given url and ID, or returns the
+	 * one in use.
+	 */
+	static NioProxy create(URL url, URL urlOfLocalNode, ID nodeID) {
+		synchronized (proxies) {
+			String proxyKey = createProxyKey(urlOfLocalNode, url);
+			NioProxy proxy = proxies.get(proxyKey);
+			if (proxy == null) {
+				proxy = new NioProxy(url, urlOfLocalNode, nodeID);
+				proxies.put(proxyKey, proxy);
+			}
+			return proxy;
+		}
+	}
+
+	/**
+	 * Closes the connections of all proxies used by the node with the given
+	 * url.
+	 */
+	static void shutDownAll(URL urlOfLocalNode) {
+		List<NioProxy> closing = new ArrayList<NioProxy>();
+		synchronized (proxies) {
+			for (NioProxy proxy : proxies.values()) {
+				if (proxy.urlOfLocalNode.equals(urlOfLocalNode)) {
+					closing.add(proxy);
+				}
+			}
+		}
+		for (NioProxy proxy : closing) {
+			proxy.disconnect();
+		}
+	}
+
+	private static String createProxyKey(URL localURL, URL remoteURL) {
+		return localURL.toString() + "->" + remoteURL.toString();
+	}
+
+	private NioProxy(URL url, URL urlOfLocalNode, ID nodeID) {
+		super(url);
+		if (urlOfLocalNode == null) {
+			throw new IllegalArgumentException("URLs must not be null!");
+		}
+		this.urlOfLocalNode = urlOfLocalNode;
+		this.nodeID = nodeID;
+	}
+
+	private void initializeNodeID() throws CommunicationException {
+		this.nodeID = this.invoke(MethodConstants.GET_NODE_ID,
+				new Serializable[0], response -> {
+					try {
+						return (ID) response.getResult();
+					} catch (ClassCastException e) {
+						throw new CommunicationException(
+								"Could not understand result! "
+										+ response.getResult(), e);
+					}
+				});
+	}
+
+	/**
+	 * @return The connection to the remote node, established if there is
+	 *         none yet.
+	 */
+	private NioConnection connect() throws CommunicationException {
+		NioConnection connection = this.connection;
+		if (connection != null) {
+			return connection;
+		}
+		synchronized (this) {
+			if (this.disconnected) {
+				throw new CommunicationException("Connection from "
+						+ this.urlOfLocalNode + " to remote host "
+						+ this.nodeURL + " is broken down. ");
+			}
+			if (this.connection != null) {
+				return this.connection;
+			}
+			SocketChannel channel = null;
+			try {
+				logger.info("Opening new connection to " + this.nodeURL);
+				channel = SocketChannel.open();
+				channel.socket().connect(
+						new InetSocketAddress(this.nodeURL.getHost(),
+								this.nodeURL.getPort()), CONNECT_TIMEOUT);
+				connection = new NioConnection(channel, NioSelector.next(),
+						this);
+				connection.start();
+				Request request = this.createRequest(MethodConstants.CONNECT,
+						new Serializable[0]);
+				CompletableFuture<Response> accepted = this.expect(request);
+				connection.send(request);
+				Response response = accepted.get(CONNECT_TIMEOUT,
+						TimeUnit.MILLISECONDS);
+				if (response.getStatus() != Response.REQUEST_SUCCESSFUL) {
+					throw new CommunicationException(
+							"Establishing connection failed!");
+				}
+				/*
+				 * The endpoint answers the requests sent from now on in the
+				 * codec it has chosen.
+				 */
+				try {
+					connection.setCodec(MessageCodec.create((String) response
+							.getResult()));
+				} catch (RuntimeException e) {
+					throw new CommunicationException("Unknown codec "
+							+ response.getResult(), e);
+				}
+				this.connection = connection;
+				return connection;
+			} catch (IOException e) {
+				throw this.connectFailed(channel, new CommunicationException(
+						"Could not set up IO channel to host "
+								+ this.nodeURL.getHost(), e));
+			} catch (TimeoutException e) {
+				throw this.connectFailed(channel, new CommunicationException(
+						"Connection to remote host timed out!"));
+			} catch (ExecutionException e) {
+				throw this.connectFailed(channel, new CommunicationException(
+						"Establishing connection failed!", e.getCause()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw this.connectFailed(channel, new CommunicationException(
+						"Interrupted while connecting."));
+			} catch (CommunicationException e) {
+				throw this.connectFailed(channel, e);
+			}
+		}
+	}
+
+	private CommunicationException connectFailed(SocketChannel channel,
+			CommunicationException e) {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e1) {
+				// can be ignored, as the channel is no longer needed.
+			}
+		}
+		return e;
+	}
+
+	private Request createRequest(int methodIdentifier,
+			Serializable[] parameters) {
+		Request request = new Request(methodIdentifier, this.requestCounter
+				.incrementAndGet());
+		request.setParameters(parameters);
+		return request;
+	}
+
+	/**
+	 * @return The future to be completed with the response to the request.
+	 */
+	private CompletableFuture<Response> expect(Request request) {
+		CompletableFuture<Response> future = new CompletableFuture<Response>();
+		this.pending.put(request.getReplyWith(), future);
+		// a connection closed meanwhile no longer completes the future
+		if (this.disconnected) {
+			this.pending.remove(request.getReplyWith());
+			future.completeExceptionally(new CommunicationException(
+					"Connection to remote host " + " is broken down. "));
+		}
+		return future;
+	}
+
+	public void received(Message message) {
+		if (!(message instanceof Response)) {
+			logger.error("Unexpected message received! " + message);
+			return;
+		}
+		Response response = (Response) message;
+		CompletableFuture<Response> future = this.pending.remove(response
+				.getInReplyTo());
+		if (future != null) {
+			future.complete(response);
+		}
+	}
+
+	public void closed() {
+		logger.info("Connection to " + this.nodeURL + " closed.");
+		this.disconnected = true;
+		synchronized (proxies) {
+			String proxyKey = createProxyKey(this.urlOfLocalNode,
+					this.nodeURL);
+			if (proxies.get(proxyKey) == this) {
+				proxies.remove(proxyKey);
+			}
+		}
+		for (Long identifier : this.pending.keySet()) {
+			CompletableFuture<Response> future = this.pending
+					.remove(identifier);
+			if (future != null) {
+				future.completeExceptionally(new CommunicationException(
+						"Connection to remote host " + " is broken down. "));
+			}
+		}
+	}
+
+	private interface ResultReader<T> {
+		T read(Response response) throws CommunicationException;
+	}
+
+	/**
+	 * Sends a request and completes the returned future with the result read
+	 * from the response. The request fails without a response within the
+	 * {@link MethodConstants#getTimeout(int) timeout} of its method and the
+	 * {@link Deadline} of the calling thread, which is sent along; if the
+	 * deadline has passed, it fails with a {@link DeadlineExceededException}
+	 * without being sent.
+	 */
+	private <T> CompletableFuture<T> invokeAsync(int methodIdentifier,
+			Serializable[] parameters, final ResultReader<T> reader) {
+		final Deadline deadline = Deadline.within(MethodConstants
+				.getTimeout(methodIdentifier));
+		final long budget = deadline == null ? 0 : deadline.remaining();
+		if (deadline != null && budget == 0) {
+			CompletableFuture<T> expired = new CompletableFuture<T>();
+			expired.completeExceptionally(new DeadlineExceededException(
+					"Deadline passed before invoking "
+							+ MethodConstants.getMethodName(methodIdentifier)
+							+ " on " + this.nodeURL));
+			return expired;
+		}
+		CompletableFuture<Response> future;
+		try {
+			NioConnection connection = this.connect();
+			Request request = this.createRequest(methodIdentifier, parameters);
+			request.setBudget(budget);
+			future = this.expect(request);
+			if (budget > 0) {
+				final Long identifier = request.getReplyWith();
+				future.orTimeout(budget, TimeUnit.MILLISECONDS).whenComplete(
+						(response, t) -> this.pending.remove(identifier));
+			}
+			try {
+				connection.send(request);
+			} catch (IOException e) {
+				this.pending.remove(request.getReplyWith());
+				throw new CommunicationException("Could not connect to node "
+						+ this.nodeURL, e);
+			}
+		} catch (CommunicationException ce) {
+			logger.debug("Connection failed!");
+			future = new CompletableFuture<Response>();
+			future.completeExceptionally(ce);
+		}
+		return future.handle((response, t) -> {
+			try {
+				if (t instanceof TimeoutException) {
+					throw new CommunicationException("No response from "
+							+ this.nodeURL + " within " + budget + " ms!", t);
+				} else if (t != null) {
+					throw new CompletionException(t);
+				} else if (response.isFailureResponse()) {
+					throw new CommunicationException(response
+							.getFailureReason(), response.getThrowable());
+				}
+				return reader.read(response);
+			} catch (CommunicationException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	/**
+	 * Sends a request and waits for the result read from the response.
+	 */
+	private <T> T invoke(int methodIdentifier, Serializable[] parameters,
+			ResultReader<T> reader) throws CommunicationException {
+		try {
+			return this.invokeAsync(methodIdentifier, parameters, reader)
+					.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof CommunicationException) {
+				throw (CommunicationException) e.getCause();
+			}
+			if (e.getCause() instanceof DeadlineExceededException) {
+				throw (DeadlineExceededException) e.getCause();
+			}
+			throw new CommunicationException("Invocation failed!", e
+					.getCause());
+		}
+	}
+
+	/**
+	 * @return The local node if <code>nodeInfo</code> describes it, else a
+	 *         proxy for the described node.
+	 */
+	private Node toNode(RemoteNodeInfo nodeInfo) {
+		if (nodeInfo.getNodeURL().equals(this.urlOfLocalNode)) {
+			return Endpoint.getEndpoint(this.urlOfLocalNode).getNode();
+		}
+		return create(nodeInfo.getNodeURL(), this.urlOfLocalNode, nodeInfo
+				.getNodeID());
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends Serializable> Pair<Node, T> readNode(Response response)
+			throws CommunicationException {
+		try {
+			PairS<RemoteNodeInfo, T> nodeInfo = (PairS<RemoteNodeInfo, T>) response
+					.getResult();
+			return new Pair<Node, T>(this.toNode(nodeInfo.fst), nodeInfo.snd);
+		} catch (ClassCastException e) {
+			String message = "Could not understand result! "
+					+ response.getResult();
+			logger.fatal(message);
+			throw new CommunicationException(message, e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Node> readNodes(Response response)
+			throws CommunicationException {
+		try {
+			List<Node> nodes = new LinkedList<Node>();
+			for (RemoteNodeInfo nodeInfo : (List<RemoteNodeInfo>) response
+					.getResult()) {
+				nodes.add(this.toNode(nodeInfo));
+			}
+			return nodes;
+		} catch (ClassCastException cce) {
+			throw new CommunicationException("Could not understand result! "
+					+ response.getResult(), cce);
+		}
+	}
+
+	private RefsAndEntries readRefsAndEntries(Response response)
+			throws CommunicationException {
+		try {
+			RemoteRefsAndEntries result = (RemoteRefsAndEntries) response
+					.getResult();
+			List<Node> references = new LinkedList<Node>();
+			for (RemoteNodeInfo nodeInfo : result.getNodeInfos()) {
+				references.add(this.toNode(nodeInfo));
+			}
+			return new RefsAndEntries(references, result.getEntries());
+		} catch (ClassCastException cce) {
+			throw new CommunicationException("Could not understand result! "
+					+ response.getResult(), cce);
+		}
+	}
+
+	private static C4SRetrieveResponse readEntries(Response response)
+			throws CommunicationException {
+		try {
+			return (C4SRetrieveResponse) response.getResult();
+		} catch (ClassCastException cce) {
+			throw new CommunicationException("Could not understand result! "
+					+ response.getResult(), cce);
+		}
+	}
+
+	private static RemoteNodeInfo info(Node node) {
+		return new RemoteNodeInfo(node.getNodeURL(), node.getNodeID());
+	}
+
+	@Override
+	public CompletableFuture<Pair<Node, Integer>> findSuccessorAsync(ID key) {
+		return this.invokeAsync(MethodConstants.FIND_SUCCESSOR,
+				new Serializable[] { key }, this::<Integer> readNode);
+	}
+
+	@Override
+	public CompletableFuture<Pair<Node, Boolean>> findNextHopAsync(ID key) {
+		return this.invokeAsync(MethodConstants.FIND_NEXT_HOP,
+				new Serializable[] { key }, this::<Boolean> readNode);
+	}
+
+	@Override
+	public CompletableFuture<Void> insertEntryAsync(Service entry) {
+		return this.invokeAsync(MethodConstants.INSERT_ENTRY,
+				new Serializable[] { entry }, response -> null);
+	}
+
+	@Override
+	public CompletableFuture<Void> removeEntryAsync(ProviderId entry) {
+		return this.invokeAsync(MethodConstants.REMOVE_ENTRY,
+				new Serializable[] { entry }, response -> null);
+	}
+
+	@Override
+	public CompletableFuture<C4SRetrieveResponse> retrieveEntriesAsync(
+			C4SMsgRetrieve msg) {
+		return this.invokeAsync(MethodConstants.RETRIEVE_ENTRIES,
+				new Serializable[] { msg }, NioProxy::readEntries);
+	}
+
+	public Pair<Node, Integer> findSuccessor(ID key)
+			throws CommunicationException {
+		return this.invoke(MethodConstants.FIND_SUCCESSOR,
+				new Serializable[] { key }, this::<Integer> readNode);
+	}
+
+	public Pair<Node, Boolean> findNextHop(ID key)
+			throws CommunicationException {
+		return this.invoke(MethodConstants.FIND_NEXT_HOP,
+				new Serializable[] { key }, this::<Boolean> readNode);
+	}
+
+	public List<Node> notify(Node potentialPredecessor)
+			throws CommunicationException {
+		return this.invoke(MethodConstants.NOTIFY,
+				new Serializable[] { info(potentialPredecessor) },
+				this::readNodes);
+	}
+
+	public RefsAndEntries notifyAndCopyEntries(Node potentialPredecessor)
+			throws CommunicationException {
+		return this.invoke(MethodConstants.NOTIFY_AND_COPY,
+				new Serializable[] { info(potentialPredecessor) },
+				this::readRefsAndEntries);
+	}
+
+	public void ping() throws CommunicationException {
+		this.invoke(MethodConstants.PING, new Serializable[0], response -> null);
+	}
+
+	public void insertEntry(Service entry) throws CommunicationException {
+		this.invoke(MethodConstants.INSERT_ENTRY, new Serializable[] { entry },
+				response -> null);
+	}
+
+	public void insertReplicas(Set<Service> replicas)
+			throws CommunicationException {
+		this.invoke(MethodConstants.INSERT_REPLICAS,
+				new Serializable[] { (Serializable) replicas },
+				response -> null);
+	}
+
+	public void removeEntry(ProviderId entry) throws CommunicationException {
+		this.invoke(MethodConstants.REMOVE_ENTRY, new Serializable[] { entry },
+				response -> null);
+	}
+
+	public void removeReplicas(ID sendingNodeID, Set<ProviderId> replicas)
+			throws CommunicationException {
+		this.invoke(MethodConstants.REMOVE_REPLICAS, new Serializable[] {
+				sendingNodeID, (Serializable) replicas }, response -> null);
+	}
+
+	public C4SRetrieveResponse retrieveEntries(C4SMsgRetrieve msg)
+			throws CommunicationException {
+		return this.invoke(MethodConstants.RETRIEVE_ENTRIES,
+				new Serializable[] { msg }, NioProxy::readEntries);
+	}
+
+	public void leavesNetwork(Node predecessor) throws CommunicationException {
+		this.invoke(MethodConstants.LEAVES_NETWORK,
+				new Serializable[] { info(predecessor) }, response -> null);
+	}
+
+	/**
+	 * Tells the remote endpoint that this proxy is no longer used and closes
+	 * the connection.
+	 */
+	public void disconnect() {
+		logger.info("Destroying connection from " + this.urlOfLocalNode
+				+ " to " + this.nodeURL);
+		NioConnection connection;
+		synchronized (this) {
+			this.disconnected = true;
+			connection = this.connection;
+		}
+		if (connection != null) {
+			try {
+				connection.send(this.createRequest(MethodConstants.SHUTDOWN,
+						new Serializable[0]));
+			} catch (IOException e) {
+				logger.debug("Could not send shutdown notification.", e);
+			}
+			connection.closeLater();
+		} else {
+			this.closed();
+		}
+	}
+
+	public String toString() {
+		return "NioProxy from " + this.urlOfLocalNode + " to " + this.nodeURL
+				+ (this.nodeID == null ? "" : ", node ID " + this.nodeID);
+	}
+}
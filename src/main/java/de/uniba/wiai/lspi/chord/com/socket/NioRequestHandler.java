@@ -0,0 +1,130 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.RejectedExecutionException;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * Receives the requests sent over one incoming {@link NioConnection}. Unlike
+ * {@link RequestHandler}, it has no thread of its own: requests arrive on an
+ * I/O thread and are handed to the invocation thread pool of the endpoint.
+ */
+final class NioRequestHandler extends AbstractRequestHandler implements
+		NioConnection.Listener {
+
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger logger = Logger
+			.getLogger(NioRequestHandler.class);
+
+	private final NioEndpoint endpoint;
+
+	private final NioConnection connection;
+
+	/**
+	 * Whether the connection request has been received.
+	 */
+	private boolean handshaken;
+
+	/**
+	 * @param node
+	 *            The {@link Node node} to delegate requested methods to.
+	 * @param channel
+	 *            The accepted channel.
+	 * @throws IOException
+	 *             If the channel could not be configured.
+	 */
+	NioRequestHandler(Node node, SocketChannel channel, NioEndpoint endpoint)
+			throws IOException {
+		super(node);
+		this.endpoint = endpoint;
+		this.connection = new NioConnection(channel, NioSelector.next(), this);
+		this.register(endpoint);
+	}
+
+	/**
+	 * Starts receiving requests.
+	 */
+	void start() {
+		this.connection.start();
+	}
+
+	public void received(Message message) {
+		if (!(message instanceof Request)) {
+			logger.error("Unexpected message received! " + message);
+			this.disconnect();
+			return;
+		}
+		Request request = (Request) message;
+		if (!this.handshaken) {
+			this.handshaken = true;
+			boolean connect = request.getRequestType() == MethodConstants.CONNECT;
+			String codec = this.endpoint.getCodec();
+			Response response = new Response(connect ? Response.REQUEST_SUCCESSFUL
+					: Response.REQUEST_FAILED, request.getRequestType(), request
+					.getReplyWith());
+			/* tell the proxy which codec follows the handshake */
+			response.setResult(codec);
+			try {
+				this.send(response);
+			} catch (IOException e) {
+				connect = false;
+			}
+			if (connect) {
+				this.connection.setCodec(MessageCodec.create(codec));
+			} else {
+				logger.debug("Unexpected message received! " + request);
+				this.connection.closeLater();
+			}
+		} else if (request.getRequestType() == MethodConstants.SHUTDOWN) {
+			logger.debug("Received shutdown request");
+			this.disconnect();
+		} else {
+			logger.debug("Received request " + request);
+			try {
+				new InvocationThread(this, request);
+			} catch (RejectedExecutionException e) {
+				/* the endpoint is closing its connections */
+				this.disconnect();
+			}
+		}
+	}
+
+	public void closed() {
+		this.disconnect();
+	}
+
+	@Override
+	void scheduleInvocation(InvocationThread invocation) {
+		this.endpoint.scheduleInvocation(invocation);
+	}
+
+	@Override
+	void send(Response response) throws IOException {
+		this.connection.send(response);
+	}
+
+	@Override
+	Node createProxy(RemoteNodeInfo nodeInfo) {
+		return NioProxy.create(nodeInfo.getNodeURL(), this.endpoint.getNode()
+				.getNodeURL(), nodeInfo.getNodeID());
+	}
+
+	/**
+	 * Closes the connection and stops the invocations waiting for the
+	 * permission of the endpoint.
+	 */
+	@Override
+	void disconnect() {
+		if (this.markDisconnected()) {
+			logger.debug("Disconnecting " + this.connection);
+			this.connection.close();
+			this.endpoint.deregister(this);
+			this.endpoint.removeHandler(this);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * One of the few I/O threads shared by all {@link NioEndpoint endpoints} and
+ * {@link NioProxy proxies} of this JVM. Each thread owns a {@link Selector}
+ * and serves the channels assigned to it; channels are assigned round robin.
+ * The number of threads is given by the property
+ * <code>de.uniba.wiai.lspi.chord.com.socket.NioSelector.threads</code>.
+ */
+final class NioSelector implements Runnable {
+
+	/**
+	 * Served channel, notified by the thread of its selector.
+	 */
+	interface Handler {
+
+		/**
+		 * Invoked when the channel is ready for one of the operations of its
+		 * key.
+		 */
+		void ready(SelectionKey key);
+	}
+
+	/**
+	 * Logger for this class.
+	 */
+	private static final Logger logger = Logger.getLogger(NioSelector.class);
+
+	/**
+	 * Number of I/O threads.
+	 */
+	private static final int THREADS = Math.max(1, Integer.getInteger(
+			"de.uniba.wiai.lspi.chord.com.socket.NioSelector.threads", 2));
+
+	/**
+	 * The I/O threads, started when the first channel is served.
+	 */
+	private static NioSelector[] selectors;
+
+	private static int next;
+
+	private final Selector selector;
+
+	/**
+	 * Tasks to run on the I/O thread, e.g. registrations of channels.
+	 */
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private NioSelector(int number) throws IOException {
+		this.selector = Selector.open();
+		Thread thread = new Thread(this, "NioSelector-" + number);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return The I/O thread to serve a new channel.
+	 * @throws IOException
+	 *             If the selectors could not be opened.
+	 */
+	static synchronized NioSelector next() throws IOException {
+		if (selectors == null) {
+			NioSelector[] created = new NioSelector[THREADS];
+			for (int i = 0; i < THREADS; i++) {
+				created[i] = new NioSelector(i);
+			}
+			selectors = created;
+		}
+		next = (next + 1) % selectors.length;
+		return selectors[next];
+	}
+
+	/**
+	 * Runs a task on the I/O thread.
+	 */
+	void execute(Runnable task) {
+		this.tasks.add(task);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Registers a channel for the given operations. Must be invoked on the
+	 * I/O thread.
+	 *
+	 * @throws ClosedChannelException
+	 *             If the channel has been closed.
+	 */
+	SelectionKey register(SelectableChannel channel, int ops, Handler handler)
+			throws ClosedChannelException {
+		return channel.register(this.selector, ops, handler);
+	}
+
+	public void run() {
+		for (;;) {
+			try {
+				this.selector.select();
+				Runnable task;
+				while ((task = this.tasks.poll()) != null) {
+					task.run();
+				}
+				Iterator<SelectionKey> keys = this.selector.selectedKeys()
+						.iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						((Handler) key.attachment()).ready(key);
+					} catch (CancelledKeyException e) {
+						// closed by another thread meanwhile
+					}
+				}
+			} catch (Throwable t) {
+				logger.fatal("Unexpected throwable in I/O thread!", t);
+			}
+		}
+	}
+}
@@ -69,7 +69,14 @@ final class Request extends Message {
 	/**
 	 * Identifier used to identify this request. This identifier must be the value of the   {@link Response#getInReplyTo()}   field of a   {@link Response}   send for this request.
 	 */
-	private String replyWith;
+	private long replyWith;
+
+	/**
+	 * Milliseconds left to answer this request when it was sent, 0 for no
+	 * limit. The {@link de.uniba.wiai.lspi.chord.com.Deadline} of the
+	 * invocation at the receiving node.
+	 */
+	private long budget;
 
 	/**
 	 * Creates a new instance of Request
@@ -82,7 +89,7 @@ final class Request extends Message {
 	 *            be the value of the {@link Response#getInReplyTo()} field of a
 	 *            {@link Response} send for this request.
 	 */
-	protected Request(int type1, String replyWith1) {
+	protected Request(int type1, long replyWith1) {
 		super();
 		this.type = type1;
 		this.replyWith = replyWith1;
@@ -127,10 +134,31 @@ final class Request extends Message {
 	 *         the value of the {@link Response#getInReplyTo()} field of a
 	 *         {@link Response} send for this request.
 	 */
-	String getReplyWith() {
+	long getReplyWith() {
 		return this.replyWith;
 	}
 
+	/**
+	 * Set the time left to answer this request.
+	 *
+	 * @param budget1
+	 *            Milliseconds left to answer this request when it is sent, 0
+	 *            for no limit.
+	 */
+	void setBudget(long budget1) {
+		this.budget = budget1;
+	}
+
+	/**
+	 * Get the time left to answer this request.
+	 *
+	 * @return Milliseconds left to answer this request when it was sent, 0
+	 *         for no limit.
+	 */
+	long getBudget() {
+		return this.budget;
+	}
+
 	@Override
 	public String toString() {
 		return super.toString();
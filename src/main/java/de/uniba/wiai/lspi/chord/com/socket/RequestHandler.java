@@ -34,93 +34,55 @@
 
 package de.uniba.wiai.lspi.chord.com.socket;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
 import java.net.Socket;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
-import java.util.Vector;
 
-import com.chord4js.Pair;
-import com.chord4js.PairS;
-import com.chord4js.ProviderId;
-import com.chord4js.Service;
-
-import de.uniba.wiai.lspi.chord.com.CommunicationException;
-import de.uniba.wiai.lspi.chord.com.Endpoint;
-import de.uniba.wiai.lspi.chord.com.EndpointStateListener;
 import de.uniba.wiai.lspi.chord.com.Node;
-import de.uniba.wiai.lspi.chord.com.RefsAndEntries;
-import de.uniba.wiai.lspi.chord.data.ID;
-import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
 import de.uniba.wiai.lspi.util.logging.Logger;
 import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.*;
 
 /**
  * This class handles {@link Request requests} for a single incoming connection
  * from another node sent through a {@link SocketProxy proxy} that represents
- * the local node at the remote node.
+ * the local node at the remote node. It reads the requests with a thread of
+ * its own.
  * 
  * @author sven
  * @version 1.0.5
  */
-final class RequestHandler extends Thread implements EndpointStateListener {
+final class RequestHandler extends AbstractRequestHandler implements Runnable {
 
 	/**
 	 * Logger for this class.
 	 */
 	private static Logger logger = Logger.getLogger(RequestHandler.class);
 
-	/**
-	 * The node this RequestHandler invokes methods on.
-	 */
-	private Node node;
-
 	/**
 	 * The socket over that this RequestHandler receives requests.
 	 */
 	private Socket connection;
 
 	/**
-	 * {@link ObjectOutputStream}to write answers to.
+	 * {@link MessageWriter}to write answers with.
 	 */
-	private ObjectOutputStream out;
+	private volatile MessageWriter out;
 
 	/**
 	 * {@link ObjectInputStream}to read {@link Request requests}from.
 	 */
 	private ObjectInputStream in;
 
-	/**
-	 * Indicates if this RequestHandler is connected. Used in {@link #run()} to
-	 * determine if this is still listening for requests.
-	 */
-	boolean connected = true;
-
-	/**
-	 * The state that the {@link SocketEndpoint endpoint}, that started this
-	 * request handler, is currently in. See constants of class
-	 * {@link de.uniba.wiai.lspi.chord.com.Endpoint}.
-	 */
-	private int state;
-
 	/**
 	 * The {@link SocketEndpoint endpoint}that started this handler.
 	 */
 	private SocketEndpoint endpoint;
 
 	/**
-	 * This {@link Vector}contains {@link Thread threads}waiting for a state
-	 * of the {@link SocketEndpoint endpoint}that permits the execution of the
-	 * methods the threads are about to execute. This is also used as
-	 * synchronization variable for these threads.
+	 * The thread reading the requests.
 	 */
-	private Set<Thread> waitingThreads = new HashSet<Thread>();
+	private final Thread thread;
 
 	/**
 	 * Creates a new instance of RequestHandler
@@ -137,7 +99,8 @@ final class RequestHandler extends Thread implements EndpointStateListener {
 	 *             socket fails.
 	 */
 	RequestHandler(Node node_, Socket connection_, SocketEndpoint ep) throws IOException {
-		super("RequestHandler_" + ep.getURL());
+		super(node_);
+		this.thread = new Thread(this, "RequestHandler_" + ep.getURL());
 
 		if (RequestHandler.logger.isEnabledFor(INFO)) {
 			RequestHandler.logger.info("Initialising RequestHandler. Socket "
@@ -145,11 +108,13 @@ final class RequestHandler extends Thread implements EndpointStateListener {
 		}
 		// logger = Logger.getLogger(this.getClass().toString() +
 		// connection.toString());
-		this.node = node_;
 		this.connection = connection_;
-		this.out = new ObjectOutputStream(this.connection.getOutputStream());
+		/* responses are written in batches, see MessageWriter */
+		this.connection.setTcpNoDelay(true);
+		this.out = new MessageWriter(this.connection.getOutputStream());
 		try {
-			this.in = new ObjectInputStream(this.connection.getInputStream());
+			this.in = new ObjectInputStream(new BufferedInputStream(
+					this.connection.getInputStream()));
 		} catch (IOException e1) {
 			out.close(); 
 			throw e1; 
@@ -160,7 +125,7 @@ final class RequestHandler extends Thread implements EndpointStateListener {
 				Response resp = new Response(Response.REQUEST_FAILED, r
 						.getRequestType(), r.getReplyWith());
 				try {
-					out.writeObject(resp);
+					out.send(resp);
 				} catch (IOException e) {
 				}
 				try {
@@ -173,25 +138,41 @@ final class RequestHandler extends Thread implements EndpointStateListener {
 			} else {
 				Response resp = new Response(Response.REQUEST_SUCCESSFUL, r
 						.getRequestType(), r.getReplyWith());
-				out.writeObject(resp); 
+				out.send(resp); 
 			}
 		} catch (ClassNotFoundException e) {
 			throw new IOException("Unexpected class type received! " + e.getMessage()); 
 		}
 		this.endpoint = ep;
-		this.state = this.endpoint.getState();
-		this.endpoint.register(this);
+		this.register(ep);
 		logger.info("RequestHandler initialised.");
 	}
 
 	/**
-	 * Returns a reference to the endpoint this {@link RequestHandler} belongs
-	 * to.
-	 * 
-	 * @return Reference to the endpoint this {@link RequestHandler} belongs to.
+	 * Starts the thread reading the requests.
 	 */
-	SocketEndpoint getEndpoint() {
-		return this.endpoint;
+	void start() {
+		this.thread.start();
+	}
+
+	@Override
+	void scheduleInvocation(InvocationThread invocation) {
+		this.endpoint.scheduleInvocation(invocation);
+	}
+
+	@Override
+	void send(Response response) throws IOException {
+		final MessageWriter out = this.out;
+		if (out == null) {
+			throw new IOException("Connection closed.");
+		}
+		out.send(response);
+	}
+
+	@Override
+	Node createProxy(RemoteNodeInfo nodeInfo) {
+		return SocketProxy.create(nodeInfo.getNodeURL(), this.endpoint
+				.getNode().getNodeURL(), nodeInfo.getNodeID());
 	}
 
 	/**
@@ -215,13 +196,7 @@ final class RequestHandler extends Thread implements EndpointStateListener {
 					this.disconnect();
 				} else {
 					logger.debug("Received request " + request);
-					new InvocationThread(this, request, /*
-														 * "Request_" +
-														 * MethodConstants.getMethodName(request
-														 * .getRequestType()) +
-														 * "_" +
-														 * request.getReplyWith(),
-														 */this.out);
+					new InvocationThread(this, request);
 				}
 			} catch (IOException e) {
 				/*
@@ -247,196 +222,6 @@ final class RequestHandler extends Thread implements EndpointStateListener {
 		}
 	}
 
-	/**
-	 * Method to create failure responses and send them to the requestor.
-	 * 
-	 * @param t
-	 * @param failure
-	 * @param request
-	 */
-	void sendFailureResponse(Throwable t, String failure, Request request) {
-		if (!this.connected) {
-			return;
-		}
-		logger.debug("Trying to send failure response. Failure reason "
-				+ failure);
-		Response failureResponse = new Response(Response.REQUEST_FAILED,
-				request.getRequestType(), request.getReplyWith());
-		failureResponse.setFailureReason(failure);
-		failureResponse.setThrowable(t);
-		try {
-			synchronized (this.out) {
-				this.out.writeObject(failureResponse);
-				this.out.flush();
-				this.out.reset();
-			}
-			logger.debug("Response send.");
-		} catch (IOException e) {
-			if (this.connected) {
-				logger.debug("Connection seems to be broken down. Could not "
-						+ "send failure response. Connection is closed. ", e);
-				this.disconnect();
-			}
-		}
-	}
-
-	/**
-	 * Invokes methods on {@link #node}.
-	 * 
-	 * @param methodType
-	 *            The type of the method to invoke. See {@link MethodConstants}.
-	 * @param parameters
-	 *            The parameters to pass to the method.
-	 * @return The result of the invoked method. May be <code>null</code> if
-	 *         method is void.
-	 * @throws Exception
-	 */
-	Serializable invokeMethod(int methodType, Serializable[] parameters)
-			throws Exception {
-
-		String method = MethodConstants.getMethodName(methodType);
-		this.waitForMethod(method);
-		/* If we got disconnected while waiting */
-		if (!this.connected) {
-			/* throw an Exception */
-			throw new CommunicationException("Connection closed.");
-		}
-		Serializable result = null;
-		logger.debug("Trying to invoke method " + methodType
-				+ " with parameters: ");
-		for (Serializable parameter : parameters) {
-			logger.debug(parameter);
-		}
-		switch (methodType) {
-		case MethodConstants.FIND_SUCCESSOR: {
-			Pair<Node, Integer> pair = this.node.findSuccessor((ID) parameters[0]);
-			Node chordNode = pair.fst;
-			result = new PairS<RemoteNodeInfo, Integer>
-			              (new RemoteNodeInfo(chordNode.getNodeURL(), chordNode.getNodeID())
-			              ,pair.snd);
-			break;
-		}
-		case MethodConstants.GET_NODE_ID: {
-			result = this.node.getNodeID();
-			break;
-		}
-		case MethodConstants.INSERT_ENTRY: {
-			this.node.insertEntry((Service) parameters[0]);
-			break;
-		}
-		case MethodConstants.INSERT_REPLICAS: {
-			this.node.insertReplicas((Set<Service>) parameters[0]);
-			break;
-		}
-		case MethodConstants.LEAVES_NETWORK: {
-			RemoteNodeInfo nodeInfo = (RemoteNodeInfo) parameters[0];
-			this.node.leavesNetwork(SocketProxy.create(nodeInfo.getNodeURL(),
-					this.node.getNodeURL(), nodeInfo.getNodeID()));
-			break;
-		}
-		case MethodConstants.NOTIFY: {
-			RemoteNodeInfo nodeInfo = (RemoteNodeInfo) parameters[0];
-			List<Node> l = this.node.notify(SocketProxy.create(nodeInfo
-					.getNodeURL(), this.node.getNodeURL(), nodeInfo.getNodeID()));
-			List<RemoteNodeInfo> nodeInfos = new LinkedList<RemoteNodeInfo>();
-			for (Node current : l) {
-				nodeInfos.add(new RemoteNodeInfo(current.getNodeURL(),
-						current.getNodeID()));
-			}
-			result = (Serializable) nodeInfos;
-			break;
-		}
-		case MethodConstants.NOTIFY_AND_COPY: {
-			RemoteNodeInfo nodeInfo = (RemoteNodeInfo) parameters[0];
-			RefsAndEntries refs = this.node.notifyAndCopyEntries(SocketProxy
-					.create(nodeInfo.getNodeURL(), this.node.getNodeURL(), nodeInfo
-							.getNodeID()));
-			List<Node> l = refs.getRefs();
-			List<RemoteNodeInfo> nodeInfos = new LinkedList<RemoteNodeInfo>();
-			for (Node current : l) {
-				nodeInfos.add(new RemoteNodeInfo(current.getNodeURL(),
-						current.getNodeID()));
-			}
-			RemoteRefsAndEntries rRefs = new RemoteRefsAndEntries(refs
-					.getEntries(), nodeInfos);
-			result = rRefs;
-			break;
-		}
-		case MethodConstants.PING: {
-			logger.debug("Invoking ping()");
-			this.node.ping();
-			logger.debug("ping() invoked.");
-			break;
-		}
-		case MethodConstants.REMOVE_ENTRY: {
-			this.node.removeEntry((ProviderId) parameters[0]);
-			break;
-		}
-		case MethodConstants.REMOVE_REPLICAS: {
-			this.node.removeReplicas((ID) parameters[0],
-					(Set<ProviderId>) parameters[1]);
-			break;
-		}
-		case MethodConstants.RETRIEVE_ENTRIES: {
-			result = (Serializable) this.node
-					.retrieveEntries((C4SMsgRetrieve) parameters[0]);
-			break;
-		}
-		default: {
-			logger.warn("Unknown method requested " + method);
-			throw new Exception("Unknown method requested " + method);
-		}
-		}
-		logger.debug("Returning result.");
-		return result;
-	}
-
-	/**
-	 * This method is used to block threads that want to make a method call
-	 * until the method invocation is permitted by the endpoint. Invocation of a
-	 * method depends on the state of the endpoint.
-	 * 
-	 * @param method
-	 *            The name of the method to invoke. TODO: change this to another
-	 *            type.
-	 */
-	private void waitForMethod(String method) {
-
-		logger
-				.debug(method
-						+ " allowed? "
-						+ !(Collections.binarySearch(
-								Endpoint.METHODS_ALLOWED_IN_ACCEPT_ENTRIES,
-								method) >= 0));
-		synchronized (this.waitingThreads) {
-			while ((!(this.state == Endpoint.ACCEPT_ENTRIES))
-					&& (this.connected)
-					&& ((Collections.binarySearch(
-							Endpoint.METHODS_ALLOWED_IN_ACCEPT_ENTRIES, method) >= 0))) {
-
-				Thread currentThread = Thread.currentThread();
-				boolean debug = logger.isEnabledFor(DEBUG);
-				if (debug) {
-					logger.debug("HERE!!!" + currentThread
-							+ " waiting for permission to " + "execute "
-							+ method);
-				}
-				this.waitingThreads.add(currentThread);
-				try {
-					this.waitingThreads.wait();
-				} catch (InterruptedException e) {
-					// do nothing
-				}
-				if (debug) {
-					logger.debug("HERE!!!" + currentThread
-							+ " has been notified.");
-				}
-				this.waitingThreads.remove(currentThread);
-			}
-		}
-		logger.debug("waitForMethod(" + method + ") returns!");
-	}
-
 	/**
 	 * Disconnect this RequestHandler. Forces the socket, which this
 	 * RequestHandler is bound to, to be closed and {@link #run()}to be
@@ -445,21 +230,13 @@ final class RequestHandler extends Thread implements EndpointStateListener {
 	public void disconnect() {
 
 		logger.info("Disconnecting.");
-		if (this.connected) {
-			/* cause the while loop in run() method to be finished */
-			/* and notify all threads waiting for execution of a method */
-			synchronized (this.waitingThreads) {
-				this.connected = false;
-				this.waitingThreads.notifyAll();
-			}
-			/* release reference to node. */
-			this.node = null;
+		/* cause the while loop in run() method to be finished */
+		/* and notify all threads waiting for execution of a method */
+		if (this.markDisconnected()) {
 			/* try to close the socket */
 			try {
-				synchronized (this.out) {
-					this.out.close();
-					this.out = null;
-				}
+				this.out.close();
+				this.out = null;
 			} catch (IOException e) {
 				/* should not occur */
 				/* if closing of socket fails, that does not matter!??? */
@@ -490,24 +267,4 @@ final class RequestHandler extends Thread implements EndpointStateListener {
 		logger.debug("Disconnected.");
 	}
 
-	/**
-	 * Test if this RequestHandler is disconnected
-	 * 
-	 * @return <code>true</code> if this is still connected to its remote end.
-	 */
-	public boolean isConnected() {
-		return this.connected;
-	}
-
-	public void notify(int newState) {
-		logger.debug("notify(" + newState + ") called.");
-		this.state = newState;
-		/* notify all threads waiting for a state change */
-		synchronized (this.waitingThreads) {
-			logger.debug("HERE!!! Notifying waiting threads. "
-					+ this.waitingThreads);
-			this.waitingThreads.notifyAll();
-		}
-	}
-
 }
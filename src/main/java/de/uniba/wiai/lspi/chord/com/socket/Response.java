@@ -79,9 +79,9 @@ final class Response extends Message {
 	private int status = REQUEST_SUCCESSFUL;
 
 	/**
-	 * String defining the request that this is the response for.
+	 * Identifier of the request that this is the response for.
 	 */
-	private String inReplyTo;
+	private long inReplyTo;
 
 	/**
 	 * If this is a failure response and the failure has been caused by any
@@ -96,7 +96,7 @@ final class Response extends Message {
 	 * @param methodIdentifier1
 	 * @param inReplyTo1
 	 */
-	Response(int status1, int methodIdentifier1, String inReplyTo1) {
+	Response(int status1, int methodIdentifier1, long inReplyTo1) {
 		super();
 		this.status = status1;
 		this.methodIdentifier = methodIdentifier1;
@@ -178,9 +178,9 @@ final class Response extends Message {
 	}
 
 	/**
-	 * @return String that identifies the request for that this is the response.
+	 * @return Identifier of the request for that this is the response.
 	 */
-	String getInReplyTo() {
+	long getInReplyTo() {
 		return this.inReplyTo;
 	}
 
@@ -0,0 +1,71 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec writing each message with a fresh {@link ObjectOutputStream}, as the
+ * thread-per-connection socket protocol does. It is used for the handshake of
+ * every connection.
+ */
+final class SerializedCodec extends MessageCodec {
+
+	@Override
+	String getName() {
+		return SERIALIZED;
+	}
+
+	@Override
+	ByteBuffer encode(Message message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		// room for the length
+		bytes.write(new byte[4]);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(message);
+		out.close();
+		ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+		frame.putInt(0, frame.limit() - 4);
+		return frame;
+	}
+
+	@Override
+	Message decode(ByteBuffer body) throws IOException {
+		byte[] bytes = new byte[body.remaining()];
+		body.get(bytes);
+		Object message = readObject(bytes);
+		if (!(message instanceof Message)) {
+			throw new IOException("Unexpected object received! " + message);
+		}
+		return (Message) message;
+	}
+
+	/**
+	 * @return The object Java-serialized in the given bytes.
+	 */
+	static Object readObject(byte[] bytes) throws IOException {
+		try {
+			ObjectInputStream in = new ObjectInputStream(
+					new ByteArrayInputStream(bytes));
+			return in.readObject();
+		} catch (ClassNotFoundException e) {
+			/* Should not occur as all nodes should have the same classes */
+			throw new IOException("Unexpected class type received! "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return The Java-serialized bytes of an object.
+	 */
+	static byte[] writeObject(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.toByteArray();
+	}
+}
@@ -29,9 +29,9 @@ package de.uniba.wiai.lspi.chord.com.socket;
 
 import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.DEBUG;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
@@ -41,6 +41,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.chord4js.Pair;
 import com.chord4js.PairS;
@@ -48,6 +54,8 @@ import com.chord4js.ProviderId;
 import com.chord4js.Service;
 
 import de.uniba.wiai.lspi.chord.com.CommunicationException;
+import de.uniba.wiai.lspi.chord.com.Deadline;
+import de.uniba.wiai.lspi.chord.com.DeadlineExceededException;
 import de.uniba.wiai.lspi.chord.com.Endpoint;
 import de.uniba.wiai.lspi.chord.com.Node;
 import de.uniba.wiai.lspi.chord.com.Proxy;
@@ -89,10 +97,10 @@ public final class SocketProxy extends Proxy implements Runnable {
 	private URL urlOfLocalNode = null;
 
 	/**
-	 * Counter for requests that have been made by this proxy. Also required to
-	 * create unique identifiers for {@link Request requests}.
+	 * Counter for requests that have been made by this proxy. Its value is the
+	 * identifier of the last {@link Request request}.
 	 */
-	private long requestCounter = -1;
+	private final AtomicLong requestCounter = new AtomicLong();
 
 	/**
 	 * The socket that provides the connection to the node that this is the
@@ -103,11 +111,12 @@ public final class SocketProxy extends Proxy implements Runnable {
 	private transient Socket mySocket;
 
 	/**
-	 * The {@link ObjectOutputStream}this Proxy writes objects to. This is
-	 * transient as a proxy can be transferred over the network. After transfer
-	 * this stream has to be restored.
+	 * The {@link MessageWriter} this Proxy writes requests with, set once the
+	 * connection is established. This is transient as a proxy can be
+	 * transferred over the network. After transfer this stream has to be
+	 * restored.
 	 */
-	private transient ObjectOutputStream out;
+	private transient volatile MessageWriter out;
 
 	/**
 	 * The {@link ObjectInputStream}this Proxy reads objects from. This is
@@ -117,18 +126,10 @@ public final class SocketProxy extends Proxy implements Runnable {
 	private transient ObjectInputStream in;
 
 	/**
-	 * The {@link ObjectInputStream} this Proxy reads objects from. This is
-	 * transient as a proxy can be transferred over the network. After transfer
-	 * this stream has to be restored.
+	 * {@link Map} of requests waiting for their response, which is completed
+	 * by the thread reading the responses. Key: identifier of the request.
 	 */
-	private transient Map<String, Response> responses;
-
-	/**
-	 * {@link Map} where threads are put in that are waiting for a repsonse.
-	 * Key: identifier of the request (same as for the response). Value: The
-	 * Thread itself.
-	 */
-	private transient Map<String, WaitingThread> waitingThreads;
+	private final Map<Long, CompletableFuture<Response>> pending = new ConcurrentHashMap<Long, CompletableFuture<Response>>();
 
 	/**
 	 * This indicates that an exception occured while waiting for responses and
@@ -154,23 +155,34 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 */
 	public static SocketProxy create(URL urlOfLocalNode, URL url)
 			throws CommunicationException {
+		/*
+		 * added on 21.03.2006 by sven. See documentation of method
+		 * createProxyKey(URL, URL);
+		 */
+		String proxyKey = SocketProxy.createProxyKey(urlOfLocalNode, url);
 		synchronized (proxies) {
-			/*
-			 * added on 21.03.2006 by sven. See documentation of method
-			 * createProxyKey(URL, URL);
-			 */
-			String proxyKey = SocketProxy.createProxyKey(urlOfLocalNode, url);
 			logger.debug("Known proxies " + SocketProxy.proxies.keySet());
 			if (proxies.containsKey(proxyKey)) {
 				logger.debug("Returning existing proxy for " + url);
 				return proxies.get(proxyKey);
-			} else {
-				logger.debug("Creating new proxy for " + url);
-				SocketProxy newProxy = new SocketProxy(url, urlOfLocalNode);
-				proxies.put(proxyKey, newProxy);
-				return newProxy;
 			}
 		}
+		/*
+		 * Not holding the lock while waiting for the ID, as the threads reading
+		 * responses need it to create the proxies of the nodes they receive.
+		 */
+		logger.debug("Creating new proxy for " + url);
+		SocketProxy newProxy = new SocketProxy(url, urlOfLocalNode);
+		SocketProxy existing;
+		synchronized (proxies) {
+			existing = proxies.putIfAbsent(proxyKey, newProxy);
+		}
+		if (existing != null) {
+			logger.debug("Returning existing proxy for " + url);
+			newProxy.disconnect();
+			return existing;
+		}
+		return newProxy;
 	}
 
 	/**
@@ -179,11 +191,15 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 * 
 	 */
 	static void shutDownAll() {
-		Set<String> keys = proxies.keySet();
-		for (String key : keys) {
-			proxies.get(key).disconnect();
+		/* disconnect() removes the proxy from proxies */
+		List<SocketProxy> all;
+		synchronized (proxies) {
+			all = new LinkedList<SocketProxy>(proxies.values());
+			proxies.clear();
+		}
+		for (SocketProxy proxy : all) {
+			proxy.disconnect();
 		}
-		proxies.clear();
 	}
 
 	/**
@@ -281,23 +297,23 @@ public final class SocketProxy extends Proxy implements Runnable {
 	}
 
 	/**
-	 * Private method to send requests over the socket. This method is
-	 * synchronized to ensure that no other thread concurrently accesses the
-	 * {@link ObjectOutputStream output stream}<code>out</code> while sending
-	 * {@link Request request}.
+	 * Private method to send requests over the socket. Requests sent
+	 * concurrently are written together by the {@link MessageWriter}.
 	 * 
 	 * @param request
 	 *            The {@link Request}to be sent.
 	 * @throws CommunicationException
-	 *             while writing to {@link ObjectOutputStream output stream}.
+	 *             while writing to the {@link MessageWriter}.
 	 */
-	private synchronized void send(Request request)
-			throws CommunicationException {
+	private void send(Request request) throws CommunicationException {
+		final MessageWriter out = this.out;
+		if (out == null) {
+			throw new CommunicationException("Connection to remote host "
+					+ this.nodeURL + " is broken down. ");
+		}
 		try {
 			logger.debug("Sending request " + request.getReplyWith());
-			this.out.writeObject(request);
-			this.out.flush();
-			this.out.reset();
+			out.send(request);
 		} catch (IOException e) {
 			throw new CommunicationException("Could not connect to node "
 					+ this.nodeURL, e);
@@ -305,159 +321,36 @@ public final class SocketProxy extends Proxy implements Runnable {
 	}
 
 	/**
-	 * Private method to create an identifier that enables this to associate a
-	 * {@link Response response}with a {@link Request request}made before.
-	 * This method is synchronized to protect {@link #requestCounter}from race
-	 * conditions.
-	 * 
-	 * @param methodIdentifier
-	 *            Integer identifying the method this method is called from.
-	 * @return Unique Identifier for the request.
-	 */
-	private synchronized String createIdentifier(int methodIdentifier) {
-		/* Create unique identifier from */
-		StringBuilder uid = new StringBuilder();
-		/* Time stamp */
-		uid.append(System.currentTimeMillis());
-		uid.append("-");
-		/* counter and */
-		uid.append(this.requestCounter++);
-		/* methodIdentifier */
-		uid.append("-");
-		uid.append(methodIdentifier);
-		return uid.toString();
-	}
-
-	/**
-	 * Called in a method that is delegated to the {@link Node node}, that this
-	 * is the proxy for. This method blocks the thread that calls the particular
-	 * method until a {@link Response response} is received.
-	 * 
-	 * @param request
-	 * @return The {@link Response} for <code>request</code>.
-	 * @throws CommunicationException
-	 */
-	private Response waitForResponse(Request request)
-			throws CommunicationException {
-
-		String responseIdentifier = request.getReplyWith();
-		Response response = null;
-		logger.debug("Trying to wait for response with identifier "
-				+ responseIdentifier + " for method "
-				+ MethodConstants.getMethodName(request.getRequestType()));
-
-		synchronized (this.responses) {
-			logger.debug("No of responses " + this.responses.size());
-			/* Test if we got disconnected while waiting for lock on object */
-			if (this.disconnected) {
-				throw new CommunicationException("Connection to remote host "
-						+ " is broken down. ");
-			}
-			/*
-			 * Test if response is already available (Maybe response arrived
-			 * before we reached this point).
-			 */
-			response = this.responses.remove(responseIdentifier);
-			if (response != null) {
-				return response;
-			}
-
-			/* WAIT FOR RESPONSE */
-			/* add current thread to map of threads waiting for a response */
-			WaitingThread wt = new WaitingThread(Thread.currentThread());
-			this.waitingThreads.put(responseIdentifier, wt);
-			while (!wt.hasBeenWokenUp()) {
-				try {
-					/*
-					 * Wait until notified or time out is reached.
-					 */
-					logger.debug("Waiting for response to arrive.");
-					this.responses.wait();
-				} catch (InterruptedException e) {
-					/*
-					 * does not matter as this is intended Thread is interrupted
-					 * if response arrives
-					 */
-				}
-			}
-			logger.debug("Have been woken up from waiting for response.");
-
-			/* remove thread from map of threads waiting for a response */
-			this.waitingThreads.remove(responseIdentifier);
-			/* try to get the response if available */
-			response = this.responses.remove(responseIdentifier);
-			logger.debug("Response for request with identifier "
-					+ responseIdentifier + " for method "
-					+ MethodConstants.getMethodName(request.getRequestType())
-					+ " received.");
-			/* if no response availabe */
-			if (response == null) {
-				logger.debug("No response received.");
-				/* we have been disconnected */
-				if (this.disconnected) {
-					logger.info("Connection to remote host lost.");
-					throw new CommunicationException(
-							"Connection to remote host " + " is broken down. ");
-				}
-				/* or time out has elapsed */
-				else {
-					logger.error("There is no result, but we have not been "
-							+ "disconnected. Something went seriously wrong!");
-					throw new CommunicationException(
-							"Did not receive a response!");
-				}
-			}
-		}
-		return response;
-	}
-
-	/**
-	 * This method is called by {@link #run()}when it receives a
-	 * {@link Response}. The {@link Thread thread}waiting for response is
-	 * woken up and the response is put into {@link Map responses}.
+	 * This method is called by {@link #run()} when it receives a
+	 * {@link Response}. The future of the request is completed with it, unless
+	 * the request has timed out before.
 	 * 
 	 * @param response
 	 */
 	private void responseReceived(Response response) {
-		synchronized (this.responses) {
-			/* Try to fetch thread waiting for this response */
-			logger.debug("No of waiting threads " + this.waitingThreads);
-			WaitingThread waitingThread = this.waitingThreads.get(response
-					.getInReplyTo());
-			logger.debug("Response with id " + response.getInReplyTo()
-					+ "received.");
-			/* save response */
-			this.responses.put(response.getInReplyTo(), response);
-			/* if there is a thread waiting for this response */
-			if (waitingThread != null) {
-				/* wake up the thread */
-				logger.debug("Waking up thread!");
-				waitingThread.wakeUp();
-			} else {
-				// TODO what else? why 'else' anyway?
-			}
+		CompletableFuture<Response> future = this.pending.remove(response
+				.getInReplyTo());
+		if (future != null) {
+			future.complete(response);
+		} else {
+			logger.debug("Response for request " + response.getInReplyTo()
+					+ " arrived too late.");
 		}
 	}
 
 	/**
 	 * Method to indicate that connection to remote {@link Node node} is broken
-	 * down.
+	 * down. Fails all requests waiting for a response.
 	 */
 	private void connectionBrokenDown() {
-		if (this.responses == null) {
-			/*
-			 * Nothing to do!
-			 */
-			return;
-		}
-		/* synchronize on responses, as all threads accessing this proxy do so */
-		synchronized (this.responses) {
-			logger.info("Connection broken down!");
-			this.disconnected = true;
-			/* wake up all threads */
-			for (WaitingThread thread : this.waitingThreads.values()) {
-				logger.debug("Interrupting waiting thread " + thread);
-				thread.wakeUp();
+		logger.info("Connection broken down!");
+		this.disconnected = true;
+		for (Long identifier : this.pending.keySet()) {
+			CompletableFuture<Response> future = this.pending
+					.remove(identifier);
+			if (future != null) {
+				future.completeExceptionally(new CommunicationException(
+						"Connection to remote host " + " is broken down. "));
 			}
 		}
 	}
@@ -482,60 +375,247 @@ public final class SocketProxy extends Proxy implements Runnable {
 					+ " with parameters "
 					+ java.util.Arrays.deepToString(parameters));
 		}
-		String responseIdentifier = this.createIdentifier(methodIdentifier);
-		Request request = new Request(methodIdentifier, responseIdentifier);
+		Request request = new Request(methodIdentifier, this.requestCounter
+				.incrementAndGet());
 		request.setParameters(parameters);
-		logger.debug("Request " + request + " created.");
 		return request;
 	}
 
 	/**
-	 * @param key
-	 * @return The successor of <code>key</code>.
-	 * @throws CommunicationException
+	 * Reads the result of a {@link Response}.
+	 * 
+	 * @param <T>
+	 *            Type of the result.
 	 */
-	public Pair<Node, Integer> findSuccessor(ID key) throws CommunicationException {
-		this.makeSocketAvailable();
-
-		logger.debug("Trying to find successor for ID " + key);
+	private interface ResultReader<T> {
+		T read(Response response) throws CommunicationException;
+	}
 
-		/* prepare request for method findSuccessor */
-		Request request = this.createRequest(MethodConstants.FIND_SUCCESSOR,
-				new Serializable[] { key });
-		/* send request */
+	/**
+	 * Sends a request without waiting for its response. The calling thread is
+	 * not blocked, except for connecting the socket when it is used for the
+	 * first time. The returned future is completed by the thread reading the
+	 * responses, so <code>reader</code> and actions depending on it must not
+	 * block. The request must be answered within the
+	 * {@link MethodConstants#getTimeout(int) timeout} of its method and by the
+	 * {@link Deadline} of the calling thread, which is sent along. Without a
+	 * response by then the request fails, but the connection is kept; the
+	 * response is dropped when it arrives, as it is if the future is completed
+	 * otherwise before, e.g. cancelled.
+	 * 
+	 * @param methodIdentifier
+	 *            The identifier of the method to request.
+	 * @param parameters
+	 *            The parameters for the request.
+	 * @param reader
+	 *            Reads the result of a successful response.
+	 * @return The result of the request, or a
+	 *         {@link CommunicationException}, or a
+	 *         {@link DeadlineExceededException} without sending the request if
+	 *         the deadline has passed.
+	 */
+	private <T> CompletableFuture<T> invokeAsync(int methodIdentifier,
+			Serializable[] parameters, final ResultReader<T> reader) {
+		final CompletableFuture<Response> future = new CompletableFuture<Response>();
+		final Deadline deadline = Deadline.within(MethodConstants
+				.getTimeout(methodIdentifier));
+		final long budget = deadline == null ? 0 : deadline.remaining();
+		if (deadline != null && budget == 0) {
+			CompletableFuture<T> expired = new CompletableFuture<T>();
+			expired.completeExceptionally(new DeadlineExceededException(
+					"Deadline passed before invoking "
+							+ MethodConstants.getMethodName(methodIdentifier)
+							+ " on " + this.nodeURL));
+			return expired;
+		}
 		try {
+			this.makeSocketAvailable();
+			Request request = this.createRequest(methodIdentifier, parameters);
+			request.setBudget(budget);
+			final Long identifier = request.getReplyWith();
+			this.pending.put(identifier, future);
+			future.whenComplete((response, t) -> this.pending.remove(identifier));
+			/* a connection broken down meanwhile no longer completes it */
+			if (this.disconnected) {
+				throw new CommunicationException("Connection to remote host "
+						+ " is broken down. ");
+			}
+			if (budget > 0) {
+				future.orTimeout(budget, TimeUnit.MILLISECONDS);
+			}
 			logger.debug("Trying to send request " + request);
 			this.send(request);
 		} catch (CommunicationException ce) {
 			logger.debug("Connection failed!");
-			throw ce;
+			future.completeExceptionally(ce);
 		}
-		/* wait for response */
-		logger.debug("Waiting for response for request " + request);
-		Response response = this.waitForResponse(request);
-		logger.debug("Response " + response + " arrived.");
-		if (response.isFailureResponse()) {
-			throw new CommunicationException(response.getFailureReason());
-		} else {
+		return future.handle((response, t) -> {
 			try {
-				PairS<RemoteNodeInfo, Integer> nodeInfo = (PairS<RemoteNodeInfo, Integer>)response.getResult();
-				if (nodeInfo.fst.getNodeURL().equals(this.urlOfLocalNode)) {
-					return new Pair<>(Endpoint.getEndpoint(this.urlOfLocalNode).getNode(), nodeInfo.snd);
-				} else {
-					return new Pair<>(create(nodeInfo.fst.getNodeURL(), this.urlOfLocalNode, nodeInfo.fst.getNodeID())
-					                 ,nodeInfo.snd);
+				if (t instanceof TimeoutException) {
+					throw new CommunicationException("No response from "
+							+ this.nodeURL + " within " + budget + " ms!", t);
+				} else if (t != null) {
+					throw new CompletionException(t);
+				} else if (response.isFailureResponse()) {
+					throw new CommunicationException(response
+							.getFailureReason(), response.getThrowable());
 				}
-			} catch (ClassCastException e) {
-				/*
-				 * This should not occur as all nodes should have the same
-				 * classes!
-				 */
-				String message = "Could not understand result! "
-						+ response.getResult();
-				logger.fatal(message);
-				throw new CommunicationException(message, e);
+				return reader.read(response);
+			} catch (CommunicationException e) {
+				throw new CompletionException(e);
 			}
+		});
+	}
+
+	/**
+	 * Sends a request and waits for the result read from its response.
+	 * 
+	 * @see #invokeAsync(int, Serializable[], ResultReader)
+	 */
+	private <T> T invoke(int methodIdentifier, Serializable[] parameters,
+			ResultReader<T> reader) throws CommunicationException {
+		try {
+			return this.invokeAsync(methodIdentifier, parameters, reader)
+					.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof CommunicationException) {
+				throw (CommunicationException) e.getCause();
+			}
+			if (e.getCause() instanceof DeadlineExceededException) {
+				throw (DeadlineExceededException) e.getCause();
+			}
+			throw new CommunicationException("Invocation failed!", e
+					.getCause());
+		}
+	}
+
+	/**
+	 * @return The local node if <code>nodeInfo</code> describes it, else a
+	 *         proxy for the described node.
+	 */
+	private Node toNode(RemoteNodeInfo nodeInfo) {
+		if (nodeInfo.getNodeURL().equals(this.urlOfLocalNode)) {
+			return Endpoint.getEndpoint(this.urlOfLocalNode).getNode();
 		}
+		return create(nodeInfo.getNodeURL(), this.urlOfLocalNode, nodeInfo
+				.getNodeID());
+	}
+
+	/**
+	 * @param response
+	 *            Successful response to a request for the successor of a key.
+	 * @return The successor and the number of hops taken.
+	 * @throws CommunicationException
+	 */
+	private Pair<Node, Integer> readSuccessor(Response response)
+			throws CommunicationException {
+		return this.readNode(response);
+	}
+
+	/**
+	 * @param response
+	 *            Successful response to a request for the next hop towards a
+	 *            key.
+	 * @return See {@link Node#findNextHop(ID)}.
+	 * @throws CommunicationException
+	 */
+	private Pair<Node, Boolean> readNextHop(Response response)
+			throws CommunicationException {
+		return this.readNode(response);
+	}
+
+	/**
+	 * @param response
+	 *            Successful response with a node and a value.
+	 * @return The local node or a proxy for the remote node, and the value.
+	 * @throws CommunicationException
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends Serializable> Pair<Node, T> readNode(Response response)
+			throws CommunicationException {
+		try {
+			PairS<RemoteNodeInfo, T> nodeInfo = (PairS<RemoteNodeInfo, T>)response.getResult();
+			return new Pair<>(this.toNode(nodeInfo.fst), nodeInfo.snd);
+		} catch (ClassCastException e) {
+			/*
+			 * This should not occur as all nodes should have the same
+			 * classes!
+			 */
+			String message = "Could not understand result! "
+					+ response.getResult();
+			logger.fatal(message);
+			throw new CommunicationException(message, e);
+		}
+	}
+
+	/**
+	 * @param response
+	 *            Successful response to a request for entries.
+	 * @return The entries.
+	 * @throws CommunicationException
+	 */
+	private static C4SRetrieveResponse readEntries(Response response)
+			throws CommunicationException {
+		try {
+			C4SRetrieveResponse result = (C4SRetrieveResponse) response.getResult();
+			return result;
+		} catch (ClassCastException cce) {
+			throw new CommunicationException(
+					"Could not understand result! " + response.getResult());
+		}
+	}
+
+	@Override
+	public CompletableFuture<Pair<Node, Integer>> findSuccessorAsync(ID key) {
+		return this.invokeAsync(MethodConstants.FIND_SUCCESSOR,
+				new Serializable[] { key }, this::readSuccessor);
+	}
+
+	@Override
+	public CompletableFuture<Pair<Node, Boolean>> findNextHopAsync(ID key) {
+		return this.invokeAsync(MethodConstants.FIND_NEXT_HOP,
+				new Serializable[] { key }, this::readNextHop);
+	}
+
+	@Override
+	public CompletableFuture<Void> insertEntryAsync(Service entry) {
+		return this.invokeAsync(MethodConstants.INSERT_ENTRY,
+				new Serializable[] { entry }, response -> null);
+	}
+
+	@Override
+	public CompletableFuture<Void> removeEntryAsync(ProviderId entry) {
+		return this.invokeAsync(MethodConstants.REMOVE_ENTRY,
+				new Serializable[] { entry }, response -> null);
+	}
+
+	@Override
+	public CompletableFuture<C4SRetrieveResponse> retrieveEntriesAsync(
+			C4SMsgRetrieve msg) {
+		return this.invokeAsync(MethodConstants.RETRIEVE_ENTRIES,
+				new Serializable[] { msg }, SocketProxy::readEntries);
+	}
+
+	/**
+	 * @param key
+	 * @return The successor of <code>key</code>.
+	 * @throws CommunicationException
+	 */
+	public Pair<Node, Integer> findSuccessor(ID key) throws CommunicationException {
+		logger.debug("Trying to find successor for ID " + key);
+		return this.invoke(MethodConstants.FIND_SUCCESSOR,
+				new Serializable[] { key }, this::readSuccessor);
+	}
+
+	/**
+	 * @param key
+	 * @return See {@link Node#findNextHop(ID)}.
+	 * @throws CommunicationException
+	 */
+	public Pair<Node, Boolean> findNextHop(ID key) throws CommunicationException {
+		logger.debug("Trying to find next hop for ID " + key);
+		return this.invoke(MethodConstants.FIND_NEXT_HOP,
+				new Serializable[] { key }, this::readNextHop);
 	}
 
 	/**
@@ -544,41 +624,22 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 */
 	private void initializeNodeID() throws CommunicationException {
 		if (this.nodeID == null) {
-			this.makeSocketAvailable();
-
 			logger.debug("Trying to get node ID ");
-
-			/* prepare request for method findSuccessor */
-			Request request = this.createRequest(MethodConstants.GET_NODE_ID,
-					new Serializable[0]);
-			/* send request */
-			try {
-				logger.debug("Trying to send request " + request);
-				this.send(request);
-			} catch (CommunicationException ce) {
-				logger.debug("Connection failed!");
-				throw ce;
-			}
-			/* wait for response */
-			logger.debug("Waiting for response for request " + request);
-			Response response = this.waitForResponse(request);
-			logger.debug("Response " + response + " arrived.");
-			if (response.isFailureResponse()) {
-				throw new CommunicationException(response.getFailureReason());
-			} else {
-				try {
-					this.nodeID = (ID) response.getResult();
-				} catch (ClassCastException e) {
-					/*
-					 * This should not occur as all nodes should have the same
-					 * classes!
-					 */
-					String message = "Could not understand result! "
-							+ response.getResult();
-					logger.fatal(message);
-					throw new CommunicationException(message);
-				}
-			}
+			this.nodeID = this.invoke(MethodConstants.GET_NODE_ID,
+					new Serializable[0], response -> {
+						try {
+							return (ID) response.getResult();
+						} catch (ClassCastException e) {
+							/*
+							 * This should not occur as all nodes should have
+							 * the same classes!
+							 */
+							String message = "Could not understand result! "
+									+ response.getResult();
+							logger.fatal(message);
+							throw new CommunicationException(message);
+						}
+					});
 		}
 	}
 
@@ -587,87 +648,38 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 * @return List of references for the node invoking this method. See
 	 *         {@link Node#notify(Node)}.
 	 */
+	@SuppressWarnings("unchecked")
 	public List<Node> notify(Node potentialPredecessor)
 			throws CommunicationException {
-		this.makeSocketAvailable();
-
 		RemoteNodeInfo nodeInfoToSend = new RemoteNodeInfo(potentialPredecessor
 				.getNodeURL(), potentialPredecessor.getNodeID());
 
-		Request request = this.createRequest(MethodConstants.NOTIFY,
-				new Serializable[] { nodeInfoToSend });
-
-		/* send request to remote node. */
-		try {
-			this.send(request);
-		} catch (CommunicationException e) {
-			throw e;
-		}
-
-		/* wait for response to arrive */
-		Response response = this.waitForResponse(request);
-		if (response.isFailureResponse()) {
-			throw new CommunicationException(response.getFailureReason());
-		} else {
-			try {
-				List<RemoteNodeInfo> references = (List<RemoteNodeInfo>) response
-						.getResult();
-				List<Node> nodes = new LinkedList<Node>();
-				for (RemoteNodeInfo nodeInfo : references) {
-					if (nodeInfo.getNodeURL().equals(this.urlOfLocalNode)) {
-						nodes.add(Endpoint.getEndpoint(this.urlOfLocalNode)
-								.getNode());
-					} else {
-						nodes.add(create(nodeInfo.getNodeURL(),
-								this.urlOfLocalNode, nodeInfo.getNodeID()));
+		return this.invoke(MethodConstants.NOTIFY,
+				new Serializable[] { nodeInfoToSend }, response -> {
+					try {
+						List<RemoteNodeInfo> references = (List<RemoteNodeInfo>) response
+								.getResult();
+						List<Node> nodes = new LinkedList<Node>();
+						for (RemoteNodeInfo nodeInfo : references) {
+							nodes.add(this.toNode(nodeInfo));
+						}
+						return nodes;
+					} catch (ClassCastException cce) {
+						throw new CommunicationException(
+								"Could not understand result! "
+										+ response.getResult(), cce);
 					}
-				}
-				return nodes;
-			} catch (ClassCastException cce) {
-				throw new CommunicationException(
-						"Could not understand result! " + response.getResult(),
-						cce);
-			}
-		}
+				});
 	}
 
 	/**
 	 * @throws CommunicationException
 	 */
 	public void ping() throws CommunicationException {
-		this.makeSocketAvailable();
-
-		boolean debugEnabled = SocketProxy.logger.isEnabledFor(DEBUG);
-
-		if (debugEnabled) {
+		if (SocketProxy.logger.isEnabledFor(DEBUG)) {
 			logger.debug("Trying to ping remote node " + this.nodeURL);
 		}
-
-		/* prepare request for method findSuccessor */
-		Request request = this.createRequest(MethodConstants.PING,
-				new Serializable[0]);
-		/* send request */
-		try {
-			logger.debug("Trying to send request " + request);
-			this.send(request);
-		} catch (CommunicationException ce) {
-			logger.debug("Connection failed!");
-			throw ce;
-		}
-		/* wait for response */
-		if (debugEnabled) {
-			logger.debug("Waiting for response for request " + request);
-		}
-		Response response = this.waitForResponse(request);
-		if (debugEnabled) {
-			logger.debug("Response " + response + " arrived.");
-		}
-		if (response.isFailureResponse()) {
-			throw new CommunicationException(response.getFailureReason());
-		} else {
-			return;
-		}
-
+		this.invoke(MethodConstants.PING, new Serializable[0], response -> null);
 	}
 
 	/**
@@ -675,31 +687,9 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 * @throws CommunicationException
 	 */
 	public void insertEntry(Service entry) throws CommunicationException {
-		this.makeSocketAvailable();
-
 		logger.debug("Trying to insert entry " + entry + ".");
-
-		/* prepare request for method insertEntry */
-		Request request = this.createRequest(MethodConstants.INSERT_ENTRY,
-				new Serializable[] { entry });
-		/* send request */
-		try {
-			logger.debug("Trying to send request " + request);
-			this.send(request);
-		} catch (CommunicationException ce) {
-			logger.debug("Connection failed!");
-			throw ce;
-		}
-		/* wait for response */
-		logger.debug("Waiting for response for request " + request);
-		Response response = this.waitForResponse(request);
-		logger.debug("Response " + response + " arrived.");
-		if (response.isFailureResponse()) {
-			throw new CommunicationException(response.getFailureReason());
-		} else {
-			/* No result here */
-			return;
-		}
+		this.invoke(MethodConstants.INSERT_ENTRY, new Serializable[] { entry },
+				response -> null);
 	}
 
 	/**
@@ -708,31 +698,10 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 */
 	public void insertReplicas(Set<Service> replicas)
 			throws CommunicationException {
-		this.makeSocketAvailable();
-
 		logger.debug("Trying to insert replicas " + replicas + ".");
-
-		/* prepare request for method insertEntry */
-		Request request = this.createRequest(MethodConstants.INSERT_REPLICAS,
-				new Serializable[] { (Serializable) replicas });
-		/* send request */
-		try {
-			logger.debug("Trying to send request " + request);
-			this.send(request);
-		} catch (CommunicationException ce) {
-			logger.debug("Connection failed!");
-			throw ce;
-		}
-		/* wait for response */
-		logger.debug("Waiting for response for request " + request);
-		Response response = this.waitForResponse(request);
-		logger.debug("Response " + response + " arrived.");
-		if (response.isFailureResponse()) {
-			throw new CommunicationException(response.getFailureReason());
-		} else {
-			/* No result here */
-			return;
-		}
+		this.invoke(MethodConstants.INSERT_REPLICAS,
+				new Serializable[] { (Serializable) replicas },
+				response -> null);
 	}
 
 	/**
@@ -740,35 +709,13 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 * @throws CommunicationException
 	 */
 	public void leavesNetwork(Node predecessor) throws CommunicationException {
-		this.makeSocketAvailable();
-
 		logger.debug("Trying to insert notify node that " + predecessor
 				+ " leaves network.");
 
 		RemoteNodeInfo nodeInfo = new RemoteNodeInfo(predecessor.getNodeURL(),
 				predecessor.getNodeID());
-
-		/* prepare request for method insertEntry */
-		Request request = this.createRequest(MethodConstants.LEAVES_NETWORK,
-				new Serializable[] { nodeInfo });
-		/* send request */
-		try {
-			logger.debug("Trying to send request " + request);
-			this.send(request);
-		} catch (CommunicationException ce) {
-			logger.debug("Connection failed!");
-			throw ce;
-		}
-		/* wait for response */
-		logger.debug("Waiting for response for request " + request);
-		Response response = this.waitForResponse(request);
-		logger.debug("Response " + response + " arrived.");
-		if (response.isFailureResponse()) {
-			throw new CommunicationException(response.getFailureReason());
-		} else {
-			/* No result here */
-			return;
-		}
+		this.invoke(MethodConstants.LEAVES_NETWORK,
+				new Serializable[] { nodeInfo }, response -> null);
 	}
 
 	/**
@@ -776,32 +723,9 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 * @throws CommunicationException
 	 */
 	public void removeEntry(ProviderId entry) throws CommunicationException {
-		this.makeSocketAvailable();
-
 		logger.debug("Trying to remove entry " + entry + ".");
-
-		/* prepare request for method findSuccessor */
-		Request request = this.createRequest(MethodConstants.REMOVE_ENTRY,
-				new Serializable[] { entry });
-		/* send request */
-		try {
-			logger.debug("Trying to send request " + request);
-			this.send(request);
-		} catch (CommunicationException ce) {
-			logger.debug("Connection failed!");
-			throw ce;
-		}
-		/* wait for response */
-		logger.debug("Waiting for response for request " + request);
-		Response response = this.waitForResponse(request);
-		logger.debug("Response " + response + " arrived.");
-		if (response.isFailureResponse()) {
-			throw new CommunicationException(response.getFailureReason());
-		} else {
-			/* No result here */
-			return;
-		}
-
+		this.invoke(MethodConstants.REMOVE_ENTRY, new Serializable[] { entry },
+				response -> null);
 	}
 
 	/**
@@ -811,65 +735,15 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 */
 	public void removeReplicas(ID sendingNodeID, Set<ProviderId> replicas)
 			throws CommunicationException {
-		this.makeSocketAvailable();
-
 		logger.debug("Trying to remove replicas " + replicas + ".");
-
-		/* prepare request for method insertEntry */
-		Request request = this.createRequest(MethodConstants.REMOVE_REPLICAS,
-				new Serializable[] { sendingNodeID, (Serializable) replicas });
-		/* send request */
-		try {
-			logger.debug("Trying to send request " + request);
-			this.send(request);
-		} catch (CommunicationException ce) {
-			logger.debug("Connection failed!");
-			throw ce;
-		}
-		/* wait for response */
-		logger.debug("Waiting for response for request " + request);
-		Response response = this.waitForResponse(request);
-		logger.debug("Response " + response + " arrived.");
-		if (response.isFailureResponse()) {
-			throw new CommunicationException(response.getFailureReason());
-		} else {
-			/* No result here */
-			return;
-		}
+		this.invoke(MethodConstants.REMOVE_REPLICAS, new Serializable[] {
+				sendingNodeID, (Serializable) replicas }, response -> null);
 	}
 
 	public C4SRetrieveResponse retrieveEntries(C4SMsgRetrieve msg) throws CommunicationException {
-		this.makeSocketAvailable();
-
 		logger.debug("Trying to retrieve entries for ID " + msg);
-
-		/* prepare request for method findSuccessor */
-		Request request = this.createRequest(MethodConstants.RETRIEVE_ENTRIES,
-				new Serializable[] { msg });
-		/* send request */
-		try {
-			logger.debug("Trying to send request " + request);
-			this.send(request);
-		} catch (CommunicationException ce) {
-			logger.debug("Connection failed!");
-			throw ce;
-		}
-		/* wait for response */
-		logger.debug("Waiting for response for request " + request);
-		Response response = this.waitForResponse(request);
-		logger.debug("Response " + response + " arrived.");
-		if (response.isFailureResponse()) {
-			throw new CommunicationException(response.getFailureReason(),
-					response.getThrowable());
-		} else {
-			try {
-				C4SRetrieveResponse result = (C4SRetrieveResponse) response.getResult();
-				return result;
-			} catch (ClassCastException cce) {
-				throw new CommunicationException(
-						"Could not understand result! " + response.getResult());
-			}
-		}
+		return this.invoke(MethodConstants.RETRIEVE_ENTRIES,
+				new Serializable[] { msg }, SocketProxy::readEntries);
 	}
 
 	/**
@@ -878,8 +752,7 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 * establishes the connection if not already done. This method has to be
 	 * called as this proxy can be serialized and the reference to the socket is
 	 * transient. So by calling this method after a transfer the connection to
-	 * the node is reestablished. The same applies for {@link #logger}and
-	 * {@link #responses}.
+	 * the node is reestablished. The same applies for {@link #logger}.
 	 * 
 	 * @throws CommunicationException
 	 */
@@ -893,66 +766,86 @@ public final class SocketProxy extends Proxy implements Runnable {
 		logger.debug("makeSocketAvailable() called. "
 				+ "Testing for socket availability");
 
-		if (this.responses == null) {
-			this.responses = new HashMap<String, Response>();
+		if (this.out == null) {
+			synchronized (this) {
+				if (this.out == null) {
+					this.openSocket();
+				}
+			}
 		}
-		if (this.waitingThreads == null) {
-			this.waitingThreads = new HashMap<String, WaitingThread>();
+		logger.debug("makeSocketAvailable() finished. Socket " + this.mySocket);
+	}
+
+	/**
+	 * Connects to the endpoint of the node and starts the thread reading the
+	 * responses. Invoked while holding the lock on this.
+	 * 
+	 * @throws CommunicationException
+	 */
+	private void openSocket() throws CommunicationException {
+		try {
+			logger.info("Opening new socket to " + this.nodeURL);
+			this.mySocket = new Socket(this.nodeURL.getHost(), this.nodeURL
+					.getPort());
+			logger.debug("Socket created: " + this.mySocket);
+			this.mySocket.setSoTimeout(5000);
+			/* requests are written in batches, see MessageWriter */
+			this.mySocket.setTcpNoDelay(true);
+			MessageWriter out = new MessageWriter(this.mySocket
+					.getOutputStream());
+			this.in = new ObjectInputStream(new BufferedInputStream(
+					this.mySocket.getInputStream()));
+			logger.debug("Sending connection request!");
+			out.send(new Request(MethodConstants.CONNECT, 0));
+			// set time out, in case the other side does not answer!
+			Response resp = null;
+			try {
+				logger.debug("Waiting for connection response!");
+				resp = (Response) this.in.readObject();
+			} catch (SocketTimeoutException e) {
+				logger.info("Connection timed out!");
+				throw new CommunicationException(
+						"Connection to remote host timed out!");
+			}
+			this.mySocket.setSoTimeout(0);
+			if (resp == null
+					|| resp.getStatus() != Response.REQUEST_SUCCESSFUL) {
+				throw new CommunicationException(
+						"Establishing connection failed!");
+			}
+			this.out = out;
+			Thread t = new Thread(this, "SocketProxy_Thread_" + this.nodeURL);
+			t.start();
+		} catch (UnknownHostException e) {
+			throw this.openFailed(new CommunicationException("Unknown host: "
+					+ this.nodeURL.getHost()));
+		} catch (IOException ioe) {
+			throw this.openFailed(new CommunicationException(
+					"Could not set up IO channel " + "to host "
+							+ this.nodeURL.getHost(), ioe));
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw this.openFailed(new CommunicationException(
+					"Unexpected result received! " + e.getMessage(), e));
+		} catch (CommunicationException e) {
+			throw this.openFailed(e);
 		}
-		if (this.mySocket == null) {
+	}
+
+	/**
+	 * Closes the socket that could not be connected, so that the next
+	 * request opens another one.
+	 */
+	private CommunicationException openFailed(CommunicationException e) {
+		if (this.mySocket != null) {
 			try {
-				logger.info("Opening new socket to " + this.nodeURL);
-				this.mySocket = new Socket(this.nodeURL.getHost(), this.nodeURL
-						.getPort());
-				logger.debug("Socket created: " + this.mySocket);
-				this.mySocket.setSoTimeout(5000);
-				this.out = new ObjectOutputStream(this.mySocket
-						.getOutputStream());
-				this.in = new ObjectInputStream(this.mySocket.getInputStream());
-				logger.debug("Sending connection request!");
-				out.writeObject(new Request(MethodConstants.CONNECT,
-						"Initial Connection"));
-				try {
-					// set time out, in case the other side does not answer!
-					Response resp = null;
-					boolean timedOut = false;
-					try {
-						logger.debug("Waiting for connection response!");
-						resp = (Response) in.readObject();
-					} catch (SocketTimeoutException e) {
-						logger.info("Connection timed out!");
-						timedOut = true;
-					}
-					this.mySocket.setSoTimeout(0);
-					if (timedOut) {
-						throw new CommunicationException(
-								"Connection to remote host timed out!");
-					}
-					if (resp != null
-							&& resp.getStatus() == Response.REQUEST_SUCCESSFUL) {
-						Thread t = new Thread(this, "SocketProxy_Thread_"
-								+ this.nodeURL);
-						t.start();
-					} else {
-						throw new CommunicationException(
-								"Establishing connection failed!");
-					}
-				} catch (ClassNotFoundException e) {
-					throw new CommunicationException(
-							"Unexpected result received! " + e.getMessage(), e);
-				} catch (ClassCastException e) {
-					throw new CommunicationException(
-							"Unexpected result received! " + e.getMessage(), e);
-				}
-			} catch (UnknownHostException e) {
-				throw new CommunicationException("Unknown host: "
-						+ this.nodeURL.getHost());
-			} catch (IOException ioe) {
-				throw new CommunicationException("Could not set up IO channel "
-						+ "to host " + this.nodeURL.getHost(), ioe);
+				this.mySocket.close();
+			} catch (IOException e1) {
+				// can be ignored, as the socket is no longer needed.
 			}
+			this.mySocket = null;
 		}
-		logger.debug("makeSocketAvailable() finished. Socket " + this.mySocket);
+		this.in = null;
+		return e;
 	}
 
 	/**
@@ -980,11 +873,15 @@ public final class SocketProxy extends Proxy implements Runnable {
 			 */
 			String proxyKey = SocketProxy.createProxyKey(this.urlOfLocalNode,
 					this.nodeURL);
-			Object o = proxies.remove(proxyKey);
+			/* not a proxy created concurrently and not used */
+			if (proxies.get(proxyKey) == this) {
+				proxies.remove(proxyKey);
+			}
 		}
 		this.disconnected = true;
 		try {
-			if (this.out != null) {
+			final MessageWriter out = this.out;
+			if (out != null) {
 				try {
 					/*
 					 * notify endpoint this is connected to, about shut down of
@@ -994,15 +891,15 @@ public final class SocketProxy extends Proxy implements Runnable {
 					Request request = this.createRequest(
 							MethodConstants.SHUTDOWN, new Serializable[0]);
 					logger.debug("Notification send.");
-					this.out.writeObject(request);
-					this.out.close();
+					out.send(request);
+					out.close();
 					this.out = null;
-					logger.debug("OutputStream " + this.out + " closed.");
+					logger.debug("OutputStream " + out + " closed.");
 				} catch (IOException e) {
 					/* should not occur */
 					logger.debug(this
 							+ ": Exception during closing of output stream "
-							+ this.out, e);
+							+ out, e);
 				}
 			}
 			if (this.in != null) {
@@ -1072,50 +969,26 @@ public final class SocketProxy extends Proxy implements Runnable {
 	 */
 	public RefsAndEntries notifyAndCopyEntries(Node potentialPredecessor)
 			throws CommunicationException {
-		this.makeSocketAvailable();
-
 		RemoteNodeInfo nodeInfoToSend = new RemoteNodeInfo(potentialPredecessor
 				.getNodeURL(), potentialPredecessor.getNodeID());
 
-		/* prepare request for method notifyAndCopyEntries */
-		Request request = this.createRequest(MethodConstants.NOTIFY_AND_COPY,
-				new Serializable[] { nodeInfoToSend });
-		/* send request */
-		try {
-			logger.debug("Trying to send request " + request);
-			this.send(request);
-		} catch (CommunicationException ce) {
-			logger.debug("Connection failed!");
-			throw ce;
-		}
-		/* wait for response */
-		logger.debug("Waiting for response for request " + request);
-		Response response = this.waitForResponse(request);
-		logger.debug("Response " + response + " arrived.");
-		if (response.isFailureResponse()) {
-			throw new CommunicationException(response.getFailureReason(),
-					response.getThrowable());
-		} else {
-			try {
-				RemoteRefsAndEntries result = (RemoteRefsAndEntries) response
-						.getResult();
-				List<Node> newReferences = new LinkedList<Node>();
-				List<RemoteNodeInfo> references = result.getNodeInfos();
-				for (RemoteNodeInfo nodeInfo : references) {
-					if (nodeInfo.getNodeURL().equals(this.urlOfLocalNode)) {
-						newReferences.add(Endpoint.getEndpoint(
-								this.urlOfLocalNode).getNode());
-					} else {
-						newReferences.add(create(nodeInfo.getNodeURL(),
-								this.urlOfLocalNode, nodeInfo.getNodeID()));
+		return this.invoke(MethodConstants.NOTIFY_AND_COPY,
+				new Serializable[] { nodeInfoToSend }, response -> {
+					try {
+						RemoteRefsAndEntries result = (RemoteRefsAndEntries) response
+								.getResult();
+						List<Node> newReferences = new LinkedList<Node>();
+						for (RemoteNodeInfo nodeInfo : result.getNodeInfos()) {
+							newReferences.add(this.toNode(nodeInfo));
+						}
+						return new RefsAndEntries(newReferences, result
+								.getEntries());
+					} catch (ClassCastException cce) {
+						throw new CommunicationException(
+								"Could not understand result! "
+										+ response.getResult());
 					}
-				}
-				return new RefsAndEntries(newReferences, result.getEntries());
-			} catch (ClassCastException cce) {
-				throw new CommunicationException(
-						"Could not understand result! " + response.getResult());
-			}
-		}
+				});
 	}
 
 	/**
@@ -1147,45 +1020,4 @@ public final class SocketProxy extends Proxy implements Runnable {
 		return this.stringRepresentation;
 	}
 
-	/**
-	 * Wraps a thread, which is waiting for a response.
-	 * 
-	 * @author sven
-	 * 
-	 */
-	private static class WaitingThread {
-
-		private boolean hasBeenWokenUp = false;
-
-		private Thread thread;
-
-		private WaitingThread(Thread thread) {
-			this.thread = thread;
-		}
-
-		/**
-		 * Returns <code>true</code> when the thread has been woken up by
-		 * invoking {@link #wakeUp()}
-		 * 
-		 * @return
-		 */
-		boolean hasBeenWokenUp() {
-			return this.hasBeenWokenUp;
-		}
-
-		/**
-		 * Wake up the thread that is waiting for a response.
-		 * 
-		 */
-		void wakeUp() {
-			this.hasBeenWokenUp = true;
-			this.thread.interrupt();
-		}
-
-		public String toString() {
-			return this.thread.toString() + ": Waiting? "
-					+ !this.hasBeenWokenUp();
-		}
-	}
-
 }
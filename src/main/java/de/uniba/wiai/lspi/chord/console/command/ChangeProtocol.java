@@ -40,6 +40,9 @@ public class ChangeProtocol extends Command {
 	private static final String SOCKET_PROTOCOL = URL.KNOWN_PROTOCOLS
 			.get(URL.SOCKET_PROTOCOL);
 
+	private static final String NIO_PROTOCOL = URL.KNOWN_PROTOCOLS
+			.get(URL.NIO_PROTOCOL);
+
 	public static final String COMMAND_NAME = "cprotocol";
 
 	private static final String TYPE_PARAM = "t";
@@ -59,6 +62,8 @@ public class ChangeProtocol extends Command {
 					RemoteChordNetworkAccess.getUniqueInstance().protocolType = URL.RMI_PROTOCOL;
 				} else if (type.equalsIgnoreCase(SOCKET_PROTOCOL)) {
 					RemoteChordNetworkAccess.getUniqueInstance().protocolType = URL.SOCKET_PROTOCOL;
+				} else if (type.equalsIgnoreCase(NIO_PROTOCOL)) {
+					RemoteChordNetworkAccess.getUniqueInstance().protocolType = URL.NIO_PROTOCOL;
 				}
 			}
 		}
@@ -77,7 +82,7 @@ public class ChangeProtocol extends Command {
 	public void printOutHelp() {
 		out
 				.println("Changes the protocol for remote chord networks used for this console.");
-		out.println("Currently supported protocols: {ocsocket, ocrmi}");
+		out.println("Currently supported protocols: {ocsocket, ocrmi, ocnio}");
 	}
 
 }
@@ -33,6 +33,7 @@
 
 package de.uniba.wiai.lspi.chord.console.command;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.io.PrintStream;
 
@@ -42,6 +43,7 @@ import de.uniba.wiai.lspi.chord.data.URL;
 import de.uniba.wiai.lspi.chord.service.Chord;
 import de.uniba.wiai.lspi.chord.service.ServiceException;
 import de.uniba.wiai.lspi.chord.service.impl.ChordImpl;
+import de.uniba.wiai.lspi.chord.service.impl.RingBootstrap;
 //import de.uniba.wiai.lspi.chord.service.impl.TaskExecutor;
 
 /**
@@ -109,8 +111,27 @@ public class CreateNodes extends de.uniba.wiai.lspi.util.console.Command {
         
         
         if ( (names.size() > 1) && (bootstraps.size() == 0) ){
-            throw new ConsoleException("Cannot start more than one node without at least "
-                    + "one bootstrap node.");
+            this.out.println("Creating new chord network of " + names.size() + " nodes.");
+            /* test if there is already a chord network */
+            Registry reg = Registry.getRegistryInstance();
+            if (reg.lookupAll().size() > 0){
+                throw new ConsoleException("There is already a chord network present in "
+                        + "this JVM. Try to start the nodes with one of the existing "
+                        + "nodes as bootstrap node.");
+            }
+            /* build the ring at once, as if all nodes had joined and stabilized */
+            List<URL> urls = new ArrayList<URL>(names.size());
+            try {
+                for (String name : names) {
+                    urls.add(new URL(URL.KNOWN_PROTOCOLS.get(URL.LOCAL_PROTOCOL) + "://" + name + "/"));
+                }
+                RingBootstrap.createRing(urls);
+            } catch (Throwable t){
+                t.printStackTrace(this.out);
+                throw new ConsoleException("Exception during creation of nodes. "
+                + "Message : " + t.getMessage(), t);
+            }
+            return;
         }
         if ( (names.size() == 1) && (bootstraps.size() == 0) ){
             this.out.println("Creating new chord network.");
@@ -203,7 +224,8 @@ public class CreateNodes extends de.uniba.wiai.lspi.util.console.Command {
         this.out.println("'" + BOOTSTRAP_PARAM + "' takes a list of names of nodes. The names \n"
                 + "must be separated with help of '_' and without a space. ");
         this.out.println("There must always be a bootstrap node except in the case \n"
-                + "that the first node of a chord network is created.");
+                + "that a new chord network is created. Several nodes created \n"
+                + "without bootstrap node form a ring that is already stabilized.");
     }
     
 }
@@ -28,10 +28,6 @@
 package de.uniba.wiai.lspi.chord.data;
 
 import java.io.Serializable;
-import java.util.BitSet;
-import java.util.Optional;
-
-import org.apache.commons.codec.digest.DigestUtils;
 
 import com.chord4js.ProviderId;
 import com.chord4js.ServiceId;
@@ -45,7 +41,11 @@ import com.chord4js.Unit;
  * Once created, an ID instance is unmodifiable.
  * 
  * IDs of same length can be compared as this class implements
- * java.lang.Comparable. IDs of different length cannot be compared.
+ * java.lang.Comparable. All IDs have a length of {@link #kTotalBitLen} bits.
+ * 
+ * The value is kept as an unsigned big-endian integer in two <code>long</code>
+ * words, so that comparison, equality, hashing and power-of-two addition are a
+ * few word operations instead of bit-by-bit walks.
  * 
  * @author Sven Kaffille, Karsten Loesing
  * @version 1.0.5
@@ -54,7 +54,7 @@ public final class ID implements Comparable<ID>, Serializable, Cloneable {
 	/**
 	 * 
 	 */
-	private static final long serialVersionUID = 6860626236168125168L;
+	private static final long serialVersionUID = -4198315224407316542L;
 	
 	// Expected total network size. This is important for calc'ing the ideal length
   // for the provider bits.
@@ -66,6 +66,17 @@ public final class ID implements Comparable<ID>, Serializable, Cloneable {
   public static final int kProviderBitLen      = ProviderMinimumBitLen();
   public static final int kTotalBitLen         = kSemanticTotalBitLen + kProviderBitLen;
   
+  // Masks for the valid bits of the high and low word. Bits above kTotalBitLen are always 0.
+  private static final long kMaskHi = kTotalBitLen <= 64  ? 0L
+                                    : kTotalBitLen >= 128 ? -1L
+                                    : (1L << (kTotalBitLen - 64)) - 1;
+  private static final long kMaskLo = kTotalBitLen >= 64 ? -1L : (1L << kTotalBitLen) - 1;
+  
+  // Hash of provider parts, and of semantic parts (possibly memoized). See IdHashStrategy.
+  private static final IdHashStrategy kProviderHash = IdHashStrategy.fromProperties();
+  private static final IdHashStrategy kSemanticHash = IdHashStrategy.memoized(kProviderHash,
+      Integer.getInteger(IdHashStrategy.MEMO_PROPERTY, 0));
+  
   private static final ID idMin; // All 0 ID
   private static final ID idMax; // All 1 ID
   
@@ -85,35 +96,53 @@ public final class ID implements Comparable<ID>, Serializable, Cloneable {
   private static double log2(double x) { return Math.log10(x) / Math.log10(2); }
 
   static {
-    idMin = new ID();
-    idMax = new ID();
-    idMax.id.set(0, kTotalBitLen);
+    assert(kTotalBitLen <= 128); // two-word layout
+    idMin = new ID(0L, 0L);
+    idMax = new ID(kMaskHi, kMaskLo);
   }
 
 	/**
-	 * The bits representing the id. Big endian. (provider bits are low)
+	 * The bits representing the id. Big endian (provider bits are low), i.e.
+	 * <code>hi</code> holds bits [64, kTotalBitLen) and <code>lo</code> holds
+	 * bits [0, 64) of the unsigned value.
 	 */
-	public final BitSet id;
-
-	private static BitSet hashString(final String s) {
-    return BitSet.valueOf(DigestUtils.sha1(s));
-  }
+	private final long hi, lo;
+
+	// Bits are addressed big-endian: idx 0 is the highest bit of the ID.
+	private static void bitSet(final long[] w, final int idx) {
+	  assert(0 <= idx && idx < kTotalBitLen);
+	  final int p = kTotalBitLen - 1 - idx;
+	  if (p < 64) w[1] |= 1L << p;
+	  else        w[0] |= 1L << (p - 64);
+	}
 	
-	// up-sizing results in 0 being padded at the end
-	// \todo ensure we reduce using the highest entropy bits
-	private static BitSet bitsetResize(final BitSet a, final int numBits) {
-	  assert(numBits > 0);
-	  final BitSet b = new BitSet(numBits);
-    for (int i = 0; i < Math.min(a.size(), numBits); ++i)
-      b.set(i, a.get(i));
-    
-    return b;
+	private boolean bitGet(final int idx) {
+	  final int p = kTotalBitLen - 1 - idx;
+	  return ((p < 64 ? lo >>> p : hi >>> (p - 64)) & 1L) != 0;
 	}
 	
-	private static void partHashSet(final BitSet dst, final int dstOffset, final BitSet src, final int srcLen) {
-	  assert(dstOffset + srcLen <= dst.size());
-	  for (int i = 0; i < Math.min(src.size(), srcLen); ++i)
-	    dst.set(dstOffset + i, src.get(i));
+	// Copies the first srcLen bits of src, in java.util.BitSet.valueOf order
+	// (byte 0 first, lowest bit of each byte first), to [dstOffset, dstOffset + srcLen).
+	private static void partHashSet(final long[] dst, final int dstOffset, final byte[] src, final int srcLen) {
+	  assert(dstOffset + srcLen <= kTotalBitLen);
+	  for (int i = 0; i < Math.min(src.length * 8, srcLen); ++i)
+	    if (((src[i >>> 3] >>> (i & 7)) & 1) != 0)
+	      bitSet(dst, dstOffset + i);
+	}
+	
+	// Places the lowest len bits of bits, lowest bit first, at [dstOffset, dstOffset + len).
+	// Same order as partHashSet, i.e. bit i of bits is bit i of the part.
+	private static void partHashSet(final long[] dst, final int dstOffset, final long bits, final int len) {
+	  assert(0 < len && len < 64 && dstOffset + len <= kTotalBitLen);
+	  // reversed, the first bit is the highest of the part, as in the ID
+	  final long r     = Long.reverse(bits) >>> (64 - len);
+	  final int  shift = kTotalBitLen - dstOffset - len;
+	  if (shift >= 64) {
+	    dst[0] |= r << (shift - 64);
+	  } else {
+	    dst[1] |= r << shift;
+	    if (shift > 0) dst[0] |= r >>> (64 - shift);
+	  }
 	}
 	
 	// This is fucking absurd Java, get your crap together.
@@ -126,105 +155,128 @@ public final class ID implements Comparable<ID>, Serializable, Cloneable {
 	@FunctionalInterface
 	interface Fn3<A, B, C, _R> { public _R apply(A a, B b, C c); }
 
-	private static BitSet hashServiceId(ServiceId svcId) {
-	  final BitSet bs = new BitSet(kTotalBitLen);
-	  final Fn3<Integer, Integer, String, Unit> hashInto =
-	      (Integer offset, Integer bitLen, String s) -> {
-	    if (s != null) {
-	      partHashSet(bs, offset, hashString(s), bitLen);
-	    }
-
-	    return Unit.U;
-	  };
+	private static long[] hashServiceId(ServiceId svcId) {
+	  final long[] w = new long[2];
 	  
 	  // hash semantic 
-	  for (int i = 0; i < ServiceId.kPartsSemantic; ++i)
-	    hashInto.apply(i * kSemanticPartBitLen, kSemanticPartBitLen
-	                  ,svcId.parts[i]);
+	  for (int i = 0; i < ServiceId.kPartsSemantic; ++i) {
+	    final String s = svcId.parts[i];
+	    if (s != null)
+	      partHashSet(w, i * kSemanticPartBitLen, kSemanticHash.hash(s), kSemanticPartBitLen);
+	  }
 
 	  // hash provider
-	  hashInto.apply(kSemanticTotalBitLen, kProviderBitLen
-                  ,svcId.parts[ServiceId.kPartsSemantic]);
+	  final String p = svcId.parts[ServiceId.kPartsSemantic];
+	  if (p != null)
+	    partHashSet(w, kSemanticTotalBitLen, kProviderHash.hash(p), kProviderBitLen);
 	  
-    return bs;
+    return w;
 	}
-	
-	private static BitSet bitsetArithPwrOf2(final BitSet _bs, final int pwrOf2, final boolean addition) {
-    // The bitset is defined as big-endian unsigned, i.e. (idx 0 is highest bit)
-    final BitSet bs = (BitSet)_bs.clone();
-    assert(pwrOf2 < kTotalBitLen);
-    for (int i = kTotalBitLen - 1 - pwrOf2; i >= 0; --i) {
-      bs.flip(i);
-      // add/sub for unsigned binary is the same, except we bail if (set == addition) after flip
-      if (bs.get(i) == addition) break;
-    }
-    
-    return bs;
-  }
-	protected static BitSet bitsetSubPwrOf2(final BitSet _bs, final int pwrOf2)
-	{ return bitsetArithPwrOf2(_bs, pwrOf2, false); }
-	
-	protected static BitSet bitsetAddPwrOf2(final BitSet _bs, final int pwrOf2)
-  { return bitsetArithPwrOf2(_bs, pwrOf2, true); }
 
-	public static class IdSpan {
-	  public static final IdSpan kEmpty = new IdSpan(Optional.empty());
+	/**
+	 * An inclusive span [bgn, end] on the ring, or the empty span. Immutable;
+	 * whether the span wraps around past the maximum ID is decided once at
+	 * construction, so membership tests are a couple of comparisons.
+	 */
+	public static final class IdSpan implements Serializable {
+	  private static final long serialVersionUID = 2950380446946212578L;
+	  
+	  public static final IdSpan kEmpty = new IdSpan(null, null);
     public static final IdSpan kAll   = Inclusive(idMin, idMax);
     
-    public static IdSpan Inclusive(final ID bgn, final ID end)
-    { return new IdSpan(Optional.of(new SpanInclusive(bgn, end))); }
+    public static IdSpan Inclusive(final ID bgn, final ID end) {
+      assert(bgn != null && end != null);
+      return new IdSpan(bgn, end);
+    }
 
-	  public boolean empty() { return !span.isPresent(); }
+	  public boolean empty() { return bgn == null; }
+	  
+	  // true iff bgn > end, i.e. the span is [bgn, max] + [min, end]
+	  public boolean wraps() { return wraps; }
 	  
 	  @Override
 	  public String toString()
 	  { return empty() ? "[<empty>]" : "[" + bgn() + ", " + end() + "]"; }
 
     public boolean contains(final ID x) {
-      return span.map((SpanInclusive s) -> {
-              final Fn2<ID, ID, Boolean> ltEq   = (ID a, ID b) -> a.compareTo(b) <= 0;
-              final Fn2<ID, ID, Boolean> inSpan = (ID a, ID b) -> ltEq.apply(a, x) && ltEq.apply(x, b);
-              if (ltEq.apply(s.bgn, s.end)) // non-wrapping
-                return inSpan.apply(s.bgn, s.end);
-              
-              // wraps around, check both [bgn, max] and [min, end]
-              return inSpan.apply(s.bgn, idMax) ||
-                     inSpan.apply(idMin, s.end);
-          }).orElse(false);
+      if (bgn == null) return false;
+      
+      return wraps ? bgn.compareTo(x) <= 0 || x.compareTo(end) <= 0
+                   : bgn.compareTo(x) <= 0 && x.compareTo(end) <= 0;
     }
     
-    public boolean containsExcl(ID x) {
-      return span.map((SpanInclusive s) -> {
-          return (!(s.bgn.equals(x) || s.end.equals(x))) &&
-                 contains(x);
-        }).orElse(false);
+    public boolean containsExcl(final ID x) {
+      return bgn != null && !bgn.equals(x) && !end.equals(x) && contains(x);
     }
     
-    public ID bgn() { return span.map((SpanInclusive s) -> s.bgn).orElse(null); } 
-    public ID end() { return span.map((SpanInclusive s) -> s.end).orElse(null); }
+    public ID bgn() { return bgn; } 
+    public ID end() { return end; }
 
-    public IdSpan subsetMin(final ID newMin) {
-      return span.map((SpanInclusive s) -> {
-          return contains(newMin) ? Inclusive(newMin, s.end) : kEmpty;
-        }).orElse(kEmpty);
-    }
+    public IdSpan subsetMin(final ID newMin)
+    { return contains(newMin) ? Inclusive(newMin, end) : kEmpty; }
     
-    private static class SpanInclusive {
-      public final ID bgn, end;
-      SpanInclusive(ID _bgn, ID _end) { bgn =  _bgn; end =  _end; }
-    }
+    private final ID      bgn, end; // both null iff empty
+    private final boolean wraps;
     
-    private final Optional<SpanInclusive> span;
-    private IdSpan(Optional<SpanInclusive> s) { span = s; }
+    private IdSpan(final ID _bgn, final ID _end) {
+      bgn   = _bgn;
+      end   = _end;
+      wraps = bgn != null && bgn.compareTo(end) > 0;
+    }
+	}
+	
+	/**
+	 * Tests x in [a, b] on the ring. For a == b this is just the point a.
+	 * Allocation free, as are {@link #inOpen} and {@link #inHalfOpen}.
+	 */
+	public static boolean inClosed(final ID x, final ID a, final ID b) {
+	  return a.compareTo(b) <= 0 ? a.compareTo(x) <= 0 && x.compareTo(b) <= 0
+	                             : a.compareTo(x) <= 0 || x.compareTo(b) <= 0;
+	}
+	
+	/**
+	 * Tests x in (a, b) on the ring. For a == b the interval is empty.
+	 */
+	public static boolean inOpen(final ID x, final ID a, final ID b) {
+	  return !x.equals(a) && !x.equals(b) && inClosed(x, a, b);
+	}
+	
+	/**
+	 * Tests x in (a, b] on the ring, i.e. x == b or x in (a, b).
+	 */
+	public static boolean inHalfOpen(final ID x, final ID a, final ID b) {
+	  return x.equals(b) || inOpen(x, a, b);
+	}
+	
+	/**
+	 * Compares the clockwise distances from a to x and from b to x on the
+	 * ring, i.e. (x - a) and (x - b) modulo 2^kTotalBitLen. The distance from x
+	 * to itself is 0. Allocation free.
+	 * 
+	 * @return -1, 0, or 1, if a is closer to, as close to, or farther from x
+	 *         than b.
+	 */
+	public static int compareDistance(final ID a, final ID b, final ID x) {
+	  // (x - a) and (x - b) as two word subtractions with borrow
+	  final long aLo = x.lo - a.lo;
+	  final long aHi = x.hi - a.hi - (Long.compareUnsigned(x.lo, a.lo) < 0 ? 1L : 0L);
+	  final long bLo = x.lo - b.lo;
+	  final long bHi = x.hi - b.hi - (Long.compareUnsigned(x.lo, b.lo) < 0 ? 1L : 0L);
+	  
+	  final int c = Long.compareUnsigned(aHi & kMaskHi, bHi & kMaskHi);
+	  if (c != 0) return c < 0 ? -1 : 1;
+	  
+	  return Integer.signum(Long.compareUnsigned(aLo & kMaskLo, bLo & kMaskLo));
 	}
 	
 	public static IdSpan ServiceId(ServiceId svcId) {
 	  final ID bgn = new ID(hashServiceId(svcId));
 	  
-	  final BitSet bsEndIncl = (BitSet)bgn.id.clone();
+	  final long[] wEndIncl = { bgn.hi, bgn.lo };
 	  final Fn2<Integer, Integer, Unit> endFillBits = (Integer offset, Integer len) -> {
 	    assert(offset + len <= kTotalBitLen);
-	    bsEndIncl.set(offset, offset + len);
+	    for (int i = offset; i < offset + len; ++i)
+	      bitSet(wEndIncl, i);
 	    return Unit.U;
 	  };
 	  
@@ -234,22 +286,40 @@ public final class ID implements Comparable<ID>, Serializable, Cloneable {
 	  if (svcId.getProviderPart() == null)
 	    endFillBits.apply(kSemanticTotalBitLen, kProviderBitLen);
 	  
-	  final ID end = new ID(bsEndIncl);
+	  final ID end = new ID(wEndIncl);
 	  return IdSpan.Inclusive(bgn, end);
 	}
 	
 	public static ID NodeId(final byte[] blob) {
-	  return new ID(bitsetResize(BitSet.valueOf(blob), kTotalBitLen));
+	  final long[] w = new long[2];
+	  partHashSet(w, 0, blob, kTotalBitLen);
+	  return new ID(w);
   }
 
-	public ID(ProviderId x) { id = hashServiceId(x); }
+	public ID(ProviderId x) { this(hashServiceId(x)); }
 	
-	private ID() { id = new BitSet(kTotalBitLen); }
+	private ID(long[] w) { this(w[0], w[1]); }
 	
-	private ID(BitSet x) { id = x; }
+	private ID(long _hi, long _lo) { hi = _hi & kMaskHi; lo = _lo & kMaskLo; }
+	
+	/**
+	 * Returns the ID with the given bits, as returned by {@link #highBits()}
+	 * and {@link #lowBits()}, e.g. to read an ID sent over the wire.
+	 */
+	public static ID fromBits(final long hi, final long lo) { return new ID(hi, lo); }
+	
+	/**
+	 * @return The bits [64, kTotalBitLen) of this ID.
+	 */
+	public long highBits() { return hi; }
+	
+	/**
+	 * @return The bits [0, 64) of this ID.
+	 */
+	public long lowBits() { return lo; }
 	
 	@Override
-	public ID clone() { return new ID((BitSet)id.clone()); }
+	public ID clone() { return new ID(hi, lo); }
 	
 	public final String toString() { return toHexString(); }
 
@@ -264,14 +334,14 @@ public final class ID implements Comparable<ID>, Serializable, Cloneable {
 	public final String toHexString(int numberOfBytes) {
 
 		// number of displayed bytes must be in interval [1, ceil(kTotalBitLen / 8) )
-	  final int    kNumByte  = (kTotalBitLen + 7) / 8; // BitSet size cannot be specified exactly.
+	  final int    kNumByte  = (kTotalBitLen + 7) / 8;
 	  final byte[] ary       = new byte[kNumByte];
 	  final int    aryBits   = ary.length * 8;
 	  final int    aryBitPad = aryBits - kTotalBitLen;
 	  for (int i = aryBitPad; i < aryBits; ++i) {
 	    final int bitIdx = i - aryBitPad;
 	    // note that ID is big-endian encoded
-	    ary[i/8] |= (id.get(bitIdx) ? 1 : 0) << (7 - (i % 8));
+	    ary[i/8] |= (bitGet(bitIdx) ? 1 : 0) << (7 - (i % 8));
 	  }
 		int displayBytes = Math.max(1, Math.min(numberOfBytes, ary.length));
 		
@@ -301,9 +371,8 @@ public final class ID implements Comparable<ID>, Serializable, Cloneable {
 	}
 
 	/**
-	 * Returns length of this ID measured in bits. ID length is determined by
-	 * the length of the stored byte[] array, i.e. leading zeros have to be
-	 * stored in the array.
+	 * Returns length of this ID measured in bits. All IDs share the same
+	 * length, {@link #kTotalBitLen}.
 	 * 
 	 * @return Length of this ID measured in bits.
 	 */
@@ -327,7 +396,13 @@ public final class ID implements Comparable<ID>, Serializable, Cloneable {
           "The power of two is out of range! It must be in the interval [0, kTotalBitLen)");
     }
 
-	  return new ID(bitsetAddPwrOf2(id, powerOfTwo));
+	  if (powerOfTwo >= 64)
+	    return new ID(hi + (1L << (powerOfTwo - 64)), lo);
+	  
+	  // carry into the high word if the unsigned low word wrapped
+	  final long sumLo = lo + (1L << powerOfTwo);
+	  final long carry = Long.compareUnsigned(sumLo, lo) < 0 ? 1L : 0L;
+	  return new ID(hi + carry, sumLo);
 	}
 
 	/**
@@ -343,47 +418,35 @@ public final class ID implements Comparable<ID>, Serializable, Cloneable {
 			return false;
 		}
 
-		// check if both byte arrays are equal by using the compareTo method
-		return (this.compareTo((ID) equalsTo) == 0);
+		final ID other = (ID) equalsTo;
+		return hi == other.hi && lo == other.lo;
 
 	}
 
 	/**
-	 * Compare current ID with the given object. If either the object is not a
-	 * ID or both IDs' lengths do not match, a ClassCastException is thrown.
-	 * Otherwise both IDs are compared byte by byte.
+	 * Compare current ID with the given ID. Both IDs are compared as unsigned
+	 * integers, high word first.
 	 * 
 	 * @return -1, 0, or 1, if this ID is smaller, same size, or greater than
 	 *         the given object, respectively.
 	 */
-	public final int compareTo(ID otherKey) throws ClassCastException {
-	  assert(id.size() >= kTotalBitLen); // size >= given minimum at creation.
-		if (id.size() != otherKey.id.size()) {
-			throw new ClassCastException(
-					"Only ID objects with same length can be "
-							+ "compared! This ID is " + id.size()
-							+ " bits long while the other ID is "
-							+ otherKey.id.size() + " bits long.");
-		}
-
-		for (int i = 0; i < kTotalBitLen; ++i) {
-		  if (id.get(i) != otherKey.id.get(i))
-		    return id.get(i) ? 1 : -1;
-		}
-		
-		return 0;
+	public final int compareTo(ID otherKey) {
+	  final int c = Long.compareUnsigned(hi, otherKey.hi);
+	  if (c != 0) return c < 0 ? -1 : 1;
+	  
+	  return Integer.signum(Long.compareUnsigned(lo, otherKey.lo));
 	}
 
 	/**
 	 * @see java.lang.Object#hashCode()
 	 */
 	public final int hashCode() {
-		return 19 + id.hashCode() * 13;
+		return 19 + Long.hashCode(hi * 31 + lo) * 13;
 	}
 
 	// this in (a, b)
 	// NOTE: *not* [a, b], but (a, b)
   public boolean isInInterval(ID a, ID b)
-  { return IdSpan.Inclusive(a, b).containsExcl(this); }
+  { return inOpen(this, a, b); }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package de.uniba.wiai.lspi.chord.data;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.binary.StringUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.MurmurHash3;
+
+/**
+ * Hashes one part of a service identifier to the bits {@link ID} places on
+ * the ring. {@link ID} keeps only the lowest few bits of the result (6 per
+ * semantic part, {@link ID#kProviderBitLen} for the provider part), lowest bit
+ * first, so a strategy only has to mix well, not to be cryptographic.
+ *
+ * The strategy is chosen once, when {@link ID} is first used, from the
+ * system properties (see {@link de.uniba.wiai.lspi.chord.service.PropertiesLoader}):
+ * <ul>
+ * <li><code>de.uniba.wiai.lspi.chord.data.ID.hash.strategy</code>:
+ * <code>sha1</code> (default, IDs as in previous versions) or
+ * <code>murmur3</code>.</li>
+ * <li><code>de.uniba.wiai.lspi.chord.data.ID.hash.memo</code>: number of
+ * semantic parts (category names) whose hash is remembered, 0 to disable.</li>
+ * </ul>
+ * All nodes of a network must use the same strategy.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface IdHashStrategy {
+
+	/**
+	 * Name of the property selecting the strategy.
+	 */
+	public static final String STRATEGY_PROPERTY = "de.uniba.wiai.lspi.chord.data.ID.hash.strategy";
+
+	/**
+	 * Name of the property giving the capacity of the semantic part memo.
+	 */
+	public static final String MEMO_PROPERTY = "de.uniba.wiai.lspi.chord.data.ID.hash.memo";
+
+	/**
+	 * Hashes <code>part</code>. Bit 0 of the result is the first bit used.
+	 *
+	 * @param part
+	 *            Part of a service identifier, not null.
+	 * @return 64 hash bits.
+	 */
+	public long hash(String part);
+
+	/**
+	 * The first 8 bytes of the SHA-1 digest of the UTF-8 encoded part, byte 0
+	 * lowest. This is the bit order IDs have always been built in.
+	 */
+	public static final IdHashStrategy SHA1 = new IdHashStrategy() {
+		public long hash(String part) {
+			final byte[] d = DigestUtils.sha1(part);
+			long x = 0;
+			for (int i = 7; i >= 0; --i)
+				x = (x << 8) | (d[i] & 0xFFL);
+			return x;
+		}
+
+		@Override
+		public String toString() { return "sha1"; }
+	};
+
+	/**
+	 * The first word of the 128 bit x64 MurmurHash3 of the UTF-8 encoded part.
+	 * Several times cheaper than {@link #SHA1}, but gives different IDs.
+	 */
+	public static final IdHashStrategy MURMUR3 = new IdHashStrategy() {
+		public long hash(String part) {
+			return MurmurHash3.hash128x64(StringUtils.getBytesUtf8(part))[0];
+		}
+
+		@Override
+		public String toString() { return "murmur3"; }
+	};
+
+	/**
+	 * Returns the strategy with the given name.
+	 *
+	 * @param name
+	 *            <code>sha1</code> or <code>murmur3</code>, ignoring case.
+	 * @return The strategy.
+	 * @throws IllegalArgumentException
+	 *             If there is no strategy of that name.
+	 */
+	public static IdHashStrategy forName(String name) {
+		if (SHA1.toString().equalsIgnoreCase(name)) return SHA1;
+		if (MURMUR3.toString().equalsIgnoreCase(name)) return MURMUR3;
+		throw new IllegalArgumentException("Unknown ID hash strategy: " + name);
+	}
+
+	/**
+	 * Returns the strategy named by {@link #STRATEGY_PROPERTY}, {@link #SHA1}
+	 * if it is not set.
+	 */
+	public static IdHashStrategy fromProperties() {
+		final String name = System.getProperty(STRATEGY_PROPERTY);
+		return name == null || name.trim().isEmpty() ? SHA1 : forName(name.trim());
+	}
+
+	/**
+	 * Wraps <code>inner</code> with a table remembering the hashes of up to
+	 * <code>capacity</code> distinct parts. Meant for category names, which
+	 * repeat across services; once the table is full further parts are hashed
+	 * but not remembered.
+	 *
+	 * @param inner
+	 *            Strategy computing the hashes.
+	 * @param capacity
+	 *            Maximum number of remembered parts. If not positive,
+	 *            <code>inner</code> is returned.
+	 * @return The memoizing strategy.
+	 */
+	public static IdHashStrategy memoized(final IdHashStrategy inner, final int capacity) {
+		if (capacity <= 0) return inner;
+
+		final ConcurrentHashMap<String, Long> memo = new ConcurrentHashMap<String, Long>();
+		return new IdHashStrategy() {
+			public long hash(String part) {
+				final Long x = memo.get(part);
+				if (x != null) return x;
+
+				final long h = inner.hash(part);
+				// racy bound, may overshoot by the number of concurrent callers
+				if (memo.size() < capacity) memo.put(part, h);
+				return h;
+			}
+
+			@Override
+			public String toString() { return inner + "+memo(" + capacity + ")"; }
+		};
+	}
+}
@@ -78,14 +78,14 @@ public class URL implements Serializable {
 	 */
 	public final static List<String> KNOWN_PROTOCOLS = java.util.Collections
 			.unmodifiableList(java.util.Arrays.asList(new String[] {
-					"ocsocket", "oclocal", "ocrmi" }));
+					"ocsocket", "oclocal", "ocrmi", "ocnio" }));
 
 	/**
 	 * Array containing default ports for all known protocols. The port for each
 	 * protocol can be referenced with help of the constants for the protocoal
 	 * e.g. <code>SOCKET_PROTOCOL</code>.
 	 */
-	private final static int[] DEFAULT_PORTS = new int[] { 4242, -1, 4242 };
+	private final static int[] DEFAULT_PORTS = new int[] { 4242, -1, 4242, 4242 };
 
 	/**
 	 * Index of socket protocol in <code>{@link #KNOWN_PROTOCOLS}</code>.
@@ -103,6 +103,12 @@ public class URL implements Serializable {
 	 */
 	public final static int RMI_PROTOCOL = 2;
 
+	/**
+	 * Index of the non-blocking socket protocol in
+	 * <code>{@link #KNOWN_PROTOCOLS}</code>.
+	 */
+	public final static int NIO_PROTOCOL = 3;
+
 	/**
 	 * Constant for URL parsing.
 	 */
@@ -173,6 +179,9 @@ public class URL implements Serializable {
 			} else if (this.protocol
 					.equalsIgnoreCase(KNOWN_PROTOCOLS.get(URL.RMI_PROTOCOL))) {
 				this.port = URL.DEFAULT_PORTS[URL.RMI_PROTOCOL];
+			} else if (this.protocol
+					.equalsIgnoreCase(KNOWN_PROTOCOLS.get(URL.NIO_PROTOCOL))) {
+				this.port = URL.DEFAULT_PORTS[URL.NIO_PROTOCOL];
 			} else {
 				this.port = URL.DEFAULT_PORTS[URL.LOCAL_PROTOCOL];
 			}
@@ -0,0 +1,65 @@
+package de.uniba.wiai.lspi.chord.service;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.chord4js.ProviderId;
+import com.chord4js.Service;
+
+/**
+ * <p>
+ * Asynchronous access to the entries of a connected Chord node, composable
+ * with {@link CompletableFuture}. Unlike {@link AsynChord}, no thread is
+ * blocked while a request to a remote node is in flight, so a node can have
+ * many thousands of operations running at once.
+ * </p>
+ * <p>
+ * Like the synchronous methods of {@link Chord}, an operation is retried on
+ * communication failures until it succeeds. It can be given a deadline or be
+ * cancelled by completing the returned future, e.g. with
+ * {@link CompletableFuture#orTimeout(long, java.util.concurrent.TimeUnit)} or
+ * {@link CompletableFuture#cancel(boolean)}; the operation then stops before
+ * its next request. A request already sent is not taken back.
+ * </p>
+ * <p>
+ * The futures may be completed by threads of the transport, so actions
+ * depending on them must not block; use the <code>...Async</code> methods of
+ * {@link CompletableFuture} for those which do.
+ * </p>
+ */
+public interface AsyncChordService {
+
+	/**
+	 * Stores a service at the node responsible for its provider ID.
+	 *
+	 * @param svc
+	 *            Service to store.
+	 * @return Completed once stored.
+	 * @throws NullPointerException
+	 *             If <code>svc</code> is <code>null</code>.
+	 */
+	public abstract CompletableFuture<Void> insert(Service svc);
+
+	/**
+	 * Retrieves the services matching a request from the node responsible for
+	 * the start of its ID span.
+	 *
+	 * @param msg
+	 *            Services to retrieve.
+	 * @return The services found and the number of hops taken.
+	 * @throws NullPointerException
+	 *             If <code>msg</code> is <code>null</code>.
+	 */
+	public abstract CompletableFuture<C4SRetrieveResponse> retrieve(
+			C4SMsgRetrieve msg);
+
+	/**
+	 * Removes a service from the node responsible for its provider ID.
+	 *
+	 * @param providerId
+	 *            Provider ID of the service to remove.
+	 * @return Completed once removed.
+	 * @throws NullPointerException
+	 *             If <code>providerId</code> is <code>null</code>.
+	 */
+	public abstract CompletableFuture<Void> remove(ProviderId providerId);
+}
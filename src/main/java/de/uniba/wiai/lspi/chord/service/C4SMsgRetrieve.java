@@ -20,10 +20,14 @@ public class C4SMsgRetrieve implements Serializable {
     svcId       = a;
     constraints = b;
     amount      = amt;
-    span        = ID.ServiceId(a);
+    span        = a.getIdSpan();
   }
   
-  private C4SMsgRetrieve(ServiceId a, QoSConstraints b, int amt, ID.IdSpan s) {
+  /**
+   * Creates a retrieval of the services of <code>a</code> in the given span,
+   * e.g. to read one sent over the wire.
+   */
+  public C4SMsgRetrieve(ServiceId a, QoSConstraints b, int amt, ID.IdSpan s) {
     svcId       = a;
     constraints = b;
     amount      = amt;
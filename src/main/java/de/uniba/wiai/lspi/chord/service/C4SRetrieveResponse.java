@@ -29,6 +29,18 @@ public class C4SRetrieveResponse implements Serializable {
 	 */
 	private int hops = 1;
 	
+	/**
+	 * Whether the node asked first was not responsible and forwarded the
+	 * request to its predecessor.
+	 */
+	private boolean redirected;
+	
+	/**
+	 * Hops the lookup of the responsible node took when it was cached, or -1
+	 * if the node was looked up for this request.
+	 */
+	private int hopsSaved = -1;
+	
 	public C4SRetrieveResponse(Set<Service> services) {
 		this.services = services;
 	}
@@ -40,6 +52,30 @@ public class C4SRetrieveResponse implements Serializable {
 		return hops;
 	}
 	
+	public void markRedirected()     { redirected = true; }
+	public boolean isRedirected()    { return redirected; }
+	
+	/**
+	 * Records that the responsible node was taken from a cache rather than
+	 * looked up.
+	 * 
+	 * @param hopsSaved
+	 *            hops the lookup of the node took when it was cached
+	 */
+	public void markCached(int hopsSaved) {
+		this.hopsSaved = hopsSaved;
+	}
+	
+	public boolean isCached()        { return hopsSaved >= 0; }
+	
+	/**
+	 * @return the hops saved by taking the responsible node from a cache, 0 if
+	 *         it was looked up
+	 */
+	public int getHopsSaved() {
+		return Math.max(hopsSaved, 0);
+	}
+	
 	/**
 	 * Include the data from another {@link C4SRetrieveResponse} object into
 	 * this one. Adds the services to this services set and adds up the hops
@@ -0,0 +1,386 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.DEBUG;
+
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.chord4js.Pair;
+import com.chord4js.ProviderId;
+import com.chord4js.Service;
+
+import de.uniba.wiai.lspi.chord.com.CommunicationException;
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.service.AsyncChordService;
+import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
+import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
+import de.uniba.wiai.lspi.chord.service.ServiceException;
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * {@link AsyncChordService} of a {@link ChordImpl}. Each operation looks up
+ * the responsible node and invokes it like the synchronous methods of
+ * {@link ChordImpl}, but through the asynchronous methods of {@link Node}, so
+ * it holds no thread while waiting for a remote node. The steps between two
+ * requests run on the executor of the node's {@link NodeGroup}. Lookups are
+ * recursive, iterative or hedged, like those of {@link ChordImpl}.
+ */
+final class AsyncChordServiceImpl implements AsyncChordService {
+
+	/**
+	 * Object logger.
+	 */
+	private static final Logger logger = Logger
+			.getLogger(AsyncChordServiceImpl.class);
+
+	/**
+	 * Time in milliseconds before the second retry of an operation. The first
+	 * retry is immediate, as the failed node was mostly taken from the
+	 * location cache; the time doubles with each further retry.
+	 */
+	static final int RETRY_DELAY = Integer.getInteger(
+			"de.uniba.wiai.lspi.chord.service.impl.ChordImpl.retry.delay", 10);
+
+	/**
+	 * Time in milliseconds the retries of an operation are at most apart.
+	 */
+	static final int RETRY_MAX_DELAY = Integer.getInteger(
+			"de.uniba.wiai.lspi.chord.service.impl.ChordImpl.retry.maxdelay",
+			1000);
+
+	/**
+	 * Failure of an attempt which is to be retried, like a
+	 * {@link CommunicationException}.
+	 */
+	private static final class RetryException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		RetryException(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	private final ChordImpl impl;
+
+	/**
+	 * Whether lookups ask each hop for the next one, see
+	 * {@link ChordImpl#findSuccessorIteratively(ID)}.
+	 */
+	private final boolean iterative;
+
+	AsyncChordServiceImpl(ChordImpl impl, boolean iterative) {
+		this.impl = impl;
+		this.iterative = iterative;
+	}
+
+	public CompletableFuture<Void> insert(final Service svc) {
+		if (svc == null) {
+			throw new NullPointerException(
+					"Neither parameter may have value null!");
+		}
+		return new Operation<Void>(svc.getProviderId().getId()) {
+			@Override
+			CompletableFuture<Void> invoke(Pair<Node, Integer> responsible) {
+				return responsible.fst.insertEntryAsync(svc);
+			}
+		}.start();
+	}
+
+	public CompletableFuture<C4SRetrieveResponse> retrieve(
+			final C4SMsgRetrieve msg) {
+		if (msg == null) {
+			throw new NullPointerException(
+					"Neither parameter may have value null!");
+		}
+		if (msg.amount <= 0 || msg.span.empty()) {
+			return CompletableFuture.completedFuture(new C4SRetrieveResponse(
+					new HashSet<Service>()));
+		}
+		return new Operation<C4SRetrieveResponse>(msg.span.bgn()) {
+			@Override
+			CompletableFuture<C4SRetrieveResponse> invoke(
+					final Pair<Node, Integer> responsible) {
+				return responsible.fst.retrieveEntriesAsync(msg).thenApply(
+						response -> {
+							// equivalent of CommunicationException
+							if (response == null) {
+								throw new RetryException("No entries returned");
+							}
+							if (response.isRedirected()) {
+								AsyncChordServiceImpl.this.impl
+										.forgetSuccessor(responsible.fst);
+							}
+							response.incrementHop(responsible.snd);
+							if (this.hopsSaved >= 0) {
+								response.markCached(this.hopsSaved);
+							}
+							return response;
+						});
+			}
+		}.start();
+	}
+
+	public CompletableFuture<Void> remove(final ProviderId providerId) {
+		if (providerId == null) {
+			throw new NullPointerException(
+					"Neither parameter may have value null!");
+		}
+		return new Operation<Void>(providerId.getId()) {
+			@Override
+			CompletableFuture<Void> invoke(Pair<Node, Integer> responsible) {
+				return responsible.fst.removeEntryAsync(providerId);
+			}
+		}.start();
+	}
+
+	/**
+	 * Asynchronous variant of {@link ChordImpl#findSuccessor(ID)}. A failed
+	 * closest preceding node is removed from the references, and the lookup
+	 * fails with a {@link CommunicationException} to be retried. Removing it
+	 * may send replicas to another successor, so it is done on the executor,
+	 * never on the thread delivering the response or the timeout.
+	 */
+	CompletableFuture<Pair<Node, Integer>> findSuccessor(ID key,
+			Executor executor) {
+		if (ChordImpl.LOOKUP_ALPHA > 1) {
+			return new HedgedLookup(this.impl, key,
+					ChordImpl.LOOKUP_ALPHA, executor).start();
+		} else if (this.iterative) {
+			return this.findSuccessorIteratively(key, executor);
+		}
+		final References references = this.impl.references;
+		Node successor = references.getSuccessor();
+		if (successor == null) {
+			// the local node is the only node in the network
+			return CompletableFuture.completedFuture(new Pair<Node, Integer>(
+					this.impl.getLocalNode(), 0));
+		} else if (ID.inHalfOpen(key, this.impl.getID(), successor.getNodeID())) {
+			return CompletableFuture.completedFuture(new Pair<Node, Integer>(
+					successor, 0));
+		}
+
+		final Node closestPrecedingNode = references
+				.getClosestPrecedingNode(key);
+		return closestPrecedingNode.findSuccessorAsync(key).handleAsync((p, t) -> {
+			if (t != null) {
+				Throwable cause = unwrap(t);
+				if (cause instanceof CommunicationException) {
+					logger.info("Communication failure while requesting "
+							+ "successor for key " + key + " from node "
+							+ closestPrecedingNode);
+					references.removeReference(closestPrecedingNode);
+				}
+				throw new CompletionException(cause);
+			}
+			p.snd += 1;
+			return p;
+		}, executor);
+	}
+
+	/**
+	 * Asynchronous variant of {@link ChordImpl#findSuccessorIteratively(ID)}.
+	 * If the first remote hop fails, it is removed from the references and the
+	 * lookup fails with a {@link CommunicationException} to be retried.
+	 */
+	private CompletableFuture<Pair<Node, Integer>> findSuccessorIteratively(
+			ID key, Executor executor) {
+		Pair<Node, Boolean> hop = this.impl.findNextHop(key);
+		if (hop.snd) {
+			return CompletableFuture.completedFuture(new Pair<Node, Integer>(
+					hop.fst, 0));
+		}
+		return this.nextHop(key, null, hop.fst, 1, executor);
+	}
+
+	/**
+	 * Asks <code>node</code>, reached after <code>hops</code> hops, for the
+	 * next hop towards <code>key</code>, and follows it.
+	 */
+	private CompletableFuture<Pair<Node, Integer>> nextHop(final ID key,
+			final Node previous, final Node node, final int hops,
+			final Executor executor) {
+		return node.findNextHopAsync(key).handleAsync((hop, t) -> {
+			if (t == null) {
+				if (hop.snd) {
+					return CompletableFuture.completedFuture(new Pair<Node, Integer>(
+							hop.fst, hops));
+				}
+				return this.nextHop(key, node, hop.fst, hops + 1, executor);
+			}
+			Throwable cause = unwrap(t);
+			if (!(cause instanceof CommunicationException)) {
+				throw new CompletionException(cause);
+			}
+			if (previous == null) {
+				logger.info("Communication failure while requesting next hop "
+						+ "for key " + key + " from node " + node);
+				this.impl.references.removeReference(node);
+				throw new CompletionException(cause);
+			}
+			// let the hop before route around the failed node
+			return previous.findSuccessorAsync(key).thenApply(p -> {
+				p.snd += hops - 1;
+				return p;
+			});
+		}, executor).thenCompose(f -> f);
+	}
+
+	private static Throwable unwrap(Throwable t) {
+		while (t instanceof CompletionException && t.getCause() != null) {
+			t = t.getCause();
+		}
+		return t;
+	}
+
+	/**
+	 * One insertion, retrieval or removal, attempted until it succeeds, fails
+	 * with an unexpected exception, or its result is completed by the caller.
+	 * Retries are delayed more and more, up to {@link #RETRY_MAX_DELAY}, and
+	 * a responsible node that could not be reached is removed from the
+	 * references first, as it would be found again otherwise until the next
+	 * stabilization.
+	 */
+	private abstract class Operation<T> {
+
+		private final CompletableFuture<T> result = new CompletableFuture<T>();
+
+		private final ID key;
+
+		private final Executor executor;
+
+		/**
+		 * Node invoked by the current attempt, <code>null</code> while it is
+		 * looked up.
+		 */
+		private Node responsibleNode;
+
+		/**
+		 * Hops saved by the current attempt taking the responsible node from
+		 * the location cache of the node, or -1.
+		 */
+		int hopsSaved;
+
+		/**
+		 * Number of failed attempts.
+		 */
+		private int failures;
+
+		Operation(ID key) {
+			this.key = key;
+			this.executor = AsyncChordServiceImpl.this.impl.getAsyncExecutor();
+		}
+
+		/**
+		 * Invokes the operation on the node responsible for the key.
+		 */
+		abstract CompletableFuture<T> invoke(Pair<Node, Integer> responsible);
+
+		CompletableFuture<T> start() {
+			if (AsyncChordServiceImpl.this.impl.getLocalNode() == null) {
+				this.result.completeExceptionally(new ServiceException(
+						"Node is not connected!"));
+			} else {
+				this.attempt();
+			}
+			return this.result;
+		}
+
+		private void attempt() {
+			// cancelled or timed out
+			if (this.result.isDone()) {
+				return;
+			}
+			final ChordImpl impl = AsyncChordServiceImpl.this.impl;
+			final Pair<Node, Integer> cached = impl.getCachedSuccessor(this.key);
+			this.responsibleNode = null;
+			this.hopsSaved = cached != null ? cached.snd : -1;
+			final CompletableFuture<Pair<Node, Integer>> responsible;
+			if (cached != null) {
+				responsible = CompletableFuture
+						.completedFuture(new Pair<Node, Integer>(cached.fst, 0));
+			} else {
+				try {
+					responsible = AsyncChordServiceImpl.this.findSuccessor(
+							this.key, this.executor).thenApply(p -> {
+						impl.cacheSuccessor(this.key, p);
+						return p;
+					});
+				} catch (RuntimeException e) {
+					this.result.completeExceptionally(e);
+					return;
+				}
+			}
+			// nodes are invoked from the executor, never from the thread
+			// delivering the previous response
+			responsible.thenComposeAsync(p -> {
+				this.responsibleNode = p.fst;
+				return this.invoke(p);
+			}, this.executor).whenComplete(this::attempted);
+		}
+
+		private void attempted(T value, Throwable t) {
+			if (t == null) {
+				this.result.complete(value);
+				return;
+			}
+			Throwable cause = unwrap(t);
+			if (!(cause instanceof CommunicationException || cause instanceof RetryException)) {
+				this.result.completeExceptionally(cause);
+				return;
+			}
+			if (logger.isEnabledFor(DEBUG)) {
+				logger.debug("Attempt for key " + this.key
+						+ " failed, retrying.", cause);
+			}
+			final Node failed = cause instanceof CommunicationException ? this.responsibleNode
+					: null;
+			if (this.responsibleNode != null) {
+				AsyncChordServiceImpl.this.impl
+						.forgetSuccessor(this.responsibleNode);
+			}
+			final int failures = ++this.failures;
+			final long delay = failures == 1 ? 0 : Math.min(RETRY_MAX_DELAY,
+					(long) RETRY_DELAY << Math.min(30, failures - 2));
+			final Runnable retry = () -> this.retry(failed);
+			if (delay == 0) {
+				this.submit(retry);
+			} else {
+				CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS,
+						this::submit).execute(retry);
+			}
+		}
+
+		/**
+		 * Runs the given step on the executor, or fails the operation if the
+		 * executor does not take it.
+		 */
+		private void submit(Runnable step) {
+			try {
+				this.executor.execute(step);
+			} catch (RejectedExecutionException e) {
+				this.result.completeExceptionally(e);
+			}
+		}
+
+		/**
+		 * Attempts the operation again, after removing the node the last
+		 * attempt could not reach, if any, from the references.
+		 */
+		private void retry(Node failed) {
+			final References references = AsyncChordServiceImpl.this.impl.references;
+			if (failed != null && !this.result.isDone()
+					&& references.containsReference(failed)) {
+				logger.info("Communication failure while invoking node "
+						+ failed + " responsible for key " + this.key);
+				references.removeReference(failed);
+			}
+			this.attempt();
+		}
+	}
+}
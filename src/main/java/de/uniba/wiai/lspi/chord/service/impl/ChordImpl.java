@@ -30,28 +30,30 @@ package de.uniba.wiai.lspi.chord.service.impl;
 import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.DEBUG;
 import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.INFO;
 
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import com.chord4js.Pair;
 import com.chord4js.ProviderId;
 import com.chord4js.Service;
 
 import de.uniba.wiai.lspi.chord.com.CommunicationException;
+import de.uniba.wiai.lspi.chord.com.DeadlineExceededException;
 import de.uniba.wiai.lspi.chord.com.Node;
 import de.uniba.wiai.lspi.chord.com.Proxy;
 import de.uniba.wiai.lspi.chord.com.RefsAndEntries;
 import de.uniba.wiai.lspi.chord.data.ID;
 import de.uniba.wiai.lspi.chord.data.URL;
 import de.uniba.wiai.lspi.chord.service.AsynChord;
+import de.uniba.wiai.lspi.chord.service.AsyncChordService;
 import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
 import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
 import de.uniba.wiai.lspi.chord.service.Chord;
@@ -71,13 +73,6 @@ import de.uniba.wiai.lspi.util.logging.Logger;
  */
 public final class ChordImpl implements Chord, Report, AsynChord {
 
-	/**
-	 * Number of threads to allow concurrent invocations of asynchronous
-	 * methods. e.g. {@link ChordImpl#insertAsync(Key, Serializable)}.
-	 */
-	private static final int ASYNC_CALL_THREADS = Integer.parseInt(System
-			.getProperty(ChordImpl.class.getName() + ".AsyncThread.no"));
-
 	/**
 	 * Time in seconds until the stabilize task is started for the first time.
 	 */
@@ -121,10 +116,66 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 			.parseInt(System
 					.getProperty("de.uniba.wiai.lspi.chord.service.impl.ChordImpl.CheckPredecessorTask.interval"));
 
+	/**
+	 * Whether lookups are driven by this node, asking each hop for the next
+	 * one with {@link Node#findNextHop(ID)}, rather than forwarded from node
+	 * to node with {@link Node#findSuccessor(ID)}.
+	 */
+	static final boolean ITERATIVE_LOOKUP = "iterative"
+			.equalsIgnoreCase(System
+					.getProperty("de.uniba.wiai.lspi.chord.service.impl.ChordImpl.lookup"));
+
+	/**
+	 * Number of nodes a lookup may ask for the next hop at once, see
+	 * {@link HedgedLookup}. With 1, lookups are not hedged.
+	 */
+	static final int LOOKUP_ALPHA = Math.max(1, Integer.getInteger(
+			"de.uniba.wiai.lspi.chord.service.impl.ChordImpl.lookup.alpha", 1));
+
+	/**
+	 * Time in milliseconds a lookup waits at least for an answer before asking
+	 * another node.
+	 */
+	static final int LOOKUP_HEDGE_DELAY = Integer.getInteger(
+			"de.uniba.wiai.lspi.chord.service.impl.ChordImpl.lookup.hedge.delay",
+			10);
+
+	/**
+	 * Percentile of the latest hop latencies after which a lookup asks another
+	 * node, if above {@link #LOOKUP_HEDGE_DELAY}.
+	 */
+	static final int LOOKUP_HEDGE_PERCENTILE = Math.min(100, Math.max(0,
+			Integer.getInteger(
+					"de.uniba.wiai.lspi.chord.service.impl.ChordImpl.lookup.hedge.percentile",
+					95)));
+
+	/**
+	 * Number of nodes kept in the {@link LocationCache} of a node. With 0, the
+	 * responsible node is looked up for every insert, retrieve and remove.
+	 */
+	static final int LOCATION_CACHE_SIZE = Math.max(0, Integer.getInteger(
+			"de.uniba.wiai.lspi.chord.service.impl.ChordImpl.cache.size", 0));
+
+	/**
+	 * Time in milliseconds a node found responsible for a key is kept in the
+	 * {@link LocationCache}.
+	 */
+	static final int LOCATION_CACHE_TTL = Integer.getInteger(
+			"de.uniba.wiai.lspi.chord.service.impl.ChordImpl.cache.ttl", 30000);
+
+	/**
+	 * Whether the maintenance tasks are run periodically by the
+	 * {@link MaintenanceScheduler} shared by all nodes, rather than only when
+	 * {@link #runTasks()} is invoked.
+	 */
+	private static final boolean MAINTENANCE_TASKS_PERIODIC = Boolean
+			.parseBoolean(System
+					.getProperty("de.uniba.wiai.lspi.chord.service.impl.ChordImpl.MaintenanceTasks.periodic"));
+
 	/**
 	 * Number of references in the successor list.
 	 */
-	private static final int NUMBER_OF_SUCCESSORS = (Integer
+	static final int NUMBER_OF_SUCCESSORS = (Integer
 			.parseInt(System
 					.getProperty("de.uniba.wiai.lspi.chord.service.impl.ChordImpl.successors")) < 1) ? 1
 			: Integer
@@ -148,9 +199,15 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 	private Entries entries;
 
 	/**
-	 * Executor service for local maintenance tasks.
+	 * Local maintenance tasks scheduled periodically; <code>null</code> if they
+	 * are run by {@link #runTasks()} only.
 	 */
-	private ScheduledExecutorService maintenanceTasks;
+	private MaintenanceScheduler.Tasks maintenanceTasks;
+
+	/**
+	 * Group of this node, which executes its asynch requests.
+	 */
+	private final NodeGroup group;
 
 	/**
 	 * Executor service for asynch requests.
@@ -158,27 +215,23 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 	private ExecutorService asyncExecutor;
 
 	/**
-	 * ThreadFactory used with Executor services.
-	 * 
-	 * @author sven
-	 * 
+	 * Latencies of the hops of lookups started by this node, for
+	 * {@link HedgedLookup}.
 	 */
-	private static class ChordThreadFactory implements
-			java.util.concurrent.ThreadFactory {
+	final HedgedLookup.Latencies lookupLatencies = new HedgedLookup.Latencies();
 
-		private String executorName;
-
-		ChordThreadFactory(String executorName) {
-			this.executorName = executorName;
-		}
-
-		public Thread newThread(Runnable r) {
-			Thread newThread = new Thread(r);
-			newThread.setName(this.executorName + "-" + newThread.getName());
-			return newThread;
-		}
+	/**
+	 * Nodes recently found responsible for keys; <code>null</code> if not
+	 * cached.
+	 */
+	private final LocationCache locationCache = LOCATION_CACHE_SIZE > 0 ? new LocationCache(
+			LOCATION_CACHE_SIZE, LOCATION_CACHE_TTL) : null;
 
-	}
+	/**
+	 * Asynchronous access to this node, built on futures.
+	 */
+	private final AsyncChordService asyncService = new AsyncChordServiceImpl(
+			this, ITERATIVE_LOOKUP);
 
 	/**
 	 * References to remote nodes.
@@ -209,19 +262,33 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 	/* constructor */
 
 	/**
-	 * Creates a new instance of ChordImpl which initially is disconnected.
-	 * Constructor is hidden. Only constructor.
+	 * Creates a new instance of ChordImpl which initially is disconnected,
+	 * in the {@link NodeGroup#getDefault() default group}.
 	 */
 	public ChordImpl() {
+		this(NodeGroup.getDefault());
+	}
+
+	/**
+	 * Creates a new instance of ChordImpl which initially is disconnected.
+	 * 
+	 * @param group
+	 *            Group of nodes whose executors this node uses.
+	 * @throws NullPointerException
+	 *             If <code>group</code> is <code>null</code>.
+	 */
+	public ChordImpl(NodeGroup group) {
+		if (group == null) {
+			throw new NullPointerException("Group may not be null!");
+		}
 		this.logger = Logger.getLogger(ChordImpl.class.getCanonicalName()
 				+ ".unidentified");
 		this.logger.debug("Logger initialized.");
 
 //		this.maintenanceTasks = new ScheduledThreadPoolExecutor(3,
 //				new ChordThreadFactory("MaintenanceTaskExecution"));
-		this.asyncExecutor = Executors.newFixedThreadPool(
-				ChordImpl.ASYNC_CALL_THREADS, new ChordThreadFactory(
-						"AsynchronousExecution"));
+		this.group = group;
+		this.asyncExecutor = group.acquire();
 		this.hashFunction = HashFunction.getHashFunction();
 		logger.info("ChordImpl initialized!");
 		
@@ -239,6 +306,23 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 		return this.asyncExecutor;
 	}
 
+	/**
+	 * @return Access to the entries of this node returning
+	 *         {@link java.util.concurrent.CompletableFuture}s, usable once this
+	 *         node has created or joined a network.
+	 */
+	public final AsyncChordService getAsyncService() {
+		return this.asyncService;
+	}
+
+	/**
+	 * @return The part of this node which answers requests of other nodes;
+	 *         <code>null</code> if this node is not connected.
+	 */
+	final NodeImpl getLocalNode() {
+		return this.localNode;
+	}
+
 	/* implementation of Chord interface */
 
 	public final URL getURL() {
@@ -407,8 +491,8 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 
 	/**
 	 * Creates the tasks that must be executed periodically to maintain the
-	 * Chord overlay network and schedules them with help of a
-	 * {@link ScheduledExecutorService}.
+	 * Chord overlay network and, if configured, schedules them with help of the
+	 * shared {@link MaintenanceScheduler}.
 	 */
 	private final void createTasks() {
 
@@ -454,11 +538,44 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 		// set to field
 		this.taskList = taskList;
 		
+		if (MAINTENANCE_TASKS_PERIODIC) {
+			// each node starts at a random phase within the interval, so nodes
+			// created together do not run their tasks in bursts
+			MaintenanceScheduler scheduler = MaintenanceScheduler.getScheduler();
+			MaintenanceScheduler.Tasks tasks = new MaintenanceScheduler.Tasks();
+			scheduler.scheduleWithFixedDelay(tasks, stabilizeTask,
+					withJitter(STABILIZE_TASK_START, STABILIZE_TASK_INTERVAL),
+					TimeUnit.SECONDS.toMillis(STABILIZE_TASK_INTERVAL));
+			scheduler.scheduleWithFixedDelay(tasks, fixFingerTask,
+					withJitter(FIX_FINGER_TASK_START, FIX_FINGER_TASK_INTERVAL),
+					TimeUnit.SECONDS.toMillis(FIX_FINGER_TASK_INTERVAL));
+			scheduler.scheduleWithFixedDelay(tasks, checkPredecessorTask,
+					withJitter(CHECK_PREDECESSOR_TASK_START,
+							CHECK_PREDECESSOR_TASK_INTERVAL), TimeUnit.SECONDS
+							.toMillis(CHECK_PREDECESSOR_TASK_INTERVAL));
+			this.maintenanceTasks = tasks;
+			return;
+		}
+		
 		// run maintenance tasks right now
 		runTasks();
 		
 	}
 	
+	/**
+	 * @param start
+	 *            Start time of a task in seconds.
+	 * @param interval
+	 *            Interval of a task in seconds.
+	 * @return Start time in milliseconds, delayed by a random part of the
+	 *         interval.
+	 */
+	private static long withJitter(int start, int interval) {
+		long jitter = TimeUnit.SECONDS.toMillis(interval);
+		return TimeUnit.SECONDS.toMillis(start)
+				+ (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+	}
+	
 	/**
 	 * Run the maintenance tasks manually
 	 */
@@ -714,7 +831,7 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 			return;
 		}
 
-//		this.maintenanceTasks.shutdownNow();
+		this.cancelTasks();
 
 		try {
 			Node successor = this.references.getSuccessor();
@@ -731,7 +848,7 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 		}
 
 		this.localNode.disconnect();
-		this.asyncExecutor.shutdownNow();
+		this.group.release(this.asyncExecutor);
 		this.localNode = null;
 
 	}
@@ -745,7 +862,7 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 		}
 
 		// determine ID for key
-		final ID id = new ID(svc.getProviderId());
+		final ID id = svc.getProviderId().getId();
 
 		if (debug) {
 			this.logger.debug("Inserting new entry with id " + id);
@@ -755,7 +872,9 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 			// find successor of id
 			Node responsibleNode;
 			// try {
-			responsibleNode = this.findSuccessor(id).fst;
+			final Pair<Node, Integer> cached = this.getCachedSuccessor(id);
+			responsibleNode = cached != null ? cached.fst : this
+					.findAndCacheSuccessor(id).fst;
 
 			if (debug) {
 				this.logger.debug("Invoking insertEntry method on node "
@@ -774,6 +893,7 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 											+ " on the appropriate node! Insert operation "
 											+ "failed!", e1);
 				}
+				this.forgetSuccessor(responsibleNode);
 				continue;
 			}
 		}
@@ -795,15 +915,25 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 		}
 
 		for (;;) {
+			final Pair<Node, Integer> cached = getCachedSuccessor(msg.span.bgn());
+			final Pair<Node, Integer> pair = cached != null ? new Pair<Node, Integer>(
+					cached.fst, 0) : findAndCacheSuccessor(msg.span.bgn());
 			try {
-			  final Pair<Node, Integer> pair = findSuccessor(msg.span.bgn());
 			  C4SRetrieveResponse response = pair.fst.retrieveEntries(msg);
 
 			  // equivalent of CommunicationException. Should be faster than throwing exceptions
 			  if (response == null) {
+				  forgetSuccessor(pair.fst);
 				  continue;
 			  }
+			  if (response.isRedirected()) {
+				  // a node has joined before the cached one
+				  forgetSuccessor(pair.fst);
+			  }
 			  response.incrementHop(pair.snd);
+			  if (cached != null) {
+				  response.markCached(cached.snd);
+			  }
 			  return response;
 			} catch (CommunicationException e1) {
 				if (debug) {
@@ -813,6 +943,7 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 											+ " on the appropriate node! Retrieve operation "
 											+ "failed!", e1);
 				}
+				forgetSuccessor(pair.fst);
 				continue;
 			}
 		}
@@ -828,7 +959,7 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 		}
 
 		// determine ID for key
-		final ID id = new ID(providerId);
+		final ID id = providerId.getId();
 
 		boolean removed = false;
 		while (!removed) {
@@ -838,7 +969,9 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 			}
 
 			// find successor of id
-			final Node responsibleNode = findSuccessor(id).fst;
+			final Pair<Node, Integer> cached = getCachedSuccessor(id);
+			final Node responsibleNode = cached != null ? cached.fst
+					: findAndCacheSuccessor(id).fst;
 
 			if (debug) {
 				this.logger.debug("Invoking removeEntry method on node "
@@ -856,12 +989,53 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 											+ " on the appropriate node! Remove operation "
 											+ "failed!", e1);
 				}
+				forgetSuccessor(responsibleNode);
 				continue;
 			}
 		}
 		this.logger.debug("Entry was removed!");
 	}
 
+	/**
+	 * @return The node found responsible for the given key by a recent lookup
+	 *         and the hops that lookup took, or <code>null</code> if none is
+	 *         cached.
+	 */
+	final Pair<Node, Integer> getCachedSuccessor(ID key) {
+		return this.locationCache == null ? null : this.locationCache.get(key);
+	}
+
+	/**
+	 * Looks up the node responsible for the given key like
+	 * {@link #findSuccessor(ID)}, and caches it as in
+	 * {@link #cacheSuccessor(ID, Pair)}.
+	 */
+	private Pair<Node, Integer> findAndCacheSuccessor(ID key) {
+		final Pair<Node, Integer> p = this.findSuccessor(key);
+		this.cacheSuccessor(key, p);
+		return p;
+	}
+
+	/**
+	 * Caches the node found responsible for the given key, if it took at
+	 * least one hop to find. A node found in no hops, this node or its
+	 * successor, is known from the local references, so it is not cached.
+	 */
+	final void cacheSuccessor(ID key, Pair<Node, Integer> p) {
+		if (this.locationCache != null && p.snd > 0) {
+			this.locationCache.put(key, p.fst, p.snd);
+		}
+	}
+
+	/**
+	 * Drops a node which failed or was not responsible from the cache.
+	 */
+	final void forgetSuccessor(Node node) {
+		if (this.locationCache != null) {
+			this.locationCache.remove(node.getNodeID());
+		}
+	}
+
 	/**
 	 * Returns a human-readable string representation containing this node's
 	 * node ID and URL.
@@ -895,7 +1069,11 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 			throw e;
 		}
 
-		
+		if (LOOKUP_ALPHA > 1) {
+			return this.findSuccessorHedged(key);
+		} else if (ITERATIVE_LOOKUP) {
+			return this.findSuccessorIteratively(key);
+		}
 
 		// check if the local node is the only node in the network
 		Node successor = this.references.getSuccessor();
@@ -911,8 +1089,7 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 			return new Pair<>(localNode, 0);
 		}
 		// check if the key to look up lies between this node and its successor
-		else if (key.isInInterval(this.getID(), successor.getNodeID())
-				|| key.equals(successor.getNodeID())) {
+		else if (ID.inHalfOpen(key, this.getID(), successor.getNodeID())) {
 			if (debug) {
 				this.logger
 						.debug("The requested key lies between my own and my "
@@ -973,6 +1150,149 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 		}
 	}
 
+	/**
+	 * Returns the Chord node which is responsible for the given key, asking
+	 * one node after the other for the next hop. Each hop only answers from
+	 * its references, so no remote thread waits for another node. If a hop
+	 * cannot be reached, the hop before it is asked to route around it with
+	 * {@link Node#findSuccessor(ID)}, or, if that is this node, the failed
+	 * node is removed from the references and the lookup starts over.
+	 * 
+	 * @param key
+	 *            Key for which the successor is searched for.
+	 * @return Responsible node and the number of hops taken.
+	 */
+	final Pair<Node, Integer> findSuccessorIteratively(ID key) {
+		restart: for (;;) {
+			Pair<Node, Boolean> hop = this.findNextHop(key);
+			Node previous = null;
+			int hops = 0;
+			while (!hop.snd) {
+				Node node = hop.fst;
+				hops++;
+				try {
+					hop = node.findNextHop(key);
+				} catch (CommunicationException e) {
+					if (previous == null) {
+						this.logger
+								.info("Communication failure while requesting next hop "
+										+ "for key " + key + " from node " + node
+										+ " - removing it and retrying.");
+						this.references.removeReference(node);
+						continue restart;
+					}
+					try {
+						Pair<Node, Integer> p = previous.findSuccessor(key);
+						p.snd += hops - 1;
+						return p;
+					} catch (CommunicationException e1) {
+						continue restart;
+					}
+				}
+				previous = node;
+			}
+			return new Pair<Node, Integer>(hop.fst, hops);
+		}
+	}
+
+	/**
+	 * Returns the Chord node which is responsible for the given key with a
+	 * {@link HedgedLookup}, run on the calling thread. If no node can be asked,
+	 * the lookup starts over without the failed references.
+	 * 
+	 * @param key
+	 *            Key for which the successor is searched for.
+	 * @return Responsible node and the number of hops taken.
+	 */
+	final Pair<Node, Integer> findSuccessorHedged(ID key) {
+		for (;;) {
+			HedgedLookup.CallerRuns steps = new HedgedLookup.CallerRuns();
+			try {
+				return steps.join(new HedgedLookup(this, key,
+						LOOKUP_ALPHA, steps).start());
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof DeadlineExceededException) {
+					throw (DeadlineExceededException) e.getCause();
+				} else if (!(e.getCause() instanceof CommunicationException)) {
+					throw e;
+				}
+				this.logger.info("Hedged lookup for key " + key
+						+ " failed, retrying.");
+			}
+		}
+	}
+
+	/**
+	 * Answers {@link Node#findNextHop(ID)} from the references of this node.
+	 * 
+	 * @param key
+	 *            Key for which the successor is searched for.
+	 * @throws NullPointerException
+	 *             If given ID is <code>null</code>.
+	 * @return See {@link Node#findNextHop(ID)}.
+	 */
+	final Pair<Node, Boolean> findNextHop(ID key) {
+		if (key == null) {
+			NullPointerException e = new NullPointerException(
+					"ID to find next hop for may not be null!");
+			this.logger.error("Null pointer.", e);
+			throw e;
+		}
+		Node successor = this.references.getSuccessor();
+		if (successor == null) {
+			return new Pair<Node, Boolean>(this.localNode, true);
+		} else if (ID.inHalfOpen(key, this.getID(), successor.getNodeID())) {
+			return new Pair<Node, Boolean>(successor, true);
+		}
+		return new Pair<Node, Boolean>(this.references
+				.getClosestPrecedingNode(key), false);
+	}
+
+	/**
+	 * @return ID of this node's predecessor, <code>null</code> if none is
+	 *         known or this node is not connected.
+	 */
+	public final ID getPredecessorID() {
+		if (this.references == null) {
+			return null;
+		}
+		Node predecessor = this.references.getPredecessor();
+		return predecessor == null ? null : predecessor.getNodeID();
+	}
+
+	/**
+	 * @return IDs of this node's successors, closest first; empty if this
+	 *         node is not connected.
+	 */
+	public final List<ID> getSuccessorIDs() {
+		List<ID> result = new ArrayList<ID>();
+		if (this.references != null) {
+			for (Node successor : this.references.getSuccessors()) {
+				result.add(successor.getNodeID());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return IDs of the nodes in this node's finger table by entry index,
+	 *         <code>null</code> for empty entries; empty if this node is not
+	 *         connected.
+	 */
+	public final ID[] getFingerTableIDs() {
+		if (this.references == null) {
+			return new ID[0];
+		}
+		Node[] entries = this.references.getFingerTableEntries();
+		ID[] result = new ID[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			if (entries[i] != null) {
+				result[i] = entries[i].getNodeID();
+			}
+		}
+		return result;
+	}
+
 	/* Implementation of Report interface */
 	public final String printEntries() {
 		return this.entries.toString();
@@ -1069,11 +1389,22 @@ public final class ChordImpl implements Chord, Report, AsynChord {
 	 * Crash this node by not responding to any requests.
 	 */
 	public void crash() {
+		this.cancelTasks();
 		localNode.crash();
-		asyncExecutor.shutdownNow();
+		this.group.release(this.asyncExecutor);
 		
 	}
 	
+	/**
+	 * Stops running the maintenance tasks periodically, if they are.
+	 */
+	private void cancelTasks() {
+		if (this.maintenanceTasks != null) {
+			this.maintenanceTasks.shutdown();
+			this.maintenanceTasks = null;
+		}
+	}
+	
 	@Override
 	public boolean isMaintenanceTasksDisabled() {
 		return maintenanceTasks == null;
@@ -28,15 +28,22 @@
 
 package de.uniba.wiai.lspi.chord.service.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.chord4js.ProviderId;
 import com.chord4js.Service;
-import com.chord4js.ServiceId;
 
 import de.uniba.wiai.lspi.chord.data.ID;
 import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
@@ -47,20 +54,25 @@ import de.uniba.wiai.lspi.util.logging.Logger;
  * for accessing them. It IS allowed, that multiple objects of type
  * {@link Entry} with same {@link ID} are stored!
  * 
+ * Entries are indexed by their ring {@link ID}, which is computed once when an
+ * entry is added. An interval query therefore seeks to the start of the
+ * interval (at most twice, if it wraps around) and only visits matching
+ * entries.
+ * 
+ * The index is a concurrent skip list, so inserts, removals and range reads
+ * do not block each other. Range reads are weakly consistent: they see every
+ * entry that was present for the whole read, and may or may not see entries
+ * added or removed meanwhile.
+ * 
+ * Every change increases the {@link #getVersion() version} of the entries, and
+ * the most recent changes are logged by version. This lets the successor list
+ * send a successor only what changed since it was last in sync, see
+ * {@link #getChangesInInterval(ID, ID, long)}.
+ * 
  * @author Karsten Loesing, Sven Kaffille
  * @version 1.0.5
  * 
  */
-
-/*
- * 23.12.2006. Fixed synchronization. The Map<ID, Set<Entry>> entries must be
- * synchronized with a synchronized statement, when executing several methods
- * that depend on each other. This would also apply to the internal Set<Entry>
- * if it were not only used in the same synchronized statements for entries,
- * which than functions as a synchronization point. It must also be locked by a
- * synchronized statement, when iterating over it. TODO: What about fairness?
- * sven
- */
 final class Entries {
 
 	/**
@@ -72,19 +84,131 @@ final class Entries {
 			.isEnabledFor(Logger.LogLevel.DEBUG);
 
 	/**
-	 * Local hash table for entries. Is synchronized, st. methods do not have to
-	 * be synchronized.
+	 * Key of {@link Entries#entries}: the ring ID of an entry, made unique by
+	 * its provider ID. Keys without provider ID are bounds for range seeks and
+	 * sort before (<code>bound</code> &lt; 0) or after (<code>bound</code>
+	 * &gt; 0) every entry of their ID.
+	 */
+	private static final class Key {
+		final ID id;
+		final ProviderId providerId;
+		final int bound;
+
+		Key(ID id, ProviderId providerId) {
+			this.id = id;
+			this.providerId = providerId;
+			this.bound = 0;
+		}
+
+		private Key(ID id, int bound) {
+			this.id = id;
+			this.providerId = null;
+			this.bound = bound;
+		}
+
+		static Key lowest(ID id) {
+			return new Key(id, -1);
+		}
+
+		static Key highest(ID id) {
+			return new Key(id, 1);
+		}
+
+		static final Comparator<Key> ORDER = new Comparator<Key>() {
+			public int compare(Key a, Key b) {
+				final int c = a.id.compareTo(b.id);
+				if (c != 0) {
+					return c;
+				}
+				if (a.bound != 0 || b.bound != 0) {
+					return Integer.compare(a.bound, b.bound);
+				}
+				return a.providerId.compareTo(b.providerId);
+			}
+		};
+	}
+
+	/**
+	 * Local table for entries, ordered by ring ID and provider ID.
+	 */
+	private final ConcurrentSkipListMap<Key, Service> entries;
+
+	/**
+	 * Number of stored entries; kept separately as the size of a skip list is
+	 * not constant-time.
+	 */
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * Maximum number of logged changes.
+	 */
+	static final int CHANGE_LOG_SIZE = 1 << 14;
+
+	/**
+	 * Number of logged changes per chunk of the change log, as power of two.
+	 */
+	private static final int CHUNK_BITS = 8;
+
+	/**
+	 * Number of logged changes per chunk of the change log.
+	 */
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	/**
+	 * Number of chunks of the change log.
 	 */
-	// \fixme replace with nested map of strings instead.
-	// Java doesn't have type-aliases nor dependent types to ensure this matches up with #of semantic parts
-	private Map<ProviderId, Service> entries = null;
+	private static final int CHUNKS = CHANGE_LOG_SIZE / CHUNK_SIZE;
+
+	/**
+	 * Keys of the changes producing the versions <code>base * CHUNK_SIZE</code>
+	 * to <code>base * CHUNK_SIZE + CHUNK_SIZE - 1</code>.
+	 */
+	private static final class Chunk {
+
+		final long base;
+
+		final AtomicReferenceArray<Key> keys = new AtomicReferenceArray<Key>(
+				CHUNK_SIZE);
+
+		Chunk(long base) {
+			this.base = base;
+		}
+	}
+
+	/**
+	 * Version of the stored entries, increased by every change.
+	 */
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * Most recent changes as a ring of chunks, allocated as the version
+	 * reaches them; a new chunk replaces the oldest one.
+	 */
+	private final AtomicReferenceArray<Chunk> changeLog = new AtomicReferenceArray<Chunk>(
+			CHUNKS);
+
+	/**
+	 * Changes of entries since some version, as returned by
+	 * {@link Entries#getChangesInInterval(ID, ID, long)}.
+	 */
+	static final class Changes {
+
+		/**
+		 * Entries added or replaced, in their current state.
+		 */
+		final Set<Service> added = new HashSet<>();
+
+		/**
+		 * Provider IDs of removed entries.
+		 */
+		final Set<ProviderId> removed = new HashSet<>();
+	}
 
 	/**
 	 * Creates an empty repository for entries.
 	 */
 	Entries(){ 
-		this.entries = Collections
-				.synchronizedMap(new TreeMap<ProviderId, Service>());
+		this.entries = new ConcurrentSkipListMap<Key, Service>(Key.ORDER);
 	}
 
 	/**
@@ -132,9 +256,12 @@ final class Entries {
 			throw e;
 		}
 
-		synchronized (this.entries) {
-			entries.put(svc.getProviderId(), svc);
+		final ProviderId pid = svc.getProviderId();
+		final Key key = new Key(pid.getId(), pid);
+		if (this.entries.put(key, svc) == null) {
+			this.size.incrementAndGet();
 		}
+		this.logChange(key);
 		
 		if (debugEnabled) {
 			Entries.logger.debug("Entry was added: " + svc);
@@ -158,8 +285,10 @@ final class Entries {
 			throw e;
 		}
 
-		synchronized (this.entries) {
-			this.entries.remove(svcId);
+		final Key key = new Key(svcId.getId(), svcId);
+		if (this.entries.remove(key) != null) {
+			this.size.decrementAndGet();
+			this.logChange(key);
 		}
 		if (debugEnabled) {
 			Entries.logger.debug("Entry was removed: " + svcId);
@@ -187,13 +316,19 @@ final class Entries {
 		}
 		
 		Set<Service> svcs = new HashSet<>();
-		if (msg.amount > 0) {
-  		for (Service s : getEntriesInInterval(msg.span.bgn(), msg.span.end())) {
-  		  if (!msg.constraints.satisfies(s)) continue;
-  		  svcs.add(s);
-  		  
-  		  if (msg.amount <= svcs.size()) break;
-  		}
+		if (msg.amount <= 0 || msg.span.empty()) {
+			return svcs;
+		}
+		
+		// span is inclusive on both ends
+		for (Map<Key, Service> range : this.ranges(msg.span.bgn(), true,
+				msg.span.end())) {
+			for (Service s : range.values()) {
+				if (!msg.constraints.satisfies(s)) continue;
+				svcs.add(s);
+				
+				if (msg.amount <= svcs.size()) return svcs;
+			}
 		}
 		
 		return svcs;
@@ -224,18 +359,198 @@ final class Entries {
 		}
 
 		Set<Service> result = new HashSet<>();
-		synchronized (this.entries) {
-		  // (or so it claims)
-			for (ProviderId nextID : entries.keySet()) {
-			  final ID id = new ID(nextID);
-   			// add entries in [fromId, toId]
-			  // isInInterval apparently only says [from, to)
-			  // so explicitly check for equal on last
-				if (id.isInInterval(fromID, toID) || id.equals(toID))
-				  result.add(entries.get(nextID));
+		for (Map<Key, Service> range : this.ranges(fromID, false, toID)) {
+			result.addAll(range.values());
+		}
+		
+		return result;
+	}
+
+	/**
+	 * Removes all entries in interval, excluding lower bound, but including
+	 * upper bound. Same interval as {@link #getEntriesInInterval(ID, ID)}.
+	 * 
+	 * @param fromID
+	 *            Lower bound of IDs; entries matching this ID are NOT removed.
+	 * @param toID
+	 *            Upper bound of IDs; entries matching this ID ARE removed.
+	 * @throws NullPointerException
+	 *             If either or both of the given ID references have value
+	 *             <code>null</code>.
+	 * @return Number of removed entries.
+	 */
+	final int removeEntriesInInterval(ID fromID, ID toID) {
+
+		if (fromID == null || toID == null) {
+			NullPointerException e = new NullPointerException(
+					"Neither of the given IDs may have value null!");
+			Entries.logger.error("Null pointer", e);
+			throw e;
+		}
+
+		int removed = 0;
+		for (NavigableMap<Key, Service> range : this.ranges(fromID, false,
+				toID)) {
+			// only count what this thread actually removed
+			for (Key key : range.keySet()) {
+				if (range.remove(key) != null) {
+					++removed;
+					this.logChange(key);
+				}
 			}
 		}
+		this.size.addAndGet(-removed);
 		
+		if (debugEnabled) {
+			Entries.logger.debug(removed + " entries in interval (" + fromID
+					+ ", " + toID + "] were removed.");
+		}
+		return removed;
+	}
+
+	/**
+	 * Records a change to the entry of the given key, after the change has
+	 * been made, overwriting the oldest logged changes if the log is full.
+	 */
+	private void logChange(Key key) {
+		final long v = this.version.incrementAndGet();
+		final long base = v >>> CHUNK_BITS;
+		final int slot = (int) base & (CHUNKS - 1);
+		for (;;) {
+			final Chunk chunk = this.changeLog.get(slot);
+			if (chunk != null && chunk.base >= base) {
+				// a newer chunk means this change is pruned already
+				if (chunk.base == base) {
+					chunk.keys.lazySet((int) v & (CHUNK_SIZE - 1), key);
+				}
+				return;
+			}
+			final Chunk fresh = new Chunk(base);
+			fresh.keys.set((int) v & (CHUNK_SIZE - 1), key);
+			if (this.changeLog.compareAndSet(slot, chunk, fresh)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Key of the change producing the given version, which must not exceed
+	 * the current version. Waits for the change to be logged if it is in
+	 * progress.
+	 * 
+	 * @return Key, or <code>null</code> if pruned from the log.
+	 */
+	private Key getChange(long v) {
+		final long base = v >>> CHUNK_BITS;
+		final int slot = (int) base & (CHUNKS - 1);
+		for (;;) {
+			final Chunk chunk = this.changeLog.get(slot);
+			if (chunk != null && chunk.base > base) {
+				return null;
+			}
+			if (chunk != null && chunk.base == base) {
+				final Key key = chunk.keys.get((int) v & (CHUNK_SIZE - 1));
+				if (key != null) {
+					return key;
+				}
+			}
+			// counted, but not yet logged
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Returns the current version of the entries. Every entry added or
+	 * removed before this method is invoked is covered by the returned
+	 * version.
+	 * 
+	 * @return Current version.
+	 */
+	final long getVersion() {
+		return this.version.get();
+	}
+
+	/**
+	 * Returns the changes to entries in interval, excluding lower bound, but
+	 * including upper bound, made after the given version. An entry changed
+	 * several times is reported once, in its current state. Changes made while
+	 * this method runs may or may not be included.
+	 * 
+	 * @param fromID
+	 *            Lower bound of IDs; entries matching this ID are NOT included
+	 *            in result.
+	 * @param toID
+	 *            Upper bound of IDs; entries matching this ID ARE included in
+	 *            result.
+	 * @param sinceVersion
+	 *            Version obtained by {@link #getVersion()}.
+	 * @throws NullPointerException
+	 *             If either or both of the given ID references have value
+	 *             <code>null</code>.
+	 * @return Changes since <code>sinceVersion</code>, or <code>null</code> if
+	 *         they are no longer logged.
+	 */
+	final Changes getChangesInInterval(ID fromID, ID toID, long sinceVersion) {
+
+		if (fromID == null || toID == null) {
+			NullPointerException e = new NullPointerException(
+					"Neither of the given IDs may have value null!");
+			Entries.logger.error("Null pointer", e);
+			throw e;
+		}
+
+		final long latest = this.version.get();
+		if (latest - sinceVersion > CHANGE_LOG_SIZE - CHUNK_SIZE) {
+			return null;
+		}
+		final Changes result = new Changes();
+		for (long v = sinceVersion + 1; v <= latest; v++) {
+			final Key key = this.getChange(v);
+			if (key == null) {
+				return null;
+			}
+			if (!ID.inHalfOpen(key.id, fromID, toID)) {
+				continue;
+			}
+			final Service current = this.entries.get(key);
+			if (current != null) {
+				result.added.add(current);
+			} else {
+				result.removed.add(key.providerId);
+			}
+		}
+
+		// checked last: the oldest keys read may have been overwritten
+		// meanwhile
+		if (this.version.get() - sinceVersion > CHANGE_LOG_SIZE - CHUNK_SIZE) {
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the views of {@link #entries} covering the interval from
+	 * <code>fromID</code> up to and including <code>toID</code> on the ring.
+	 * A wrapping interval is split into its part up to the maximum ID and its
+	 * part from the minimum ID. For an exclusive lower bound equal to the upper
+	 * bound, this is the single ID <code>toID</code>.
+	 */
+	private List<NavigableMap<Key, Service>> ranges(ID fromID,
+			boolean fromInclusive, ID toID) {
+		final List<NavigableMap<Key, Service>> result = new ArrayList<NavigableMap<Key, Service>>(
+				2);
+		final Key from = fromInclusive ? Key.lowest(fromID) : Key
+				.highest(fromID);
+		final Key to = Key.highest(toID);
+		final int c = fromID.compareTo(toID);
+		if (c < 0 || (c == 0 && fromInclusive)) {
+			result.add(this.entries.subMap(from, false, to, false));
+		} else if (c == 0) {
+			result.add(this.entries.subMap(Key.lowest(toID), false, to, false));
+		} else {
+			result.add(this.entries.tailMap(from, false));
+			result.add(this.entries.headMap(to, false));
+		}
 		return result;
 	}
 
@@ -267,12 +582,13 @@ final class Entries {
 	}
 
 	/**
-	 * Returns an unmodifiable map of all stored entries.
+	 * Returns an unmodifiable, weakly consistent view of all stored entries,
+	 * ordered by ID.
 	 * 
-	 * @return Unmodifiable map of all stored entries.
+	 * @return Unmodifiable collection of all stored entries.
 	 */
-	final Map<ProviderId, Service> getEntries() {
-		return Collections.unmodifiableMap(this.entries);
+	final Collection<Service> getEntries() {
+		return Collections.unmodifiableCollection(this.entries.values());
 	}
 
 	/**
@@ -281,7 +597,7 @@ final class Entries {
 	 * @return Number of stored entries.
 	 */
 	final int getNumberOfStoredEntries() {
-		return this.entries.size();
+		return this.size.get();
 	}
 
 	/**
@@ -291,10 +607,11 @@ final class Entries {
 	 */
 	public final String toString() {
 		StringBuilder result = new StringBuilder("Entries:\n");
-		for (Map.Entry<ProviderId, Service> entry : this.entries.entrySet()) {
-			result.append("  key = " + entry.getKey().toString()
-					+ ", value = " + entry.getValue() + "\n");
+		for (Map.Entry<Key, Service> entry : this.entries.entrySet()) {
+			result.append("  key = " + entry.getKey().providerId + ", id = "
+					+ entry.getKey().id + ", value = " + entry.getValue()
+					+ "\n");
 		}
 		return result.toString();
 	}
-}
\ No newline at end of file
+}
@@ -31,33 +31,113 @@ import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.DEBUG;
 import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.INFO;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import de.uniba.wiai.lspi.chord.com.Node;
 import de.uniba.wiai.lspi.chord.data.ID;
-import de.uniba.wiai.lspi.chord.data.URL;
 import de.uniba.wiai.lspi.util.logging.Logger;
 
 /**
  * Stores references on the nodes in the finger table and provides methods for
  * querying and manipulating this table.
  * 
+ * Entry i refers to the first known node following the start ID local ID +
+ * 2^i. Such entries only grow further away from the local node with i, and
+ * consecutive entries mostly refer to the same node. The table is therefore
+ * kept as {@link Runs} of equal entries, which are found by binary search.
+ * 
  * @author Karsten Loesing
  * @version 1.0.5
  */
 final class FingerTable {
 
+	/**
+	 * Finger table entries as runs of equal references. Entries
+	 * <code>[ends[r - 1], ends[r])</code> (with <code>ends[-1] = 0</code>)
+	 * refer to <code>nodes[r]</code>, entries from <code>ends[last]</code> on
+	 * are <code>null</code>. The nodes are distinct and ordered by their
+	 * distance from the local node. Never modified; changes create new runs.
+	 */
+	static final class Runs {
+
+		static final Runs EMPTY = new Runs(new Node[0], new int[0]);
+
+		final Node[] nodes;
+
+		final int[] ends;
+
+		private Runs(Node[] nodes, int[] ends) {
+			this.nodes = nodes;
+			this.ends = ends;
+		}
+
+		/**
+		 * @return Number of runs, i.e. of distinct references.
+		 */
+		final int size() {
+			return this.nodes.length;
+		}
+
+		/**
+		 * @return Index of the first entry of run r.
+		 */
+		final int begin(int r) {
+			return r == 0 ? 0 : this.ends[r - 1];
+		}
+
+		/**
+		 * @return Number of runs whose node lies in (localID, id), i.e. is
+		 *         closer to the local node than id.
+		 */
+		final int countPreceding(ID localID, ID id) {
+			int lo = 0, hi = this.nodes.length;
+			while (lo < hi) {
+				final int mid = (lo + hi) >>> 1;
+				if (ID.inOpen(this.nodes[mid].getNodeID(), localID, id)) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		/**
+		 * Determines closest preceding node of given id.
+		 * 
+		 * @param localID
+		 *            ID of local node.
+		 * @param key
+		 *            ID of which the closest preceding node shall be
+		 *            determined.
+		 * @return Reference to the node which most closely precedes the given
+		 *         ID. <code>null</code> if no node has been found.
+		 */
+		final Node getClosestPrecedingNode(ID localID, ID key) {
+			// from the far end, random keys mostly hit one of the last runs
+			for (int r = this.nodes.length - 1; r >= 0; r--) {
+				if (this.nodes[r].getNodeID().isInInterval(localID, key)) {
+					return this.nodes[r];
+				}
+			}
+			return null;
+		}
+	}
+
 	/**
 	 * ID of local node.
 	 */
 	private final ID localID;
 
+	/**
+	 * Start IDs of the finger table entries, local ID + 2^i for entry i.
+	 */
+	private final ID[] starts;
+
 	/**
 	 * Finger table data.
 	 */
-	private final Node[] remoteNodes;
+	private Runs runs = Runs.EMPTY;
 
 	/**
 	 * Reference on parent object.
@@ -95,106 +175,31 @@ final class FingerTable {
 
 		this.references = references;
 		this.localID = localID;
-		this.remoteNodes = new Node[localID.getLength()];
-		
-	}
-
-	/**
-	 * Sets one table entry to the given reference.
-	 * 
-	 * @param index
-	 *            Index of table entry.
-	 * @param proxy
-	 *            Reference to store.
-	 * @throws ArrayIndexOutOfBoundsException
-	 *             If given index is not contained in the finger table.
-	 * @throws NullPointerException
-	 *             If given reference is <code>null</code>.
-	 */
-	private final void setEntry(int index, Node proxy) {
-
-		if (index < 0 || index >= this.remoteNodes.length) {
-			ArrayIndexOutOfBoundsException e = new ArrayIndexOutOfBoundsException(
-					"setEntry was invoked with an index out of array "
-							+ "bounds; index=" + index + ", length of array="
-							+ this.remoteNodes.length);
-			this.logger.error("Out of bounds!", e);
-			throw e;
-		}
-
-		if (proxy == null) {
-			NullPointerException e = new NullPointerException(
-					"Reference to proxy may not be null!");
-			this.logger.error("Null pointer", e);
-			throw e;
-		}
-
-		this.remoteNodes[index] = proxy;
-
-		if (this.logger.isEnabledFor(DEBUG)) {
-			this.logger.debug("Entry " + index + " set to " + proxy.toString());
-		}
-	}
-
-	/**
-	 * Returns the reference stored at the given index.
-	 * 
-	 * @param index
-	 *            Index of entry to be returned.
-	 * @throws ArrayIndexOutOfBoundsException
-	 *             If given index is not contained in the finger table.
-	 * @return Reference stored at the given index.
-	 */
-	private final Node getEntry(int index) {
-
-		if (index < 0 || index >= this.remoteNodes.length) {
-			ArrayIndexOutOfBoundsException e = new ArrayIndexOutOfBoundsException(
-					"getEntry was invoked with an index out of array "
-							+ "bounds; index=" + index + ", length of array="
-							+ this.remoteNodes.length);
-			this.logger.error("Out of bounds!", e);
-			throw e;
+		this.starts = new ID[localID.getLength()];
+		for (int i = 0; i < this.starts.length; i++) {
+			this.starts[i] = localID.addPowerOfTwo(i);
 		}
-
-		return this.remoteNodes[index];
 	}
 
 	/**
-	 * Sets the reference at the given index to <code>null</code> and triggers
-	 * to disconnect that node, if no other reference to it is kept any more.
+	 * Returns the number of entries whose start ID lies in the interval (local
+	 * ID, given ID). These are always the first entries of the table.
 	 * 
-	 * @param index
-	 *            Index of entry to be set to <code>null</code>.
-	 * @throws ArrayIndexOutOfBoundsException
-	 *             If given index is not contained in the finger table.
+	 * @param id
+	 *            ID bounding the interval.
+	 * @return Number of entries.
 	 */
-	private final void unsetEntry(int index) {
-		if (index < 0 || index >= this.remoteNodes.length) {
-			ArrayIndexOutOfBoundsException e = new ArrayIndexOutOfBoundsException(
-					"unsetEntry was invoked with an index out of array "
-							+ "bounds; index=" + index + ", length of array="
-							+ this.remoteNodes.length);
-			this.logger.error("Out of bounds!", e);
-			throw e;
-		}
-
-		// remember overwritten reference
-		Node overwrittenNode = this.getEntry(index);
-
-		// set reference to null
-		this.remoteNodes[index] = null;
-
-		if (overwrittenNode == null) {
-			this.logger.debug("unsetEntry did not change anything, because "
-					+ "entry was null before.");
-		} else {
-			// check if overwritten reference does not exist any more
-			this.references.disconnectIfUnreferenced(overwrittenNode);
-			if (this.logger.isEnabledFor(DEBUG)) {
-				this.logger.debug("Entry set to null: index=" + index
-						+ ", overwritten node=" + overwrittenNode.toString());
+	private final int countStartsBefore(ID id) {
+		int lo = 0, hi = this.starts.length;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (ID.inOpen(this.starts[mid], this.localID, id)) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
 			}
 		}
+		return lo;
 	}
 
 	/**
@@ -218,53 +223,60 @@ final class FingerTable {
 			throw e;
 		}
 
-		// for logging
-		int lowestWrittenIndex = -1;
-		int highestWrittenIndex = -1;
-
-		for (int i = 0; i < this.remoteNodes.length; i++) {
-
-			ID startOfInterval = this.localID.addPowerOfTwo(i);
-			if (!startOfInterval.isInInterval(this.localID, proxy.getNodeID())) {
-				break;
+		final ID proxyID = proxy.getNodeID();
+		final Runs old = this.runs;
+
+		// entries [0, end) may refer to the new node
+		final int end = this.countStartsBefore(proxyID);
+		// runs [0, keep) are closer to the local node and stay
+		final int keep = old.countPreceding(this.localID, proxyID);
+		final int begin = old.begin(keep);
+
+		if (begin < end) {
+			// runs [keep, next) are overwritten completely, run next is
+			// shortened or left as is
+			int next = keep;
+			while (next < old.size() && old.ends[next] <= end) {
+				next++;
 			}
 
-			// for logging
-			if (lowestWrittenIndex == -1) {
-				lowestWrittenIndex = i;
-			}
-			highestWrittenIndex = i;
-
-			if (getEntry(i) == null) {
-				setEntry(i, proxy);
-			} else if (proxy.getNodeID().isInInterval(this.localID,
-					getEntry(i).getNodeID())) {
-				Node oldEntry = getEntry(i);
-				setEntry(i, proxy);
-				this.references.disconnectIfUnreferenced(oldEntry);
+			final int n = keep + 1 + old.size() - next;
+			final Node[] nodes = new Node[n];
+			final int[] ends = new int[n];
+			System.arraycopy(old.nodes, 0, nodes, 0, keep);
+			System.arraycopy(old.ends, 0, ends, 0, keep);
+			// keep the stored reference if the node is known already
+			nodes[keep] = keep < old.size() && old.nodes[keep].equals(proxy)
+					? old.nodes[keep] : proxy;
+			ends[keep] = end;
+			System.arraycopy(old.nodes, next, nodes, keep + 1, old.size() - next);
+			System.arraycopy(old.ends, next, ends, keep + 1, old.size() - next);
+			this.runs = new Runs(nodes, ends);
+			this.references.publishSnapshot();
+
+			for (int r = keep; r < next; r++) {
+				if (old.nodes[r] != nodes[keep]) {
+					this.references.disconnectIfUnreferenced(old.nodes[r]);
+				}
 			}
 		}
 
 		// logging
-		if (this.logger.isEnabledFor(DEBUG)) {
-			if (highestWrittenIndex == -1) {
-
+		if (end == 0) {
+			if (this.logger.isEnabledFor(DEBUG)) {
 				this.logger
 						.debug("addReference did not add the given reference, "
 								+ "because it did not fit anywhere!");
-
 			}
-		}
-		if (this.logger.isEnabledFor(INFO)) {
-			if (highestWrittenIndex == lowestWrittenIndex) {
+		} else if (this.logger.isEnabledFor(INFO)) {
+			if (end == 1) {
 
-				this.logger.info("Added reference to finger table entry "
-						+ highestWrittenIndex);
+				this.logger.info("Added reference to finger table entry 0");
 
 			} else {
 
 				this.logger.info("Added reference to finger table entries "
-						+ lowestWrittenIndex + " to " + highestWrittenIndex);
+						+ "0 to " + (end - 1));
 
 			}
 		}
@@ -278,11 +290,26 @@ final class FingerTable {
 	final Node[] getCopyOfReferences() {
 		this.logger.debug("Returning copy of references.");
 
-		Node[] copy = new Node[this.remoteNodes.length];
-		System.arraycopy(this.remoteNodes, 0, copy, 0, this.remoteNodes.length);
+		final Runs current = this.runs;
+		Node[] copy = new Node[this.starts.length];
+		for (int r = 0; r < current.size(); r++) {
+			for (int i = current.begin(r); i < current.ends[r]; i++) {
+				copy[i] = current.nodes[r];
+			}
+		}
 		return copy;
 	}
 
+	/**
+	 * Returns the finger table entries as runs, e.g. for lookups without
+	 * locking.
+	 * 
+	 * @return Current finger table entries; never modified.
+	 */
+	final Runs getRuns() {
+		return this.runs;
+	}
+
 	/**
 	 * Returns a formatted string representation of this finger table.
 	 * 
@@ -293,71 +320,25 @@ final class FingerTable {
 
 		StringBuilder result = new StringBuilder("Finger table:\n");
 
-		int lastIndex = -1;
-		ID lastNodeID = null;
-		URL lastNodeURL = null;
-		for (int i = 0; i < this.remoteNodes.length; i++) {
-			Node next = this.remoteNodes[i];
-			if (next == null) {
-				// row ended or did not even start
-				if ((lastIndex != -1) && (lastNodeID != null)) {
-					// row ended
-					result.append("  "
-							+ lastNodeID
-							+ ", "
-							+ lastNodeURL
-							+ " "
-							+ ((i - 1 - lastIndex > 0) ? "(" + lastIndex + "-"
-									+ (i - 1) + ")" : "(" + (i - 1) + ")")
-							+ "\n");
-					lastIndex = -1;
-					lastNodeID = null;
-					lastNodeURL = null;
-				} else {
-					// null at beginning
-				}
-			} else if (lastNodeID == null) {
-				// found first reference in a row
-				lastIndex = i;
-				lastNodeID = next.getNodeID();
-				lastNodeURL = next.getNodeURL();
-			} else if (!lastNodeID.equals(next.getNodeID())) {
-				// found different reference in finger table
-				result.append("  "
-						+ lastNodeID
-						+ ", "
-						+ lastNodeURL
-						+ " "
-						+ ((i - 1 - lastIndex > 0) ? "(" + lastIndex + "-"
-								+ (i - 1) + ")" : "(" + (i - 1) + ")") + "\n");
-				lastNodeID = next.getNodeID();
-				lastNodeURL = next.getNodeURL();
-				lastIndex = i;
-			} else {
-				// found next reference in a row
-			}
-		}
-
-		// display last row
-		if (lastNodeID != null && lastIndex != -1) {
-			// row ended
+		final Runs current = this.runs;
+		for (int r = 0; r < current.size(); r++) {
+			final int first = current.begin(r);
+			final int last = current.ends[r] - 1;
 			result.append("  "
-					+ lastNodeID
+					+ current.nodes[r].getNodeID()
 					+ ", "
-					+ lastNodeURL
+					+ current.nodes[r].getNodeURL()
 					+ " "
-					+ ((this.remoteNodes.length - 1 - lastIndex > 0) ? "("
-							+ lastIndex + "-" + (this.remoteNodes.length - 1)
-							+ ")" : "(" + (this.remoteNodes.length - 1) + ")")
-					+ "\n");
-			lastNodeID = null;
+					+ ((last - first > 0) ? "(" + first + "-" + last + ")"
+							: "(" + last + ")") + "\n");
 		}
 
 		return result.toString();
 	}
 
 	/**
-	 * Removes all occurences of the given node from finger table.
+	 * Removes all occurences of the given node from finger table. They are
+	 * replaced by the next reference in the table, if any.
 	 * 
 	 * @param node1
 	 *            Reference to be removed from the finger table.
@@ -373,38 +354,31 @@ final class FingerTable {
 			throw e;
 		}
 
-		// for logging
-		int lowestWrittenIndex = -1;
-		int highestWrittenIndex = -1;
-
-		// determine node reference with next larger ID than ID of node
-		// reference to remove
-		Node referenceForReplacement = null;
-		for (int i = this.localID.getLength() - 1; i >= 0; i--) {
-			Node n = this.getEntry(i);
-			if (node1.equals(n)) {
+		final Runs old = this.runs;
+		int removed = -1;
+		for (int r = 0; r < old.size(); r++) {
+			if (node1.equals(old.nodes[r])) {
+				removed = r;
 				break;
 			}
-			if (n != null) {
-				referenceForReplacement = n;
-			}
 		}
 
-		// remove reference(s)
-		for (int i = 0; i < this.remoteNodes.length; i++) {
-			if (node1.equals(this.remoteNodes[i])) {
-
-				// for logging
-				if (lowestWrittenIndex == -1) {
-					lowestWrittenIndex = i;
-				}
-				highestWrittenIndex = i;
-
-				if (referenceForReplacement == null) {
-					unsetEntry(i);
-				} else {
-					setEntry(i, referenceForReplacement);
-				}
+		if (removed != -1) {
+			// dropping the run extends the next run over its entries, which
+			// makes the next larger reference the replacement
+			final int n = old.size() - 1;
+			final Node[] nodes = new Node[n];
+			final int[] ends = new int[n];
+			System.arraycopy(old.nodes, 0, nodes, 0, removed);
+			System.arraycopy(old.nodes, removed + 1, nodes, removed, n - removed);
+			System.arraycopy(old.ends, 0, ends, 0, removed);
+			System.arraycopy(old.ends, removed + 1, ends, removed, n - removed);
+			this.runs = new Runs(nodes, ends);
+			this.references.publishSnapshot();
+
+			if (removed == n) {
+				// entries were set to null, not replaced
+				this.references.disconnectIfUnreferenced(node1);
 			}
 		}
 
@@ -419,19 +393,15 @@ final class FingerTable {
 
 		// logging
 		if (this.logger.isEnabledFor(DEBUG)) {
-			if (highestWrittenIndex == -1) {
+			if (removed == -1) {
 				this.logger
 						.debug("removeReference did not remove the given reference, "
 								+ "because it did not exist in finger table "
 								+ "anywhere!");
-			} else if (highestWrittenIndex == lowestWrittenIndex) {
-				this.logger.debug("Removed reference from finger table entry "
-						+ highestWrittenIndex);
 			} else {
-				this.logger
-						.debug("Removed reference from finger table entries "
-								+ lowestWrittenIndex + " to "
-								+ highestWrittenIndex);
+				this.logger.debug("Removed reference from finger table entries "
+						+ old.begin(removed) + " to "
+						+ (old.ends[removed] - 1));
 			}
 		}
 
@@ -455,24 +425,18 @@ final class FingerTable {
 			this.logger.error("Null pointer", e);
 			throw e;
 		}
-		boolean debug = this.logger.isEnabledFor(DEBUG);
-		for (int i = this.remoteNodes.length - 1; i >= 0; i--) {
-			if (this.remoteNodes[i] != null
-					&& this.remoteNodes[i].getNodeID().isInInterval(
-							this.localID, key)) {
-				if (debug) {
-					this.logger.debug("Closest preceding node for ID " + key
-							+ " is " + this.remoteNodes[i].toString());
-				}
-				return this.remoteNodes[i];
-			}
-		}
+		Node closest = this.runs.getClosestPrecedingNode(this.localID, key);
 
-		if (debug) {
-			this.logger.debug("There is no closest preceding node for ID "
-					+ key + " -- returning null!");
+		if (this.logger.isEnabledFor(DEBUG)) {
+			if (closest != null) {
+				this.logger.debug("Closest preceding node for ID " + key
+						+ " is " + closest.toString());
+			} else {
+				this.logger.debug("There is no closest preceding node for ID "
+						+ key + " -- returning null!");
+			}
 		}
-		return null;
+		return closest;
 	}
 
 	/**
@@ -493,8 +457,9 @@ final class FingerTable {
 			this.logger.error("Null pointer", e);
 			throw e;
 		}
-		for (int i = 0; i < this.remoteNodes.length; i++) {
-			if (newReference.equals(this.remoteNodes[i])) {
+		final Runs current = this.runs;
+		for (int r = 0; r < current.size(); r++) {
+			if (newReference.equals(current.nodes[r])) {
 				return true;
 			}
 		}
@@ -510,15 +475,13 @@ final class FingerTable {
 	 * 
 	 */
 	final List<Node> getFirstFingerTableEntries(int i) {
-		Set<Node> result = new HashSet<Node>();
-		for (int j = 0; j < this.remoteNodes.length; j++) {
-			if (this.getEntry(j) != null) {
-				result.add(this.getEntry(j));
-			}
-			if (result.size() >= i) {
-				break;
-			}
+		final Runs current = this.runs;
+		// at least one, as always
+		final int n = Math.min(current.size(), Math.max(i, 1));
+		List<Node> result = new ArrayList<Node>(n);
+		for (int r = 0; r < n; r++) {
+			result.add(current.nodes[r]);
 		}
-		return new ArrayList<Node>(result);
+		return result;
 	}
-}
\ No newline at end of file
+}
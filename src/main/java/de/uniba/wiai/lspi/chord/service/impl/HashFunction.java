@@ -29,6 +29,8 @@ package de.uniba.wiai.lspi.chord.service.impl;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 import de.uniba.wiai.lspi.chord.data.ID;
 import de.uniba.wiai.lspi.chord.data.URL;
@@ -38,15 +40,33 @@ import de.uniba.wiai.lspi.chord.service.Key;
  * Provides a hash function for calculating the hash value out of {@link Key} or
  * {@link URL} objects.
  * 
+ * Thread-safe without locking: every thread hashes with its own
+ * {@link MessageDigest}, as digests are not thread-safe themselves.
+ * 
  * @author Karsten Loesing, Sven Kaffille
  * @version 1.0.5
  */
 final class HashFunction {
 
 	/**
-	 * Singleton instance of this class.
+	 * Name of the digest algorithm.
 	 */
-	private static HashFunction hashFunction = null;
+	private static final String ALGORITHM = "SHA-1";
+
+	/**
+	 * Holds the singleton instance of this class. Initialized on first use of
+	 * {@link #getHashFunction()}; class initialization publishes it safely.
+	 */
+	private static final class Holder {
+		static final HashFunction hashFunction;
+		static {
+			try {
+				hashFunction = new HashFunction(ALGORITHM);
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException("No hash function available!", e);
+			}
+		}
+	}
 
 	/**
 	 * Returns the singleton instance of this class.
@@ -57,36 +77,42 @@ final class HashFunction {
 	 *             function of the Java API.
 	 */
 	static HashFunction getHashFunction() {
-
-		if (hashFunction == null) {
-			try {
-				hashFunction = new HashFunction(MessageDigest
-						.getInstance("SHA-1"));
-			} catch (NoSuchAlgorithmException e) {
-				throw new RuntimeException("No hash function available!", e);
-			}
-		}
-
-		return hashFunction;
-
+		return Holder.hashFunction;
 	}
 
 	/**
-	 * Message digest for calculating hash values.
+	 * Message digest of the calling thread for calculating hash values.
 	 */
-	private MessageDigest messageDigest;
+	private final ThreadLocal<MessageDigest> messageDigest;
+
+	/**
+	 * Length of the digest in bytes.
+	 */
+	private final int digestLength;
 
 	/**
 	 * Constructor is hidden and only invoked once by {@link #getHashFunction()}.
 	 * 
-	 * @param digest1
-	 *            Message digest for calculating hash values.
+	 * @param algorithm
+	 *            Name of the digest algorithm for calculating hash values.
+	 * @throws NoSuchAlgorithmException
+	 *             If the Java API provides no such digest.
 	 */
-	private HashFunction(MessageDigest digest1) {
-		if (digest1 == null) {
+	private HashFunction(final String algorithm)
+			throws NoSuchAlgorithmException {
+		if (algorithm == null) {
 			throw new NullPointerException("Parameter may not be null!");
 		}
-		this.messageDigest = digest1;
+		// fails here rather than on first use in some thread
+		this.digestLength = MessageDigest.getInstance(algorithm)
+				.getDigestLength();
+		this.messageDigest = ThreadLocal.withInitial(() -> {
+			try {
+				return MessageDigest.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException("No hash function available!", e);
+			}
+		});
 	}
 
 	/**
@@ -95,7 +121,7 @@ final class HashFunction {
 	 * @return Number of bytes of generated IDs.
 	 */
 	final int getLengthOfIDsInBytes() {
-		return this.messageDigest.getDigestLength();
+		return this.digestLength;
 	}
 
 	/**
@@ -116,19 +142,12 @@ final class HashFunction {
 		}
 
 		byte[] testBytes = entry.getBytes();
-		return this.createID(testBytes);
+		return createID(this.messageDigest.get(), testBytes);
 	}
 
-	private final ID createID(byte[] testBytes) {
-		/*
-		 * synchronize access to messageDigest, so that messageDigest cannot be
-		 * reset by another thread before calculating digest.
-		 */
-		synchronized (this.messageDigest) {
-			this.messageDigest.reset();
-			this.messageDigest.update(testBytes);
-			return ID.NodeId(this.messageDigest.digest());
-		}
+	private static ID createID(MessageDigest digest, byte[] testBytes) {
+		// digest() resets the digest for the next call
+		return ID.NodeId(digest.digest(testBytes));
 	}
 
 	/**
@@ -146,8 +165,34 @@ final class HashFunction {
 			throw new IllegalArgumentException("URL must not be null!");
 		}
 		String id = incomingURL.toString();
-		ID resultKey = this.createID(id.getBytes());
+		ID resultKey = createID(this.messageDigest.get(), id.getBytes());
 		return resultKey;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Calculates the hash values for many URLs at once, e.g. when building a
+	 * whole ring. Same result as calling {@link #createUniqueNodeID(URL)} for
+	 * each URL.
+	 * 
+	 * @param incomingURLs
+	 *            URLs of the nodes.
+	 * @return IDs for the given URLs, in the same order.
+	 * @throws IllegalArgumentException
+	 *             If <code>incomingURLs</code> or one of its elements is null!
+	 */
+	final List<ID> createUniqueNodeIDs(List<URL> incomingURLs) {
+		if (incomingURLs == null) {
+			throw new IllegalArgumentException("URLs must not be null!");
+		}
+		final MessageDigest digest = this.messageDigest.get();
+		final List<ID> result = new ArrayList<ID>(incomingURLs.size());
+		for (URL url : incomingURLs) {
+			if (url == null) {
+				throw new IllegalArgumentException("URL must not be null!");
+			}
+			result.add(createID(digest, url.toString().getBytes()));
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,373 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.DEBUG;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.chord4js.Pair;
+
+import de.uniba.wiai.lspi.chord.com.CommunicationException;
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * Iterative lookup of the node responsible for a key which may ask up to
+ * alpha nodes at once (see {@link ChordImpl#LOOKUP_ALPHA}). The closest known node
+ * preceding the key is asked for the next hop first. If it has not answered
+ * when most hops of the local node have (see {@link Latencies}), or if it
+ * fails, the next closest known node is asked as well. Every answer adds the
+ * hop it names to the known nodes, and the first answer naming the
+ * responsible node wins. With only one node asked at a time, this takes the
+ * hops of {@link ChordImpl#findSuccessorIteratively(ID)}.
+ *
+ * All steps run on the given executor, never on the thread delivering an
+ * answer.
+ */
+final class HedgedLookup {
+
+	/**
+	 * Object logger.
+	 */
+	private static final Logger logger = Logger.getLogger(HedgedLookup.class);
+
+	/**
+	 * Latencies of the latest hops of a node, from which the delay before a
+	 * hedged request is derived.
+	 */
+	static final class Latencies {
+
+		private static final int kSamples = 256;
+
+		private final long[] samples = new long[kSamples];
+
+		private int count;
+
+		/**
+		 * Delay in nanoseconds, updated every few samples.
+		 */
+		private volatile long delay = TimeUnit.MILLISECONDS
+				.toNanos(ChordImpl.LOOKUP_HEDGE_DELAY);
+
+		/**
+		 * @param nanos
+		 *            Time a node took to answer a request for the next hop.
+		 */
+		final synchronized void record(long nanos) {
+			this.samples[this.count++ % kSamples] = nanos;
+			if (this.count % 32 == 0) {
+				long[] sorted = Arrays.copyOf(this.samples,
+						Math.min(this.count, kSamples));
+				Arrays.sort(sorted);
+				long percentile = sorted[(sorted.length - 1)
+						* ChordImpl.LOOKUP_HEDGE_PERCENTILE / 100];
+				this.delay = Math.max(percentile, TimeUnit.MILLISECONDS
+						.toNanos(ChordImpl.LOOKUP_HEDGE_DELAY));
+			}
+		}
+
+		/**
+		 * @return Nanoseconds to wait for an answer before asking another
+		 *         node: the configured percentile of the latest latencies, but
+		 *         at least the configured delay.
+		 */
+		final long getDelay() {
+			return this.delay;
+		}
+	}
+
+	/**
+	 * Runs the steps of a lookup on the thread waiting for it.
+	 */
+	static final class CallerRuns implements Executor {
+
+		private final LinkedBlockingQueue<Runnable> steps = new LinkedBlockingQueue<Runnable>();
+
+		public void execute(Runnable step) {
+			this.steps.add(step);
+		}
+
+		/**
+		 * Runs steps until the lookup is done, ignoring interrupts.
+		 */
+		final <T> T join(CompletableFuture<T> lookup) {
+			boolean interrupted = false;
+			while (!lookup.isDone()) {
+				try {
+					this.steps.take().run();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return lookup.join();
+		}
+	}
+
+	/**
+	 * Known node preceding the key.
+	 */
+	private static final class Candidate {
+
+		final Node node;
+
+		/**
+		 * Node which named this one, <code>null</code> for a reference of the
+		 * local node.
+		 */
+		final Candidate parent;
+
+		/**
+		 * Hops taken to reach the node.
+		 */
+		final int hops;
+
+		boolean asked;
+
+		boolean answered;
+
+		Candidate(Node node, Candidate parent) {
+			this.node = node;
+			this.parent = parent;
+			this.hops = parent == null ? 1 : parent.hops + 1;
+		}
+	}
+
+	private final ChordImpl impl;
+
+	private final ID key;
+
+	private final int alpha;
+
+	private final Executor executor;
+
+	private final CompletableFuture<Pair<Node, Integer>> result = new CompletableFuture<Pair<Node, Integer>>();
+
+	/**
+	 * Known nodes not yet found to have failed, the closest to the key first.
+	 */
+	private final List<Candidate> candidates = new ArrayList<Candidate>();
+
+	/**
+	 * IDs of all nodes known so far.
+	 */
+	private final Set<ID> seen = new HashSet<ID>();
+
+	/**
+	 * IDs of the nodes which could not be asked.
+	 */
+	private final Set<ID> failed = new HashSet<ID>();
+
+	private int inFlight;
+
+	/**
+	 * @param impl
+	 *            Node looking up the key.
+	 * @param key
+	 *            Key for which the successor is searched for.
+	 * @param alpha
+	 *            Number of nodes which may be asked at once.
+	 * @param executor
+	 *            Executor of the steps; must be a {@link CallerRuns} if the
+	 *            lookup is waited for by one of its threads.
+	 */
+	HedgedLookup(ChordImpl impl, ID key, int alpha, Executor executor) {
+		this.impl = impl;
+		this.key = key;
+		this.alpha = alpha;
+		this.executor = executor;
+	}
+
+	/**
+	 * @return Responsible node and the number of hops taken. Fails with a
+	 *         {@link CommunicationException} if no node could be asked; the
+	 *         failed nodes of the local references have then been removed.
+	 */
+	final synchronized CompletableFuture<Pair<Node, Integer>> start() {
+		Pair<Node, Boolean> hop = this.impl.findNextHop(this.key);
+		if (hop.snd) {
+			this.result.complete(new Pair<Node, Integer>(hop.fst, 0));
+			return this.result;
+		}
+		this.seen.add(this.impl.getID());
+		for (Node node : this.impl.references.getClosestPrecedingNodes(
+				this.key, this.alpha)) {
+			this.add(new Candidate(node, null));
+		}
+		this.askNext();
+		return this.result;
+	}
+
+	/**
+	 * @return <code>false</code> if the node is known already.
+	 */
+	private boolean add(Candidate candidate) {
+		if (!this.seen.add(candidate.node.getNodeID())) {
+			return false;
+		}
+		int i = 0;
+		while (i < this.candidates.size()
+				&& ID.compareDistance(this.candidates.get(i).node.getNodeID(),
+						candidate.node.getNodeID(), this.key) <= 0) {
+			i++;
+		}
+		this.candidates.add(i, candidate);
+		return true;
+	}
+
+	/**
+	 * Asks the closest candidate not asked yet, if any. Must hold the lock.
+	 */
+	private void askNext() {
+		if (this.result.isDone()) {
+			return;
+		}
+		Candidate next = null;
+		for (Candidate candidate : this.candidates) {
+			if (!candidate.asked) {
+				next = candidate;
+				break;
+			}
+		}
+		if (next == null) {
+			if (this.inFlight == 0) {
+				this.result.completeExceptionally(new CommunicationException(
+						"No node left to ask for key " + this.key));
+			}
+			return;
+		}
+
+		final Candidate candidate = next;
+		candidate.asked = true;
+		this.inFlight++;
+		final long sent = System.nanoTime();
+		CompletableFuture<Pair<Node, Boolean>> answer;
+		try {
+			answer = candidate.node.findNextHopAsync(this.key);
+		} catch (RuntimeException e) {
+			answer = CompletableFuture.failedFuture(e);
+		}
+		answer.whenCompleteAsync(
+				(hop, t) -> this.answered(candidate, sent, hop, t),
+				this.executor);
+
+		if (this.inFlight < this.alpha) {
+			CompletableFuture.delayedExecutor(
+					this.impl.lookupLatencies.getDelay(),
+					TimeUnit.NANOSECONDS, this.executor).execute(
+					() -> this.hedge(candidate));
+		}
+	}
+
+	private synchronized void hedge(Candidate candidate) {
+		if (!candidate.answered && this.inFlight < this.alpha) {
+			if (logger.isEnabledFor(DEBUG)) {
+				logger.debug("No next hop for key " + this.key + " from node "
+						+ candidate.node + " yet, asking another node.");
+			}
+			this.askNext();
+		}
+	}
+
+	private synchronized void answered(Candidate candidate, long sent,
+			Pair<Node, Boolean> hop, Throwable t) {
+		candidate.answered = true;
+		this.inFlight--;
+		if (this.result.isDone()) {
+			return;
+		}
+		if (t != null) {
+			this.failed(candidate, t);
+			return;
+		}
+		this.impl.lookupLatencies.record(System.nanoTime() - sent);
+		if (hop.snd) {
+			this.result.complete(new Pair<Node, Integer>(hop.fst,
+					candidate.hops));
+		} else if (this.failed.contains(hop.fst.getNodeID())) {
+			this.routeAround(candidate);
+		} else if (this.add(new Candidate(hop.fst, candidate))
+				|| this.inFlight == 0) {
+			// otherwise the named node is being asked already
+			this.askNext();
+		}
+	}
+
+	/**
+	 * Drops a candidate which could not be asked. A failed reference of the
+	 * local node is removed. As in
+	 * {@link ChordImpl#findSuccessorIteratively(ID)}, a failed node named by
+	 * another one, now or later, is routed around by that one, which thereby
+	 * removes it from its own references.
+	 */
+	private void failed(Candidate candidate, Throwable t) {
+		Throwable cause = unwrap(t);
+		if (!(cause instanceof CommunicationException)) {
+			this.result.completeExceptionally(cause);
+			return;
+		}
+		logger.info("Communication failure while requesting next hop "
+				+ "for key " + this.key + " from node " + candidate.node);
+		this.candidates.remove(candidate);
+		this.failed.add(candidate.node.getNodeID());
+		if (candidate.parent == null) {
+			this.impl.references.removeReference(candidate.node);
+			this.askNext();
+		} else {
+			this.routeAround(candidate.parent);
+		}
+	}
+
+	/**
+	 * Asks a node which named a failed node for the responsible node.
+	 */
+	private void routeAround(final Candidate parent) {
+		this.inFlight++;
+		CompletableFuture<Pair<Node, Integer>> routed;
+		try {
+			routed = parent.node.findSuccessorAsync(this.key);
+		} catch (RuntimeException e) {
+			routed = CompletableFuture.failedFuture(e);
+		}
+		routed.whenCompleteAsync((p, t1) -> this.routed(parent, p, t1),
+				this.executor);
+	}
+
+	private synchronized void routed(Candidate parent, Pair<Node, Integer> p,
+			Throwable t) {
+		this.inFlight--;
+		if (this.result.isDone()) {
+			return;
+		}
+		if (t != null) {
+			Throwable cause = unwrap(t);
+			if (!(cause instanceof CommunicationException)) {
+				this.result.completeExceptionally(cause);
+				return;
+			}
+			// the node may well be alive, only its route failed
+			this.askNext();
+			return;
+		}
+		p.snd += parent.hops;
+		this.result.complete(p);
+	}
+
+	private static Throwable unwrap(Throwable t) {
+		while (t instanceof CompletionException && t.getCause() != null) {
+			t = t.getCause();
+		}
+		return t;
+	}
+}
@@ -0,0 +1,140 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.chord4js.Pair;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.ID;
+
+/**
+ * Nodes recently found responsible for keys looked up by a node, so that
+ * {@link ChordImpl#insert}, {@link ChordImpl#retrieveR} and
+ * {@link ChordImpl#remove} can contact them without routing again.
+ *
+ * For every node, the range from the key looked up farthest before the node
+ * up to the node itself is kept; all of its keys belong to the node, unless
+ * a node has joined in between since. Entries expire after a time to live,
+ * and the least recently used one is evicted once more than the given number
+ * of nodes are kept. Callers invalidate the entry of a node which failed or
+ * forwarded a request to its predecessor.
+ */
+final class LocationCache {
+
+	/**
+	 * Range of keys a node was found responsible for.
+	 */
+	private static final class Entry {
+
+		final Node node;
+
+		/**
+		 * Key farthest before the node it was found responsible for.
+		 */
+		ID first;
+
+		/**
+		 * Hops the lookup of {@link #first} took.
+		 */
+		int hops;
+
+		long expires;
+
+		Entry(Node node, ID first, int hops, long expires) {
+			this.node = node;
+			this.first = first;
+			this.hops = hops;
+			this.expires = expires;
+		}
+	}
+
+	private final int capacity;
+
+	private final long ttl;
+
+	/**
+	 * Entries by node ID, in order of their last use.
+	 */
+	private final LinkedHashMap<ID, Entry> used;
+
+	/**
+	 * Entries by node ID, in order of the IDs.
+	 */
+	private final TreeMap<ID, Entry> ring = new TreeMap<ID, Entry>();
+
+	/**
+	 * @param capacity
+	 *            Maximum number of nodes kept.
+	 * @param ttl
+	 *            Time in milliseconds an entry is used for.
+	 */
+	LocationCache(int capacity, long ttl) {
+		this.capacity = capacity;
+		this.ttl = ttl;
+		this.used = new LinkedHashMap<ID, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ID, Entry> eldest) {
+				if (this.size() > LocationCache.this.capacity) {
+					LocationCache.this.ring.remove(eldest.getKey());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return Node responsible for the key and the hops its lookup took, or
+	 *         <code>null</code> if not known.
+	 */
+	final synchronized Pair<Node, Integer> get(ID key) {
+		Map.Entry<ID, Entry> next = this.ring.ceilingEntry(key);
+		if (next == null) {
+			next = this.ring.firstEntry();
+		}
+		if (next != null
+				&& ID.inClosed(key, next.getValue().first, next.getKey())) {
+			Entry entry = next.getValue();
+			if (entry.expires - System.currentTimeMillis() > 0) {
+				this.used.get(next.getKey());
+				return new Pair<Node, Integer>(entry.node, entry.hops);
+			}
+			this.remove(next.getKey());
+		}
+		return null;
+	}
+
+	/**
+	 * Records that a lookup of the key found the node responsible.
+	 *
+	 * @param hops
+	 *            Hops the lookup took.
+	 */
+	final synchronized void put(ID key, Node node, int hops) {
+		ID id = node.getNodeID();
+		long expires = System.currentTimeMillis() + this.ttl;
+		Entry entry = this.used.get(id);
+		if (entry == null || entry.node != node
+				|| entry.expires - System.currentTimeMillis() <= 0) {
+			entry = new Entry(node, key, hops, expires);
+			this.used.put(id, entry);
+			this.ring.put(id, entry);
+		} else if (!ID.inClosed(key, entry.first, id)) {
+			// both keys lie between the predecessor of the node and the node
+			entry.first = key;
+			entry.hops = hops;
+		}
+	}
+
+	/**
+	 * Forgets the node with the given ID.
+	 */
+	final synchronized void remove(ID id) {
+		this.used.remove(id);
+		this.ring.remove(id);
+	}
+}
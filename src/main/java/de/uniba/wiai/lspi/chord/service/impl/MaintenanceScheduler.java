@@ -0,0 +1,317 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * Runs the periodic maintenance tasks of all {@link ChordImpl} nodes of this
+ * JVM, so that thousands of nodes do not need thousands of threads. One timer
+ * thread advances a hashed timer wheel every tick and hands the tasks due to a
+ * fixed number of worker threads. Like
+ * {@link java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay(Runnable, long, long, TimeUnit)},
+ * a task is scheduled again only after it has finished, so one task never
+ * runs twice at the same time, and an overloaded pool delays tasks rather
+ * than piling them up.
+ *
+ * Configured once, when first used, from the system properties (see
+ * {@link de.uniba.wiai.lspi.chord.service.PropertiesLoader}):
+ * <ul>
+ * <li><code>de.uniba.wiai.lspi.chord.service.impl.MaintenanceScheduler.tick</code>:
+ * milliseconds per tick, the resolution of start times and intervals
+ * (default 100).</li>
+ * <li><code>de.uniba.wiai.lspi.chord.service.impl.MaintenanceScheduler.wheel</code>:
+ * number of buckets of the wheel (default 512).</li>
+ * <li><code>de.uniba.wiai.lspi.chord.service.impl.MaintenanceScheduler.workers</code>:
+ * number of threads running tasks (default: number of processors).</li>
+ * </ul>
+ */
+final class MaintenanceScheduler {
+
+	/**
+	 * Object logger.
+	 */
+	private static final Logger logger = Logger
+			.getLogger(MaintenanceScheduler.class);
+
+	/**
+	 * Name of the property giving the milliseconds per tick.
+	 */
+	static final String TICK_PROPERTY = MaintenanceScheduler.class.getName()
+			+ ".tick";
+
+	/**
+	 * Name of the property giving the number of buckets of the wheel.
+	 */
+	static final String WHEEL_PROPERTY = MaintenanceScheduler.class.getName()
+			+ ".wheel";
+
+	/**
+	 * Name of the property giving the number of worker threads.
+	 */
+	static final String WORKERS_PROPERTY = MaintenanceScheduler.class
+			.getName()
+			+ ".workers";
+
+	/**
+	 * Holds the instance shared by all nodes. Created on first use of
+	 * {@link #getScheduler()}.
+	 */
+	private static final class Holder {
+		static final MaintenanceScheduler scheduler = new MaintenanceScheduler(
+				Long.getLong(TICK_PROPERTY, 100), Integer.getInteger(
+						WHEEL_PROPERTY, 512), Integer.getInteger(
+						WORKERS_PROPERTY, Runtime.getRuntime()
+								.availableProcessors()));
+	}
+
+	/**
+	 * Returns the scheduler shared by all nodes of this JVM.
+	 *
+	 * @return Shared scheduler.
+	 */
+	static MaintenanceScheduler getScheduler() {
+		return Holder.scheduler;
+	}
+
+	/**
+	 * A scheduled task, stored in the bucket of its deadline.
+	 */
+	private final class Timeout implements Runnable {
+
+		private final Runnable task;
+
+		private final long periodTicks;
+
+		/**
+		 * Tick the task is due at.
+		 */
+		private long deadline;
+
+		/**
+		 * Number of times the wheel has to turn before the task is due.
+		 * Accessed by the timer thread only.
+		 */
+		private long rounds;
+
+		private volatile boolean cancelled;
+
+		Timeout(Runnable task, long periodTicks) {
+			this.task = task;
+			this.periodTicks = periodTicks;
+		}
+
+		public void run() {
+			if (this.cancelled) {
+				return;
+			}
+			try {
+				this.task.run();
+			} catch (Throwable t) {
+				MaintenanceScheduler.logger.warn(
+						"Unexpected exception in maintenance task " + this.task,
+						t);
+			}
+			if (!this.cancelled) {
+				MaintenanceScheduler.this.schedule(this, this.periodTicks);
+			}
+		}
+	}
+
+	/**
+	 * The periodic tasks of one node, cancelled together.
+	 */
+	static final class Tasks {
+
+		private final List<Timeout> timeouts = new ArrayList<Timeout>(3);
+
+		private synchronized void add(Timeout timeout) {
+			this.timeouts.add(timeout);
+		}
+
+		/**
+		 * Cancels all tasks. Tasks running right now are completed, but not
+		 * scheduled again. Public, as it is invoked by reflection when a local
+		 * endpoint crashes.
+		 */
+		public synchronized void shutdown() {
+			for (Timeout timeout : this.timeouts) {
+				timeout.cancelled = true;
+			}
+			this.timeouts.clear();
+		}
+	}
+
+	/**
+	 * Duration of a tick in nanoseconds.
+	 */
+	private final long tickNanos;
+
+	/**
+	 * Buckets of tasks by deadline modulo the wheel size. Accessed by the
+	 * timer thread only.
+	 */
+	private final List<Timeout>[] wheel;
+
+	/**
+	 * Tasks (re)scheduled since the last tick, added to the wheel by the timer
+	 * thread.
+	 */
+	private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+
+	/**
+	 * Number of ticks since the timer thread started.
+	 */
+	private volatile long tick;
+
+	/**
+	 * Threads running the tasks.
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * Creates a scheduler and starts its timer thread.
+	 *
+	 * @param tickMillis
+	 *            Duration of a tick in milliseconds.
+	 * @param wheelSize
+	 *            Number of buckets; rounded up to a power of two.
+	 * @param workers
+	 *            Number of threads running tasks.
+	 * @throws IllegalArgumentException
+	 *             If any parameter is not positive.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	MaintenanceScheduler(long tickMillis, int wheelSize, int workers) {
+		if (tickMillis <= 0 || wheelSize <= 0 || workers <= 0) {
+			IllegalArgumentException e = new IllegalArgumentException(
+					"Tick, wheel size and number of workers must be positive!");
+			MaintenanceScheduler.logger.error("Illegal argument", e);
+			throw e;
+		}
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		this.wheel = new List[size];
+		for (int i = 0; i < this.wheel.length; i++) {
+			this.wheel[i] = new ArrayList<Timeout>();
+		}
+
+		final AtomicInteger threads = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(workers, workers, 0L,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				r -> {
+					Thread t = new Thread(r, "MaintenanceTaskExecution-"
+							+ threads.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+
+		Thread timer = new Thread(this::runTimer, "MaintenanceTimer");
+		timer.setDaemon(true);
+		timer.start();
+	}
+
+	/**
+	 * Schedules a task to run periodically, with a fixed delay between the
+	 * end of one run and the start of the next.
+	 *
+	 * @param tasks
+	 *            Group of the node the task belongs to.
+	 * @param task
+	 *            Task to run.
+	 * @param initialDelay
+	 *            Time until the first run, in milliseconds.
+	 * @param delay
+	 *            Time between two runs, in milliseconds.
+	 * @throws NullPointerException
+	 *             If <code>tasks</code> or <code>task</code> is
+	 *             <code>null</code>.
+	 */
+	final void scheduleWithFixedDelay(Tasks tasks, Runnable task,
+			long initialDelay, long delay) {
+		if (tasks == null || task == null) {
+			NullPointerException e = new NullPointerException(
+					"Neither parameter may be null!");
+			MaintenanceScheduler.logger.error("Null pointer", e);
+			throw e;
+		}
+		Timeout timeout = new Timeout(task, this.toTicks(delay));
+		tasks.add(timeout);
+		this.schedule(timeout, this.toTicks(initialDelay));
+	}
+
+	/**
+	 * @return Given milliseconds in ticks, rounded up, at least 1.
+	 */
+	private long toTicks(long millis) {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+		return Math.max(1, (nanos + this.tickNanos - 1) / this.tickNanos);
+	}
+
+	/**
+	 * Hands a task to the timer thread, to be due in the given number of
+	 * ticks from now.
+	 */
+	private void schedule(Timeout timeout, long ticks) {
+		timeout.deadline = this.tick + ticks;
+		this.pending.add(timeout);
+	}
+
+	/**
+	 * Body of the timer thread: advances the wheel once per tick, catching up
+	 * without sleeping if it fell behind.
+	 */
+	private void runTimer() {
+		final long start = System.nanoTime();
+		final int mask = this.wheel.length - 1;
+		for (;;) {
+			final long next = this.tick + 1;
+			long sleep = start + next * this.tickNanos - System.nanoTime();
+			while (sleep > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleep);
+				} catch (InterruptedException e) {
+					// daemon thread; nothing to clean up
+				}
+				sleep = start + next * this.tickNanos - System.nanoTime();
+			}
+			this.tick = next;
+
+			Timeout timeout;
+			while ((timeout = this.pending.poll()) != null) {
+				if (timeout.cancelled) {
+					continue;
+				}
+				final long deadline = Math.max(timeout.deadline, next);
+				timeout.rounds = (deadline - next) / this.wheel.length;
+				this.wheel[(int) deadline & mask].add(timeout);
+			}
+
+			final List<Timeout> bucket = this.wheel[(int) next & mask];
+			int kept = 0;
+			for (int i = 0; i < bucket.size(); i++) {
+				timeout = bucket.get(i);
+				if (timeout.cancelled) {
+					continue;
+				}
+				if (timeout.rounds > 0) {
+					timeout.rounds--;
+					bucket.set(kept++, timeout);
+					continue;
+				}
+				this.workers.execute(timeout);
+			}
+			bucket.subList(kept, bucket.size()).clear();
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * Group of {@link ChordImpl} nodes sharing how their asynchronous requests are
+ * executed: the fire-and-forget replication calls of {@link NodeImpl} and the
+ * asynchronous methods of {@link de.uniba.wiai.lspi.chord.service.AsynChord}.
+ * The executors live as long as the group, not as long as a node, so a node
+ * that leaves or crashes only gives back what it used alone.
+ *
+ * Nodes created with {@link ChordImpl#ChordImpl()} belong to the
+ * {@link #getDefault() default group}, configured once, when first used, from
+ * the system properties (see
+ * {@link de.uniba.wiai.lspi.chord.service.PropertiesLoader}):
+ * <ul>
+ * <li><code>de.uniba.wiai.lspi.chord.service.impl.ChordImpl.AsyncThread.execution</code>:
+ * one of <code>shared</code>, <code>virtual</code> or <code>node</code>, see
+ * {@link Execution} (default <code>node</code>).</li>
+ * <li><code>de.uniba.wiai.lspi.chord.service.impl.ChordImpl.AsyncThread.no</code>:
+ * number of threads of a pool (default 10).</li>
+ * </ul>
+ */
+public final class NodeGroup {
+
+	/**
+	 * How the asynchronous requests of the nodes of a group are executed.
+	 */
+	public enum Execution {
+
+		/**
+		 * By one pool of a fixed number of threads for all nodes.
+		 */
+		SHARED,
+
+		/**
+		 * By a new virtual thread per request, if the JVM supports them;
+		 * otherwise as {@link #SHARED}.
+		 */
+		VIRTUAL,
+
+		/**
+		 * By a pool of a fixed number of threads per node, shut down when the
+		 * node leaves or crashes.
+		 */
+		NODE
+	}
+
+	/**
+	 * Object logger.
+	 */
+	private static final Logger logger = Logger.getLogger(NodeGroup.class);
+
+	/**
+	 * Name of the property giving the {@link Execution} of the default group.
+	 */
+	static final String EXECUTION_PROPERTY = ChordImpl.class.getName()
+			+ ".AsyncThread.execution";
+
+	/**
+	 * Name of the property giving the number of threads of a pool.
+	 */
+	static final String THREADS_PROPERTY = ChordImpl.class.getName()
+			+ ".AsyncThread.no";
+
+	/**
+	 * Holds the default group. Created on first use of {@link #getDefault()}.
+	 */
+	private static final class Holder {
+		static final NodeGroup group = new NodeGroup(Execution
+				.valueOf(System.getProperty(EXECUTION_PROPERTY, "node")
+						.trim().toUpperCase()), Integer.getInteger(
+				THREADS_PROPERTY, 10));
+	}
+
+	/**
+	 * Returns the group of all nodes created without a group. It is never
+	 * shut down, so its shared threads are daemon threads.
+	 *
+	 * @return Default group.
+	 */
+	public static NodeGroup getDefault() {
+		return Holder.group;
+	}
+
+	/**
+	 * ThreadFactory used with Executor services.
+	 *
+	 * @author sven
+	 *
+	 */
+	private static class ChordThreadFactory implements ThreadFactory {
+
+		private String executorName;
+
+		private boolean daemon;
+
+		private final AtomicInteger threads = new AtomicInteger();
+
+		ChordThreadFactory(String executorName, boolean daemon) {
+			this.executorName = executorName;
+			this.daemon = daemon;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread newThread = new Thread(r, this.executorName + "-"
+					+ this.threads.incrementAndGet());
+			newThread.setDaemon(this.daemon);
+			return newThread;
+		}
+
+	}
+
+	private final Execution execution;
+
+	private final int threads;
+
+	/**
+	 * Executor of all nodes; <code>null</code> for {@link Execution#NODE}.
+	 */
+	private final ExecutorService shared;
+
+	/**
+	 * Executors of nodes which have not left or crashed yet, for
+	 * {@link Execution#NODE}.
+	 */
+	private final Set<ExecutorService> perNode = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean shutdown;
+
+	/**
+	 * Creates a group of nodes.
+	 *
+	 * @param execution
+	 *            How asynchronous requests are executed.
+	 * @param threads
+	 *            Number of threads of a pool; ignored for virtual threads.
+	 * @throws NullPointerException
+	 *             If <code>execution</code> is <code>null</code>.
+	 * @throws IllegalArgumentException
+	 *             If <code>threads</code> is not positive.
+	 */
+	public NodeGroup(Execution execution, int threads) {
+		if (execution == null) {
+			NullPointerException e = new NullPointerException(
+					"Execution may not be null!");
+			NodeGroup.logger.error("Null pointer", e);
+			throw e;
+		}
+		if (threads <= 0) {
+			IllegalArgumentException e = new IllegalArgumentException(
+					"Number of threads must be positive!");
+			NodeGroup.logger.error("Illegal argument", e);
+			throw e;
+		}
+		this.threads = threads;
+
+		ExecutorService shared = null;
+		if (execution == Execution.VIRTUAL) {
+			shared = newVirtualThreadPerTaskExecutor();
+			if (shared == null) {
+				NodeGroup.logger.warn("Virtual threads not supported by this "
+						+ "JVM, using a shared pool instead.");
+				execution = Execution.SHARED;
+			}
+		}
+		if (execution == Execution.SHARED) {
+			shared = this.newPool(true);
+		}
+		this.execution = execution;
+		this.shared = shared;
+	}
+
+	/**
+	 * @return <code>Executors.newVirtualThreadPerTaskExecutor()</code>, or
+	 *         <code>null</code> if the JVM has no virtual threads.
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private ExecutorService newPool(boolean daemon) {
+		return new ThreadPoolExecutor(this.threads, this.threads, 0L,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ChordThreadFactory("AsynchronousExecution", daemon));
+	}
+
+	/**
+	 * @return How asynchronous requests of this group are executed; never
+	 *         {@link Execution#VIRTUAL} if the JVM has no virtual threads.
+	 */
+	public Execution getExecution() {
+		return this.execution;
+	}
+
+	/**
+	 * Returns the executor for a new node of this group.
+	 *
+	 * @return Executor to pass back to {@link #release(ExecutorService)} when
+	 *         the node leaves or crashes.
+	 * @throws RejectedExecutionException
+	 *             If this group has been shut down.
+	 */
+	final ExecutorService acquire() {
+		if (this.shutdown) {
+			throw new RejectedExecutionException("Node group has been shut down!");
+		}
+		if (this.shared != null) {
+			return this.shared;
+		}
+		// threads are only started when the node makes requests
+		ExecutorService executor = this.newPool(false);
+		this.perNode.add(executor);
+		if (this.shutdown) {
+			this.perNode.remove(executor);
+			executor.shutdownNow();
+			throw new RejectedExecutionException("Node group has been shut down!");
+		}
+		return executor;
+	}
+
+	/**
+	 * Gives back the executor of a node that left or crashed. Pending requests
+	 * of the node are dropped only if the node had an executor of its own.
+	 *
+	 * @param executor
+	 *            Executor returned by {@link #acquire()}.
+	 */
+	final void release(ExecutorService executor) {
+		if (executor != this.shared && this.perNode.remove(executor)) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Stops all threads of this group. Pending asynchronous requests are
+	 * dropped, and nodes of this group can no longer be created; nodes still
+	 * running reject their asynchronous requests.
+	 */
+	public void shutdown() {
+		this.shutdown = true;
+		if (this.shared != null) {
+			this.shared.shutdownNow();
+		}
+		for (ExecutorService executor : this.perNode) {
+			this.release(executor);
+		}
+	}
+}
@@ -164,6 +164,14 @@ public final class NodeImpl extends Node {
 		return this.impl.findSuccessor(key);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final Pair<Node, Boolean> findNextHop(ID key) {
+		return this.impl.findNextHop(key);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -242,12 +250,12 @@ public final class NodeImpl extends Node {
 
 		// Possible, but rare situation: a new node has joined which now is
 		// responsible for the id!
-		final ID pid = new ID(toInsert.getProviderId());
-		if ((this.references.getPredecessor() == null)
-				|| !pid.isInInterval(
-						this.references.getPredecessor().getNodeID(),
-						this.nodeID)) {
-			this.references.getPredecessor().insertEntry(toInsert); 
+		final ID pid = toInsert.getProviderId().getId();
+		// read once, as it may be changed by maintenance meanwhile
+		final Node predecessor = this.references.getPredecessor();
+		if (predecessor != null
+				&& !pid.isInInterval(predecessor.getNodeID(), this.nodeID)) {
+			predecessor.insertEntry(toInsert);
 			return;
 		}
 
@@ -267,7 +275,7 @@ public final class NodeImpl extends Node {
 					try {
 						successor.insertReplicas(mustBeFinal);
 					} catch (CommunicationException e) {
-						// do nothing
+						NodeImpl.this.references.replicationFailed(successor);
 					}
 				}
 			});
@@ -294,14 +302,13 @@ public final class NodeImpl extends Node {
 					+ " at node " + this.nodeID);
 		}
 
-		final ID id = new ID(providerId);
+		final ID id = providerId.getId();
 		// Possible, but rare situation: a new node has joined which now is
 		// responsible for the id!
-		if (this.references.getPredecessor() != null
-				&& !id.isInInterval(
-						this.references.getPredecessor().getNodeID(),
-						this.nodeID)) {
-			this.references.getPredecessor().removeEntry(providerId);
+		final Node predecessor = this.references.getPredecessor();
+		if (predecessor != null
+				&& !id.isInInterval(predecessor.getNodeID(), this.nodeID)) {
+			predecessor.removeEntry(providerId);
 			return;
 		}
 
@@ -323,7 +330,7 @@ public final class NodeImpl extends Node {
 						// remove only replica of removed entry
 						successor.removeReplicas(nid, entriesToRemove);
 					} catch (CommunicationException e) {
-						// do nothing for the moment
+						NodeImpl.this.references.replicationFailed(successor);
 					}
 				}
 			});
@@ -343,23 +350,15 @@ public final class NodeImpl extends Node {
 						+ this.entries.getNumberOfStoredEntries());
 			}
 			/*
-			 * Determine entries to remove. These entries are located between
-			 * the id of the local peer and the argument sendingNodeID
+			 * Remove entries located between the id of the local peer and the
+			 * argument sendingNodeID
 			 */
-			Set<Service> allReplicasToRemove = this.entries.getEntriesInInterval(
-					this.nodeID, sendingNodeID);
+			int removed = this.entries.removeEntriesInInterval(this.nodeID,
+					sendingNodeID);
 			if (debug) {
-				this.logger.debug("Replicas to remove " + allReplicasToRemove);
-				this.logger.debug("Size of replicas to remove "
-						+ allReplicasToRemove.size());
+				this.logger.debug("Number of replicas removed " + removed);
 			}
 
-			/*
-			 * Remove entries
-			 */
-			for (Service s : allReplicasToRemove)
-			  this.entries.remove(s.getProviderId());
-
 			if (debug) {
 				this.logger
 						.debug("Removed replicas??? Current no. of entries: "
@@ -385,8 +384,9 @@ public final class NodeImpl extends Node {
 	  
 		// Possible, but rare situation: a new node has joined which now is
 		// responsible for the id!
-		if (this.references.getPredecessor() != null
-				&& !msg.span.bgn().isInInterval(references.getPredecessor().getNodeID()
+		final Node predecessor = this.references.getPredecessor();
+		if (predecessor != null
+				&& !msg.span.bgn().isInInterval(predecessor.getNodeID()
 				                               ,nodeID)) {
 			this.logger
 					.warn("Network needs more time to update their predecessors and finger tables, or some nodes have crashed. "
@@ -399,9 +399,10 @@ public final class NodeImpl extends Node {
 							+ ", id of local node="
 							+ this.nodeID
 							+ ", id of predecessor="
-					+ this.references.getPredecessor().getNodeID());
-			final C4SRetrieveResponse x = this.references.getPredecessor().retrieveEntries(msg);
+					+ predecessor.getNodeID());
+			final C4SRetrieveResponse x = predecessor.retrieveEntries(msg);
 			x.incrementHop(); // because we had to redirect to x
+			x.markRedirected();
 			return x;
 		}
 
@@ -36,9 +36,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-
-import com.chord4js.Service;
 
 import de.uniba.wiai.lspi.chord.com.CommunicationException;
 import de.uniba.wiai.lspi.chord.com.Node;
@@ -52,6 +49,11 @@ import de.uniba.wiai.lspi.util.logging.Logger;
  * provides methods for querying and manipulating these references. Makes use of
  * one finger table, one successor list, and one predecessor reference.
  * 
+ * Changes are made under the lock on this object. After each change an
+ * immutable {@link Snapshot} of the references is published, from which
+ * lookups ({@link #getClosestPrecedingNode(ID)}, {@link #getSuccessor()},
+ * {@link #getSuccessors()}, {@link #getPredecessor()}) read without locking.
+ * 
  * @author Karsten Loesing
  * @version 1.0.5
  */
@@ -86,6 +88,30 @@ final class References {
 
 	private Entries entries;
 
+	/**
+	 * Immutable copy of finger table, successor list and predecessor.
+	 */
+	private static final class Snapshot {
+
+		final FingerTable.Runs fingers;
+
+		final List<Node> successors;
+
+		final Node predecessor;
+
+		Snapshot(FingerTable.Runs fingers, List<Node> successors,
+				Node predecessor) {
+			this.fingers = fingers;
+			this.successors = successors;
+			this.predecessor = predecessor;
+		}
+	}
+
+	/**
+	 * Latest published snapshot. Replaced as a whole, never modified.
+	 */
+	private volatile Snapshot snapshot;
+
 	/**
 	 * Creates an References object which contains no references.
 	 * 
@@ -130,12 +156,24 @@ final class References {
 		this.fingerTable = new FingerTable(locID, this);
 		this.successorList = new SuccessorList(locID,
 				numberOfEntriesInSuccessorList, this, entries);
+		this.publishSnapshot();
+	}
+
+	/**
+	 * Publishes the current finger table, successor list and predecessor as a
+	 * new snapshot for lookups. Must be invoked after every change to one of
+	 * them, while holding the lock on this object, so that the changing thread
+	 * reads its own changes.
+	 */
+	final void publishSnapshot() {
+		this.snapshot = new Snapshot(this.fingerTable.getRuns(),
+				this.successorList.getReferences(), this.predecessor);
 	}
 
 	/**
 	 * Determines the closest preceding node for the given ID based on finger
 	 * table, successor list, and predecessor, but without testing the node's
-	 * liveliness.
+	 * liveliness. Reads the latest snapshot and does not lock.
 	 * 
 	 * @param key
 	 *            ID to find closest preceding node for.
@@ -143,7 +181,7 @@ final class References {
 	 *             If ID is <code>null</code>.
 	 * @return Reference on closest preceding node.
 	 */
-	final synchronized Node getClosestPrecedingNode(ID key) {
+	final Node getClosestPrecedingNode(ID key) {
 
 		if (key == null) {
 			NullPointerException e = new NullPointerException(
@@ -152,137 +190,26 @@ final class References {
 			throw e;
 		}
 
-		Map<ID, Node> foundNodes = new HashMap<ID, Node>();
+		final Snapshot s = this.snapshot;
+
 		// determine closest preceding reference of finger table
-		Node closestNodeFT = this.fingerTable.getClosestPrecedingNode(key);
-		if (closestNodeFT != null) {
-			foundNodes.put(closestNodeFT.getNodeID(), closestNodeFT);
-		}
+		Node closestNodeFT = s.fingers.getClosestPrecedingNode(this.localID,
+				key);
 
 		// determine closest preceding reference of successor list
-		Node closestNodeSL = this.successorList.getClosestPrecedingNode(key);
-		if (closestNodeSL != null) {
-			foundNodes.put(closestNodeSL.getNodeID(), closestNodeSL);
-		}
+		Node closestNodeSL = SuccessorList.getClosestPrecedingNode(
+				s.successors, this.localID, key);
 
 		// predecessor is appropriate only if it precedes the given id
 		Node predecessorIfAppropriate = null;
-		if (this.predecessor != null
-				&& key.isInInterval(this.predecessor.getNodeID(), this.localID)) {
-			predecessorIfAppropriate = this.predecessor;
-			foundNodes.put(this.predecessor.getNodeID(), predecessor);
+		if (s.predecessor != null
+				&& key.isInInterval(s.predecessor.getNodeID(), this.localID)) {
+			predecessorIfAppropriate = s.predecessor;
 		}
 
-		// with three references which may be null, there are eight (8) cases we
-		// have to enumerate...
-		Node closestNode = null;
-		List<ID> orderedIDList = new ArrayList<ID>(foundNodes.keySet());
-		orderedIDList.add(key);
-		int sizeOfList = orderedIDList.size();
-		// size of list must be greater than one to not only contain the key.
-		// if (sizeOfList > 1) {
-
-		/*
-		 * Sort list in ascending order
-		 */
-		Collections.sort(orderedIDList);
-		/*
-		 * The list item with one index lower than that of the key must be the
-		 * id of the closest predecessor or the key.
-		 */
-		int keyIndex = orderedIDList.indexOf(key);
-		/*
-		 * As all ids are located on a ring if the key is the first item in the
-		 * list we have to select the last item as predecessor with help of this
-		 * calculation.
-		 */
-		int index = (sizeOfList + (keyIndex - 1)) % sizeOfList;
-		/*
-		 * Get the references to the node from the map of collected nodes.
-		 */
-		ID idOfclosestNode = orderedIDList.get(index);
-		closestNode = foundNodes.get(idOfclosestNode);
-		if (closestNode == null) {
-			//throw new NullPointerException("closestNode must not be null!");
-		}
+		Node closestNode = closestPrecedingOf(key, closestNodeFT,
+				closestNodeSL, predecessorIfAppropriate);
 
-		/*
-		 * Following code is too complicated.
-		 */
-		// if (closestNodeFT == null) {
-		// if (closestNodeSL == null) {
-		// if (predecessorIfAppropriate == null) {
-		// // no reference is appropriate
-		// closestNode = null;
-		// } else {
-		// // only predecessor is appropriate (case should not occur,
-		// // but anyway...
-		// closestNode = predecessorIfAppropriate;
-		// }
-		// } else {
-		// if (predecessorIfAppropriate == null) {
-		// // only reference of successor list is appropriate
-		// closestNode = closestNodeSL;
-		// } else {
-		// // either predecessor or reference of successor list is
-		// // appropriate; determine one of both
-		// if (predecessorIfAppropriate.nodeID.isInInterval(
-		// closestNodeSL.nodeID, key)) {
-		// closestNode = predecessorIfAppropriate;
-		// } else {
-		// closestNode = closestNodeSL;
-		// }
-		// }
-		// }
-		// } else {
-		// if (closestNodeSL == null) {
-		// if (predecessorIfAppropriate == null) {
-		// // only reference of finger table is appropriate
-		// closestNode = closestNodeFT;
-		// } else {
-		// // either predecessor or reference of finger table is
-		// // appropriate; determine one of both
-		// if (predecessorIfAppropriate.nodeID.isInInterval(
-		// closestNodeFT.nodeID, key)) {
-		// closestNode = predecessorIfAppropriate;
-		// } else {
-		// closestNode = closestNodeFT;
-		// }
-		// }
-		// } else {
-		// if (predecessorIfAppropriate == null) {
-		// // either reference of successor list or reference of finger
-		// // table is appropriate; determine one of both
-		// if (closestNodeSL.nodeID.isInInterval(closestNodeFT.nodeID,
-		// key)) {
-		// closestNode = closestNodeSL;
-		// } else {
-		// closestNode = closestNodeFT;
-		// }
-		// } else {
-		// // either of the three reference is appropriate; determine
-		// // first one of the references of successor list and finger
-		// // table is more appropriate and afterwards compare with
-		// // predecessor
-		// if (closestNodeSL.nodeID.isInInterval(closestNodeFT.nodeID,
-		// key)) {
-		// if (predecessorIfAppropriate.nodeID.isInInterval(
-		// closestNodeSL.nodeID, key)) {
-		// closestNode = predecessorIfAppropriate;
-		// } else {
-		// closestNode = closestNodeSL;
-		// }
-		// } else {
-		// if (predecessorIfAppropriate.nodeID.isInInterval(
-		// closestNodeFT.nodeID, key)) {
-		// closestNode = predecessorIfAppropriate;
-		// } else {
-		// closestNode = closestNodeFT;
-		// }
-		// }
-		// }
-		// }
-		// }
 		if (this.logger.isEnabledFor(DEBUG)) {
 			this.logger.debug("Closest preceding node of ID "
 					+ key
@@ -303,6 +230,89 @@ final class References {
 		return closestNode;
 	}
 
+	/**
+	 * Determines up to <code>count</code> distinct nodes of finger table,
+	 * successor list, and predecessor which precede the given ID, without
+	 * testing their liveliness. Reads the latest snapshot and does not lock.
+	 *
+	 * @param key
+	 *            ID to find closest preceding nodes for.
+	 * @param count
+	 *            Maximum number of nodes to return.
+	 * @throws NullPointerException
+	 *             If ID is <code>null</code>.
+	 * @return Preceding nodes, the closest first. Empty if none precedes
+	 *         the given ID.
+	 */
+	final List<Node> getClosestPrecedingNodes(final ID key, int count) {
+
+		if (key == null) {
+			NullPointerException e = new NullPointerException(
+					"ID may not be null!");
+			this.logger.error("Null pointer", e);
+			throw e;
+		}
+
+		final Snapshot s = this.snapshot;
+		final Map<ID, Node> preceding = new HashMap<ID, Node>();
+		for (Node node : s.fingers.nodes) {
+			if (node.getNodeID().isInInterval(this.localID, key)) {
+				preceding.put(node.getNodeID(), node);
+			}
+		}
+		for (Node node : s.successors) {
+			if (node.getNodeID().isInInterval(this.localID, key)) {
+				preceding.put(node.getNodeID(), node);
+			}
+		}
+		if (s.predecessor != null
+				&& key.isInInterval(s.predecessor.getNodeID(), this.localID)) {
+			preceding.put(s.predecessor.getNodeID(), s.predecessor);
+		}
+
+		final List<Node> closest = new ArrayList<Node>(preceding.values());
+		Collections.sort(closest, (a, b) -> ID.compareDistance(a.getNodeID(),
+				b.getNodeID(), key));
+		return closest.size() > count ? closest.subList(0, count) : closest;
+	}
+
+	/**
+	 * Picks the candidate which most closely precedes the given ID, i.e. the
+	 * one with the shortest clockwise distance to it. Of candidates with the
+	 * same ID the later one is picked. No candidate may have the ID
+	 * <code>key</code>. Does not allocate.
+	 * 
+	 * @param key
+	 *            ID to find closest preceding node for.
+	 * @param closestNodeFT
+	 *            Closest preceding node of finger table, may be
+	 *            <code>null</code>.
+	 * @param closestNodeSL
+	 *            Closest preceding node of successor list, may be
+	 *            <code>null</code>.
+	 * @param predecessorIfAppropriate
+	 *            Predecessor if it precedes the given ID, may be
+	 *            <code>null</code>.
+	 * @return Closest preceding candidate, or <code>null</code> if all are
+	 *         <code>null</code>.
+	 */
+	static Node closestPrecedingOf(ID key, Node closestNodeFT,
+			Node closestNodeSL, Node predecessorIfAppropriate) {
+		Node closestNode = closestNodeFT;
+		if (closestNodeSL != null
+				&& (closestNode == null || ID.compareDistance(
+						closestNodeSL.getNodeID(), closestNode.getNodeID(), key) <= 0)) {
+			closestNode = closestNodeSL;
+		}
+		if (predecessorIfAppropriate != null
+				&& (closestNode == null || ID.compareDistance(
+						predecessorIfAppropriate.getNodeID(),
+						closestNode.getNodeID(), key) <= 0)) {
+			closestNode = predecessorIfAppropriate;
+		}
+		return closestNode;
+	}
+
 	/**
 	 * Adds the given node reference to the finger table and successor list, if
 	 * appropriate. The reference is NOT set as predecessor, even if is closer
@@ -367,8 +377,9 @@ final class References {
 		this.fingerTable.removeReference(oldReference);
 		this.successorList.removeReference(oldReference);
 
-		if (oldReference.equals(this.getPredecessor())) {
+		if (oldReference.equals(this.predecessor)) {
 			this.predecessor = null;
+			this.publishSnapshot();
 		}
 
 		disconnectIfUnreferenced(oldReference);
@@ -381,6 +392,17 @@ final class References {
 		}
 	}
 
+	/**
+	 * Tells that a change of the entries could not be replicated to the given
+	 * successor, so that it is sent all replicas next time.
+	 * 
+	 * @param successor
+	 *            Successor the change could not be sent to.
+	 */
+	final synchronized void replicationFailed(Node successor) {
+		this.successorList.forgetReplicas(successor);
+	}
+
 	/**
 	 * Closes the connection to the given reference, if it is not kept in any
 	 * data structure (ie. finger table, successor list, predecessor) any more.
@@ -418,9 +440,10 @@ final class References {
 	 * @return The local node's direct successor, or <code>null</code> if no
 	 *         successor is known.
 	 */
-	final synchronized Node getSuccessor() {
+	final Node getSuccessor() {
 		// direct successor is the first entry in my successor list
-		return this.successorList.getDirectSuccessor();
+		final List<Node> successors = this.snapshot.successors;
+		return successors.isEmpty() ? null : successors.get(0);
 	}
 
 	/**
@@ -451,8 +474,8 @@ final class References {
 	 *         predecessor exists for this node, <code>null</code> is
 	 *         returned.
 	 */
-	final synchronized Node getPredecessor() {
-		return this.predecessor;
+	final Node getPredecessor() {
+		return this.snapshot.predecessor;
 	}
 
 	/**
@@ -482,6 +505,7 @@ final class References {
 		if (!(potentialPredecessor.equals(this.predecessor))) {
 			Node formerPredecessor = this.predecessor;
 			this.predecessor = potentialPredecessor;
+			this.publishSnapshot();
 			if (formerPredecessor != null) {
 				this.disconnectIfUnreferenced(formerPredecessor);
 				/*
@@ -513,29 +537,22 @@ final class References {
 					this.logger.info("Predecessor reference set to "
 							+ potentialPredecessor + "; was null before.");
 				}
-				Set<Service> entriesToRep = this.entries.getEntriesInInterval(
-						this.predecessor.getNodeID(), this.localID);
-				List<Node> successors = this.successorList.getReferences();
-				for (Node successor : successors) {
-					try {
-						successor.insertReplicas(entriesToRep);
-					} catch (CommunicationException e) {
-						this.logger.warn(
-								"Damn. Could not replicate to successor "
-										+ successor.getNodeID(), e);
-					}
-				}
+				// successors which already hold replicas only get what they
+				// are missing
+				this.successorList.shipReplicasToAll(this.predecessor
+						.getNodeID());
 			}
 		}
 	}
 
 	/**
-	 * Returns an unmodifiable list of this node's successors.
+	 * Returns an unmodifiable list of this node's successors. The list is a
+	 * snapshot and does not change afterwards.
 	 * 
 	 * @return Unmodifiable successor list.
 	 */
-	final synchronized List<Node> getSuccessors() {
-		return this.successorList.getReferences();
+	final List<Node> getSuccessors() {
+		return this.snapshot.successors;
 	}
 
 	/**
@@ -561,6 +578,16 @@ final class References {
 				.equals(this.predecessor));
 	}
 
+	/**
+	 * Returns this node's finger table entries.
+	 * 
+	 * @return Copy of the finger table entries by index; <code>null</code> for
+	 *         empty entries.
+	 */
+	final synchronized Node[] getFingerTableEntries() {
+		return this.fingerTable.getCopyOfReferences();
+	}
+
 	/**
 	 * Returns a formatted string of this node's finger table.
 	 * 
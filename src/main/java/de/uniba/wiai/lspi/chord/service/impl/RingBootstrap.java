@@ -0,0 +1,207 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.uniba.wiai.lspi.chord.com.CommunicationException;
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.com.Proxy;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.ServiceException;
+import de.uniba.wiai.lspi.util.logging.Logger;
+
+/**
+ * Builds a Chord ring of many nodes at once, without joining them one by one.
+ * Every node is created on its own, and then gets the references it would have
+ * once the ring has fully stabilized: its predecessor, its successors, and for
+ * finger table entry i the first node at or after its ID + 2^i. The nodes
+ * know nothing else, and store no entries yet.
+ *
+ * All nodes must be in this JVM, e.g. with the local protocol.
+ */
+public final class RingBootstrap {
+
+	/**
+	 * Object logger.
+	 */
+	private static final Logger logger = Logger.getLogger(RingBootstrap.class);
+
+	private RingBootstrap() {
+	}
+
+	/**
+	 * Creates a ring of nodes at the given URLs, with IDs hashed from the URLs
+	 * as by {@link ChordImpl#create(URL)}.
+	 *
+	 * @param urls
+	 *            URLs of the nodes.
+	 * @return The connected nodes, in the order of <code>urls</code>.
+	 * @throws NullPointerException
+	 *             If <code>urls</code> or any URL is <code>null</code>.
+	 * @throws ServiceException
+	 *             If a node could not be created or reached.
+	 */
+	public static List<ChordImpl> createRing(List<URL> urls)
+			throws ServiceException {
+		return createRing(urls, NodeGroup.getDefault());
+	}
+
+	/**
+	 * Creates a ring of nodes of the given group at the given URLs, with IDs
+	 * hashed from the URLs as by {@link ChordImpl#create(URL)}.
+	 *
+	 * @param urls
+	 *            URLs of the nodes.
+	 * @param group
+	 *            Group of the nodes.
+	 * @return The connected nodes, in the order of <code>urls</code>.
+	 * @throws NullPointerException
+	 *             If any parameter or URL is <code>null</code>.
+	 * @throws ServiceException
+	 *             If a node could not be created or reached.
+	 */
+	public static List<ChordImpl> createRing(List<URL> urls, NodeGroup group)
+			throws ServiceException {
+		if (urls == null) {
+			NullPointerException e = new NullPointerException(
+					"URLs may not be null!");
+			RingBootstrap.logger.error("Null pointer", e);
+			throw e;
+		}
+		return createRing(urls, HashFunction.getHashFunction()
+				.createUniqueNodeIDs(urls), group);
+	}
+
+	/**
+	 * Creates a ring of nodes at the given URLs with the given IDs.
+	 *
+	 * @param urls
+	 *            URLs of the nodes.
+	 * @param ids
+	 *            IDs of the nodes, by index of <code>urls</code>; must be
+	 *            distinct.
+	 * @return The connected nodes, in the order of <code>urls</code>.
+	 * @throws NullPointerException
+	 *             If either list or any element is <code>null</code>.
+	 * @throws IllegalArgumentException
+	 *             If the lists differ in size.
+	 * @throws ServiceException
+	 *             If a node could not be created or reached.
+	 */
+	public static List<ChordImpl> createRing(List<URL> urls, List<ID> ids)
+			throws ServiceException {
+		return createRing(urls, ids, NodeGroup.getDefault());
+	}
+
+	/**
+	 * Creates a ring of nodes of the given group at the given URLs with the
+	 * given IDs.
+	 *
+	 * @param urls
+	 *            URLs of the nodes.
+	 * @param ids
+	 *            IDs of the nodes, by index of <code>urls</code>; must be
+	 *            distinct.
+	 * @param group
+	 *            Group of the nodes.
+	 * @return The connected nodes, in the order of <code>urls</code>.
+	 * @throws NullPointerException
+	 *             If any parameter or element is <code>null</code>.
+	 * @throws IllegalArgumentException
+	 *             If the lists differ in size.
+	 * @throws ServiceException
+	 *             If a node could not be created or reached.
+	 */
+	public static List<ChordImpl> createRing(List<URL> urls, List<ID> ids,
+			NodeGroup group) throws ServiceException {
+		if (urls == null || ids == null || group == null) {
+			NullPointerException e = new NullPointerException(
+					"No parameter may be null!");
+			RingBootstrap.logger.error("Null pointer", e);
+			throw e;
+		}
+		if (urls.size() != ids.size()) {
+			IllegalArgumentException e = new IllegalArgumentException(
+					"Need one ID per URL!");
+			RingBootstrap.logger.error("Illegal argument", e);
+			throw e;
+		}
+
+		final int n = urls.size();
+		List<ChordImpl> nodes = new ArrayList<ChordImpl>(n);
+		for (int i = 0; i < n; i++) {
+			ChordImpl node = new ChordImpl(group);
+			node.create(urls.get(i), ids.get(i));
+			nodes.add(node);
+		}
+
+		// nodes and their IDs in ring order
+		final ChordImpl[] ring = nodes.toArray(new ChordImpl[n]);
+		Arrays.sort(ring, Comparator.comparing(ChordImpl::getID));
+		final ID[] ringIDs = new ID[n];
+		for (int i = 0; i < n; i++) {
+			ringIDs[i] = ring[i].getID();
+		}
+
+		for (int p = 0; p < n; p++) {
+			try {
+				install(ring, ringIDs, p);
+			} catch (CommunicationException e) {
+				throw new ServiceException("Could not reach a node of the ring "
+						+ "from node " + ring[p].getURL(), e);
+			}
+		}
+		RingBootstrap.logger.info("Ring of " + n + " nodes created.");
+		return nodes;
+	}
+
+	/**
+	 * Sets the references of the node at ring position <code>p</code>.
+	 */
+	private static void install(ChordImpl[] ring, ID[] ringIDs, int p)
+			throws CommunicationException {
+		final int n = ring.length;
+		final ChordImpl node = ring[p];
+		final References references = node.references;
+		// one proxy per referenced node
+		final Map<Integer, Node> proxies = new HashMap<Integer, Node>();
+
+		// successors first, closest first, so that the successor list holds
+		// them and no finger pushes them out
+		for (int j = 1; j <= Math.min(ChordImpl.NUMBER_OF_SUCCESSORS, n - 1); j++) {
+			references.addReference(proxy(ring, node, (p + j) % n, proxies));
+		}
+
+		final ID id = node.getID();
+		for (int i = 0; i < id.getLength(); i++) {
+			int index = Arrays.binarySearch(ringIDs, id.addPowerOfTwo(i));
+			if (index < 0) {
+				index = -index - 1;
+			}
+			index %= n;
+			if (index != p) {
+				references.addReference(proxy(ring, node, index, proxies));
+			}
+		}
+
+		if (n > 1) {
+			references.setPredecessor(proxy(ring, node, (p + n - 1) % n,
+					proxies));
+		}
+	}
+
+	private static Node proxy(ChordImpl[] ring, ChordImpl node, int index,
+			Map<Integer, Node> proxies) throws CommunicationException {
+		Node proxy = proxies.get(index);
+		if (proxy == null) {
+			proxy = Proxy.createConnection(node.getURL(), ring[index].getURL());
+			proxies.put(index, proxy);
+		}
+		return proxy;
+	}
+}
@@ -27,10 +27,12 @@
  ***************************************************************************/
 package de.uniba.wiai.lspi.chord.service.impl;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.chord4js.Service;
@@ -45,15 +47,51 @@ import static de.uniba.wiai.lspi.util.logging.Logger.LogLevel.*;
  * Stores references on the next nodes in the Chord ring and provides methods
  * for querying and manipulating this list.
  * 
+ * For each successor it is remembered up to which version of the local
+ * {@link Entries} it holds replicas, as long as every change was sent to it.
+ * When the replicated range grows, e.g. after the predecessor changed, it is
+ * only sent the entries changed since then. A node that is added to the list
+ * again, or that a change could not be sent to, is sent all entries.
+ * 
  * @author Karsten Loesing
  * @version 1.0.5
  */
 final class SuccessorList {
 
 	/**
-	 * List storing the successor references in correct order.
+	 * Replicas a successor is known to hold: the entries in (fromID, local ID]
+	 * as of the given version of the local entries.
+	 */
+	private static final class Replicated {
+
+		final ID fromID;
+
+		final long version;
+
+		Replicated(ID fromID, long version) {
+			this.fromID = fromID;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Successor references in correct order; elements [0, size) are used.
+	 * One element larger than the capacity, as the list briefly exceeds it
+	 * when adding.
+	 */
+	private final Node[] successors;
+
+	/**
+	 * Number of successor references.
 	 */
-	private List<Node> successors = null;
+	private int size = 0;
+
+	/**
+	 * Replicas held by the successors, as long as every change since was sent
+	 * to them. Forgotten when a successor is removed or a change could not be
+	 * sent to it.
+	 */
+	private final Map<Node, Replicated> replicated;
 
 	/**
 	 * Local node ID - initialized in constructor.
@@ -111,12 +149,35 @@ final class SuccessorList {
 		}
 		this.localID = localID;
 		this.capacity = numberOfEntries;
-		this.successors = new LinkedList<Node>();
+		this.successors = new Node[numberOfEntries + 1];
+		this.replicated = new HashMap<Node, Replicated>();
 		this.references = parent;
 		this.entries = entries;
 
 	}
 
+	/**
+	 * @return Position of the given reference, or -1.
+	 */
+	private int indexOf(Node node) {
+		for (int i = 0; i < this.size; i++) {
+			if (node.equals(this.successors[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the reference at the given position without leaving a gap.
+	 */
+	private void removeAt(int index) {
+		System.arraycopy(this.successors, index + 1, this.successors, index,
+				this.size - index - 1);
+		this.successors[--this.size] = null;
+		this.references.publishSnapshot();
+	}
+
 	/**
 	 * Adds a successor references, preserving ordering of list elements.
 	 * 
@@ -138,7 +199,7 @@ final class SuccessorList {
 		boolean debug = logger.isEnabledFor(DEBUG);
 		boolean info = logger.isEnabledFor(INFO);
 		// is reference already contained in successor list?
-		if (this.successors.contains(nodeToAdd)) {
+		if (this.indexOf(nodeToAdd) != -1) {
 			if (debug) {
 				this.logger.debug("Reference to new node "
 						+ nodeToAdd.toString()
@@ -151,10 +212,10 @@ final class SuccessorList {
 		// if new ID is between last ID in list and this node's own ID _AND_
 		// successor list already has maximum allowed list, the new reference IS
 		// NOT added!
-		if (this.successors.size() >= this.capacity
+		if (this.size >= this.capacity
 				&& nodeToAdd.getNodeID().isInInterval(
-						this.successors.get(this.successors.size() - 1)
-								.getNodeID(), this.localID)) {
+						this.successors[this.size - 1].getNodeID(),
+						this.localID)) {
 			// do nothing
 			if (debug) {
 				this.logger.debug("Reference to new node "
@@ -167,70 +228,35 @@ final class SuccessorList {
 			return;
 		}
 
-		// insert node to successors
-
-		// insert before an existing element?
-		boolean inserted = false;
-
-		for (int i = 0; i < this.successors.size() && !inserted; i++) {
-			if (nodeToAdd.getNodeID().isInInterval(this.localID,
-					this.successors.get(i).getNodeID())) {
-				this.successors.add(i, nodeToAdd);
-				if (info) {
-					this.logger.info("Added new reference at position " + i);
-				}
-				inserted = true;
-			}
+		// insert node to successors, before the first farther one or at the
+		// end
+		int position = 0;
+		while (position < this.size
+				&& !nodeToAdd.getNodeID().isInInterval(this.localID,
+						this.successors[position].getNodeID())) {
+			position++;
 		}
-
-		// insert at end if list not long enough
-		if (!inserted) {
-			this.successors.add(nodeToAdd);
-			if (info) {
+		System.arraycopy(this.successors, position, this.successors,
+				position + 1, this.size - position);
+		this.successors[position] = nodeToAdd;
+		this.size++;
+		this.references.publishSnapshot();
+		if (info) {
+			if (position == this.size - 1) {
 				this.logger.info("Added new reference to end of list");
-			}
-			inserted = true;
-		}
-
-		// determine ID range of entries this node is responsible for
-		// and replicate them on new node
-		ID fromID;
-		Node predecessor = this.references.getPredecessor();
-		if (predecessor != null) {
-			// common case: have a predecessor
-			fromID = predecessor.getNodeID();
-		} else {
-			// have no predecessor
-			// do I have any preceding node?
-			Node precedingNode = this.references
-					.getClosestPrecedingNode(this.localID);
-			if (precedingNode != null) {
-				// use ID of preceding node
-				fromID = precedingNode.getNodeID();
 			} else {
-				// use own ID (leads to replicating the whole ring); should not
-				// happen
-				fromID = this.localID;
+				this.logger.info("Added new reference at position " + position);
 			}
 		}
 
-		// replicate entries from determined ID up to local ID
-		ID toID = this.localID;
-		Set<Service> entriesToReplicate = this.entries.getEntriesInInterval(
-				fromID, toID);
-		try {
-			nodeToAdd.insertReplicas(entriesToReplicate);
-			this.logger.debug("Inserted replicas to new reference");
-		} catch (CommunicationException e) {
-			this.logger.warn("Entries could not be replicated to node "
-					+ nodeToAdd + "!", e);
-		}
+		// replicate entries this node is responsible for on new node
+		this.shipReplicas(nodeToAdd, this.getReplicationStart());
 
 		// remove last element from this.successors, if maximum exceeded
 
-		if (this.successors.size() > this.capacity) {
-			Node nodeToDelete = this.successors.get(this.successors.size() - 1);
-			this.successors.remove(nodeToDelete);
+		if (this.size > this.capacity) {
+			Node nodeToDelete = this.successors[this.size - 1];
+			this.removeAt(this.size - 1);
 
 			// determine ID range of entries this node is responsible
 			// for and remove replicates of them from discarded successor
@@ -239,6 +265,7 @@ final class SuccessorList {
 			// nodeToDelete.removeReplicas(fromID, toID);
 			// Set<Entry> replicatedEntries = this.entries.getEntriesInInterval(
 			// fromID, toID);
+			this.replicated.remove(nodeToDelete);
 			try {
 				// remove all replicas!
 				nodeToDelete.removeReplicas(this.localID, new HashSet<>());
@@ -258,6 +285,111 @@ final class SuccessorList {
 
 	}
 
+	/**
+	 * Determines the lower bound (exclusive) of the ID range of entries this
+	 * node is responsible for, and which are replicated to the successors.
+	 * 
+	 * @return ID of predecessor or of another preceding node.
+	 */
+	private ID getReplicationStart() {
+		Node predecessor = this.references.getPredecessor();
+		if (predecessor != null) {
+			// common case: have a predecessor
+			return predecessor.getNodeID();
+		}
+		// have no predecessor
+		// do I have any preceding node?
+		Node precedingNode = this.references
+				.getClosestPrecedingNode(this.localID);
+		if (precedingNode != null) {
+			// use ID of preceding node
+			return precedingNode.getNodeID();
+		}
+		// use own ID (leads to replicating the whole ring); should not
+		// happen
+		return this.localID;
+	}
+
+	/**
+	 * Brings the replicas of entries in (fromID, local ID] on the given node
+	 * up to date. If the node is known to hold these replicas as of some
+	 * earlier version, only entries changed since then are sent; otherwise all
+	 * of them.
+	 * 
+	 * @param node
+	 *            Node to replicate to.
+	 * @param fromID
+	 *            Lower bound of IDs, exclusive.
+	 */
+	private void shipReplicas(Node node, ID fromID) {
+		// taken first: later changes are either read below or sent as they
+		// happen, as the node is a successor now
+		final long version = this.entries.getVersion();
+
+		Entries.Changes changes = null;
+		final Replicated known = this.replicated.get(node);
+		if (known != null
+				&& (fromID.equals(known.fromID) || fromID.isInInterval(
+						known.fromID, this.localID))) {
+			changes = this.entries.getChangesInInterval(fromID, this.localID,
+					known.version);
+		}
+
+		try {
+			if (changes == null) {
+				Set<Service> entriesToReplicate = this.entries
+						.getEntriesInInterval(fromID, this.localID);
+				// nothing to send, e.g. when a ring is built in bulk
+				if (!entriesToReplicate.isEmpty()) {
+					node.insertReplicas(entriesToReplicate);
+					this.logger.debug("Inserted replicas to new reference");
+				}
+			} else {
+				if (!changes.removed.isEmpty()) {
+					node.removeReplicas(this.localID, changes.removed);
+				}
+				if (!changes.added.isEmpty()) {
+					node.insertReplicas(changes.added);
+				}
+				if (this.logger.isEnabledFor(DEBUG)) {
+					this.logger.debug("Sent " + changes.added.size()
+							+ " changed and " + changes.removed.size()
+							+ " removed replicas to reference " + node);
+				}
+			}
+			this.replicated.put(node, new Replicated(fromID, version));
+		} catch (CommunicationException e) {
+			this.replicated.remove(node);
+			this.logger.warn("Entries could not be replicated to node "
+					+ node + "!", e);
+		}
+	}
+
+	/**
+	 * Brings the replicas of entries in (fromID, local ID] on all successors
+	 * up to date, e.g. after the predecessor changed. Successors only get the
+	 * entries they are missing.
+	 * 
+	 * @param fromID
+	 *            Lower bound of IDs, exclusive.
+	 */
+	final void shipReplicasToAll(ID fromID) {
+		for (Node successor : this.getReferences()) {
+			this.shipReplicas(successor, fromID);
+		}
+	}
+
+	/**
+	 * Forgets which replicas the given successor holds, as a change could not
+	 * be sent to it. It gets all of them with the next shipment.
+	 * 
+	 * @param node
+	 *            Successor a change could not be sent to.
+	 */
+	final void forgetReplicas(Node node) {
+		this.replicated.remove(node);
+	}
+
 	/**
 	 * Removes a successor reference without leaving a gap in the list
 	 * 
@@ -273,7 +405,13 @@ final class SuccessorList {
 			this.logger.error("Null pointer", e);
 			throw e;
 		}
-		this.successors.remove(nodeToDelete);
+		final int index = this.indexOf(nodeToDelete);
+		if (index != -1) {
+			this.removeAt(index);
+			// mostly removed for having failed; if it comes back, it may have
+			// lost its replicas or missed changes, so it gets all of them
+			this.replicated.remove(nodeToDelete);
+		}
 
 		// try to add references of finger table to fill 'hole' in successor
 		// list
@@ -292,7 +430,8 @@ final class SuccessorList {
 	 * @return Unmodifiable copy of successor list.
 	 */
 	final List<Node> getReferences() {
-		return Collections.unmodifiableList(this.successors);
+		return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(
+				this.successors, this.size)));
 	}
 
 	/**
@@ -302,7 +441,8 @@ final class SuccessorList {
 	 */
 	public final String toString() {
 		StringBuilder result = new StringBuilder("Successor List:\n");
-		for (Node next : this.successors) {
+		for (int i = 0; i < this.size; i++) {
+			Node next = this.successors[i];
 			result.append("  " + next.getNodeID().toString() + ", "
 					+ next.getNodeURL() + "\n");
 		}
@@ -327,13 +467,30 @@ final class SuccessorList {
 			throw e;
 		}
 
-		for (int i = this.successors.size() - 1; i >= 0; i--) {
-			Node nextNode = this.successors.get(i);
-			if (nextNode.getNodeID().isInInterval(this.localID, idToLookup)) {
+		return getClosestPrecedingNode(this.getReferences(), this.localID,
+				idToLookup);
+	}
+
+	/**
+	 * Returns closest preceding node of given ID in the given ordered list of
+	 * successors, e.g. a copy of {@link #getReferences()}.
+	 * 
+	 * @param successors
+	 *            Successor references, closest following node first.
+	 * @param localID
+	 *            ID of local node.
+	 * @param idToLookup
+	 *            ID of which closest preceding node is sought-after.
+	 * @return Reference on closest preceding node of given ID.
+	 */
+	static Node getClosestPrecedingNode(List<Node> successors, ID localID,
+			ID idToLookup) {
+		for (int i = successors.size() - 1; i >= 0; i--) {
+			Node nextNode = successors.get(i);
+			if (nextNode.getNodeID().isInInterval(localID, idToLookup)) {
 				return nextNode;
 			}
 		}
-
 		return null;
 	}
 
@@ -354,7 +511,7 @@ final class SuccessorList {
 			this.logger.error("Null pointer", e);
 			throw e;
 		}
-		return this.successors.contains(nodeToLookup);
+		return this.indexOf(nodeToLookup) != -1;
 	}
 
 	/**
@@ -364,10 +521,10 @@ final class SuccessorList {
 	 * @return Direct successor (or <code>null</code> if list is empty).
 	 */
 	final Node getDirectSuccessor() {
-		if (this.successors.size() == 0) {
+		if (this.size == 0) {
 			return null;
 		}
-		return this.successors.get(0);
+		return this.successors[0];
 	}
 
 	/**
@@ -378,7 +535,7 @@ final class SuccessorList {
 	}
 
 	final int getSize() {
-		return this.successors.size();
+		return this.size;
 	}
 
-}
\ No newline at end of file
+}
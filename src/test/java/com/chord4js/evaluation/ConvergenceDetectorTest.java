@@ -0,0 +1,129 @@
+package com.chord4js.evaluation;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.chord4js.Service;
+import com.chord4js.ServiceId;
+
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
+
+public class ConvergenceDetectorTest {
+
+	/**
+	 * Driver with a given routing state only.
+	 */
+	private static class StateDriver implements Chord4SDriver {
+		final ID id;
+		ID predecessor;
+		List<ID> successors = Collections.emptyList();
+		ID[] fingers = new ID[ID.kTotalBitLen];
+
+		StateDriver(ID id) {
+			this.id = id;
+		}
+
+		public ID getID() { return id; }
+		public ID getPredecessorID() { return predecessor; }
+		public List<ID> getSuccessorIDs() { return successors; }
+		public ID[] getFingerTableIDs() { return fingers; }
+
+		public void put(Service service) { throw new UnsupportedOperationException(); }
+		public Set<Service> lookup(ServiceId serviceId) { throw new UnsupportedOperationException(); }
+		public Set<Service> lookup(ServiceId serviceId, int amount) { throw new UnsupportedOperationException(); }
+		public C4SRetrieveResponse lookupR(ServiceId serviceId) { throw new UnsupportedOperationException(); }
+		public C4SRetrieveResponse lookupR(ServiceId serviceId, int requiredResults) { throw new UnsupportedOperationException(); }
+		public void join(URL bootstrapURL) { throw new UnsupportedOperationException(); }
+		public void leave() { throw new UnsupportedOperationException(); }
+		public void crash() { throw new UnsupportedOperationException(); }
+		public void runTasks() { throw new UnsupportedOperationException(); }
+	}
+
+	private static ID randomID(Random random) {
+		byte[] blob = new byte[20];
+		random.nextBytes(blob);
+		return ID.NodeId(blob);
+	}
+
+	/**
+	 * Nodes with the ideal routing state, found by brute force.
+	 */
+	private static List<StateDriver> idealRing(Random random, int size) {
+		List<StateDriver> nodes = new ArrayList<StateDriver>();
+		for (int i = 0; i < size; i++)
+			nodes.add(new StateDriver(randomID(random)));
+
+		for (StateDriver node : nodes) {
+			ID successor = null;
+			ID predecessor = null;
+			for (StateDriver other : nodes) {
+				if (other == node)
+					continue;
+				if (successor == null || other.id.isInInterval(node.id, successor))
+					successor = other.id;
+				if (predecessor == null || other.id.isInInterval(predecessor, node.id))
+					predecessor = other.id;
+			}
+			node.successors = Arrays.asList(successor);
+			node.predecessor = predecessor;
+			for (int i = 0; i < node.fingers.length; i++) {
+				ID start = node.id.addPowerOfTwo(i);
+				for (StateDriver other : nodes) {
+					if (other == node)
+						continue;
+					// first node at or after start, before coming back to node
+					if ((other.id.equals(start) || other.id.isInInterval(start, node.id))
+							&& (node.fingers[i] == null || other.id.isInInterval(start,
+									node.fingers[i]) || other.id.equals(start)))
+						node.fingers[i] = other.id;
+				}
+			}
+		}
+		return nodes;
+	}
+
+	@Test
+	public void testIdealRingConverged() {
+		List<StateDriver> nodes = idealRing(new Random(123456), 64);
+		ConvergenceDetector detector = new ConvergenceDetector(new ArrayList<Chord4SDriver>(nodes));
+		ConvergenceDetector.Metrics metrics = detector.measure(1);
+		assertEquals(1, metrics.successors, 0);
+		assertEquals(1, metrics.predecessors, 0);
+		assertEquals(1, metrics.fingers, 0);
+		assertTrue(detector.isConverged(1));
+	}
+
+	@Test
+	public void testWrongEntriesCounted() {
+		List<StateDriver> nodes = idealRing(new Random(654321), 64);
+		ConvergenceDetector detector = new ConvergenceDetector(new ArrayList<Chord4SDriver>(nodes));
+
+		nodes.get(0).predecessor = null;
+		nodes.get(1).successors = Collections.emptyList();
+		nodes.get(2).fingers[ID.kTotalBitLen - 1] = nodes.get(2).id;
+		ConvergenceDetector.Metrics metrics = detector.measure(1);
+		assertEquals(63 / 64.0, metrics.successors, 1e-9);
+		assertEquals(63 / 64.0, metrics.predecessors, 1e-9);
+		assertEquals(1 - 1.0 / (64 * ID.kTotalBitLen), metrics.fingers, 1e-9);
+		assertFalse(detector.isConverged(1));
+		assertTrue(detector.isConverged(0.98));
+		assertEquals(1, detector.getHistory().size());
+	}
+
+	@Test
+	public void testSingleNode() {
+		StateDriver node = new StateDriver(randomID(new Random(1)));
+		ConvergenceDetector detector = new ConvergenceDetector(Arrays.<Chord4SDriver> asList(node));
+		assertEquals(1, detector.measure(0).min(), 0);
+	}
+}
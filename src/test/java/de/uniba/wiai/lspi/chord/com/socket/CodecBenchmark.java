@@ -0,0 +1,85 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding the messages of every method, by Java serialization
+ * and by the binary codec, whose string dictionary is warm as on a
+ * long-lived connection. The bytes per message are printed at the end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+	@Param({ "serialized", "binary" })
+	public String codec;
+
+	private List<Message> messages;
+
+	private MessageCodec sender;
+
+	private MessageCodec receiver;
+
+	private final List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		messages = MessageCodecTest.sampleMessages(new Random(4711));
+		sender = MessageCodec.create(codec);
+		receiver = MessageCodec.create(codec);
+		for (Message message : messages)
+			receiver.decode(body(sender.encode(message)));
+		for (Message message : messages)
+			frames.add(sender.encode(message));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		long bytes = 0;
+		for (ByteBuffer frame : frames)
+			bytes += frame.remaining();
+		System.out.println(codec + ": " + bytes / frames.size() + " bytes per message");
+	}
+
+	private static ByteBuffer body(ByteBuffer frame) {
+		final ByteBuffer body = frame.duplicate();
+		body.position(4);
+		return body;
+	}
+
+	@Benchmark
+	public ByteBuffer encode() throws Exception {
+		next = (next + 1) % messages.size();
+		return sender.encode(messages.get(next));
+	}
+
+	@Benchmark
+	public Message decode() throws Exception {
+		next = (next + 1) % frames.size();
+		return receiver.decode(body(frames.get(next)));
+	}
+}
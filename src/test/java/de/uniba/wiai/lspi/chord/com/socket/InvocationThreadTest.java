@@ -0,0 +1,102 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.uniba.wiai.lspi.chord.com.Deadline;
+import de.uniba.wiai.lspi.chord.com.DeadlineExceededException;
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.service.TestProperties;
+
+public class InvocationThreadTest {
+
+	@BeforeClass
+	public static void configure() {
+		TestProperties.load();
+	}
+
+	/**
+	 * Runs the invocations when asked to, recording the deadline current
+	 * during each and the responses.
+	 */
+	private static final class Handler extends AbstractRequestHandler {
+
+		final List<InvocationThread> scheduled = new ArrayList<InvocationThread>();
+
+		final List<Deadline> deadlines = new ArrayList<Deadline>();
+
+		final List<Response> responses = new ArrayList<Response>();
+
+		Handler() {
+			super(null);
+		}
+
+		@Override
+		void scheduleInvocation(InvocationThread invocation) {
+			this.scheduled.add(invocation);
+		}
+
+		@Override
+		Serializable invokeMethod(int methodType, Serializable[] parameters) {
+			this.deadlines.add(Deadline.current());
+			return null;
+		}
+
+		@Override
+		void send(Response response) {
+			this.responses.add(response);
+		}
+
+		@Override
+		Node createProxy(RemoteNodeInfo nodeInfo) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		void disconnect() {
+			// nothing to close
+		}
+	}
+
+	private static Request request(long budget) {
+		final Request request = new Request(MethodConstants.PING, 7);
+		request.setParameters(new Serializable[0]);
+		request.setBudget(budget);
+		return request;
+	}
+
+	@Test
+	public void testDeadlineIsCurrent() {
+		final Handler handler = new Handler();
+		new InvocationThread(handler, request(0));
+		new InvocationThread(handler, request(5000));
+		for (InvocationThread invocation : handler.scheduled)
+			invocation.run();
+		assertNull(handler.deadlines.get(0));
+		final long remaining = handler.deadlines.get(1).remaining();
+		assertTrue(remaining > 0 && remaining <= 5000);
+		assertNull(Deadline.current());
+		for (Response response : handler.responses)
+			assertFalse(response.isFailureResponse());
+	}
+
+	@Test
+	public void testExpiredIsNotInvoked() throws Exception {
+		final Handler handler = new Handler();
+		new InvocationThread(handler, request(1));
+		Thread.sleep(10);
+		handler.scheduled.get(0).run();
+		assertTrue(handler.deadlines.isEmpty());
+		final Response response = handler.responses.get(0);
+		assertTrue(response.isFailureResponse());
+		assertEquals(7, response.getInReplyTo());
+		assertTrue(response.getThrowable() instanceof DeadlineExceededException);
+		assertNull(Deadline.current());
+	}
+}
@@ -0,0 +1,269 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.chord4js.PairS;
+import com.chord4js.ProviderId;
+import com.chord4js.QoSConstraints;
+import com.chord4js.Service;
+import com.chord4js.ServiceFactory;
+
+import de.uniba.wiai.lspi.chord.com.CommunicationException;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
+import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
+
+public class MessageCodecTest {
+
+	private static final String[] kCodecs = { MessageCodec.SERIALIZED, MessageCodec.BINARY };
+
+	private static RemoteNodeInfo node(Random random) throws Exception {
+		return new RemoteNodeInfo(new URL("ocnio://10.0.0." + random.nextInt(8) + ":4242/"),
+				ID.fromBits(0, random.nextLong() & ((1L << ID.kTotalBitLen) - 1)));
+	}
+
+	private static Set<Service> services(ServiceFactory factory, Random random, int n) {
+		final Set<Service> services = new HashSet<Service>();
+		for (int i = 0; i < n; i++)
+			services.add(factory.createRandom(random));
+		return services;
+	}
+
+	private static Request request(int type, Serializable... parameters) {
+		final Request request = new Request(type, 1000 + type);
+		request.setParameters(parameters);
+		return request;
+	}
+
+	private static Response response(int type, Serializable result) {
+		final Response response = new Response(Response.REQUEST_SUCCESSFUL, type, 1000 + type);
+		response.setResult(result);
+		return response;
+	}
+
+	/**
+	 * A request and a response of every method, as the proxies and request
+	 * handlers send them.
+	 */
+	static List<Message> sampleMessages(Random random) throws Exception {
+		final ServiceFactory factory = new ServiceFactory(Arrays.asList("media", "music",
+				"rock", "live"), Arrays.asList("fast", "cheap"));
+		final Service service = factory.createRandom(random);
+		final ID key = node(random).getNodeID();
+		final ArrayList<RemoteNodeInfo> nodes = new ArrayList<RemoteNodeInfo>();
+		for (int i = 0; i < 4; i++)
+			nodes.add(node(random));
+		final C4SRetrieveResponse retrieved = new C4SRetrieveResponse(services(factory,
+				random, 3));
+		retrieved.incrementHop(2);
+		retrieved.markCached(1);
+
+		final List<Message> messages = new ArrayList<Message>();
+		messages.add(request(MethodConstants.GET_NODE_ID));
+		messages.add(response(MethodConstants.GET_NODE_ID, key));
+		messages.add(request(MethodConstants.FIND_SUCCESSOR, key));
+		messages.add(response(MethodConstants.FIND_SUCCESSOR,
+				new PairS<RemoteNodeInfo, Integer>(nodes.get(0), 3)));
+		messages.add(request(MethodConstants.FIND_NEXT_HOP, key));
+		messages.add(response(MethodConstants.FIND_NEXT_HOP,
+				new PairS<RemoteNodeInfo, Boolean>(nodes.get(1), true)));
+		messages.add(request(MethodConstants.INSERT_ENTRY, service));
+		messages.add(response(MethodConstants.INSERT_ENTRY, null));
+		messages.add(request(MethodConstants.INSERT_REPLICAS,
+				(Serializable) services(factory, random, 5)));
+		messages.add(request(MethodConstants.REMOVE_ENTRY, service));
+		messages.add(request(MethodConstants.REMOVE_REPLICAS, key,
+				(Serializable) services(factory, random, 2)));
+		messages.add(request(MethodConstants.LEAVES_NETWORK, nodes.get(2)));
+		messages.add(request(MethodConstants.NOTIFY, nodes.get(3)));
+		messages.add(response(MethodConstants.NOTIFY, nodes));
+		messages.add(request(MethodConstants.NOTIFY_AND_COPY, nodes.get(3)));
+		messages.add(response(MethodConstants.NOTIFY_AND_COPY, new RemoteRefsAndEntries(
+				services(factory, random, 4), nodes)));
+		messages.add(request(MethodConstants.PING));
+		messages.add(request(MethodConstants.RETRIEVE_ENTRIES, new C4SMsgRetrieve(
+				factory.getServiceId(), new QoSConstraints(), 2)));
+		messages.add(request(MethodConstants.RETRIEVE_ENTRIES, new C4SMsgRetrieve(
+				service.getProviderId(), new QoSConstraints(), 1).Subset(key, 1)));
+		messages.add(response(MethodConstants.RETRIEVE_ENTRIES, retrieved));
+		messages.add(request(MethodConstants.SHUTDOWN));
+		final Response failed = new Response(Response.REQUEST_FAILED,
+				MethodConstants.PING, Long.MAX_VALUE);
+		failed.setFailureReason("broken");
+		failed.setThrowable(new CommunicationException("broken"));
+		messages.add(failed);
+		return messages;
+	}
+
+	/**
+	 * Messages have no equality of their own, so they are compared by a
+	 * description of their contents.
+	 */
+	private static String describe(Object value) {
+		if (value instanceof Request) {
+			final Request request = (Request) value;
+			return "request " + request.getRequestType() + " " + request.getReplyWith() + " "
+					+ describe(request.getParameters() == null ? null : Arrays.asList(request
+							.getParameters()));
+		} else if (value instanceof Response) {
+			final Response response = (Response) value;
+			return "response " + response.getStatus() + " " + response.getMethodIdentifier()
+					+ " " + response.getInReplyTo() + " " + response.getFailureReason() + " "
+					+ describe(response.getResult()) + " " + describe(response.getThrowable());
+		} else if (value instanceof Throwable) {
+			return value.getClass().getName() + ": " + ((Throwable) value).getMessage();
+		} else if (value instanceof RemoteNodeInfo) {
+			final RemoteNodeInfo node = (RemoteNodeInfo) value;
+			return node.getNodeURL() + "@" + node.getNodeID();
+		} else if (value instanceof RemoteRefsAndEntries) {
+			final RemoteRefsAndEntries refs = (RemoteRefsAndEntries) value;
+			return describe(refs.getEntries()) + " " + describe(refs.getNodeInfos());
+		} else if (value instanceof C4SRetrieveResponse) {
+			final C4SRetrieveResponse response = (C4SRetrieveResponse) value;
+			return describe(response.services) + " hops " + response.getNumberOfHops()
+					+ " redirected " + response.isRedirected() + " saved "
+					+ (response.isCached() ? response.getHopsSaved() : -1);
+		} else if (value instanceof PairS) {
+			return "(" + describe(((PairS<?, ?>) value).fst) + ", "
+					+ describe(((PairS<?, ?>) value).snd) + ")";
+		} else if (value instanceof Set) {
+			final Set<String> set = new TreeSet<String>();
+			for (Object element : (Set<?>) value)
+				set.add(describe(element));
+			return set.toString();
+		} else if (value instanceof List) {
+			final List<String> list = new ArrayList<String>();
+			for (Object element : (List<?>) value)
+				list.add(describe(element));
+			return list.toString();
+		} else if (value instanceof QoSConstraints) {
+			return "qos";
+		} else if (value instanceof C4SMsgRetrieve) {
+			final C4SMsgRetrieve msg = (C4SMsgRetrieve) value;
+			return "retrieve " + msg.amount + " of " + msg.svcId + " (" + msg.span + ") "
+					+ describe(msg.constraints);
+		}
+		return String.valueOf(value);
+	}
+
+	private static Message decode(MessageCodec codec, ByteBuffer frame) throws IOException {
+		assertEquals(frame.remaining() - 4, frame.getInt(0));
+		final ByteBuffer body = frame.duplicate();
+		body.position(4);
+		final Message message = codec.decode(body);
+		assertFalse(body.hasRemaining());
+		return message;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		for (String name : kCodecs) {
+			final MessageCodec sender = MessageCodec.create(name);
+			final MessageCodec receiver = MessageCodec.create(name);
+			assertEquals(name, sender.getName());
+			// twice, the second time with the strings known
+			for (int round = 0; round < 2; round++)
+				for (Message message : sampleMessages(new Random(4711)))
+					assertEquals(name, describe(message),
+							describe(decode(receiver, sender.encode(message))));
+		}
+	}
+
+	@Test
+	public void testProviderId() throws Exception {
+		final MessageCodec sender = MessageCodec.create(MessageCodec.BINARY);
+		final MessageCodec receiver = MessageCodec.create(MessageCodec.BINARY);
+		final ProviderId id = new ServiceFactory(Arrays.asList("a", "b", "c", "d"), null)
+				.createRandom(new Random(1)).getProviderId();
+		final Response response = (Response) decode(receiver, sender.encode(response(
+				MethodConstants.GET_NODE_ID, id)));
+		assertEquals(ProviderId.class, response.getResult().getClass());
+		assertEquals(id, response.getResult());
+		assertEquals(id.getId(), ((ProviderId) response.getResult()).getId());
+	}
+
+	@Test
+	public void testBinaryIsSmaller() throws Exception {
+		final MessageCodec serialized = MessageCodec.create(MessageCodec.SERIALIZED);
+		final MessageCodec binary = MessageCodec.create(MessageCodec.BINARY);
+		for (Message message : sampleMessages(new Random(4711))) {
+			final int first = binary.encode(message).remaining();
+			assertTrue(describe(message), first < serialized.encode(message).remaining());
+			// known strings are sent as indices
+			assertTrue(describe(message), binary.encode(message).remaining() <= first);
+		}
+	}
+
+	@Test
+	public void testFailedEncodingForgetsStrings() throws Exception {
+		final MessageCodec sender = MessageCodec.create(MessageCodec.BINARY);
+		final MessageCodec receiver = MessageCodec.create(MessageCodec.BINARY);
+		final Service service = new ServiceFactory(Arrays.asList("a", "b", "c", "d"), null)
+				.createRandom(new Random(2));
+		final ArrayList<Object> unserializable = new ArrayList<Object>();
+		unserializable.add(new Object());
+		try {
+			sender.encode(request(MethodConstants.INSERT_ENTRY, service, unserializable));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		final Request request = request(MethodConstants.INSERT_ENTRY, service);
+		assertEquals(describe(request), describe(decode(receiver, sender.encode(request))));
+	}
+
+	@Test
+	public void testUnknownCodec() {
+		try {
+			MessageCodec.create("xml");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMalformed() throws Exception {
+		final Message message = sampleMessages(new Random(4711)).get(15);
+		final ByteBuffer frame = MessageCodec.create(MessageCodec.BINARY).encode(message);
+		final byte[] body = Arrays.copyOfRange(frame.array(), 4, frame.limit());
+
+		final byte[] version = body.clone();
+		version[0] = (byte) (BinaryCodec.VERSION + 1);
+		for (int length = 0; length < body.length; length++) {
+			try {
+				MessageCodec.create(MessageCodec.BINARY).decode(
+						ByteBuffer.wrap(body, 0, length));
+				fail("truncated to " + length);
+			} catch (IOException e) {
+				// expected
+			}
+		}
+		try {
+			MessageCodec.create(MessageCodec.BINARY).decode(ByteBuffer.wrap(version));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		try {
+			MessageCodec.create(MessageCodec.SERIALIZED).decode(ByteBuffer.wrap(body));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
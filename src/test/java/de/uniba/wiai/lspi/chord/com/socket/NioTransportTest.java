@@ -0,0 +1,200 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.chord4js.QoSConstraints;
+import com.chord4js.Service;
+import com.chord4js.ServiceFactory;
+
+import de.uniba.wiai.lspi.chord.com.CommunicationException;
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.com.Proxy;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
+import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
+import de.uniba.wiai.lspi.chord.service.ServiceException;
+import de.uniba.wiai.lspi.chord.service.TestProperties;
+import de.uniba.wiai.lspi.chord.service.impl.ChordImpl;
+import de.uniba.wiai.lspi.chord.service.impl.NodeGroup;
+
+/**
+ * Runs a small ring over loopback with the non-blocking socket protocol.
+ */
+public class NioTransportTest {
+
+	private static final int kNodes = 8;
+
+	private List<ChordImpl> nodes;
+
+	private NodeGroup group;
+
+	private Random random;
+
+	@BeforeClass
+	public static void configure() {
+		TestProperties.load();
+	}
+
+	private static URL freeURL() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return new URL(URL.KNOWN_PROTOCOLS.get(URL.NIO_PROTOCOL) + "://localhost:"
+					+ socket.getLocalPort() + "/");
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException, ServiceException {
+		nodes = new ArrayList<ChordImpl>();
+		// asynchronous requests of all nodes on one pool, as in the evaluation
+		group = new NodeGroup(NodeGroup.Execution.SHARED, 10);
+		final ChordImpl first = new ChordImpl(group);
+		first.create(freeURL());
+		nodes.add(first);
+		for (int i = 1; i < kNodes; i++) {
+			final ChordImpl node = new ChordImpl(group);
+			node.join(freeURL(), first.getURL());
+			nodes.add(node);
+		}
+		for (int round = 0; round < 5; round++)
+			for (ChordImpl node : nodes)
+				node.runTasks();
+		random = new Random(97531);
+	}
+
+	@After
+	public void tearDown() {
+		for (ChordImpl node : nodes)
+			node.crash();
+		group.shutdown();
+	}
+
+	private Service randomService() {
+		return new ServiceFactory(Arrays.asList("media", "music", "rock", "live"), null)
+				.createRandom(random);
+	}
+
+	private ChordImpl randomNode() {
+		return nodes.get(random.nextInt(nodes.size()));
+	}
+
+	private static C4SMsgRetrieve retrieval(Service service) {
+		return new C4SMsgRetrieve(service.getProviderId(), new QoSConstraints(), 1);
+	}
+
+	/**
+	 * Services arrive as copies, so they are told apart by provider.
+	 */
+	private static boolean found(C4SRetrieveResponse response, Service service) {
+		for (Service found : response.services)
+			if (found.getProviderId().equals(service.getProviderId()))
+				return true;
+		return false;
+	}
+
+	@Test
+	public void testInsertRetrieve() throws Exception {
+		final List<Service> services = new ArrayList<Service>();
+		for (int i = 0; i < 50; i++) {
+			final Service service = randomService();
+			services.add(service);
+			randomNode().insert(service);
+		}
+		for (Service service : services) {
+			final ChordImpl node = randomNode();
+			assertTrue(found(node.retrieveR(retrieval(service)), service));
+			assertTrue(found(node.getAsyncService().retrieve(retrieval(service))
+					.get(10, TimeUnit.SECONDS), service));
+		}
+		for (Service service : services)
+			randomNode().remove(service.getProviderId());
+		for (Service service : services)
+			assertFalse(found(randomNode().retrieveR(retrieval(service)), service));
+	}
+
+	@Test
+	public void testManyConcurrentOnFewThreads() throws Exception {
+		final Service service = randomService();
+		nodes.get(0).insert(service);
+		final int threads = Thread.activeCount();
+		final List<CompletableFuture<C4SRetrieveResponse>> lookups = new ArrayList<CompletableFuture<C4SRetrieveResponse>>();
+		for (int i = 0; i < 2000; i++)
+			lookups.add(randomNode().getAsyncService().retrieve(retrieval(service)));
+		for (CompletableFuture<C4SRetrieveResponse> lookup : lookups)
+			assertTrue(found(lookup.get(30, TimeUnit.SECONDS), service));
+		// connections need no threads of their own
+		assertTrue(Thread.activeCount() - threads < kNodes * kNodes);
+		int selectors = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			if (thread.getName().startsWith("NioSelector-"))
+				selectors++;
+		assertEquals(Integer.getInteger(
+				"de.uniba.wiai.lspi.chord.com.socket.NioSelector.threads").intValue(),
+				selectors);
+	}
+
+	@Test
+	public void testMixedCodecs() throws Exception {
+		final String property = "de.uniba.wiai.lspi.chord.com.socket.NioEndpoint.codec";
+		final String codec = System.getProperty(property);
+		System.setProperty(property, MessageCodec.SERIALIZED);
+		try {
+			for (int i = 0; i < 3; i++) {
+				final ChordImpl node = new ChordImpl(group);
+				node.join(freeURL(), nodes.get(0).getURL());
+				nodes.add(node);
+			}
+		} finally {
+			if (codec == null)
+				System.clearProperty(property);
+			else
+				System.setProperty(property, codec);
+		}
+		for (int round = 0; round < 5; round++)
+			for (ChordImpl node : nodes)
+				node.runTasks();
+		for (int i = 0; i < 30; i++) {
+			final Service service = randomService();
+			randomNode().insert(service);
+			assertTrue(found(randomNode().retrieveR(retrieval(service)), service));
+		}
+	}
+
+	@Test
+	public void testCrashedNodeFails() throws MalformedURLException, InterruptedException,
+			ExecutionException, TimeoutException {
+		final ChordImpl crashed = nodes.remove(kNodes - 1);
+		final ChordImpl other = nodes.get(0);
+		crashed.crash();
+		try {
+			final Node proxy = Proxy.createConnection(other.getURL(), crashed.getURL());
+			proxy.ping();
+			fail();
+		} catch (CommunicationException e) {
+			// expected
+		}
+		// the others route around it once the ring is stable again
+		final Service service = randomService();
+		for (int round = 0; round < 5; round++)
+			for (ChordImpl node : nodes)
+				node.runTasks();
+		other.getAsyncService().insert(service).get(10, TimeUnit.SECONDS);
+		assertTrue(found(randomNode().retrieveR(retrieval(service)), service));
+	}
+}
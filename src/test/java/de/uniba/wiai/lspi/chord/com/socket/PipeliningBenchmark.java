@@ -0,0 +1,113 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.chord4js.Pair;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.com.Proxy;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.TestProperties;
+import de.uniba.wiai.lspi.chord.service.impl.ChordImpl;
+
+/**
+ * Small requests over the one connection from a node to another over
+ * loopback: pings by one caller and by 16 at once, and a batch of 64
+ * lookups the other node answers itself, sent without waiting for the
+ * responses in between.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipeliningBenchmark {
+
+	private static final int kBatch = 64;
+
+	@Param({ "ocsocket", "ocnio" })
+	public String protocol;
+
+	private ChordImpl local;
+
+	private ChordImpl remote;
+
+	private Node proxy;
+
+	private URL freeURL() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return new URL(protocol + "://localhost:" + socket.getLocalPort() + "/");
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		TestProperties.load();
+
+		local = new ChordImpl();
+		local.create(freeURL());
+		remote = new ChordImpl();
+		remote.join(freeURL(), local.getURL());
+		for (int round = 0; round < 3; ++round) {
+			local.runTasks();
+			remote.runTasks();
+		}
+		proxy = Proxy.createConnection(local.getURL(), remote.getURL());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		remote.leave();
+		local.leave();
+	}
+
+	@Benchmark
+	public void ping() throws Exception {
+		proxy.ping();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public void pingConcurrently() throws Exception {
+		proxy.ping();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(kBatch)
+	public int lookupBatch() throws Exception {
+		// the remote node's successor is the local node
+		final ID key = local.getID();
+		final List<CompletableFuture<Pair<Node, Integer>>> batch = new ArrayList<CompletableFuture<Pair<Node, Integer>>>(
+				kBatch);
+		for (int i = 0; i < kBatch; ++i) {
+			batch.add(proxy.findSuccessorAsync(key));
+		}
+		int hops = 0;
+		for (CompletableFuture<Pair<Node, Integer>> lookup : batch) {
+			hops += lookup.get().snd;
+		}
+		return hops;
+	}
+}
@@ -0,0 +1,274 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.chord4js.ServiceFactory;
+
+import de.uniba.wiai.lspi.chord.com.CommunicationException;
+import de.uniba.wiai.lspi.chord.com.Deadline;
+import de.uniba.wiai.lspi.chord.com.DeadlineExceededException;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+
+/**
+ * Talks to a scripted endpoint, which answers pings at once, never answers
+ * lookups, answers insertions in batches in reverse order and drops the
+ * connection on a removal.
+ */
+public class SocketProxyTest {
+
+	private static final int kBatch = 16;
+
+	private ServerSocket server;
+
+	private Thread endpoint;
+
+	private SocketProxy proxy;
+
+	private String timeout;
+
+	/**
+	 * The budget of the last request received, by method.
+	 */
+	private final Map<Integer, Long> budgets = new ConcurrentHashMap<Integer, Long>();
+
+	private final ServiceFactory factory = new ServiceFactory(Arrays.asList("a", "b", "c",
+			"d"), null);
+
+	private final Random random = new Random(8);
+
+	@Before
+	public void setUp() throws Exception {
+		timeout = System.getProperty(MethodConstants.TIMEOUT_PROPERTY_NAME);
+		System.clearProperty(MethodConstants.TIMEOUT_PROPERTY_NAME + ".findSuccessor");
+		System.setProperty(MethodConstants.TIMEOUT_PROPERTY_NAME, "300");
+		MethodConstants.loadTimeouts();
+		server = new ServerSocket(0);
+		endpoint = new Thread(this::serve, "ScriptedEndpoint");
+		endpoint.setDaemon(true);
+		endpoint.start();
+		proxy = SocketProxy.create(new URL("ocsocket://localhost:1/"), new URL(
+				"ocsocket://localhost:" + server.getLocalPort() + "/"));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		proxy.disconnect();
+		server.close();
+		Deadline.set(null);
+		System.clearProperty(MethodConstants.TIMEOUT_PROPERTY_NAME + ".findSuccessor");
+		if (timeout == null)
+			System.clearProperty(MethodConstants.TIMEOUT_PROPERTY_NAME);
+		else
+			System.setProperty(MethodConstants.TIMEOUT_PROPERTY_NAME, timeout);
+		MethodConstants.loadTimeouts();
+	}
+
+	private void serve() {
+		try (Socket socket = server.accept()) {
+			final ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+			out.flush();
+			final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+			final List<Response> held = new ArrayList<Response>();
+			while (true) {
+				final Request request = (Request) in.readObject();
+				budgets.put(request.getRequestType(), request.getBudget());
+				final Response response = new Response(Response.REQUEST_SUCCESSFUL, request
+						.getRequestType(), request.getReplyWith());
+				switch (request.getRequestType()) {
+				case MethodConstants.FIND_SUCCESSOR:
+				case MethodConstants.SHUTDOWN:
+					continue;
+				case MethodConstants.REMOVE_ENTRY:
+					return;
+				case MethodConstants.GET_NODE_ID:
+					response.setResult(ID.fromBits(0, 42));
+					break;
+				case MethodConstants.INSERT_ENTRY:
+					held.add(response);
+					if (held.size() < kBatch)
+						continue;
+					Collections.reverse(held);
+					for (Response r : held)
+						out.writeObject(r);
+					held.clear();
+					out.flush();
+					continue;
+				}
+				out.writeObject(response);
+				out.flush();
+				out.reset();
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			// closed
+		}
+	}
+
+	@Test
+	public void testTimeoutFailsOnlyThatRequest() throws Exception {
+		assertEquals(ID.fromBits(0, 42), proxy.getNodeID());
+		final CompletableFuture<?> lookup = proxy.findSuccessorAsync(ID.fromBits(0, 1));
+		proxy.ping();
+		assertFalse(lookup.isDone());
+		try {
+			lookup.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof CommunicationException);
+		}
+		try {
+			proxy.findSuccessor(ID.fromBits(0, 2));
+			fail();
+		} catch (CommunicationException e) {
+			// expected
+		}
+		// the connection is kept
+		proxy.ping();
+	}
+
+	@Test
+	public void testResponsesOutOfOrder() throws Exception {
+		final List<CompletableFuture<Void>> inserts = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < kBatch; i++)
+			inserts.add(proxy.insertEntryAsync(factory.createRandom(random)));
+		for (CompletableFuture<Void> insert : inserts)
+			insert.get(5, TimeUnit.SECONDS);
+		proxy.ping();
+	}
+
+	@Test
+	public void testBrokenConnectionFailsPending() throws Exception {
+		final CompletableFuture<?> lookup = proxy.findSuccessorAsync(ID.fromBits(0, 1));
+		final CompletableFuture<?> removal = proxy.removeEntryAsync(factory.createRandom(
+				random).getProviderId());
+		for (CompletableFuture<?> request : Arrays.asList(lookup, removal)) {
+			try {
+				// before the timeout
+				request.get(200, TimeUnit.MILLISECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof CommunicationException);
+			}
+		}
+		try {
+			proxy.ping();
+			fail();
+		} catch (CommunicationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMethodTimeout() throws Exception {
+		System.setProperty(MethodConstants.TIMEOUT_PROPERTY_NAME + ".findSuccessor", "50");
+		MethodConstants.loadTimeouts();
+		final long start = System.nanoTime();
+		try {
+			proxy.findSuccessor(ID.fromBits(0, 1));
+			fail();
+		} catch (CommunicationException e) {
+			// expected
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+		assertTrue(budgets.get(MethodConstants.FIND_SUCCESSOR) <= 50);
+		proxy.ping();
+		assertTrue(budgets.get(MethodConstants.PING) > 50);
+	}
+
+	@Test
+	public void testDeadlineIsSent() throws Exception {
+		Deadline.set(Deadline.after(100));
+		final long start = System.nanoTime();
+		try {
+			proxy.findSuccessor(ID.fromBits(0, 1));
+			fail();
+		} catch (CommunicationException e) {
+			// expected
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+		final long budget = budgets.get(MethodConstants.FIND_SUCCESSOR);
+		assertTrue(budget > 0 && budget <= 100);
+
+		// passed, the request is not sent
+		assertTrue(Deadline.current().isExpired());
+		budgets.clear();
+		try {
+			proxy.ping();
+			fail();
+		} catch (DeadlineExceededException e) {
+			// expected
+		}
+		try {
+			proxy.findSuccessorAsync(ID.fromBits(0, 1)).join();
+			fail();
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof DeadlineExceededException);
+		}
+		Deadline.set(null);
+		proxy.ping();
+		assertEquals(1, budgets.size());
+	}
+
+	@Test
+	public void testCreateWhileOtherNodeIsSilent() throws Exception {
+		// accepts the connection, but never answers the handshake
+		final CountDownLatch accepted = new CountDownLatch(1);
+		final List<Socket> sockets = new ArrayList<Socket>();
+		try (ServerSocket silent = new ServerSocket(0)) {
+			final Thread acceptor = new Thread(() -> {
+				try {
+					sockets.add(silent.accept());
+				} catch (IOException e) {
+					// closed
+				}
+				accepted.countDown();
+			});
+			acceptor.start();
+			final URL local = new URL("ocsocket://localhost:1/");
+			final Thread creator = new Thread(() -> {
+				try {
+					SocketProxy.create(local, new URL("ocsocket://localhost:"
+							+ silent.getLocalPort() + "/"));
+				} catch (Exception e) {
+					// connection closed below
+				}
+			});
+			creator.start();
+			assertTrue(accepted.await(5, TimeUnit.SECONDS));
+
+			// e.g. a node named in a response, while the other is waited for
+			final long start = System.nanoTime();
+			final SocketProxy other = SocketProxy.create(new URL(
+					"ocsocket://localhost:2/"), local, ID.fromBits(0, 7));
+			assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+			assertTrue(creator.isAlive());
+			other.disconnect();
+
+			sockets.get(0).close();
+			creator.join(5000);
+			assertFalse(creator.isAlive());
+		}
+	}
+}
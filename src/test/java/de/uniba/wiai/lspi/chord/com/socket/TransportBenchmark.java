@@ -0,0 +1,128 @@
+package de.uniba.wiai.lspi.chord.com.socket;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.chord4js.QoSConstraints;
+import com.chord4js.Service;
+import com.chord4js.ServiceFactory;
+
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
+import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
+import de.uniba.wiai.lspi.chord.service.TestProperties;
+import de.uniba.wiai.lspi.chord.service.impl.ChordImpl;
+
+/**
+ * Retrievals on a ring of eight nodes talking over loopback, with the
+ * thread-per-connection socket protocol and the non-blocking one: one at a
+ * time, and a batch of 64 at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+
+	private static final int kNodes = 8;
+
+	private static final int kServices = 256;
+
+	private static final int kBatch = 64;
+
+	@Param({ "ocsocket", "ocnio" })
+	public String protocol;
+
+	private final List<ChordImpl> nodes = new ArrayList<ChordImpl>();
+
+	private final List<C4SMsgRetrieve> queries = new ArrayList<C4SMsgRetrieve>();
+
+	private int next;
+
+	private URL freeURL() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return new URL(protocol + "://localhost:" + socket.getLocalPort() + "/");
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		TestProperties.load();
+
+		final ChordImpl first = new ChordImpl();
+		first.create(freeURL());
+		nodes.add(first);
+		for (int i = 1; i < kNodes; ++i) {
+			final ChordImpl node = new ChordImpl();
+			node.join(freeURL(), first.getURL());
+			nodes.add(node);
+		}
+		for (int round = 0; round < 5; ++round) {
+			for (ChordImpl node : nodes) {
+				node.runTasks();
+			}
+		}
+
+		final Random random = new Random(123456);
+		final ServiceFactory factory = new ServiceFactory(Arrays.asList(
+				"media", "music", "rock", "live"), null);
+		for (int i = 0; i < kServices; ++i) {
+			final Service service = factory.createRandom(random);
+			nodes.get(i % kNodes).insert(service);
+			queries.add(new C4SMsgRetrieve(service.getProviderId(),
+					new QoSConstraints(), 1));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		for (ChordImpl node : nodes) {
+			node.leave();
+		}
+	}
+
+	@Benchmark
+	public C4SRetrieveResponse retrieve() throws Exception {
+		next = (next + 1) % kServices;
+		return nodes.get(next % kNodes).retrieveR(queries.get(next));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(kBatch)
+	public int retrieveBatch() throws Exception {
+		final List<CompletableFuture<C4SRetrieveResponse>> batch = new ArrayList<CompletableFuture<C4SRetrieveResponse>>(
+				kBatch);
+		for (int i = 0; i < kBatch; ++i) {
+			next = (next + 1) % kServices;
+			batch.add(nodes.get(next % kNodes).getAsyncService().retrieve(
+					queries.get(next)));
+		}
+		int found = 0;
+		for (CompletableFuture<C4SRetrieveResponse> retrieval : batch) {
+			found += retrieval.get().services.size();
+		}
+		return found;
+	}
+}
@@ -0,0 +1,141 @@
+package de.uniba.wiai.lspi.chord.data;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the word based {@link ID} against the former
+ * {@link java.util.BitSet} representation for the operations routing relies
+ * on: comparison, equality, hashing and power-of-two addition.
+ *
+ * Run with the JMH runner, e.g.
+ * <code>java -cp ... org.openjdk.jmh.Main IDBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dde.uniba.wiai.lspi.util.logging.logger.class=de.uniba.wiai.lspi.util.logging.DummyLogger")
+public class IDBenchmark {
+
+	private static final int kCount = 1024;
+
+	private final ID[] ids = new ID[kCount];
+	private final BitSetID[] bitSetIds = new BitSetID[kCount];
+
+	private int cursor;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(123456);
+		for (int i = 0; i < kCount; ++i) {
+			final byte[] blob = new byte[20];
+			random.nextBytes(blob);
+			ids[i] = ID.NodeId(blob);
+			bitSetIds[i] = BitSetID.NodeId(blob);
+		}
+	}
+
+	private int next() {
+		cursor = (cursor + 1) & (kCount - 1);
+		return cursor;
+	}
+
+	@Benchmark
+	public int compareTo() {
+		final int i = next();
+		return ids[i].compareTo(ids[(i + 1) & (kCount - 1)]);
+	}
+
+	@Benchmark
+	public int compareToBitSet() {
+		final int i = next();
+		return bitSetIds[i].compareTo(bitSetIds[(i + 1) & (kCount - 1)]);
+	}
+
+	@Benchmark
+	public void equalsAndHash(Blackhole bh) {
+		final int i = next();
+		bh.consume(ids[i].equals(ids[(i + 1) & (kCount - 1)]));
+		bh.consume(ids[i].hashCode());
+	}
+
+	@Benchmark
+	public void equalsAndHashBitSet(Blackhole bh) {
+		final int i = next();
+		bh.consume(bitSetIds[i].equals(bitSetIds[(i + 1) & (kCount - 1)]));
+		bh.consume(bitSetIds[i].hashCode());
+	}
+
+	@Benchmark
+	public ID addPowerOfTwo() {
+		final int i = next();
+		return ids[i].addPowerOfTwo(i % ID.kTotalBitLen);
+	}
+
+	@Benchmark
+	public BitSetID addPowerOfTwoBitSet() {
+		final int i = next();
+		return bitSetIds[i].addPowerOfTwo(i % ID.kTotalBitLen);
+	}
+
+	/**
+	 * The BitSet backed ID as it was before the word based layout, reduced to
+	 * the benchmarked operations.
+	 */
+	static final class BitSetID implements Comparable<BitSetID> {
+		final BitSet id;
+
+		private BitSetID(BitSet x) { id = x; }
+
+		static BitSetID NodeId(final byte[] blob) {
+			final BitSet a = BitSet.valueOf(blob);
+			final BitSet b = new BitSet(ID.kTotalBitLen);
+			for (int i = 0; i < Math.min(a.size(), ID.kTotalBitLen); ++i)
+				b.set(i, a.get(i));
+			return new BitSetID(b);
+		}
+
+		BitSetID addPowerOfTwo(final int pwrOf2) {
+			final BitSet bs = (BitSet) id.clone();
+			for (int i = ID.kTotalBitLen - 1 - pwrOf2; i >= 0; --i) {
+				bs.flip(i);
+				if (bs.get(i)) break;
+			}
+			return new BitSetID(bs);
+		}
+
+		@Override
+		public int compareTo(BitSetID otherKey) {
+			if (id.size() != otherKey.id.size())
+				throw new ClassCastException();
+			for (int i = 0; i < ID.kTotalBitLen; ++i) {
+				if (id.get(i) != otherKey.id.get(i))
+					return id.get(i) ? 1 : -1;
+			}
+			return 0;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof BitSetID && compareTo((BitSetID) o) == 0;
+		}
+
+		@Override
+		public int hashCode() { return 19 + id.hashCode() * 13; }
+	}
+}
@@ -0,0 +1,50 @@
+package de.uniba.wiai.lspi.chord.data;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IDTest {
+
+	private static final BigInteger kRingSize = BigInteger.ONE
+			.shiftLeft(ID.kTotalBitLen);
+
+	static ID randomID(Random random) {
+		final byte[] blob = new byte[20];
+		random.nextBytes(blob);
+		return ID.NodeId(blob);
+	}
+
+	static BigInteger value(ID x) {
+		return new BigInteger(x.toHexString().replace(" ", ""), 16);
+	}
+
+	@Test
+	public void testCompareDistance() {
+		final Random random = new Random(123456);
+		for (int i = 0; i < 100000; ++i) {
+			final ID x = randomID(random);
+			final ID a = randomID(random);
+			// equal and neighbouring IDs, too
+			final ID b = random.nextInt(8) == 0 ? a : random.nextInt(8) == 0 ? x
+					: random.nextInt(8) == 0 ? a.addPowerOfTwo(0) : randomID(random);
+
+			final BigInteger da = value(x).subtract(value(a)).mod(kRingSize);
+			final BigInteger db = value(x).subtract(value(b)).mod(kRingSize);
+			assertEquals(Integer.signum(da.compareTo(db)), ID.compareDistance(a, b, x));
+		}
+	}
+
+	@Test
+	public void testCompareDistanceWraps() {
+		final Random random = new Random(654321);
+		final ID x = randomID(random);
+		// x itself is at distance 0, the ID following x is farthest
+		assertEquals(-1, ID.compareDistance(x, x.addPowerOfTwo(0), x));
+		assertEquals(1, ID.compareDistance(x.addPowerOfTwo(0), randomID(random), x));
+		assertEquals(0, ID.compareDistance(x, x, x));
+	}
+}
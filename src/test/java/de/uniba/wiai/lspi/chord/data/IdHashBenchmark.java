@@ -0,0 +1,77 @@
+package de.uniba.wiai.lspi.chord.data;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.chord4js.ProviderId;
+import com.chord4js.ServiceFactory;
+
+/**
+ * Throughput of building ring IDs and spans from service identifiers for each
+ * {@link IdHashStrategy}, with and without the semantic part memo. The
+ * identifiers use a small set of category names, as the service generator
+ * does. {@link ID} reads the strategy once, so every parameter combination
+ * runs in its own fork.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dde.uniba.wiai.lspi.util.logging.logger.class=de.uniba.wiai.lspi.util.logging.DummyLogger")
+public class IdHashBenchmark {
+
+	private static final int kCount = 4096;
+
+	@Param({ "sha1", "murmur3" })
+	public String strategy;
+
+	@Param({ "0", "1024" })
+	public String memo;
+
+	private final ProviderId[] providers = new ProviderId[kCount];
+
+	private int cursor;
+
+	@Setup
+	public void setup() {
+		// before ID is initialized
+		System.setProperty(IdHashStrategy.STRATEGY_PROPERTY, strategy);
+		System.setProperty(IdHashStrategy.MEMO_PROPERTY, memo);
+
+		final Random random = new Random(123456);
+		for (int i = 0; i < kCount; ++i) {
+			providers[i] = new ServiceFactory(Arrays.asList("media", "music"
+					+ (i % 8), "converter" + (i % 32), "format" + (i % 64)), null)
+					.createRandom(random).getProviderId();
+		}
+	}
+
+	private ProviderId next() {
+		cursor = (cursor + 1) & (kCount - 1);
+		return providers[cursor];
+	}
+
+	@Benchmark
+	public ID providerId() {
+		return new ID(next());
+	}
+
+	@Benchmark
+	public ID.IdSpan serviceSpan() {
+		return ID.ServiceId(next());
+	}
+}
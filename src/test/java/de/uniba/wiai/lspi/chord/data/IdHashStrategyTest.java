@@ -0,0 +1,85 @@
+package de.uniba.wiai.lspi.chord.data;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IdHashStrategyTest {
+
+	private static final IdHashStrategy[] kStrategies = { IdHashStrategy.SHA1,
+			IdHashStrategy.MURMUR3 };
+
+	/**
+	 * Pearson's chi-squared statistic of the counts against a uniform
+	 * distribution.
+	 */
+	static double chiSquared(int[] counts, int total) {
+		final double expected = (double) total / counts.length;
+		double x = 0;
+		for (int c : counts)
+			x += (c - expected) * (c - expected) / expected;
+		return x;
+	}
+
+	/**
+	 * Category names as produced by the service generator hash to 6 bit
+	 * semantic parts, which must cover the 64 values evenly. 111 is the 0.9999
+	 * quantile for 63 degrees of freedom.
+	 */
+	@Test
+	public void testSemanticPartUniform() {
+		final int kNames = 64 * 500;
+		for (IdHashStrategy strategy : kStrategies) {
+			final int[] counts = new int[1 << ID.kSemanticPartBitLen];
+			for (int i = 0; i < kNames; ++i)
+				++counts[(int) (strategy.hash("category" + i) & (counts.length - 1))];
+			assertTrue(strategy.toString(), chiSquared(counts, kNames) < 111);
+		}
+	}
+
+	/**
+	 * Provider addresses hash to {@link ID#kProviderBitLen} bits; the top 8 of
+	 * them must be uniform. 330 is the 0.9999 quantile for 255 degrees of
+	 * freedom.
+	 */
+	@Test
+	public void testProviderPartUniform() {
+		final int kProviders = 256 * 200;
+		final Random random = new Random(123456);
+		for (IdHashStrategy strategy : kStrategies) {
+			final int[] counts = new int[256];
+			for (int i = 0; i < kProviders; ++i) {
+				final String ip = (random.nextInt(254) + 1) + "."
+						+ (random.nextInt(254) + 1) + "." + (random.nextInt(254) + 1)
+						+ "." + (random.nextInt(254) + 1);
+				final long bits = strategy.hash(ip) & ((1L << ID.kProviderBitLen) - 1);
+				++counts[(int) (bits >>> (ID.kProviderBitLen - 8))];
+			}
+			assertTrue(strategy.toString(), chiSquared(counts, kProviders) < 330);
+		}
+	}
+
+	@Test
+	public void testMemoizedSameHash() {
+		for (IdHashStrategy strategy : kStrategies) {
+			final IdHashStrategy memo = IdHashStrategy.memoized(strategy, 8);
+			for (int round = 0; round < 2; ++round)
+				for (int i = 0; i < 16; ++i)
+					assertEquals(strategy.hash("media" + i), memo.hash("media" + i));
+		}
+		assertSame(IdHashStrategy.SHA1, IdHashStrategy.memoized(IdHashStrategy.SHA1, 0));
+	}
+
+	@Test
+	public void testForName() {
+		assertSame(IdHashStrategy.SHA1, IdHashStrategy.forName("sha1"));
+		assertSame(IdHashStrategy.MURMUR3, IdHashStrategy.forName("Murmur3"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testForNameUnknown() {
+		IdHashStrategy.forName("md5");
+	}
+}
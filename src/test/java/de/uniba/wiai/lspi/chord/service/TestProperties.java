@@ -0,0 +1,24 @@
+package de.uniba.wiai.lspi.chord.service;
+
+/**
+ * Loads the properties of chord4S for tests and benchmarks, which all run
+ * with the configuration shipped in <code>config/chord4S.properties</code>.
+ */
+public final class TestProperties {
+
+	private TestProperties() {
+		// nothing to do here.
+	}
+
+	/**
+	 * Loads <code>config/chord4S.properties</code>, unless the properties
+	 * have been loaded or given on the command line already.
+	 */
+	public static synchronized void load() {
+		if (System.getProperty("de.uniba.wiai.lspi.chord.service.impl.ChordImpl.successors") == null) {
+			System.setProperty(PropertiesLoader.PROPERTY_WHERE_TO_FIND_PROPERTY_FILE,
+					"config/chord4S.properties");
+			PropertiesLoader.loadPropertyFile();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.chord4js.QoSConstraints;
+import com.chord4js.Service;
+import com.chord4js.ServiceFactory;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
+import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
+import de.uniba.wiai.lspi.chord.service.ServiceException;
+import de.uniba.wiai.lspi.chord.service.TestProperties;
+
+/**
+ * Checks that the future-based operations find the same nodes as the
+ * synchronous ones, and that many of them can run at once on few threads.
+ */
+public class AsyncChordServiceTest {
+
+	private static final int kNodes = 64;
+
+	private NodeGroup group;
+
+	private List<ChordImpl> nodes;
+
+	private Random random;
+
+	@BeforeClass
+	public static void configure() {
+		TestProperties.load();
+	}
+
+	@Before
+	public void setUp() throws MalformedURLException, ServiceException {
+		group = new NodeGroup(NodeGroup.Execution.SHARED, 2);
+		final List<URL> urls = new ArrayList<URL>(kNodes);
+		for (int i = 0; i < kNodes; i++)
+			urls.add(new URL(URL.KNOWN_PROTOCOLS.get(URL.LOCAL_PROTOCOL) + "://async"
+					+ i + "/"));
+		nodes = RingBootstrap.createRing(urls, group);
+		random = new Random(123456);
+	}
+
+	@After
+	public void tearDown() {
+		for (ChordImpl node : nodes)
+			node.crash();
+		group.shutdown();
+	}
+
+	private Service randomService() {
+		return new ServiceFactory(Arrays.asList("media", "music", "rock", "live"), null)
+				.createRandom(random);
+	}
+
+	private ChordImpl randomNode() {
+		return nodes.get(random.nextInt(nodes.size()));
+	}
+
+	private static C4SMsgRetrieve retrieval(Service service) {
+		return new C4SMsgRetrieve(service.getProviderId(), new QoSConstraints(), 1);
+	}
+
+	@Test
+	public void testMatchesSynchronous() throws InterruptedException, ExecutionException {
+		final List<Service> services = new ArrayList<Service>();
+		final List<CompletableFuture<Void>> inserted = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < 200; i++) {
+			Service service = randomService();
+			services.add(service);
+			inserted.add(randomNode().getAsyncService().insert(service));
+		}
+		CompletableFuture.allOf(inserted.toArray(new CompletableFuture<?>[0])).get();
+
+		for (Service service : services) {
+			ChordImpl node = randomNode();
+			C4SRetrieveResponse expected = node.retrieveR(retrieval(service));
+			C4SRetrieveResponse actual = node.getAsyncService().retrieve(retrieval(service)).get();
+			assertTrue(actual.services.contains(service));
+			assertEquals(expected.services, actual.services);
+			// the second retrieval may take the node from the location cache
+			assertEquals(expected.getNumberOfHops() + expected.getHopsSaved(),
+					actual.getNumberOfHops() + actual.getHopsSaved());
+		}
+
+		for (Service service : services)
+			randomNode().getAsyncService().remove(service.getProviderId()).get();
+		for (Service service : services)
+			assertFalse(randomNode().getAsyncService().retrieve(retrieval(service)).get().services
+					.contains(service));
+	}
+
+	@Test
+	public void testManyConcurrent() throws InterruptedException, ExecutionException {
+		final Service service = randomService();
+		nodes.get(0).insert(service);
+		final List<CompletableFuture<C4SRetrieveResponse>> lookups = new ArrayList<CompletableFuture<C4SRetrieveResponse>>();
+		for (int i = 0; i < 20000; i++)
+			lookups.add(randomNode().getAsyncService().retrieve(retrieval(service)));
+		for (CompletableFuture<C4SRetrieveResponse> lookup : lookups)
+			assertTrue(lookup.get().services.contains(service));
+	}
+
+	@Test
+	public void testRetryDropsFailedSuccessor() throws Exception {
+		final Service service = randomService();
+		final Node responsible = nodes.get(0).findSuccessor(
+				service.getProviderId().getId()).fst;
+		ChordImpl predecessor = null;
+		ChordImpl crashed = null;
+		for (ChordImpl node : nodes) {
+			if (responsible.equals(node.references.getSuccessor()))
+				predecessor = node;
+			if (responsible.getNodeID().equals(node.getID()))
+				crashed = node;
+		}
+		crashed.crash();
+		nodes.remove(crashed);
+
+		// found without a hop and not cached: only dropping it ends the retries
+		final CompletableFuture<Void> insert = predecessor.getAsyncService().insert(service);
+		final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (predecessor.references.containsReference(responsible)
+				&& System.nanoTime() < end)
+			Thread.sleep(10);
+		assertFalse(predecessor.references.containsReference(responsible));
+
+		// the next node takes over once it noticed its predecessor failed
+		final Node next = predecessor.references.getSuccessor();
+		for (ChordImpl node : nodes)
+			if (next.getNodeID().equals(node.getID()))
+				node.runTasks();
+		insert.get(10, TimeUnit.SECONDS);
+		assertTrue(predecessor.retrieve(retrieval(service)).contains(service));
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		final CompletableFuture<C4SRetrieveResponse> lookup = randomNode().getAsyncService()
+				.retrieve(retrieval(randomService()));
+		lookup.cancel(false);
+		assertTrue(lookup.isCancelled());
+	}
+
+	@Test
+	public void testNotConnected() throws InterruptedException {
+		final CompletableFuture<Void> insert = new ChordImpl(group).getAsyncService().insert(
+				randomService());
+		try {
+			insert.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ServiceException);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.chord4js.QoSConstraints;
+import com.chord4js.Service;
+import com.chord4js.ServiceFactory;
+
+import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
+import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
+import de.uniba.wiai.lspi.chord.service.TestProperties;
+
+/**
+ * Replication writers and retrieving readers hammering the entries of a single
+ * {@link NodeImpl}: four threads call <code>insertReplicas</code> with small
+ * batches while four threads call <code>retrieveEntries</code>.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntriesContentionBenchmark {
+
+	private static final int kCategories = 64;
+
+	private static final int kBatches = 1024;
+
+	private static final int kBatchSize = 8;
+
+	private ChordImpl chord;
+
+	private NodeImpl node;
+
+	private final List<Set<Service>> batches = new ArrayList<Set<Service>>();
+
+	private final List<C4SMsgRetrieve> queries = new ArrayList<C4SMsgRetrieve>();
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int i;
+
+		int next(int n) {
+			i = (i + 1) % n;
+			return i;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		TestProperties.load();
+
+		final Random random = new Random(123456);
+		final List<ServiceFactory> factories = new ArrayList<ServiceFactory>();
+		for (int i = 0; i < kCategories; ++i) {
+			factories.add(new ServiceFactory(Arrays.asList("media", "c"
+					+ (i % 8), "s" + i), null));
+			queries.add(new C4SMsgRetrieve(factories.get(i).getServiceId(),
+					new QoSConstraints(), 10));
+		}
+		for (int i = 0; i < kBatches; ++i) {
+			final Set<Service> batch = new HashSet<Service>();
+			for (int j = 0; j < kBatchSize; ++j) {
+				batch.add(factories.get(random.nextInt(kCategories))
+						.createRandom(random));
+			}
+			batches.add(batch);
+		}
+
+		chord = new ChordImpl();
+		chord.create(StubProxy.nextURL());
+		node = chord.getLocalNode();
+		for (Set<Service> batch : batches.subList(0, kBatches / 2)) {
+			node.insertReplicas(batch);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		chord.leave();
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public void insertReplicas(Cursor cursor) {
+		node.insertReplicas(batches.get(cursor.next(kBatches)));
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public C4SRetrieveResponse retrieveEntries(Cursor cursor) throws Exception {
+		return node.retrieveEntries(queries.get(cursor.next(kCategories)));
+	}
+}
@@ -0,0 +1,59 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.chord4js.Service;
+import com.chord4js.ServiceFactory;
+
+/**
+ * CPU cost of storing and removing one entry, as done by every insert, replica
+ * write and remove. The same services are stored over and over, as happens
+ * when entries are replicated to several successors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dde.uniba.wiai.lspi.util.logging.logger.class=de.uniba.wiai.lspi.util.logging.DummyLogger")
+public class EntriesInsertBenchmark {
+
+	private static final int kServices = 4096;
+
+	private final Service[] services = new Service[kServices];
+
+	private Entries entries;
+
+	private int cursor;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(123456);
+		for (int i = 0; i < kServices; ++i) {
+			services[i] = new ServiceFactory(Arrays.asList("media", "c"
+					+ (i % 8), "s" + (i % 64)), null).createRandom(random);
+		}
+		entries = new Entries();
+	}
+
+	@Benchmark
+	public void addAndRemove() {
+		cursor = (cursor + 1) & (kServices - 1);
+		final Service svc = services[cursor];
+		entries.add(svc);
+		entries.remove(svc.getProviderId());
+	}
+}
@@ -0,0 +1,80 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.ID;
+
+/**
+ * Measures {@link FingerTable#getClosestPrecedingNode(ID)} and adding and
+ * removing a reference for one node of a 2^11 node ring whose finger table
+ * holds every other node it would learn of. Run with <code>-prof gc</code> to
+ * see the allocation rate as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dde.uniba.wiai.lspi.util.logging.logger.class=de.uniba.wiai.lspi.util.logging.DummyLogger")
+public class FingerTableBenchmark {
+
+	private static final int kNodes = 1 << 11;
+
+	private static final int kKeys = 1024;
+
+	private FingerTable fingerTable;
+
+	private final ID[] keys = new ID[kKeys];
+
+	private final Node[] churnNodes = new Node[kKeys];
+
+	private int cursor;
+
+	static ID randomID(Random random) {
+		final byte[] blob = new byte[20];
+		random.nextBytes(blob);
+		return ID.NodeId(blob);
+	}
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(123456);
+		final ID localID = randomID(random);
+		final References references = new References(localID,
+				StubProxy.nextURL(), 1, new Entries());
+		fingerTable = new FingerTable(localID, references);
+		for (int i = 1; i < kNodes; ++i)
+			fingerTable.addReference(new StubProxy(randomID(random)));
+
+		for (int i = 0; i < kKeys; ++i) {
+			keys[i] = randomID(random);
+			churnNodes[i] = new StubProxy(randomID(random));
+		}
+	}
+
+	@Benchmark
+	public Node getClosestPrecedingNode() {
+		cursor = (cursor + 1) & (kKeys - 1);
+		return fingerTable.getClosestPrecedingNode(keys[cursor]);
+	}
+
+	@Benchmark
+	public void addAndRemoveReference() {
+		cursor = (cursor + 1) & (kKeys - 1);
+		fingerTable.addReference(churnNodes[cursor]);
+		fingerTable.removeReference(churnNodes[cursor]);
+	}
+}
@@ -0,0 +1,114 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.ID;
+
+/**
+ * Checks the run based {@link FingerTable} against the former table of one
+ * slot per entry, for random sequences of added and removed references.
+ */
+public class FingerTableTest {
+
+	/**
+	 * The finger table as it was before runs, reduced to adding, removing and
+	 * lookups.
+	 */
+	static final class SlotFingerTable {
+		final ID localID;
+
+		final Node[] remoteNodes;
+
+		SlotFingerTable(ID localID) {
+			this.localID = localID;
+			this.remoteNodes = new Node[localID.getLength()];
+		}
+
+		void addReference(Node proxy) {
+			for (int i = 0; i < remoteNodes.length; i++) {
+				ID startOfInterval = localID.addPowerOfTwo(i);
+				if (!startOfInterval.isInInterval(localID, proxy.getNodeID()))
+					break;
+				if (remoteNodes[i] == null
+						|| proxy.getNodeID().isInInterval(localID,
+								remoteNodes[i].getNodeID()))
+					remoteNodes[i] = proxy;
+			}
+		}
+
+		void removeReference(Node node1) {
+			Node referenceForReplacement = null;
+			for (int i = remoteNodes.length - 1; i >= 0; i--) {
+				Node n = remoteNodes[i];
+				if (node1.equals(n))
+					break;
+				if (n != null)
+					referenceForReplacement = n;
+			}
+			for (int i = 0; i < remoteNodes.length; i++)
+				if (node1.equals(remoteNodes[i]))
+					remoteNodes[i] = referenceForReplacement;
+		}
+
+		Node getClosestPrecedingNode(ID key) {
+			for (int i = remoteNodes.length - 1; i >= 0; i--)
+				if (remoteNodes[i] != null
+						&& remoteNodes[i].getNodeID().isInInterval(localID, key))
+					return remoteNodes[i];
+			return null;
+		}
+	}
+
+	@Test
+	public void testSameAsSlotTable() {
+		final Random random = new Random(123456);
+		for (int round = 0; round < 100; ++round) {
+			final ID localID = FingerTableBenchmark.randomID(random);
+			// parent without successors, so removing does not refill
+			final FingerTable table = new FingerTable(localID, new References(
+					localID, StubProxy.nextURL(), 1, new Entries()));
+			final SlotFingerTable slots = new SlotFingerTable(localID);
+			final List<Node> known = new ArrayList<Node>();
+
+			for (int op = 0; op < 400; ++op) {
+				final int what = random.nextInt(8);
+				if (what < 4 || known.isEmpty()) {
+					final Node n = new StubProxy(FingerTableBenchmark.randomID(random));
+					known.add(n);
+					table.addReference(n);
+					slots.addReference(n);
+				} else if (what < 5) {
+					final Node n = known.get(random.nextInt(known.size()));
+					table.addReference(n);
+					slots.addReference(n);
+				} else {
+					final Node n = known.remove(random.nextInt(known.size()));
+					table.removeReference(n);
+					slots.removeReference(n);
+				}
+
+				assertArrayEquals(slots.remoteNodes, table.getCopyOfReferences());
+				final ID key = FingerTableBenchmark.randomID(random);
+				assertSame(slots.getClosestPrecedingNode(key), table
+						.getClosestPrecedingNode(key));
+			}
+		}
+	}
+
+	@Test
+	public void testOwnIDNotAdded() {
+		final ID localID = FingerTableBenchmark.randomID(new Random(1));
+		final FingerTable table = new FingerTable(localID, new References(
+				localID, StubProxy.nextURL(), 1, new Entries()));
+		table.addReference(new StubProxy(localID));
+		assertEquals(0, table.getRuns().size());
+		assertTrue(table.getFirstFingerTableEntries(3).isEmpty());
+	}
+}
@@ -0,0 +1,51 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+
+/**
+ * Node ID creation throughput of the shared {@link HashFunction}. Compare runs
+ * with <code>-t 1</code> and <code>-t</code> set to the number of cores to see
+ * how it scales.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dde.uniba.wiai.lspi.util.logging.logger.class=de.uniba.wiai.lspi.util.logging.DummyLogger")
+public class HashFunctionBenchmark {
+
+	private static final int kUrls = 1024;
+
+	private final URL[] urls = new URL[kUrls];
+
+	private int cursor;
+
+	@Setup
+	public void setup() throws MalformedURLException {
+		for (int i = 0; i < kUrls; ++i)
+			urls[i] = new URL(URL.KNOWN_PROTOCOLS.get(URL.SOCKET_PROTOCOL)
+					+ "://node" + i + ":4242/");
+	}
+
+	@Benchmark
+	public ID createUniqueNodeID() {
+		cursor = (cursor + 1) & (kUrls - 1);
+		return HashFunction.getHashFunction().createUniqueNodeID(urls[cursor]);
+	}
+}
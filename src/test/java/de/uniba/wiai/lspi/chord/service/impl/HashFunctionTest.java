@@ -0,0 +1,84 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+
+public class HashFunctionTest {
+
+	private static final int kUrls = 1 << 21;
+
+	private static URL url(int i) throws Exception {
+		return new URL(URL.KNOWN_PROTOCOLS.get(URL.SOCKET_PROTOCOL) + "://node"
+				+ i + ":" + (4000 + (i & 1023)) + "/");
+	}
+
+	/**
+	 * Hashes millions of URLs from more threads than there are cores and
+	 * compares every ID with the one computed by a private digest.
+	 */
+	@Test
+	public void testConcurrentDeterministic() throws Exception {
+		final URL[] urls = new URL[kUrls];
+		for (int i = 0; i < kUrls; ++i)
+			urls[i] = url(i);
+
+		final ID[] ids = new ID[kUrls];
+		final int kThreads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		final List<Thread> threads = new ArrayList<Thread>();
+		final Throwable[] failure = new Throwable[1];
+		for (int t = 0; t < kThreads; ++t) {
+			final int first = t;
+			final Thread thread = new Thread(() -> {
+				final HashFunction h = HashFunction.getHashFunction();
+				for (int i = first; i < kUrls; i += kThreads)
+					ids[i] = h.createUniqueNodeID(urls[i]);
+			});
+			thread.setUncaughtExceptionHandler((th, e) -> failure[0] = e);
+			threads.add(thread);
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		assertNull(failure[0]);
+
+		final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		for (int i = 0; i < kUrls; ++i)
+			assertEquals(ID.NodeId(digest.digest(urls[i].toString().getBytes())), ids[i]);
+	}
+
+	@Test
+	public void testBatchSameAsSingle() throws Exception {
+		final List<URL> urls = new ArrayList<URL>();
+		for (int i = 0; i < 1000; ++i)
+			urls.add(url(i));
+
+		final HashFunction h = HashFunction.getHashFunction();
+		final List<ID> ids = h.createUniqueNodeIDs(urls);
+		assertEquals(urls.size(), ids.size());
+		for (int i = 0; i < urls.size(); ++i)
+			assertEquals(h.createUniqueNodeID(urls.get(i)), ids.get(i));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchNullElement() throws Exception {
+		final List<URL> urls = new ArrayList<URL>();
+		urls.add(url(0));
+		urls.add(null);
+		HashFunction.getHashFunction().createUniqueNodeIDs(urls);
+	}
+
+	@Test
+	public void testSingleton() {
+		assertSame(HashFunction.getHashFunction(), HashFunction.getHashFunction());
+		assertEquals(20, HashFunction.getHashFunction().getLengthOfIDsInBytes());
+	}
+}
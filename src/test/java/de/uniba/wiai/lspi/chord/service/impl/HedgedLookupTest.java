@@ -0,0 +1,145 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.chord4js.Pair;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.ServiceException;
+import de.uniba.wiai.lspi.chord.service.TestProperties;
+
+/**
+ * Checks that hedged lookups find the same nodes as recursive ones, and that
+ * they get past a node which never answers.
+ */
+public class HedgedLookupTest {
+
+	private static final int kNodes = 64;
+
+	private NodeGroup group;
+
+	private List<ChordImpl> nodes;
+
+	private Random random;
+
+	@BeforeClass
+	public static void configure() {
+		TestProperties.load();
+	}
+
+	@Before
+	public void setUp() throws MalformedURLException, ServiceException {
+		group = new NodeGroup(NodeGroup.Execution.SHARED, 2);
+		final List<URL> urls = new ArrayList<URL>(kNodes);
+		for (int i = 0; i < kNodes; i++)
+			urls.add(new URL(URL.KNOWN_PROTOCOLS.get(URL.LOCAL_PROTOCOL) + "://hedged"
+					+ i + "/"));
+		nodes = RingBootstrap.createRing(urls, group);
+		random = new Random(97531);
+	}
+
+	@After
+	public void tearDown() {
+		for (ChordImpl node : nodes)
+			node.crash();
+		group.shutdown();
+	}
+
+	private ID randomID() {
+		final byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		return ID.NodeId(bytes);
+	}
+
+	private static CompletableFuture<Pair<Node, Integer>> lookup(ChordImpl node, ID key,
+			int alpha) {
+		return new HedgedLookup(node, key, alpha, node.getAsyncExecutor()).start();
+	}
+
+	@Test
+	public void testMatchesRecursive() throws InterruptedException, ExecutionException {
+		for (int i = 0; i < 500; i++) {
+			final ChordImpl node = nodes.get(random.nextInt(nodes.size()));
+			final ID key = randomID();
+			final Pair<Node, Integer> expected = node.findSuccessor(key);
+			for (int alpha = 1; alpha <= 3; alpha++) {
+				final Pair<Node, Integer> actual = lookup(node, key, alpha).get();
+				assertEquals(expected.fst.getNodeID(), actual.fst.getNodeID());
+				// answers come at once, so no request is hedged
+				assertEquals(expected.snd, actual.snd);
+			}
+		}
+	}
+
+	@Test
+	public void testCallerRuns() {
+		final ChordImpl node = nodes.get(0);
+		for (int i = 0; i < 100; i++) {
+			final ID key = randomID();
+			final HedgedLookup.CallerRuns steps = new HedgedLookup.CallerRuns();
+			assertEquals(node.findSuccessor(key).fst.getNodeID(),
+					steps.join(new HedgedLookup(node, key, 2, steps).start()).fst.getNodeID());
+		}
+	}
+
+	@Test
+	public void testHedgesPastSilentNode() throws Exception {
+		final ChordImpl node = nodes.get(0);
+		// right after a finger start, so the silent node takes over the finger,
+		// and a key right after it
+		int finger = node.getID().getLength();
+		ID silentID;
+		ID key;
+		do {
+			silentID = node.getID().addPowerOfTwo(--finger).addPowerOfTwo(0);
+			key = silentID.addPowerOfTwo(0);
+		} while (ID.inHalfOpen(key, node.getID(), node.getSuccessorIDs().get(0)));
+		final Node responsible = node.findSuccessor(key).fst;
+
+		// precedes the key more closely than any live node, and never answers
+		final Node silent = new StubProxy(silentID) {
+			@Override
+			public CompletableFuture<Pair<Node, Boolean>> findNextHopAsync(ID key) {
+				return new CompletableFuture<Pair<Node, Boolean>>();
+			}
+		};
+		node.references.addReference(silent);
+		assertSame(silent, node.references.getClosestPrecedingNode(key));
+
+		final CompletableFuture<Pair<Node, Integer>> unhedged = lookup(node, key, 1);
+		final Pair<Node, Integer> hedged = lookup(node, key, 2).get(10, TimeUnit.SECONDS);
+		assertEquals(responsible.getNodeID(), hedged.fst.getNodeID());
+		try {
+			unhedged.get(100, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (TimeoutException e) {
+			// stuck on the silent node
+		}
+	}
+
+	@Test
+	public void testDelayFollowsLatencies() {
+		final HedgedLookup.Latencies latencies = new HedgedLookup.Latencies();
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(ChordImpl.LOOKUP_HEDGE_DELAY),
+				latencies.getDelay());
+		for (int i = 0; i < 64; i++)
+			latencies.record(TimeUnit.SECONDS.toNanos(1));
+		assertEquals(TimeUnit.SECONDS.toNanos(1), latencies.getDelay());
+	}
+}
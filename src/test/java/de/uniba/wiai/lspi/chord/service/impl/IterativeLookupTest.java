@@ -0,0 +1,116 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.chord4js.Pair;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.ServiceException;
+import de.uniba.wiai.lspi.chord.service.TestProperties;
+
+/**
+ * Checks that iterative lookups find the same nodes with the same number of
+ * hops as recursive ones.
+ */
+public class IterativeLookupTest {
+
+	private static final int kNodes = 64;
+
+	private NodeGroup group;
+
+	private List<ChordImpl> nodes;
+
+	private Random random;
+
+	@BeforeClass
+	public static void configure() {
+		TestProperties.load();
+	}
+
+	@Before
+	public void setUp() throws MalformedURLException, ServiceException {
+		group = new NodeGroup(NodeGroup.Execution.SHARED, 2);
+		final List<URL> urls = new ArrayList<URL>(kNodes);
+		for (int i = 0; i < kNodes; i++)
+			urls.add(new URL(URL.KNOWN_PROTOCOLS.get(URL.LOCAL_PROTOCOL) + "://iterative"
+					+ i + "/"));
+		nodes = RingBootstrap.createRing(urls, group);
+		random = new Random(654321);
+	}
+
+	@After
+	public void tearDown() {
+		for (ChordImpl node : nodes)
+			node.crash();
+		group.shutdown();
+	}
+
+	private ID randomID() {
+		final byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		return ID.NodeId(bytes);
+	}
+
+	@Test
+	public void testMatchesRecursive() {
+		for (int i = 0; i < 1000; i++) {
+			final ChordImpl node = nodes.get(random.nextInt(nodes.size()));
+			final ID key = randomID();
+			final Pair<Node, Integer> expected = node.findSuccessor(key);
+			final Pair<Node, Integer> actual = node.findSuccessorIteratively(key);
+			assertEquals(expected.fst.getNodeID(), actual.fst.getNodeID());
+			assertEquals(expected.snd, actual.snd);
+		}
+	}
+
+	@Test
+	public void testAsyncMatchesRecursive() throws InterruptedException, ExecutionException {
+		for (int i = 0; i < 200; i++) {
+			final ChordImpl node = nodes.get(random.nextInt(nodes.size()));
+			final AsyncChordServiceImpl service = new AsyncChordServiceImpl(node, true);
+			final ID key = randomID();
+			final Pair<Node, Integer> expected = node.findSuccessor(key);
+			final Pair<Node, Integer> actual = service.findSuccessor(key,
+					node.getAsyncExecutor()).get();
+			assertEquals(expected.fst.getNodeID(), actual.fst.getNodeID());
+			assertEquals(expected.snd, actual.snd);
+		}
+	}
+
+	@Test
+	public void testRoutesAroundCrashedNodes() {
+		for (int i = 0; i < kNodes / 4; i++)
+			nodes.remove(random.nextInt(nodes.size())).crash();
+		// lookups end although hops fail
+		for (int i = 0; i < 200; i++)
+			assertNotNull(nodes.get(random.nextInt(nodes.size()))
+					.findSuccessorIteratively(randomID()).fst);
+
+		for (int round = 0; round < 3; round++)
+			for (ChordImpl node : nodes)
+				node.runTasks();
+		for (int i = 0; i < 200; i++) {
+			final ChordImpl node = nodes.get(random.nextInt(nodes.size()));
+			final ID key = randomID();
+			final Node responsible = node.findSuccessorIteratively(key).fst;
+			assertEquals(node.findSuccessor(key).fst.getNodeID(), responsible.getNodeID());
+			boolean live = false;
+			for (ChordImpl other : nodes)
+				live |= other.getID().equals(responsible.getNodeID());
+			assertTrue(live);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.chord4js.Pair;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.ID;
+
+/**
+ * Checks that {@link LocationCache} only answers with the node responsible
+ * for a key, and evicts and expires its entries.
+ */
+public class LocationCacheTest {
+
+	private static final int kNodes = 32;
+
+	private static final int kKeys = 2000;
+
+	private static Node responsible(Node[] ring, ID key) {
+		for (Node node : ring)
+			if (key.compareTo(node.getNodeID()) <= 0)
+				return node;
+		return ring[0];
+	}
+
+	@Test
+	public void testAnswersResponsibleNode() {
+		final Random random = new Random(24680);
+		final Node[] ring = new Node[kNodes];
+		for (int i = 0; i < kNodes; ++i)
+			ring[i] = new StubProxy(FingerTableBenchmark.randomID(random));
+		Arrays.sort(ring, (a, b) -> a.getNodeID().compareTo(b.getNodeID()));
+
+		final LocationCache cache = new LocationCache(kNodes, 60000);
+		int hits = 0;
+		for (int i = 0; i < kKeys; ++i) {
+			final ID key = FingerTableBenchmark.randomID(random);
+			final Pair<Node, Integer> cached = cache.get(key);
+			if (cached == null) {
+				cache.put(key, responsible(ring, key), 1 + random.nextInt(5));
+			} else {
+				assertSame(responsible(ring, key), cached.fst);
+				hits++;
+			}
+		}
+		// ranges grow towards the predecessors, so most keys are found at last
+		assertTrue(hits > kKeys / 2);
+	}
+
+	@Test
+	public void testRangeGrowsBackwards() {
+		final Node node = new StubProxy(FingerTableBenchmark.randomID(new Random(1)));
+		final ID id = node.getNodeID();
+		final LocationCache cache = new LocationCache(4, 60000);
+		// keys 2^10 and 2^20 before the node
+		final ID far = keyBefore(id, 20);
+		final ID nearer = keyBefore(id, 10);
+		cache.put(nearer, node, 2);
+		assertNull(cache.get(far));
+		assertEquals(Integer.valueOf(2), cache.get(nearer).snd);
+		assertSame(node, cache.get(id).fst);
+
+		cache.put(far, node, 3);
+		assertSame(node, cache.get(far).fst);
+		assertSame(node, cache.get(nearer).fst);
+		assertEquals(Integer.valueOf(3), cache.get(keyBefore(id, 15)).snd);
+		// a closer key does not shrink the range
+		cache.put(nearer, node, 1);
+		assertSame(node, cache.get(far).fst);
+
+		cache.remove(id);
+		assertNull(cache.get(nearer));
+	}
+
+	/**
+	 * @return The ID 2^power before the given one.
+	 */
+	private static ID keyBefore(ID id, int power) {
+		// adding 2^k for all k from power to the top bit subtracts 2^power
+		ID key = id;
+		for (int k = power; k < id.getLength(); ++k)
+			key = key.addPowerOfTwo(k);
+		return key;
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		final Random random = new Random(13579);
+		final LocationCache cache = new LocationCache(2, 60000);
+		final Node[] nodes = new Node[3];
+		for (int i = 0; i < nodes.length; ++i) {
+			nodes[i] = new StubProxy(FingerTableBenchmark.randomID(random));
+			cache.put(nodes[i].getNodeID(), nodes[i], 1);
+			if (i == 1)
+				assertNotNull(cache.get(nodes[0].getNodeID()));
+		}
+		assertNotNull(cache.get(nodes[0].getNodeID()));
+		assertNull(cache.get(nodes[1].getNodeID()));
+		assertNotNull(cache.get(nodes[2].getNodeID()));
+	}
+
+	@Test
+	public void testExpires() {
+		final Node node = new StubProxy(FingerTableBenchmark.randomID(new Random(2)));
+		final LocationCache cache = new LocationCache(4, 0);
+		cache.put(node.getNodeID(), node, 1);
+		assertNull(cache.get(node.getNodeID()));
+	}
+}
@@ -0,0 +1,73 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Checks that the timer wheel runs tasks periodically, across several turns
+ * of the wheel, and stops them when their node's tasks are shut down.
+ */
+public class MaintenanceSchedulerTest {
+
+	@Test
+	public void testRunsPeriodically() throws InterruptedException {
+		final MaintenanceScheduler scheduler = new MaintenanceScheduler(1, 4, 2);
+		final MaintenanceScheduler.Tasks tasks = new MaintenanceScheduler.Tasks();
+		final CountDownLatch runs = new CountDownLatch(5);
+		scheduler.scheduleWithFixedDelay(tasks, runs::countDown, 0, 3);
+		assertTrue(runs.await(10, TimeUnit.SECONDS));
+		tasks.shutdown();
+	}
+
+	@Test
+	public void testDelayLongerThanWheel() throws InterruptedException {
+		final MaintenanceScheduler scheduler = new MaintenanceScheduler(1, 4, 2);
+		final MaintenanceScheduler.Tasks tasks = new MaintenanceScheduler.Tasks();
+		final CountDownLatch runs = new CountDownLatch(1);
+		final long start = System.nanoTime();
+		scheduler.scheduleWithFixedDelay(tasks, runs::countDown, 50, 50);
+		assertTrue(runs.await(10, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+				.toNanos(50));
+		tasks.shutdown();
+	}
+
+	@Test
+	public void testShutdownStopsTasks() throws InterruptedException {
+		final MaintenanceScheduler scheduler = new MaintenanceScheduler(1, 8, 2);
+		final MaintenanceScheduler.Tasks stopped = new MaintenanceScheduler.Tasks();
+		final MaintenanceScheduler.Tasks running = new MaintenanceScheduler.Tasks();
+		final AtomicInteger stoppedRuns = new AtomicInteger();
+		final CountDownLatch runs = new CountDownLatch(10);
+		scheduler.scheduleWithFixedDelay(stopped, stoppedRuns::incrementAndGet,
+				0, 1);
+		scheduler.scheduleWithFixedDelay(running, runs::countDown, 0, 2);
+		Thread.sleep(20);
+		stopped.shutdown();
+
+		// a run in progress may still complete
+		Thread.sleep(20);
+		final int count = stoppedRuns.get();
+		assertTrue(runs.await(10, TimeUnit.SECONDS));
+		assertEquals(count, stoppedRuns.get());
+		running.shutdown();
+	}
+
+	@Test
+	public void testFailingTaskKeepsRunning() throws InterruptedException {
+		final MaintenanceScheduler scheduler = new MaintenanceScheduler(1, 4, 1);
+		final MaintenanceScheduler.Tasks tasks = new MaintenanceScheduler.Tasks();
+		final CountDownLatch runs = new CountDownLatch(3);
+		scheduler.scheduleWithFixedDelay(tasks, () -> {
+			runs.countDown();
+			throw new IllegalStateException("expected");
+		}, 0, 1);
+		assertTrue(runs.await(10, TimeUnit.SECONDS));
+		tasks.shutdown();
+	}
+}
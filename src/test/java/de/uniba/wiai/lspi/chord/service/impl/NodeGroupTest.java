@@ -0,0 +1,69 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Checks which executors the nodes of a group get, and that they are shut
+ * down with the node or with the group.
+ */
+public class NodeGroupTest {
+
+	@Test
+	public void testSharedOutlivesNodes() throws InterruptedException {
+		final NodeGroup group = new NodeGroup(NodeGroup.Execution.SHARED, 2);
+		final ExecutorService first = group.acquire();
+		final ExecutorService second = group.acquire();
+		assertSame(first, second);
+
+		group.release(first);
+		final CountDownLatch ran = new CountDownLatch(1);
+		second.execute(ran::countDown);
+		assertTrue(ran.await(10, TimeUnit.SECONDS));
+
+		group.shutdown();
+		assertTrue(first.isShutdown());
+	}
+
+	@Test
+	public void testPerNodeReleased() {
+		final NodeGroup group = new NodeGroup(NodeGroup.Execution.NODE, 2);
+		final ExecutorService first = group.acquire();
+		final ExecutorService second = group.acquire();
+		assertNotSame(first, second);
+
+		group.release(first);
+		assertTrue(first.isShutdown());
+		assertFalse(second.isShutdown());
+
+		group.shutdown();
+		assertTrue(second.isShutdown());
+	}
+
+	@Test
+	public void testVirtual() throws InterruptedException {
+		final NodeGroup group = new NodeGroup(NodeGroup.Execution.VIRTUAL, 1);
+		// falls back to a shared pool on JVMs without virtual threads
+		assertNotEquals(NodeGroup.Execution.NODE, group.getExecution());
+		final ExecutorService executor = group.acquire();
+		assertSame(executor, group.acquire());
+		final CountDownLatch ran = new CountDownLatch(2);
+		executor.execute(ran::countDown);
+		executor.execute(ran::countDown);
+		assertTrue(ran.await(10, TimeUnit.SECONDS));
+		group.shutdown();
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testNoNodesAfterShutdown() {
+		final NodeGroup group = new NodeGroup(NodeGroup.Execution.NODE, 1);
+		group.shutdown();
+		group.acquire();
+	}
+}
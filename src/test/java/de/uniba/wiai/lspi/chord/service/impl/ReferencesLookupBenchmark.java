@@ -0,0 +1,95 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.ID;
+
+/**
+ * Lookup throughput of one node's {@link References}, shared by all benchmark
+ * threads, with the node knowing 2^11 others. <code>lookup</code> only reads;
+ * run it with <code>-t 1</code> and <code>-t</code> set to the number of
+ * cores to see how it scales. <code>churn</code> has three lookup threads
+ * next to one thread adding and removing references, as maintenance does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dde.uniba.wiai.lspi.util.logging.logger.class=de.uniba.wiai.lspi.util.logging.DummyLogger")
+public class ReferencesLookupBenchmark {
+
+	private static final int kNodes = 1 << 11;
+
+	private static final int kKeys = 1024;
+
+	private References references;
+
+	private final ID[] keys = new ID[kKeys];
+
+	private final Node[] churnNodes = new Node[kKeys];
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+
+		int next() {
+			next = (next + 1) & (kKeys - 1);
+			return next;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(123456);
+		final ID localID = FingerTableBenchmark.randomID(random);
+		references = new References(localID, StubProxy.nextURL(), 2,
+				new Entries());
+		for (int i = 1; i < kNodes; ++i)
+			references.addReference(new StubProxy(FingerTableBenchmark
+					.randomID(random)));
+		references.setPredecessor(new StubProxy(FingerTableBenchmark
+				.randomID(random)));
+
+		for (int i = 0; i < kKeys; ++i) {
+			keys[i] = FingerTableBenchmark.randomID(random);
+			churnNodes[i] = new StubProxy(FingerTableBenchmark.randomID(random));
+		}
+	}
+
+	@Benchmark
+	public Node lookup(Cursor cursor) {
+		return references.getClosestPrecedingNode(keys[cursor.next()]);
+	}
+
+	@Benchmark
+	@Group("churn")
+	@GroupThreads(3)
+	public Node churnLookup(Cursor cursor) {
+		return references.getClosestPrecedingNode(keys[cursor.next()]);
+	}
+
+	@Benchmark
+	@Group("churn")
+	@GroupThreads(1)
+	public void churnUpdate(Cursor cursor) {
+		final Node node = churnNodes[cursor.next()];
+		references.addReference(node);
+		references.removeReference(node);
+	}
+}
@@ -0,0 +1,131 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.data.ID;
+
+/**
+ * Property checks for {@link References#getClosestPrecedingNode(ID)} against
+ * the former sort based selection, on random rings.
+ */
+public class ReferencesTest {
+
+	private static final int kRings = 200;
+
+	private static final int kKeysPerRing = 200;
+
+	/**
+	 * The selection as it was before the allocation free version: sort the
+	 * candidate IDs together with the key and take the ID preceding the key.
+	 */
+	static Node oldClosestPrecedingOf(ID key, Node closestNodeFT,
+			Node closestNodeSL, Node predecessorIfAppropriate) {
+		Map<ID, Node> foundNodes = new HashMap<ID, Node>();
+		if (closestNodeFT != null)
+			foundNodes.put(closestNodeFT.getNodeID(), closestNodeFT);
+		if (closestNodeSL != null)
+			foundNodes.put(closestNodeSL.getNodeID(), closestNodeSL);
+		if (predecessorIfAppropriate != null)
+			foundNodes.put(predecessorIfAppropriate.getNodeID(),
+					predecessorIfAppropriate);
+
+		List<ID> orderedIDList = new ArrayList<ID>(foundNodes.keySet());
+		orderedIDList.add(key);
+		int sizeOfList = orderedIDList.size();
+		Collections.sort(orderedIDList);
+		int keyIndex = orderedIDList.indexOf(key);
+		int index = (sizeOfList + (keyIndex - 1)) % sizeOfList;
+		return foundNodes.get(orderedIDList.get(index));
+	}
+
+	private static Node[] randomRing(Random random, int size) {
+		final Node[] ring = new Node[size];
+		for (int i = 0; i < size; ++i)
+			ring[i] = new StubProxy(FingerTableBenchmark.randomID(random));
+		return ring;
+	}
+
+	/**
+	 * Random node preceding <code>key</code> as seen from
+	 * <code>localID</code>, as finger table and successor list yield them.
+	 */
+	private static Node randomPreceding(Random random, Node[] ring,
+			ID localID, ID key) {
+		for (int tries = 0; tries < 8; ++tries) {
+			final Node n = ring[random.nextInt(ring.length)];
+			if (n.getNodeID().isInInterval(localID, key))
+				return n;
+		}
+		return null;
+	}
+
+	@Test
+	public void testClosestPrecedingOfSameAsSort() {
+		final Random random = new Random(123456);
+		for (int r = 0; r < kRings; ++r) {
+			final Node[] ring = randomRing(random, 2 + random.nextInt(64));
+			final ID localID = ring[0].getNodeID();
+			for (int k = 0; k < kKeysPerRing; ++k) {
+				final ID key = random.nextBoolean() ? FingerTableBenchmark
+						.randomID(random) : ring[random.nextInt(ring.length)]
+						.getNodeID();
+				final Node ft = randomPreceding(random, ring, localID, key);
+				final Node sl = random.nextInt(4) == 0 ? ft : randomPreceding(
+						random, ring, localID, key);
+				Node pred = ring[random.nextInt(ring.length)];
+				if (!key.isInInterval(pred.getNodeID(), localID))
+					pred = null;
+
+				assertSame(oldClosestPrecedingOf(key, ft, sl, pred),
+						References.closestPrecedingOf(key, ft, sl, pred));
+			}
+		}
+	}
+
+	/**
+	 * Fills a {@link References} with a random ring and checks every lookup
+	 * against the sort based selection over the same finger table, successor
+	 * list and predecessor.
+	 */
+	@Test
+	public void testGetClosestPrecedingNodeSameAsSort() {
+		final Random random = new Random(654321);
+		for (int r = 0; r < kRings / 10; ++r) {
+			final Node[] ring = randomRing(random, 2 + random.nextInt(512));
+			final ID localID = FingerTableBenchmark.randomID(random);
+			final References references = new References(localID,
+					StubProxy.nextURL(), 1 + random.nextInt(4), new Entries());
+			// same additions, to know the finger table entries
+			final FingerTable fingerTable = new FingerTable(localID,
+					new References(localID, StubProxy.nextURL(), 1,
+							new Entries()));
+			for (int i = 1; i < ring.length; ++i) {
+				references.addReference(ring[i]);
+				fingerTable.addReference(ring[i]);
+			}
+			if (random.nextBoolean())
+				references.setPredecessor(ring[0]);
+
+			for (int k = 0; k < kKeysPerRing; ++k) {
+				final ID key = FingerTableBenchmark.randomID(random);
+				final Node pred = references.getPredecessor();
+				assertSame(oldClosestPrecedingOf(key, fingerTable
+						.getClosestPrecedingNode(key), SuccessorList
+						.getClosestPrecedingNode(references.getSuccessors(),
+								localID, key), pred != null
+						&& key.isInInterval(pred.getNodeID(), localID) ? pred
+						: null), references.getClosestPrecedingNode(key));
+			}
+		}
+	}
+}
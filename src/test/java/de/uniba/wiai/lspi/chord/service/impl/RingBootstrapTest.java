@@ -0,0 +1,68 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.chord4js.evaluation.Chord4SDriver;
+import com.chord4js.evaluation.ConvergenceDetector;
+import com.chord4js.evaluation.DriverAdapter;
+
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.ServiceException;
+import de.uniba.wiai.lspi.chord.service.TestProperties;
+
+/**
+ * Checks that a ring built at once has the routing state of a fully
+ * stabilized ring, and keeps it under maintenance.
+ */
+public class RingBootstrapTest {
+
+	private static final int kNodes = 300;
+
+	@BeforeClass
+	public static void configure() {
+		TestProperties.load();
+	}
+
+	private static List<URL> urls(String prefix, int n) throws MalformedURLException {
+		final List<URL> urls = new ArrayList<URL>(n);
+		for (int i = 0; i < n; i++)
+			urls.add(new URL(URL.KNOWN_PROTOCOLS.get(URL.LOCAL_PROTOCOL) + "://" + prefix
+					+ i + "/"));
+		return urls;
+	}
+
+	@Test
+	public void testRingIsStabilized() throws MalformedURLException, ServiceException {
+		final List<ChordImpl> nodes = RingBootstrap.createRing(urls("bulk", kNodes));
+		final List<Chord4SDriver> drivers = new ArrayList<Chord4SDriver>();
+		for (ChordImpl node : nodes)
+			drivers.add(new DriverAdapter(node));
+		final ConvergenceDetector detector = new ConvergenceDetector(drivers);
+
+		assertEquals(1, detector.measure(0).min(), 0);
+		assertEquals(ChordImpl.NUMBER_OF_SUCCESSORS, nodes.get(0).getSuccessorIDs().size());
+
+		// maintenance finds nothing to fix
+		for (ChordImpl node : nodes)
+			node.runTasks();
+		assertEquals(1, detector.measure(1).min(), 0);
+
+		for (ChordImpl node : nodes)
+			node.crash();
+	}
+
+	@Test
+	public void testSingleNode() throws MalformedURLException, ServiceException {
+		final List<ChordImpl> nodes = RingBootstrap.createRing(urls("lonely", 1));
+		assertNull(nodes.get(0).getPredecessorID());
+		assertTrue(nodes.get(0).getSuccessorIDs().isEmpty());
+		nodes.get(0).crash();
+	}
+}
@@ -0,0 +1,95 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import java.net.MalformedURLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.chord4js.Pair;
+import com.chord4js.ProviderId;
+import com.chord4js.Service;
+
+import de.uniba.wiai.lspi.chord.com.Node;
+import de.uniba.wiai.lspi.chord.com.Proxy;
+import de.uniba.wiai.lspi.chord.com.RefsAndEntries;
+import de.uniba.wiai.lspi.chord.data.ID;
+import de.uniba.wiai.lspi.chord.data.URL;
+import de.uniba.wiai.lspi.chord.service.C4SMsgRetrieve;
+import de.uniba.wiai.lspi.chord.service.C4SRetrieveResponse;
+
+/**
+ * Inert {@link Proxy} carrying only an ID, for filling routing tables in
+ * tests and benchmarks without any endpoints.
+ */
+class StubProxy extends Proxy {
+
+	private static int port = 1;
+
+	StubProxy(ID id) {
+		super(nextURL());
+		setNodeID(id);
+	}
+
+	static URL nextURL() {
+		try {
+			return new URL(URL.KNOWN_PROTOCOLS.get(URL.LOCAL_PROTOCOL)
+					+ "://stub:" + port++ + "/");
+		} catch (MalformedURLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public Pair<Node, Integer> findSuccessor(ID key) {
+		return new Pair<>(this, 0);
+	}
+
+	@Override
+	public Pair<Node, Boolean> findNextHop(ID key) {
+		return new Pair<>(this, true);
+	}
+
+	@Override
+	public List<Node> notify(Node potentialPredecessor) {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public RefsAndEntries notifyAndCopyEntries(Node potentialPredecessor) {
+		return new RefsAndEntries(Collections.<Node> emptyList(),
+				Collections.<Service> emptySet());
+	}
+
+	@Override
+	public void ping() {
+	}
+
+	@Override
+	public void insertEntry(Service svc) {
+	}
+
+	@Override
+	public void insertReplicas(Set<Service> entriesToRep) {
+	}
+
+	@Override
+	public void removeEntry(ProviderId x) {
+	}
+
+	@Override
+	public void removeReplicas(ID sendingNode, Set<ProviderId> entriesToRemove) {
+	}
+
+	@Override
+	public C4SRetrieveResponse retrieveEntries(C4SMsgRetrieve x) {
+		return new C4SRetrieveResponse(Collections.<Service> emptySet());
+	}
+
+	@Override
+	public void leavesNetwork(Node predecessor) {
+	}
+
+	@Override
+	public void disconnect() {
+	}
+}
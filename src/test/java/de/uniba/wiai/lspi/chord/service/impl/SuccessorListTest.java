@@ -0,0 +1,200 @@
+package de.uniba.wiai.lspi.chord.service.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.chord4js.ProviderId;
+import com.chord4js.Service;
+import com.chord4js.ServiceFactory;
+
+import de.uniba.wiai.lspi.chord.data.ID;
+
+/**
+ * Checks that successors are only sent the replicas they are missing, as
+ * long as every change was sent to them.
+ */
+public class SuccessorListTest {
+
+	/**
+	 * Counts the replicas sent to it.
+	 */
+	static final class RecordingProxy extends StubProxy {
+		int inserted;
+
+		int removed;
+
+		int removedAll;
+
+		RecordingProxy(ID id) {
+			super(id);
+		}
+
+		@Override
+		public void insertReplicas(Set<Service> entriesToRep) {
+			inserted += entriesToRep.size();
+		}
+
+		@Override
+		public void removeReplicas(ID sendingNode, Set<ProviderId> entriesToRemove) {
+			if (entriesToRemove.isEmpty())
+				++removedAll;
+			removed += entriesToRemove.size();
+		}
+	}
+
+	private static final int kEntries = 1000;
+
+	private Random random;
+
+	private ID localID;
+
+	private Entries entries;
+
+	private References references;
+
+	private Service randomService() {
+		return new ServiceFactory(Arrays.asList("media", "music",
+				"rock", "live"), null).createRandom(random);
+	}
+
+	private RecordingProxy proxyBefore(ID id) {
+		// just in front of the given ID, so it becomes the closest successor
+		ID x;
+		do {
+			x = FingerTableBenchmark.randomID(random);
+		} while (!x.isInInterval(localID, id));
+		return new RecordingProxy(x);
+	}
+
+	@Before
+	public void setUp() {
+		random = new Random(123456);
+		localID = FingerTableBenchmark.randomID(random);
+		entries = new Entries();
+		for (int i = 0; i < kEntries; ++i)
+			entries.add(randomService());
+		references = new References(localID, StubProxy.nextURL(), 2, entries);
+		// predecessor right behind the local node: all entries are in range
+		references.setPredecessor(new StubProxy(localID.addPowerOfTwo(0)));
+	}
+
+	@Test
+	public void testNewSuccessorGetsAll() {
+		final RecordingProxy a = new RecordingProxy(FingerTableBenchmark
+				.randomID(random));
+		references.addReference(a);
+		assertEquals(kEntries, a.inserted);
+	}
+
+	@Test
+	public void testReturningSuccessorGetsAll() {
+		final RecordingProxy a = new RecordingProxy(FingerTableBenchmark
+				.randomID(random));
+		references.addReference(a);
+		assertEquals(kEntries, a.inserted);
+
+		// suspected to have failed, while entries change
+		references.removeReference(a);
+		final Set<ProviderId> removed = new HashSet<ProviderId>();
+		for (Service s : entries.getEntries()) {
+			removed.add(s.getProviderId());
+			if (removed.size() == 3)
+				break;
+		}
+		entries.removeAll(removed);
+		for (int i = 0; i < 5; ++i)
+			entries.add(randomService());
+
+		references.addReference(a);
+		assertEquals(kEntries + kEntries + 2, a.inserted);
+		assertEquals(0, a.removed);
+	}
+
+	@Test
+	public void testRestartedSuccessorGetsAll() {
+		final RecordingProxy a = new RecordingProxy(FingerTableBenchmark
+				.randomID(random));
+		references.addReference(a);
+
+		// crashes and comes back empty, at the same URL and so with the same ID
+		references.removeReference(a);
+		final RecordingProxy restarted = new RecordingProxy(a.getNodeID());
+		references.addReference(restarted);
+		assertEquals(kEntries, restarted.inserted);
+	}
+
+	@Test
+	public void testFailedChangeShipsAll() {
+		final RecordingProxy a = new RecordingProxy(FingerTableBenchmark
+				.randomID(random));
+		references.addReference(a);
+
+		// a single change could not be sent to it
+		entries.add(randomService());
+		references.replicationFailed(a);
+
+		// predecessor fails, a closer one follows: all entries again instead
+		// of nothing new
+		references.removeReference(references.getPredecessor());
+		ID p;
+		do {
+			p = FingerTableBenchmark.randomID(random);
+		} while (!p.isInInterval(localID.addPowerOfTwo(0), localID));
+		references.setPredecessor(new StubProxy(p));
+		assertEquals(kEntries + kEntries + 1, a.inserted);
+	}
+
+	@Test
+	public void testDroppedSuccessorGetsAllAgain() {
+		final RecordingProxy a = new RecordingProxy(FingerTableBenchmark
+				.randomID(random));
+		references.addReference(a);
+
+		// two closer nodes push it out of the list of two, it drops its replicas
+		references.addReference(proxyBefore(a.getNodeID()));
+		references.addReference(proxyBefore(a.getNodeID()));
+		assertFalse(references.getSuccessors().contains(a));
+		assertEquals(1, a.removedAll);
+
+		references.removeReference(references.getSuccessors().get(0));
+		references.removeReference(references.getSuccessors().get(0));
+		references.addReference(a);
+		assertEquals(2 * kEntries, a.inserted);
+	}
+
+	@Test
+	public void testNewPredecessorShipsNothingNew() {
+		final RecordingProxy a = new RecordingProxy(FingerTableBenchmark
+				.randomID(random));
+		references.addReference(a);
+		assertEquals(kEntries, a.inserted);
+
+		// predecessor fails, a closer one follows: the range only shrinks
+		references.removeReference(references.getPredecessor());
+		assertNull(references.getPredecessor());
+		ID p;
+		do {
+			p = FingerTableBenchmark.randomID(random);
+		} while (!p.isInInterval(localID.addPowerOfTwo(0), localID));
+		references.setPredecessor(new StubProxy(p));
+		assertEquals(kEntries, a.inserted);
+		assertEquals(0, a.removed);
+	}
+
+	@Test
+	public void testChangesPruned() {
+		final long version = entries.getVersion();
+		for (int i = 0; i < Entries.CHANGE_LOG_SIZE + 1; ++i)
+			entries.add(randomService());
+		assertNull(entries.getChangesInInterval(localID, localID, version));
+		assertNotNull(entries.getChangesInInterval(localID, localID, entries
+				.getVersion()));
+	}
+}